@@ -24,7 +24,33 @@ public class ApplicationException extends Exception {
     /**
      * The application error code.
      */
-    private ErrorCode code;
+    private final ErrorCode code;
+
+    /**
+     * The details of this occurrence of the error; can be null.
+     */
+    private final String details;
+
+    /**
+     * Constructs an exception instance.
+     *
+     * @param errorDetails the application error code and the details of this occurrence of it.
+     * @param cause        the cause of this exception.
+     */
+    public ApplicationException(ErrorDetails errorDetails, Throwable cause) {
+        super(errorDetails.getCode().getMessage(), cause);
+        this.code = errorDetails.getCode();
+        this.details = errorDetails.getDetails();
+    }
+
+    /**
+     * Constructs an exception instance.
+     *
+     * @param errorDetails the application error code and the details of this occurrence of it.
+     */
+    public ApplicationException(ErrorDetails errorDetails) {
+        this(errorDetails, null);
+    }
 
     /**
      * Constructs an exception instance.
@@ -33,8 +59,7 @@ public class ApplicationException extends Exception {
      * @param cause     the cause of this exception.
      */
     public ApplicationException(ErrorCode errorCode, Throwable cause) {
-        super(errorCode.getMessage(), cause);
-        this.code = errorCode;
+        this(new ErrorDetails(errorCode, null), cause);
     }
 
     /**
@@ -43,8 +68,7 @@ public class ApplicationException extends Exception {
      * @param errorCode the application error code.
      */
     public ApplicationException(ErrorCode errorCode) {
-        super(errorCode.getMessage());
-        this.code = errorCode;
+        this(errorCode, null);
     }
 
     /**
@@ -54,11 +78,18 @@ public class ApplicationException extends Exception {
         return code.getCode();
     }
 
+    /**
+     * @return the application error.
+     */
+    public ErrorCode getErrorCode() {
+        return code;
+    }
+
     /**
      * @return the application error details.
      */
     public String getDetails() {
-        return code.getDetails();
+        return details;
     }
 
 }
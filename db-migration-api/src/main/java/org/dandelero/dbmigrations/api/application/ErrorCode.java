@@ -38,6 +38,9 @@ public enum ErrorCode {
     INVALID_MODULE(4000, "Invalid module"),
     MODULE_DIRECTORY_ERROR(4001, "Invalid module directory"),
 
+    // Composition
+    COMPOSITION_ERROR(5000, "Migration script composition failed"),
+
     // Other
     OTHER(9999, "Other error");
 
@@ -45,17 +48,12 @@ public enum ErrorCode {
     /**
      * The error code.
      */
-    private int code;
+    private final int code;
 
     /**
      * A descriptive error message.
      */
-    private String message;
-
-    /**
-     * A detailed error message.
-     */
-    private String details;
+    private final String message;
 
     /**
      * Creates an instance with the code and message.
@@ -64,20 +62,8 @@ public enum ErrorCode {
      * @param message the message.
      */
     private ErrorCode(int code, String message) {
-        this(code, message, null);
-    }
-
-    /**
-     * Creates an instance with the code, message and details.
-     *
-     * @param code    the error code.
-     * @param message the message.
-     * @param details details around the error.
-     */
-    private ErrorCode(int code, String message, String details) {
         this.code = code;
         this.message = message;
-        this.details = details;
     }
 
     /**
@@ -95,20 +81,23 @@ public enum ErrorCode {
     }
 
     /**
-     * @return any details around the error message; can be null.
+     * @return null; an error code no longer holds the details of an occurrence of it.
+     * @deprecated the details are held by the exception that reports the error; use
+     * {@link ApplicationException#getDetails()}.
      */
+    @Deprecated
     public String getDetails() {
-        return details;
+        return null;
     }
 
     /**
-     * Sets the error code details.
+     * Describes an occurrence of this error. The error code itself is shared and never changes, so the details are
+     * held by the returned instance.
      *
      * @param details the details.
-     * @return this instance.
+     * @return the details of the occurrence.
      */
-    public ErrorCode withDetails(String details) {
-        this.details = details;
-        return this;
+    public ErrorDetails withDetails(String details) {
+        return new ErrorDetails(this, details);
     }
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.api.application;
+
+/**
+ * The details of one occurrence of an error: the (shared) error code together with the details particular to the
+ * occurrence. Instances are immutable, so they can be raised from any number of threads at once.
+ * <br />
+ * Created at: 17/10/26 7:05 pm
+ *
+ * @author dandelero
+ */
+public final class ErrorDetails {
+
+    /**
+     * The error code.
+     */
+    private final ErrorCode code;
+
+    /**
+     * A detailed error message.
+     */
+    private final String details;
+
+    /**
+     * Creates an instance with the code and details.
+     *
+     * @param code    the error code.
+     * @param details details around the error; can be null.
+     */
+    public ErrorDetails(ErrorCode code, String details) {
+        this.code = code;
+        this.details = details;
+    }
+
+    /**
+     * @return the error code.
+     */
+    public ErrorCode getCode() {
+        return code;
+    }
+
+    /**
+     * @return any details around the error message; can be null.
+     */
+    public String getDetails() {
+        return details;
+    }
+
+    @Override
+    public String toString() {
+        return details == null ? code.getMessage() : code.getMessage() + ": " + details;
+    }
+}
@@ -12,6 +12,12 @@
  */
 package org.dandelero.dbmigrations.api.delta;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -39,6 +45,49 @@ public interface DeltaScript extends Comparable<DeltaScript> {
      */
     String getContents();
 
+    /**
+     * Opens a reader over the contents of this script, which the caller is to close. Implementations ought to stream
+     * the contents from their source where they can, so that a script of any size can be written without holding it
+     * in memory; by default the reader is over the result of {@link #getContents()}.
+     *
+     * @return a reader over the contents of this script.
+     * @throws IOException if the contents cannot be read.
+     */
+    default Reader openReader() throws IOException {
+        return new StringReader(getContents());
+    }
+
+    /**
+     * Opens a channel over the bytes of this script, which the caller is to close, so that they can be copied to an
+     * output without being decoded, e.g. transferred from file to file by the file system. By default there is none.
+     *
+     * @return a read-only channel over the bytes of this script, or null if they can only be read as text.
+     * @throws IOException if the channel cannot be opened.
+     */
+    default ReadableByteChannel openChannel() throws IOException {
+        return null;
+    }
+
+    /**
+     * Whether the contents of this script are held in memory, so that {@link #getContents()} can be called any number
+     * of times without going back to the source of the script. By default they are not.
+     *
+     * @return true if the contents are held in memory.
+     */
+    default boolean isHeldInMemory() {
+        return false;
+    }
+
+    /**
+     * Implementations should answer this without reading the contents where they can, e.g. from file metadata, as it
+     * is used to plan a composition without running it.
+     *
+     * @return the size of the contents of this script, in bytes.
+     */
+    default long getSize() {
+        return getContents().getBytes(StandardCharsets.UTF_8).length;
+    }
+
     @Override
     default int compareTo(@NotNull DeltaScript other) {
         if (other == null) {
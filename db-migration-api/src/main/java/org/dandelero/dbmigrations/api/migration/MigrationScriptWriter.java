@@ -12,8 +12,11 @@
  */
 package org.dandelero.dbmigrations.api.migration;
 
+import java.util.HashMap;
 import java.util.Map;
 
+import org.dandelero.dbmigrations.api.delta.DeltaScript;
+
 /**
  * An interface for writing migration scripts to a sink.
  * <br />
@@ -23,6 +26,11 @@ import java.util.Map;
  */
 public interface MigrationScriptWriter {
 
+    /**
+     * The key of the contents of the script being written in a script context.
+     */
+    String KEY_SCRIPT_CONTENTS = "scriptContents";
+
     /**
      * Called when a new set of scripts is about to be processed.
      *
@@ -35,6 +43,13 @@ public interface MigrationScriptWriter {
      */
     void finish();
 
+    /**
+     * Called when the migration script is not to be completed, e.g. because its composition failed or was cancelled;
+     * any output that has been written, whether or not the writer has finished, ought to be discarded.
+     */
+    default void abort() {
+    }
+
     /**
      * Called when script processing is about to commence.
      */
@@ -62,6 +77,20 @@ public interface MigrationScriptWriter {
      */
     void writeRegularScript(Map<String, Object> scriptContext);
 
+    /**
+     * Called when a regular script is to be written from the given delta script, whose contents are not in the
+     * script context. Writers that can stream the contents of the script ought to override this; by default the
+     * contents are read into the script context.
+     *
+     * @param scriptContext the script context.
+     * @param deltaScript   the delta script to be written.
+     */
+    default void writeRegularScript(Map<String, Object> scriptContext, DeltaScript deltaScript) {
+        Map<String, Object> context = new HashMap<>(scriptContext);
+        context.put(KEY_SCRIPT_CONTENTS, deltaScript.getContents());
+        writeRegularScript(context);
+    }
+
     /**
      * Called when a bidirectional script is to be written.
      *
@@ -69,4 +98,18 @@ public interface MigrationScriptWriter {
      */
     void writeBidirectionalScript(Map<String, Object> scriptContext);
 
+    /**
+     * Called when a bidirectional script is to be written from the given delta script, whose contents are not in the
+     * script context. Writers that can stream the contents of the script ought to override this; by default the
+     * contents are read into the script context.
+     *
+     * @param scriptContext the script context.
+     * @param deltaScript   the delta script to be written.
+     */
+    default void writeBidirectionalScript(Map<String, Object> scriptContext, DeltaScript deltaScript) {
+        Map<String, Object> context = new HashMap<>(scriptContext);
+        context.put(KEY_SCRIPT_CONTENTS, deltaScript.getContents());
+        writeBidirectionalScript(context);
+    }
+
 }
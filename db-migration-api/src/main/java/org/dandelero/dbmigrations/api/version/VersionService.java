@@ -12,6 +12,10 @@
  */
 package org.dandelero.dbmigrations.api.version;
 
+import java.util.List;
+
+import org.dandelero.dbmigrations.api.application.ApplicationException;
+import org.dandelero.dbmigrations.api.application.ErrorCode;
 import org.dandelero.dbmigrations.api.module.Module;
 
 /**
@@ -41,5 +45,20 @@ public interface VersionService<M extends Module, V extends Version> {
      */
     V getVersion(M module, String versionString);
 
+    /**
+     * Lists all the versions in the module.
+     * <br />
+     * Services written before versions could be listed do not implement this, so by default it fails; such services
+     * can still compose the latest or a specific version.
+     *
+     * @param module the module whose versions are to be retrieved.
+     * @return the versions in ascending order.
+     * @throws ApplicationException if this service does not list versions.
+     */
+    default List<V> listVersions(M module) throws ApplicationException {
+        throw new ApplicationException(ErrorCode.OTHER.withDetails(getClass().getName()
+                + " does not list versions; override VersionService.listVersions to compose a range or every version"));
+    }
+
 }
 
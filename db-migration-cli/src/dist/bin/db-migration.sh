@@ -9,26 +9,48 @@ realpath() {
 # Displays usage information and exits.
 usage() {
   echo "Usage: $0
-    [-d <database>] the type of database to generate migrations for
-    [-i <input directory>] the path to the input directory containing the modules/versions
+    [-d <database1, database2, ..., databaseN>] the type(s) of database to generate migrations for as a CSV string
+    [-i <input directory>] the path to the input directory (or a zip/jar archive of it) containing the modules/versions
     [-o <output directory>] the path to the output directory to write to
     [-v <version>] [optional] the version to be processed
+    [-f <version>] [optional] the version (exclusive) a range of versions to be processed as one script starts after
+    [-t <version>] [optional] the last version (inclusive) of a range of versions to be processed as one script
+    [-a] [optional] process every version of the module(s)
     [-k <version scheme>] [optional] the scheme by which the versions abide
     [-m <module1, module2, ..., moduleN>] [optional] the names of the modules to be processed as a CSV string
+    [-j <jobs>] [optional] the maximum number of modules to be processed concurrently
+    [-e] [optional] stop the modules and versions still being processed as soon as one of them fails
+    [-p <text|json>] [optional] print the plan of what would be processed, in the given format, without processing it
+    [-g <revision>] [optional] read the input directory from a revision (e.g. a tag) of its git repository
   " 1>&2;
   exit 1;
 }
 
 # Parses the script args to set up the execution environment.
 parseArgs() {
-  while getopts :d:i:k:m:o:v:h option; do
+  while getopts :ad:ef:g:i:j:k:m:o:p:t:v:h option; do
       case "$option" in
+          a)
+              ALL_VERSIONS="true"
+              ;;
           d)
               DATABASE_ENGINE="${OPTARG}"
               ;;
+          e)
+              FAIL_FAST="true"
+              ;;
+          f)
+              REQUESTED_FROM_VERSION=${OPTARG}
+              ;;
+          g)
+              GIT_REVISION=${OPTARG}
+              ;;
           i)
               INPUT_DIRECTORY=$OPTARG
               ;;
+          j)
+              REQUESTED_JOBS=${OPTARG}
+              ;;
           k)
               VERSION_SCHEME=$OPTARG
               ;;
@@ -38,6 +60,12 @@ parseArgs() {
           o)
               OUTPUT_DIRECTORY=${OPTARG}
               ;;
+          p)
+              PLAN_FORMAT=${OPTARG}
+              ;;
+          t)
+              REQUESTED_TO_VERSION=${OPTARG}
+              ;;
           v)
               REQUESTED_VERSION=${OPTARG}
               ;;
@@ -59,7 +87,8 @@ validateArgs() {
     usage
   fi
 
-  if [ ! -d $INPUT_DIRECTORY ]; then
+  # A directory read from a git revision need not exist in the working tree.
+  if [ -z "${GIT_REVISION}" ] && [ ! -e $INPUT_DIRECTORY ]; then
       echo "Input directory not found: $INPUT_DIRECTORY"
       usage
   fi
@@ -81,11 +110,44 @@ invokeApplication() {
     APPLICATION_ARGS="$APPLICATION_ARGS --version $REQUESTED_VERSION"
   fi
 
+  # Version range: if either end is provided => run for the range of versions as one script.
+  if [ ! -z "${REQUESTED_FROM_VERSION}" ]; then
+    APPLICATION_ARGS="$APPLICATION_ARGS --from-version $REQUESTED_FROM_VERSION"
+  fi
+  if [ ! -z "${REQUESTED_TO_VERSION}" ]; then
+    APPLICATION_ARGS="$APPLICATION_ARGS --to-version $REQUESTED_TO_VERSION"
+  fi
+
+  # All versions: if requested => run for every version of the module(s).
+  if [ ! -z "${ALL_VERSIONS}" ]; then
+    APPLICATION_ARGS="$APPLICATION_ARGS --all-versions"
+  fi
+
   # Module(s): if not provided => run for the default module.
   if [ ! -z "${REQUESTED_MODULES}" ]; then
     APPLICATION_ARGS="$APPLICATION_ARGS --modules $REQUESTED_MODULES"
   fi
 
+  # Jobs: if not provided => use the configured parallelism.
+  if [ ! -z "${REQUESTED_JOBS}" ]; then
+    APPLICATION_ARGS="$APPLICATION_ARGS --jobs $REQUESTED_JOBS"
+  fi
+
+  # Fail fast: if requested => cancel the rest of the run on the first failure.
+  if [ ! -z "${FAIL_FAST}" ]; then
+    APPLICATION_ARGS="$APPLICATION_ARGS --fail-fast"
+  fi
+
+  # Plan: if requested => print what would be processed instead of processing it.
+  if [ ! -z "${PLAN_FORMAT}" ]; then
+    APPLICATION_ARGS="$APPLICATION_ARGS --plan $PLAN_FORMAT"
+  fi
+
+  # Git revision: if provided => read the input directory from that revision of its repository.
+  if [ ! -z "${GIT_REVISION}" ]; then
+    APPLICATION_ARGS="$APPLICATION_ARGS --git-revision $GIT_REVISION"
+  fi
+
   # Settings file.
   if [ ! -f $OVERRIDE_CONFIG_FILE ]; then
     APPLICATION_ARGS="$APPLICATION_ARGS --config-file-override $OVERRIDE_CONFIG_FILE"
@@ -156,6 +218,27 @@ REQUESTED_MODULES=""
 # The version of the module(s) to be processed.
 REQUESTED_VERSION=""
 
+# The version (exclusive) a range of versions to be processed starts after.
+REQUESTED_FROM_VERSION=""
+
+# The last version (inclusive) of a range of versions to be processed.
+REQUESTED_TO_VERSION=""
+
+# Whether every version of the module(s) is to be processed.
+ALL_VERSIONS=""
+
+# The maximum number of modules to be processed concurrently.
+REQUESTED_JOBS=""
+
+# Whether the first failure is to cancel the rest of the run.
+FAIL_FAST=""
+
+# The format to print the plan of the run in, if only the plan is wanted.
+PLAN_FORMAT=""
+
+# The revision of the git repository that the input directory is to be read from.
+GIT_REVISION=""
+
 # The scheme by which the versions abide.
 VERSION_SCHEME="default"
 
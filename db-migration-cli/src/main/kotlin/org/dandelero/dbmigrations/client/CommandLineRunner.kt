@@ -14,7 +14,9 @@ package org.dandelero.dbmigrations.client
 
 import kotlinx.cli.ArgParser
 import kotlinx.cli.ArgType
+import kotlinx.cli.default
 import kotlinx.cli.required
+import org.dandelero.dbmigrations.engine.plan.PlanFormat
 import org.slf4j.LoggerFactory
 
 /**
@@ -41,7 +43,7 @@ class CommandLineRunner(private val args: Array<String>) {
      */
     private val inputDirectoryPath by parser.option(ArgType.String, shortName = "idp",
             fullName = "input-directory-path",
-            description = "The path to the directory containing input data to be processed (parent of module or version directory)")
+            description = "The path to the directory containing input data to be processed (parent of module or version directory), or to a zip or jar archive of it")
             .required()
 
     /**
@@ -57,7 +59,7 @@ class CommandLineRunner(private val args: Array<String>) {
      */
     private val databaseEngine by parser.option(ArgType.String, shortName = "d",
             fullName = "database-engine",
-            description = "The name of the database engine to generate migration scripts for")
+            description = "The name(s) of the database engine(s) to generate migration scripts for, as a CSV string")
             .required()
 
     /**
@@ -82,6 +84,28 @@ class CommandLineRunner(private val args: Array<String>) {
             fullName = "version",
             description = "The version to be processed; default is the latest version")
 
+    /**
+     * The version a range of versions to be processed starts after.
+     */
+    private val fromVersion by parser.option(ArgType.String, shortName = "fv",
+            fullName = "from-version",
+            description = "The version (exclusive) a range of versions to be processed into a single script starts after")
+
+    /**
+     * The last version of a range of versions to be processed.
+     */
+    private val toVersion by parser.option(ArgType.String, shortName = "tv",
+            fullName = "to-version",
+            description = "The last version (inclusive) of a range of versions to be processed into a single script; default is the latest version")
+
+    /**
+     * Whether every version is to be processed.
+     */
+    private val allVersions by parser.option(ArgType.Boolean, shortName = "av",
+            fullName = "all-versions",
+            description = "Process every version of every module (or of the given modules), e.g. after a template change")
+            .default(false)
+
     /**
      * The modules to be processed.
      */
@@ -89,6 +113,35 @@ class CommandLineRunner(private val args: Array<String>) {
             fullName = "modules",
             description = "The module(s) whose version is to be processed, default = '' which indicates no module")
 
+    /**
+     * The maximum number of modules to be composed concurrently.
+     */
+    private val jobs by parser.option(ArgType.Int, shortName = "j",
+            fullName = "jobs",
+            description = "The maximum number of modules to be processed concurrently; default is the configured parallelism")
+
+    /**
+     * Whether the first failure is to cancel the rest of the composition.
+     */
+    private val failFast by parser.option(ArgType.Boolean, shortName = "ff",
+            fullName = "fail-fast",
+            description = "Cancel the modules and versions still being processed as soon as one of them fails")
+            .default(false)
+
+    /**
+     * The format to print the composition plan in, if only the plan is wanted.
+     */
+    private val plan by parser.option(ArgType.Choice(listOf("text", "json")), shortName = "p",
+            fullName = "plan",
+            description = "Print the plan of the composition (modules, versions and delta scripts, with any problems) in the given format instead of generating the migration scripts")
+
+    /**
+     * The revision of the git repository that the input directory is to be read from.
+     */
+    private val gitRevision by parser.option(ArgType.String, shortName = "gr",
+            fullName = "git-revision",
+            description = "Read the input directory from this revision (e.g. a tag) of the git repository it is within, without checking it out")
+
     /**
      * Runs the application.
      */
@@ -98,12 +151,19 @@ class CommandLineRunner(private val args: Array<String>) {
         // Ensure the needed args are provided.
         parser.parse(args)
 
-        MigrationGenerator.generate(databaseEngine = databaseEngine,
+        MigrationGenerator.generate(databaseEngineCsvString = databaseEngine,
                 versionScheme = versionScheme,
                 inputDirectoryPath = inputDirectoryPath,
                 outputDirectoryPath = outputDirectoryPath,
                 moduleListCsvString = modulesToProcessString,
                 versionToProcess = versionToProcess,
-                configFile = overrideConfigFilePath)
+                configFile = overrideConfigFilePath,
+                parallelism = jobs,
+                fromVersion = fromVersion,
+                toVersion = toVersion,
+                allVersions = allVersions,
+                failFast = failFast,
+                planFormat = plan?.let { PlanFormat.valueOf(it.toUpperCase()) },
+                gitRevision = gitRevision)
     }
 }
\ No newline at end of file
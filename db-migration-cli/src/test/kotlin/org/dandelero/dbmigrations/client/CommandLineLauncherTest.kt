@@ -12,7 +12,11 @@
  */
 package org.dandelero.dbmigrations.client
 
+import java.io.ByteArrayOutputStream
 import java.io.File
+import java.io.PrintStream
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.engine.test.util.TestUtil
 import org.dandelero.dbmigrations.engine.util.listChildDirectories
@@ -20,6 +24,7 @@ import org.dandelero.dbmigrations.engine.util.listChildFiles
 import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Assumptions.assumeTrue
 import org.junit.jupiter.api.Test
 
 /**
@@ -87,6 +92,105 @@ class CommandLineLauncherTest {
         assertModuleDirectory(moduleDir = customerModule, expectedModuleName = "customer", expectedVersion = "1.0.2")
     }
 
+    /**
+     * Tests the generation of scripts for the latest version in set of modules for several database engines.
+     */
+    @Test
+    fun generateMigrationScriptsForMultipleDatabaseEnginesTest() {
+        val inputDir = TestUtil.getRequiredFileOnClasspath("input/with-modules/scheme/standard")
+        val tempDir = TestUtil.createTempDirectory()
+        val args = arrayOf("-idp", inputDir.absolutePath, "-odp", tempDir.absolutePath, "-d", "mssql, mysql") +
+                arrayOf("-m", "accounting, customer",
+                        "-cfo", yamlConfigFile.absolutePath,
+                        "-vs", "default")
+        CommandLineLauncher.main(args)
+
+        // Each engine has its own directory containing the modules.
+        val engineDirs = tempDir.listChildDirectories()
+        assertEquals(setOf("mssql", "mysql"), engineDirs.map { it.name }.toSet(), "Expected a directory per engine")
+        engineDirs.forEach { engineDir ->
+            val moduleDirs = engineDir.listChildDirectories()
+            assertEquals(2, moduleDirs.size, "Expected exactly 2 directories for the modules")
+            assertModuleDirectory(moduleDir = moduleDirs.first { it.name == "accounting" },
+                    expectedModuleName = "accounting", expectedVersion = "1.0.1")
+            assertModuleDirectory(moduleDir = moduleDirs.first { it.name == "customer" },
+                    expectedModuleName = "customer", expectedVersion = "1.0.2")
+        }
+    }
+
+    /**
+     * Tests that the migration scripts generated from a zip archive of the input directory match those generated from
+     * the directory itself.
+     */
+    @Test
+    fun generateMssqlMigrationScriptsFromZipArchiveTest() {
+        val inputDir = TestUtil.getRequiredFileOnClasspath("input/with-modules/scheme/standard")
+        val archive = File(TestUtil.createTempDirectory(), "input.zip")
+        ZipOutputStream(archive.outputStream()).use { zip ->
+            inputDir.walkTopDown().filter { it.isFile }.forEach { file ->
+                zip.putNextEntry(ZipEntry(file.relativeTo(inputDir).invariantSeparatorsPath))
+                file.inputStream().use { it.copyTo(zip) }
+                zip.closeEntry()
+            }
+        }
+
+        val directoryOutput = generateAllVersions(inputDir)
+        assertTrue(directoryOutput.isNotEmpty(), "Expected migration scripts to be generated")
+        assertEquals(directoryOutput, generateAllVersions(archive), "Expected the same migration scripts from the archive")
+    }
+
+    /**
+     * Tests that the migration scripts generated from a tagged revision of a git repository match those generated
+     * from the directory that was committed, once the directory has been removed from the working tree.
+     */
+    @Test
+    fun generateMssqlMigrationScriptsFromGitRevisionTest() {
+        val inputDir = TestUtil.getRequiredFileOnClasspath("input/with-modules/scheme/standard")
+        val repositoryDir = TestUtil.createTempDirectory()
+        assumeTrue(runCatching { git(repositoryDir, "--version") }.getOrDefault(false), "git is not installed")
+
+        inputDir.copyRecursively(File(repositoryDir, "db"))
+        assertTrue(git(repositoryDir, "init", "-q") && git(repositoryDir, "add", "-A") &&
+                git(repositoryDir, "-c", "user.name=tests", "-c", "user.email=tests@example.com", "commit", "-q",
+                        "-m", "Release") &&
+                git(repositoryDir, "tag", "release-1") && git(repositoryDir, "rm", "-q", "-r", "db"))
+
+        val directoryOutput = generateAllVersions(inputDir)
+        assertEquals(directoryOutput, generateAllVersions(File(repositoryDir, "db"), "-gr", "release-1"),
+                "Expected the same migration scripts from the git revision")
+    }
+
+    /**
+     * Runs a git command.
+     * @param dir the directory to run the command in.
+     * @param args the arguments of the command.
+     * @return whether the command succeeded.
+     */
+    private fun git(dir: File, vararg args: String): Boolean {
+        val process = ProcessBuilder(listOf("git") + args).directory(dir).redirectErrorStream(true).start()
+        process.inputStream.bufferedReader().readText()
+        return process.waitFor() == 0
+    }
+
+    /**
+     * Generates the migration scripts of every version of the accounting and customer modules.
+     * @param input the input directory.
+     * @param extraArgs any further arguments.
+     * @return the lines of each migration script, by its path, without the time that they were created on.
+     */
+    private fun generateAllVersions(input: File, vararg extraArgs: String): Map<String, List<String>> {
+        val tempDir = TestUtil.createTempDirectory()
+        val args = arrayOf("-idp", input.absolutePath, "-odp", tempDir.absolutePath, "-d", "mssql") +
+                arrayOf("-m", "accounting, customer", "-av",
+                        "-cfo", yamlConfigFile.absolutePath,
+                        "-vs", "default") + extraArgs
+        CommandLineLauncher.main(args)
+
+        return tempDir.walkTopDown().filter { it.isFile }.associate { file ->
+            file.relativeTo(tempDir).path to file.readLines().filterNot { it.startsWith("-- Created on:") }
+        }
+    }
+
     /**
      * Tests the generation of scripts for a specific version in set of modules.
      */
@@ -203,6 +307,34 @@ class CommandLineLauncherTest {
         assertVersionDirectory(childDirs[0], "1.22.890+20130313144701")
     }
 
+    /**
+     * Tests that a plan is printed, and nothing generated, when only the plan is wanted.
+     */
+    @Test
+    fun planMigrationScriptsForLatestVersionInMultipleModulesTest() {
+        val inputDir = TestUtil.getRequiredFileOnClasspath("input/with-modules/scheme/standard")
+        val tempDir = TestUtil.createTempDirectory()
+        val args = arrayOf("-idp", inputDir.absolutePath, "-odp", tempDir.absolutePath, "-d", "mssql") +
+                arrayOf("-m", "accounting, customer", "-p", "json",
+                        "-cfo", yamlConfigFile.absolutePath,
+                        "-vs", "default")
+
+        val standardOutput = System.out
+        val capturedOutput = ByteArrayOutputStream()
+        System.setOut(PrintStream(capturedOutput, true))
+        try {
+            CommandLineLauncher.main(args)
+        } finally {
+            System.setOut(standardOutput)
+        }
+
+        val plan = capturedOutput.toString()
+        assertTrue(plan.contains("\"name\":\"accounting\""), "Module missing from plan: $plan")
+        assertTrue(plan.contains("\"name\":\"customer\""), "Module missing from plan: $plan")
+        assertTrue(plan.contains("\"valid\":true"), "Plan expected to be valid: $plan")
+        assertTrue(tempDir.listChildDirectories().isEmpty(), "Nothing expected to be generated for a plan")
+    }
+
     /**
      * Asserts the structure of a module that contains the resources for a particular version.
      * @param moduleDir the module directory to be inspected.
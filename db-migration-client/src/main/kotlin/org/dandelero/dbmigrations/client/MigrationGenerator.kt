@@ -12,10 +12,20 @@
  */
 package org.dandelero.dbmigrations.client
 
+import java.io.File
 import java.util.Arrays
 import kotlin.collections.ArrayList
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
+import org.dandelero.dbmigrations.engine.git.GitFileSystems
+import org.dandelero.dbmigrations.engine.migration.FailurePolicy
+import org.dandelero.dbmigrations.engine.migration.MigrationScriptComposer
+import org.dandelero.dbmigrations.engine.module.ArchiveFileSystems
+import org.dandelero.dbmigrations.engine.module.DirectoryModule
+import org.dandelero.dbmigrations.engine.module.DirectoryModuleService
+import org.dandelero.dbmigrations.engine.plan.CompositionPlan
+import org.dandelero.dbmigrations.engine.plan.PlanFormat
+import org.dandelero.dbmigrations.engine.version.VersionedDirectory
 import org.slf4j.LoggerFactory
 
 /**
@@ -35,12 +45,24 @@ object MigrationGenerator {
      * Main function to generate migration scripts.
      * @param databaseEngine the database to generate migration scripts for.
      * @param versionScheme the name of the versioning scheme to be used from the configuration.
-     * @param inputDirectoryPath the path to the input directory containing modules and/or versions to be processed.
+     * @param inputDirectoryPath the path to the input directory containing modules and/or versions to be processed,
+     * or to a zip or jar archive of it.
      * @param outputDirectoryPath the path to the output directory where migration scripts are to be written.
      * @param moduleList the list of modules to be processed.
      * @param versionToProcess the version to generate the migration script for.
      * @param configFile an optional configuration file to be used in preference over the default (bundled)
      * configuration.
+     * @param parallelism the maximum number of modules to be composed concurrently, overriding the configured value.
+     * @param fromVersion the version a range of versions starts after (i.e. exclusive); when this or [toVersion] is
+     * given a single migration script is generated for the whole range of versions.
+     * @param toVersion the last version (inclusive) of a range of versions, defaulting to the latest version.
+     * @param allVersions whether the migration scripts of every version of the module(s) are to be generated.
+     * @param failFast whether the first failure is to cancel the modules and versions still being composed, rather
+     * than following the configured failure policy.
+     * @param planFormat if given, the composition is planned - from the listings of the delta scripts, without reading
+     * them - and the plan is printed in this format instead of generating the migration scripts.
+     * @param gitRevision if given, the input directory is read from this revision (e.g. a tag) of the git repository
+     * that it is within, straight from the object database of the repository rather than from the working tree.
      */
     fun generate(
         databaseEngine: String,
@@ -49,74 +71,217 @@ object MigrationGenerator {
         outputDirectoryPath: String,
         moduleList: List<String>,
         versionToProcess: String?,
-        configFile: String?
+        configFile: String?,
+        parallelism: Int? = null,
+        fromVersion: String? = null,
+        toVersion: String? = null,
+        allVersions: Boolean = false,
+        failFast: Boolean = false,
+        planFormat: PlanFormat? = null,
+        gitRevision: String? = null
     ) {
-        val moduleService = ServiceBuilderFactory.buildModuleService(
-                moduleList = moduleList, inputDirectoryPath = inputDirectoryPath)
+        generate(
+                databaseEngines = listOf(databaseEngine),
+                versionScheme = versionScheme,
+                inputDirectoryPath = inputDirectoryPath,
+                outputDirectoryPath = outputDirectoryPath,
+                moduleList = moduleList,
+                versionToProcess = versionToProcess,
+                configFile = configFile,
+                parallelism = parallelism,
+                fromVersion = fromVersion,
+                toVersion = toVersion,
+                allVersions = allVersions,
+                failFast = failFast,
+                planFormat = planFormat,
+                gitRevision = gitRevision
+        )
+    }
 
-        val serviceBuilder = ServiceBuilderFactory.createServiceBuilder(databaseEngine = databaseEngine,
-                versionScheme = versionScheme, configFile = configFile)
+    /**
+     * Main function to generate migration scripts for one or more databases in a single pass: the modules, versions
+     * and delta scripts are loaded once and rendered for each database. When there is more than one database, the
+     * migration scripts of each database are written to a subdirectory (named after the database) of the output
+     * directory.
+     * @param databaseEngines the databases to generate migration scripts for.
+     * @param versionScheme the name of the versioning scheme to be used from the configuration.
+     * @param inputDirectoryPath the path to the input directory containing modules and/or versions to be processed,
+     * or to a zip or jar archive of it.
+     * @param outputDirectoryPath the path to the output directory where migration scripts are to be written.
+     * @param moduleList the list of modules to be processed.
+     * @param versionToProcess the version to generate the migration script for.
+     * @param configFile an optional configuration file to be used in preference over the default (bundled)
+     * configuration.
+     * @param parallelism the maximum number of modules to be composed concurrently, overriding the configured value.
+     * @param fromVersion the version a range of versions starts after (i.e. exclusive); when this or [toVersion] is
+     * given a single migration script is generated for the whole range of versions.
+     * @param toVersion the last version (inclusive) of a range of versions, defaulting to the latest version.
+     * @param allVersions whether the migration scripts of every version of the module(s) are to be generated.
+     * @param failFast whether the first failure is to cancel the modules and versions still being composed, rather
+     * than following the configured failure policy.
+     * @param planFormat if given, the composition is planned - from the listings of the delta scripts, without reading
+     * them - and the plan is printed in this format instead of generating the migration scripts.
+     * @param gitRevision if given, the input directory is read from this revision (e.g. a tag) of the git repository
+     * that it is within, straight from the object database of the repository rather than from the working tree.
+     */
+    fun generate(
+        databaseEngines: List<String>,
+        versionScheme: String,
+        inputDirectoryPath: String,
+        outputDirectoryPath: String,
+        moduleList: List<String>,
+        versionToProcess: String?,
+        configFile: String?,
+        parallelism: Int? = null,
+        fromVersion: String? = null,
+        toVersion: String? = null,
+        allVersions: Boolean = false,
+        failFast: Boolean = false,
+        planFormat: PlanFormat? = null,
+        gitRevision: String? = null
+    ) {
+        if (databaseEngines.isEmpty()) {
+            throw ApplicationException(ErrorCode.MISSING_RESOURCE.withDetails("No database engine specified"))
+        }
+        val versionRangeRequested = !fromVersion.isNullOrEmpty() || !toVersion.isNullOrEmpty()
+        if (versionRangeRequested && !versionToProcess.isNullOrEmpty()) {
+            throw ApplicationException(ErrorCode.INVALID_VERSION.withDetails(
+                    "A version cannot be specified together with a range of versions"))
+        }
+        if (allVersions && (versionRangeRequested || !versionToProcess.isNullOrEmpty())) {
+            throw ApplicationException(ErrorCode.INVALID_VERSION.withDetails(
+                    "A version or range of versions cannot be specified together with all versions"))
+        }
 
-        val versionService = serviceBuilder.createDirectoryVersionService()
+        // A revision of a git repository, or an archive, is read in place, as a file system whose root is the input
+        // directory.
+        val inputFileSystem = when {
+            !gitRevision.isNullOrEmpty() -> GitFileSystems.open(File(inputDirectoryPath), gitRevision)
+            ArchiveFileSystems.isArchive(File(inputDirectoryPath)) -> ArchiveFileSystems.open(File(inputDirectoryPath))
+            else -> null
+        }
+        try {
+            val moduleService = if (inputFileSystem == null) {
+                ServiceBuilderFactory.buildModuleService(moduleList = moduleList, inputDirectoryPath = inputDirectoryPath)
+            } else {
+                ServiceBuilderFactory.buildModuleService(moduleList = moduleList, inputPath = inputFileSystem.getPath("/"))
+            }
 
-        val composer = ServiceBuilderFactory.createComposer(
-                serviceBuilder = serviceBuilder,
-                versionService = versionService,
-                moduleService = moduleService,
-                outputDirectoryPath = outputDirectoryPath)
+            val serviceBuilder = ServiceBuilderFactory.createServiceBuilder(databaseEngine = databaseEngines.first(),
+                    versionScheme = versionScheme, configFile = configFile)
 
-        if (versionToProcess == null || versionToProcess.isEmpty()) {
-            if (moduleList.isEmpty()) {
-                logger.debug("Processing the latest version of the default module")
-                composer.composeMigrationScriptForLatestVersion(databaseEngine)
-            } else {
-                logger.debug("Processing the latest version of the module(s): $moduleList ")
-                for (moduleName in moduleList) {
-                    val module = moduleService.findModuleByName(moduleName) ?: throw ApplicationException(
-                            ErrorCode.INVALID_MODULE.withDetails("No such module: $moduleName"))
-                    composer.composeMigrationScriptForLatestVersionInModule(databaseEngine, module)
-                }
+            val databaseEngineSettings = databaseEngines.associateWith { databaseEngine ->
+                ServiceBuilderFactory.createServiceBuilder(databaseEngine = databaseEngine, versionScheme = versionScheme,
+                        configFile = configFile).loadDatabaseEngineSettings()
             }
-        } else {
-            if (moduleList.isEmpty()) {
-                logger.debug("Processing version ($versionToProcess) of the default module")
-                val defaultModule = moduleService.findModuleByName("") ?: throw ApplicationException(
-                        ErrorCode.INVALID_MODULE.withDetails("No default module found"))
-                val version = versionService.getVersion(defaultModule, versionToProcess) ?: throw ApplicationException(
-                        ErrorCode.INVALID_VERSION.withDetails("No such version:" + " \$versionToProcess in the default module"))
-                composer.composeMigrationScriptForModuleVersion(databaseEngine, defaultModule, version)
-            } else {
-                logger.debug("Processing version: ($versionToProcess) of the module(s): $moduleList")
-                for (moduleName in moduleList) {
-                    val module = moduleService.findModuleByName(moduleName) ?: throw ApplicationException(
-                            ErrorCode.INVALID_MODULE.withDetails("No such module: $moduleName"))
-                    val version = versionService.getVersion(module, versionToProcess) ?: throw ApplicationException(
-                            ErrorCode.INVALID_VERSION.withDetails("No such version: ($versionToProcess) in module: $moduleName"))
-                    composer.composeMigrationScriptForModuleVersion(databaseEngine, module, version)
+
+            val versionService = serviceBuilder.createDirectoryVersionService()
+
+            val composer = ServiceBuilderFactory.createComposer(
+                    serviceBuilder = serviceBuilder,
+                    versionService = versionService,
+                    moduleService = moduleService,
+                    outputDirectoryPath = outputDirectoryPath,
+                    parallelism = parallelism,
+                    databaseEngineSettings = databaseEngineSettings,
+                    databaseEngineSubdirectories = databaseEngines.size > 1,
+                    failurePolicy = if (failFast) FailurePolicy.FAIL_FAST else null)
+
+            composer.use {
+                if (planFormat != null) {
+                    val plan = planComposition(composer, moduleService, databaseEngines, moduleList, versionToProcess,
+                            fromVersion, toVersion, allVersions)
+                    println(planFormat.format(plan))
+                    if (!plan.isValid) {
+                        throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails(
+                                "The composition plan has ${plan.problems.size} problem(s)"))
+                    }
+                } else if (allVersions) {
+                    if (moduleList.isEmpty()) {
+                        logger.debug("Processing every version of every module")
+                        composer.composeMigrationScriptsForAllVersions(databaseEngines)
+                    } else {
+                        logger.debug("Processing every version of the module(s): $moduleList")
+                        composer.composeMigrationScriptsForAllVersionsInModules(databaseEngines, findModules(moduleService, moduleList))
+                    }
+                } else if (versionRangeRequested) {
+                    val rangeFromVersion = fromVersion?.takeIf { it.isNotEmpty() }
+                    val rangeToVersion = toVersion?.takeIf { it.isNotEmpty() }
+                    val modules = if (moduleList.isEmpty()) {
+                        listOf(moduleService.findModuleByName("") ?: throw ApplicationException(
+                                ErrorCode.INVALID_MODULE.withDetails("No default module found")))
+                    } else {
+                        findModules(moduleService, moduleList)
+                    }
+                    logger.debug("Processing versions (${rangeFromVersion ?: ""}..${rangeToVersion ?: ""}] of the module(s): $moduleList")
+                    composer.composeMigrationScriptForVersionRangeInModules(databaseEngines, modules, rangeFromVersion,
+                            rangeToVersion)
+                } else if (versionToProcess == null || versionToProcess.isEmpty()) {
+                    if (moduleList.isEmpty()) {
+                        logger.debug("Processing the latest version of the default module")
+                        composer.composeMigrationScriptForLatestVersion(databaseEngines)
+                    } else {
+                        logger.debug("Processing the latest version of the module(s): $moduleList ")
+                        composer.composeMigrationScriptForLatestVersionInModules(databaseEngines, findModules(moduleService, moduleList))
+                    }
+                } else {
+                    if (moduleList.isEmpty()) {
+                        logger.debug("Processing version ($versionToProcess) of the default module")
+                        val defaultModule = moduleService.findModuleByName("") ?: throw ApplicationException(
+                                ErrorCode.INVALID_MODULE.withDetails("No default module found"))
+                        val version = versionService.getVersion(defaultModule, versionToProcess) ?: throw ApplicationException(
+                                ErrorCode.INVALID_VERSION.withDetails("No such version:" + " \$versionToProcess in the default module"))
+                        composer.composeMigrationScriptForModuleVersion(databaseEngines, defaultModule, version)
+                    } else {
+                        logger.debug("Processing version: ($versionToProcess) of the module(s): $moduleList")
+                        composer.composeMigrationScriptForVersionInModules(databaseEngines, findModules(moduleService, moduleList),
+                                versionToProcess)
+                    }
                 }
             }
+        } finally {
+            inputFileSystem?.close()
         }
     }
 
     /**
      * Main function to generate migration scripts.
-     * @param databaseEngine the database to generate migration scripts for.
+     * @param databaseEngineCsvString the database(s) (as a csv string) to generate migration scripts for.
      * @param versionScheme the name of the versioning scheme to be used from the configuration.
-     * @param inputDirectoryPath the path to the input directory containing modules and/or versions to be processed.
+     * @param inputDirectoryPath the path to the input directory containing modules and/or versions to be processed,
+     * or to a zip or jar archive of it.
      * @param outputDirectoryPath the path to the output directory where migration scripts are to be written.
      * @param moduleListCsvString the list of modules (as a csv string) to be processed.
      * @param versionToProcess the version to generate the migration script for.
      * @param configFile an optional configuration file to be used in preference over the default (bundled)
      * configuration.
+     * @param parallelism the maximum number of modules to be composed concurrently, overriding the configured value.
+     * @param fromVersion the version a range of versions starts after (i.e. exclusive); when this or [toVersion] is
+     * given a single migration script is generated for the whole range of versions.
+     * @param toVersion the last version (inclusive) of a range of versions, defaulting to the latest version.
+     * @param allVersions whether the migration scripts of every version of the module(s) are to be generated.
+     * @param failFast whether the first failure is to cancel the modules and versions still being composed, rather
+     * than following the configured failure policy.
+     * @param planFormat if given, the composition is planned - from the listings of the delta scripts, without reading
+     * them - and the plan is printed in this format instead of generating the migration scripts.
+     * @param gitRevision if given, the input directory is read from this revision (e.g. a tag) of the git repository
+     * that it is within, straight from the object database of the repository rather than from the working tree.
      */
     fun generate(
-        databaseEngine: String,
+        databaseEngineCsvString: String,
         versionScheme: String,
         inputDirectoryPath: String,
         outputDirectoryPath: String,
         moduleListCsvString: String?,
         versionToProcess: String?,
-        configFile: String?
+        configFile: String?,
+        parallelism: Int? = null,
+        fromVersion: String? = null,
+        toVersion: String? = null,
+        allVersions: Boolean = false,
+        failFast: Boolean = false,
+        planFormat: PlanFormat? = null,
+        gitRevision: String? = null
     ) {
         val moduleParts = (moduleListCsvString
                 ?: "").split(",".toRegex()).map { it.trim() }.dropLastWhile({ it.isEmpty() }).toTypedArray()
@@ -125,14 +290,81 @@ object MigrationGenerator {
             moduleNamesToProcess.addAll(Arrays.asList(*moduleParts))
         }
 
+        val databaseEngines = databaseEngineCsvString.split(",").map { it.trim() }.filter { it.isNotEmpty() }
+
         generate(
-                databaseEngine = databaseEngine,
+                databaseEngines = databaseEngines,
                 versionScheme = versionScheme,
                 inputDirectoryPath = inputDirectoryPath,
                 outputDirectoryPath = outputDirectoryPath,
                 moduleList = moduleNamesToProcess,
                 versionToProcess = versionToProcess,
-                configFile = configFile
+                configFile = configFile,
+                parallelism = parallelism,
+                fromVersion = fromVersion,
+                toVersion = toVersion,
+                allVersions = allVersions,
+                failFast = failFast,
+                planFormat = planFormat,
+                gitRevision = gitRevision
         )
     }
+
+    /**
+     * Plans the composition that [generate] would run for the given parameters.
+     * @param composer the composer.
+     * @param moduleService the module service.
+     * @param databaseEngines the databases the migration scripts would be generated for.
+     * @param moduleList the names of the modules to be processed.
+     * @param versionToProcess the version to be processed.
+     * @param fromVersion the version a range of versions starts after (i.e. exclusive).
+     * @param toVersion the last version (inclusive) of a range of versions.
+     * @param allVersions whether every version of the module(s) is to be processed.
+     * @return the plan.
+     */
+    private fun planComposition(
+        composer: MigrationScriptComposer<DirectoryModule, VersionedDirectory>,
+        moduleService: DirectoryModuleService,
+        databaseEngines: List<String>,
+        moduleList: List<String>,
+        versionToProcess: String?,
+        fromVersion: String?,
+        toVersion: String?,
+        allVersions: Boolean
+    ): CompositionPlan {
+        val rangeFromVersion = fromVersion?.takeIf { it.isNotEmpty() }
+        val rangeToVersion = toVersion?.takeIf { it.isNotEmpty() }
+        val version = versionToProcess?.takeIf { it.isNotEmpty() }
+
+        // Without named modules the latest (or every) version of every module is processed, otherwise the default module.
+        val modules = when {
+            moduleList.isNotEmpty() -> findModules(moduleService, moduleList)
+            allVersions || (version == null && rangeFromVersion == null && rangeToVersion == null) ->
+                moduleService.listAllModules()
+            else -> listOf(moduleService.findModuleByName("") ?: throw ApplicationException(
+                    ErrorCode.INVALID_MODULE.withDetails("No default module found")))
+        }
+
+        return when {
+            allVersions -> composer.planForAllVersionsInModules(databaseEngines, modules)
+            rangeFromVersion != null || rangeToVersion != null ->
+                composer.planForVersionRangeInModules(databaseEngines, modules, rangeFromVersion, rangeToVersion)
+            version != null -> composer.planForVersionInModules(databaseEngines, modules, version)
+            else -> composer.planForLatestVersionInModules(databaseEngines, modules)
+        }
+    }
+
+    /**
+     * Looks up each of the named modules.
+     * @param moduleService the module service.
+     * @param moduleList the names of the modules to be found.
+     * @return the modules, in the order given.
+     * @throws ApplicationException if a module does not exist.
+     */
+    private fun findModules(moduleService: DirectoryModuleService, moduleList: List<String>): List<DirectoryModule> {
+        return moduleList.map { moduleName ->
+            moduleService.findModuleByName(moduleName) ?: throw ApplicationException(
+                    ErrorCode.INVALID_MODULE.withDetails("No such module: $moduleName"))
+        }
+    }
 }
\ No newline at end of file
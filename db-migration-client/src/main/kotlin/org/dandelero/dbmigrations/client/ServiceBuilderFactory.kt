@@ -13,13 +13,17 @@
 package org.dandelero.dbmigrations.client
 
 import java.io.File
+import java.nio.file.Path
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.client.service.Semver1SchemeServiceBuilder
 import org.dandelero.dbmigrations.client.service.ServiceBuilder
 import org.dandelero.dbmigrations.client.service.StandardSchemeServiceBuilder
+import org.dandelero.dbmigrations.engine.migration.DatabaseEngineSettings
+import org.dandelero.dbmigrations.engine.migration.FailurePolicy
 import org.dandelero.dbmigrations.engine.migration.MigrationScriptComposer
 import org.dandelero.dbmigrations.engine.migration.MigrationScriptFileWriterFactory
+import org.dandelero.dbmigrations.engine.migration.RenderedScriptCache
 import org.dandelero.dbmigrations.engine.module.DirectoryModule
 import org.dandelero.dbmigrations.engine.module.DirectoryModuleService
 import org.dandelero.dbmigrations.engine.module.NoModuleDirectoryModuleService
@@ -45,22 +49,39 @@ object ServiceBuilderFactory {
      * @param serviceBuilder the helper service builder.
      * @param moduleService the service to locate modules that ought to be processed.
      * @param outputDirectoryPath the path to the output directory where migration scripts are to be written.
-     * configuration.
+     * @param parallelism the maximum number of modules to be composed concurrently, overriding the configured value.
+     * @param databaseEngineSettings the settings of each database engine that scripts are to be composed for.
+     * @param databaseEngineSubdirectories whether the scripts of each database engine are to be written to a
+     * subdirectory named after the engine.
+     * @param failurePolicy how a failure affects the rest of a concurrent composition, overriding the configured
+     * policy.
      * @return the constructed composer.
      */
     fun createComposer(
         versionService: DirectoryVersionService,
         serviceBuilder: ServiceBuilder,
         moduleService: DirectoryModuleService,
-        outputDirectoryPath: String
+        outputDirectoryPath: String,
+        parallelism: Int? = null,
+        databaseEngineSettings: Map<String, DatabaseEngineSettings> = emptyMap(),
+        databaseEngineSubdirectories: Boolean = false,
+        failurePolicy: FailurePolicy? = null
     ): MigrationScriptComposer<DirectoryModule, VersionedDirectory> {
         logger.debug("Constructing the required services from the command-line args ...")
 
         // Build services.
         val deltaScriptService = serviceBuilder.createDeltaScriptDirectoryService()
+        val migrationScriptOrderSettings = with(serviceBuilder.loadMigrationScriptSettings()) {
+            copy(parallelism = parallelism ?: this.parallelism, databaseEngineSettings = databaseEngineSettings,
+                    failurePolicy = failurePolicy ?: this.failurePolicy)
+        }
+        // The writers of a pipeline render in memory so that the output is only written out by the write stage.
         val migrationScriptWriterFactory = buildMigrationScriptFileWriterFactory(
-                serviceBuilder = serviceBuilder, outputDirectoryPath = outputDirectoryPath)
-        val migrationScriptOrderSettings = serviceBuilder.loadMigrationScriptSettings()
+                serviceBuilder = serviceBuilder, outputDirectoryPath = outputDirectoryPath,
+                databaseEngineSubdirectories = databaseEngineSubdirectories,
+                deferredOutput = migrationScriptOrderSettings.pipelineSettings != null,
+                renderCacheSize = migrationScriptOrderSettings.renderCacheSize,
+                verbatimScriptContents = migrationScriptOrderSettings.verbatimScriptContents)
 
         logger.debug("Services have been constructed")
 
@@ -139,8 +160,18 @@ object ServiceBuilderFactory {
      * @param inputDirectoryPath the path to the input directory.
      * @return a directory-based module retrieval service.
      */
-    fun buildModuleService(moduleList: List<String>, inputDirectoryPath: String): DirectoryModuleService {
-        return with(File(inputDirectoryPath)) {
+    fun buildModuleService(moduleList: List<String>, inputDirectoryPath: String): DirectoryModuleService =
+            buildModuleService(moduleList, File(inputDirectoryPath).toPath())
+
+    /**
+     * Creates a [DirectoryModuleService] that loads versions from the given directory, which may be on any file system
+     * (e.g. the root of a zip archive).
+     * @param moduleList the list of modules to be processed.
+     * @param inputPath the path to the input directory.
+     * @return a directory-based module retrieval service.
+     */
+    fun buildModuleService(moduleList: List<String>, inputPath: Path): DirectoryModuleService {
+        return with(inputPath) {
             if (moduleList.isNullOrEmpty()) {
                 logger.debug("Setting up a no-module directory module service")
                 NoModuleDirectoryModuleService(this)
@@ -154,12 +185,30 @@ object ServiceBuilderFactory {
      * Creates a migration script file writer factor to write migration scripts to the specified directory.
      * @param serviceBuilder the service builder.
      * @param outputDirectoryPath the path to the output directory where migration scripts are to be written.
+     * @param databaseEngineSubdirectories whether the scripts of each database engine are to be written to a
+     * subdirectory named after the engine.
+     * @param deferredOutput whether the writers hold their output in memory until they are finished.
+     * @param renderCacheSize the size, in bytes, of the cache of rendered delta scripts shared by the writers; 0
+     * disables the cache.
+     * @param verbatimScriptContents whether the writers write the contents of delta scripts verbatim, rather than
+     * having the placeholders within them substituted.
      * @return a migration script writer factory.
      */
-    fun buildMigrationScriptFileWriterFactory(serviceBuilder: ServiceBuilder, outputDirectoryPath: String): MigrationScriptFileWriterFactory {
+    fun buildMigrationScriptFileWriterFactory(
+        serviceBuilder: ServiceBuilder,
+        outputDirectoryPath: String,
+        databaseEngineSubdirectories: Boolean = false,
+        deferredOutput: Boolean = false,
+        renderCacheSize: Long = 0,
+        verbatimScriptContents: Boolean = false
+    ): MigrationScriptFileWriterFactory {
         val outputDirectory = File(outputDirectoryPath)
         return MigrationScriptFileWriterFactory(baseOutputDirectory = outputDirectory,
-                deltaScriptTemplateLocator = serviceBuilder.createDeltaScriptTemplateLocator())
+                deltaScriptTemplateLocator = serviceBuilder.createDeltaScriptTemplateLocator(),
+                databaseEngineSubdirectories = databaseEngineSubdirectories,
+                deferredOutput = deferredOutput,
+                renderCache = renderCacheSize.takeIf { it > 0 }?.let { RenderedScriptCache(it) },
+                verbatimContents = verbatimScriptContents)
     }
 
     /**
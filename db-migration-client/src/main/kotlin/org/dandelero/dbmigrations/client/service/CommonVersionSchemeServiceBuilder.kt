@@ -14,14 +14,23 @@ package org.dandelero.dbmigrations.client.service
 
 import java.io.File
 import org.dandelero.dbmigrations.api.delta.DeltaScriptTemplateLocator
+import org.dandelero.dbmigrations.engine.concurrent.ExecutionBackendType
 import org.dandelero.dbmigrations.engine.delta.DefaultDeltaScriptFileBuilder
 import org.dandelero.dbmigrations.engine.delta.DeltaScriptDirectoryService
 import org.dandelero.dbmigrations.engine.delta.DeltaScriptDirectoryServiceSettings
+import org.dandelero.dbmigrations.engine.delta.template.CachingDeltaScriptTemplateLocator
 import org.dandelero.dbmigrations.engine.delta.template.ClasspathDeltaScriptTemplateLocator
 import org.dandelero.dbmigrations.engine.delta.template.DirectoryDeltaScriptTemplateLocator
 import org.dandelero.dbmigrations.engine.delta.template.PeckingOrderDeltaScriptTemplateLocator
 import org.dandelero.dbmigrations.engine.migration.BidirectionalFilesOrder
+import org.dandelero.dbmigrations.engine.migration.DatabaseEngineSettings
+import org.dandelero.dbmigrations.engine.migration.FailurePolicy
 import org.dandelero.dbmigrations.engine.migration.MigrationScriptSettings
+import org.dandelero.dbmigrations.engine.pipeline.PipelineSettings
+import org.dandelero.dbmigrations.engine.util.getOptionalBoolean
+import org.dandelero.dbmigrations.engine.util.getOptionalInt
+import org.dandelero.dbmigrations.engine.util.getOptionalLong
+import org.dandelero.dbmigrations.engine.util.getOptionalMap
 import org.dandelero.dbmigrations.engine.util.getOptionalString
 import org.dandelero.dbmigrations.engine.util.getRequiredBoolean
 import org.dandelero.dbmigrations.engine.util.getRequiredString
@@ -43,8 +52,9 @@ abstract class CommonVersionSchemeServiceBuilder(private val databaseEngineConfi
         val upgradeDirectoryName = generalConfig.getRequiredString("upgrade-directory-name")
         val rollbackDirectoryName = generalConfig.getRequiredString("rollback-directory-name")
         val bidirectionalDirectoryName = generalConfig.getRequiredString("bidirectional-directory-name")
+        val memoryMappingThreshold = generalConfig.getOptionalLong("memory-mapping-threshold", Long.MAX_VALUE)
 
-        return with(DefaultDeltaScriptFileBuilder()) {
+        return with(DefaultDeltaScriptFileBuilder(memoryMappingThreshold)) {
             val settings = DeltaScriptDirectoryServiceSettings(
                     rollbackScriptsMustExist = rollbackScriptsOptional.not(),
                     deltaScriptExtension = deltaScriptExtension,
@@ -58,17 +68,20 @@ abstract class CommonVersionSchemeServiceBuilder(private val databaseEngineConfi
     }
 
     /**
-     * @return a [DeltaScriptTemplateLocator] created from the configuration.
+     * @return a [DeltaScriptTemplateLocator] created from the configuration, which locates each template once for as
+     * long as it is unchanged.
      */
     override fun createDeltaScriptTemplateLocator(): DeltaScriptTemplateLocator {
         val templateOverrideDirectory: File? = generalConfig.getOptionalString("template-override-directory")?.let { File(it) }
 
         return if (templateOverrideDirectory == null || !templateOverrideDirectory.exists()) {
-            ClasspathDeltaScriptTemplateLocator()
+            CachingDeltaScriptTemplateLocator(ClasspathDeltaScriptTemplateLocator())
         } else {
+            // Each locator is cached separately, so that changes to the override templates, new ones included, are
+            // picked up.
             PeckingOrderDeltaScriptTemplateLocator(
-                    DirectoryDeltaScriptTemplateLocator(templateOverrideDirectory),
-                    ClasspathDeltaScriptTemplateLocator())
+                    CachingDeltaScriptTemplateLocator(DirectoryDeltaScriptTemplateLocator(templateOverrideDirectory)),
+                    CachingDeltaScriptTemplateLocator(ClasspathDeltaScriptTemplateLocator()))
         }
     }
 
@@ -76,18 +89,67 @@ abstract class CommonVersionSchemeServiceBuilder(private val databaseEngineConfi
      * @return the [MigrationScriptSettings] extracted from the configuration.
      */
     override fun loadMigrationScriptSettings(): MigrationScriptSettings {
-        val changeLogTableName = databaseEngineConfig.getRequiredString("change-log-table-name")
-        val dbStatementDelimiter = databaseEngineConfig.getRequiredString("db-statement-delimiter")
-        val dbStatementSeparator = databaseEngineConfig.getRequiredString("db-statement-separator")
+        val databaseEngineSettings = loadDatabaseEngineSettings()
 
         val bidirectionalUpgradeScriptOrder = generalConfig.getRequiredString(
                 "bidirectional-script-to-upgrade-script-order")
         val bidirectionalRollbackScriptOrder = generalConfig.getRequiredString(
                 "bidirectional-script-to-rollback-script-order")
+        val parallelism = generalConfig.getOptionalInt("parallelism", 1)
+        val concurrentCategoryRendering = generalConfig.getOptionalBoolean("concurrent-category-rendering", false)
+        val executionBackend = generalConfig.getOptionalString("execution-backend") ?: ExecutionBackendType.AUTO.name
+        val failurePolicy = generalConfig.getOptionalString("failure-policy") ?: FailurePolicy.KEEP_GOING.name
+        val maxInMemoryScriptSize = generalConfig.getOptionalLong("max-in-memory-script-size",
+                MigrationScriptSettings().maxInMemoryScriptSize)
+        val scriptCacheSize = generalConfig.getOptionalLong("script-cache-size",
+                MigrationScriptSettings().scriptCacheSize)
+        val readAheadDepth = generalConfig.getOptionalInt("read-ahead-scripts", MigrationScriptSettings().readAheadDepth)
+        val readAheadSize = generalConfig.getOptionalLong("read-ahead-size", MigrationScriptSettings().readAheadSize)
+        val renderCacheSize = generalConfig.getOptionalLong("render-cache-size",
+                MigrationScriptSettings().renderCacheSize)
+        val verbatimScriptContents = generalConfig.getOptionalBoolean("verbatim-script-contents", false)
+        val pipelineSettings = generalConfig.getOptionalMap("pipeline")
+                ?.takeIf { it.getOptionalBoolean("enabled", false) }
+                ?.let { pipelineConfig ->
+                    with(PipelineSettings()) {
+                        PipelineSettings(
+                                scanWorkers = pipelineConfig.getOptionalInt("scan-workers", scanWorkers),
+                                loadWorkers = pipelineConfig.getOptionalInt("load-workers", loadWorkers),
+                                renderWorkers = pipelineConfig.getOptionalInt("render-workers", renderWorkers),
+                                writeWorkers = pipelineConfig.getOptionalInt("write-workers", writeWorkers),
+                                queueCapacity = pipelineConfig.getOptionalInt("queue-capacity", queueCapacity))
+                    }
+                }
 
         return MigrationScriptSettings(
                 upgradeScriptOrder = BidirectionalFilesOrder.valueOf(bidirectionalUpgradeScriptOrder.toUpperCase()),
                 rollbackScriptOrder = BidirectionalFilesOrder.valueOf(bidirectionalRollbackScriptOrder.toUpperCase()),
+                dbChangeLogTableName = databaseEngineSettings.dbChangeLogTableName,
+                dbStatementDelimiter = databaseEngineSettings.dbStatementDelimiter,
+                dbStatementSeparator = databaseEngineSettings.dbStatementSeparator,
+                parallelism = parallelism,
+                concurrentCategoryRendering = concurrentCategoryRendering,
+                executionBackend = ExecutionBackendType.valueOf(executionBackend.toUpperCase()),
+                pipelineSettings = pipelineSettings,
+                failurePolicy = FailurePolicy.valueOf(failurePolicy.replace('-', '_').toUpperCase()),
+                maxInMemoryScriptSize = maxInMemoryScriptSize,
+                scriptCacheSize = scriptCacheSize,
+                readAheadDepth = readAheadDepth,
+                readAheadSize = readAheadSize,
+                renderCacheSize = renderCacheSize,
+                verbatimScriptContents = verbatimScriptContents
+        )
+    }
+
+    /**
+     * @return the [DatabaseEngineSettings] extracted from the configuration.
+     */
+    override fun loadDatabaseEngineSettings(): DatabaseEngineSettings {
+        val changeLogTableName = databaseEngineConfig.getRequiredString("change-log-table-name")
+        val dbStatementDelimiter = databaseEngineConfig.getRequiredString("db-statement-delimiter")
+        val dbStatementSeparator = databaseEngineConfig.getRequiredString("db-statement-separator")
+
+        return DatabaseEngineSettings(
                 dbChangeLogTableName = changeLogTableName,
                 dbStatementDelimiter = dbStatementDelimiter,
                 dbStatementSeparator = dbStatementSeparator
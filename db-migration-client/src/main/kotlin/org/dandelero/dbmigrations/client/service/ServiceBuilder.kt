@@ -14,6 +14,7 @@ package org.dandelero.dbmigrations.client.service
 
 import org.dandelero.dbmigrations.api.delta.DeltaScriptTemplateLocator
 import org.dandelero.dbmigrations.engine.delta.DeltaScriptDirectoryService
+import org.dandelero.dbmigrations.engine.migration.DatabaseEngineSettings
 import org.dandelero.dbmigrations.engine.migration.MigrationScriptSettings
 import org.dandelero.dbmigrations.engine.version.DirectoryVersionService
 
@@ -45,4 +46,9 @@ interface ServiceBuilder {
      * @return the [MigrationScriptSettings] extracted from the configuration.
      */
     fun loadMigrationScriptSettings(): MigrationScriptSettings
+
+    /**
+     * @return the [DatabaseEngineSettings] extracted from the configuration.
+     */
+    fun loadDatabaseEngineSettings(): DatabaseEngineSettings
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.concurrent
+
+import java.util.concurrent.CancellationException
+
+/**
+ * Signals the units of work of a composition that they are to stop.
+ * <br />
+ * Cancellation is cooperative: units of work check the signal between delta scripts and stop by throwing a
+ * [CancellationException]. A signal is also cancelled when its parent is, so that the failure of one part of a
+ * composition can stop its sibling parts without stopping the rest of the composition.
+ * <br />
+ * Created at: 17/10/26 5:10 pm
+ * @param parent the signal of the enclosing composition, if any.
+ * @author dandelero
+ */
+class CancellationSignal(private val parent: CancellationSignal? = null) {
+
+    /**
+     * The reason for the cancellation, or null if this signal has not been cancelled.
+     */
+    @Volatile
+    private var reason: Throwable? = null
+
+    /**
+     * Whether this signal, or its parent, has been cancelled.
+     */
+    val isCancelled: Boolean
+        get() = reason != null || parent?.isCancelled == true
+
+    /**
+     * Cancels the units of work observing this signal; only the first reason is kept.
+     * @param reason the reason for the cancellation.
+     */
+    @Synchronized
+    fun cancel(reason: Throwable) {
+        if (this.reason == null) {
+            this.reason = reason
+        }
+    }
+
+    /**
+     * @throws CancellationException if this signal, or its parent, has been cancelled.
+     */
+    fun throwIfCancelled() {
+        if (isCancelled) {
+            throw CancellationException("Composition cancelled")
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.concurrent
+
+import java.util.concurrent.Future
+
+/**
+ * Runs units of work (e.g. a module, a version or a script category) off the calling thread.
+ * <br />
+ * Implementations must allow a unit of work to submit further units of work and wait on their results without
+ * starving the backend.
+ * <br />
+ * Created at: 17/10/26 9:12 am
+ * @author dandelero
+ */
+interface ExecutionBackend : AutoCloseable {
+
+    /**
+     * Whether this backend runs no more units of work at once than the parallelism it was created with, so that
+     * callers need not limit the units of work they submit. A unit of work on such a backend must not block waiting
+     * for a permit, as a thread waiting on another unit of work may run it in the meantime.
+     */
+    val boundsParallelism: Boolean
+
+    /**
+     * Submits the given unit of work for execution.
+     * @param task the unit of work.
+     * @return the future result of the unit of work.
+     */
+    fun <T> submit(task: () -> T): Future<T>
+
+    /**
+     * Releases the threads held by this backend; units of work that have already been submitted are completed.
+     */
+    override fun close()
+}
+
+/**
+ * The kinds of [ExecutionBackend] available.
+ */
+enum class ExecutionBackendType {
+
+    /**
+     * A work-stealing pool of platform threads, sized by the configured parallelism.
+     */
+    PLATFORM,
+
+    /**
+     * A new virtual thread for each unit of work; requires JDK 21 or later.
+     */
+    VIRTUAL,
+
+    /**
+     * Virtual threads when the JVM supports them, otherwise platform threads.
+     */
+    AUTO
+}
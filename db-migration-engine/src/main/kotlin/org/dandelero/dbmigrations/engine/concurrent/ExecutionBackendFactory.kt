@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.concurrent
+
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+
+/**
+ * Creates [ExecutionBackend] instances.
+ * <br />
+ * Created at: 17/10/26 9:44 am
+ * @author dandelero
+ */
+object ExecutionBackendFactory {
+
+    /**
+     * Creates an execution backend of the given type.
+     * @param backendType the type of backend to create.
+     * @param parallelism the number of threads to use if the backend is backed by platform threads.
+     * @param threadNamePrefix the prefix for the names of the backend's threads.
+     * @return the backend.
+     * @throws ApplicationException if virtual threads are requested but not supported by the running JVM.
+     */
+    fun create(backendType: ExecutionBackendType, parallelism: Int, threadNamePrefix: String): ExecutionBackend {
+        return when (backendType) {
+            ExecutionBackendType.PLATFORM -> PlatformThreadExecutionBackend(parallelism, threadNamePrefix)
+            ExecutionBackendType.VIRTUAL -> VirtualThreadExecutionBackend.createIfSupported(threadNamePrefix)
+                    ?: throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails(
+                            "Virtual threads require JDK 21 or later"))
+            ExecutionBackendType.AUTO -> VirtualThreadExecutionBackend.createIfSupported(threadNamePrefix)
+                    ?: PlatformThreadExecutionBackend(parallelism, threadNamePrefix)
+        }
+    }
+}
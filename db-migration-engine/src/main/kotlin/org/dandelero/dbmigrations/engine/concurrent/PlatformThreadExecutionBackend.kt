@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.concurrent
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ForkJoinPool
+import java.util.concurrent.ForkJoinTask
+import java.util.concurrent.ForkJoinWorkerThread
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * An [ExecutionBackend] that runs units of work on a work-stealing pool of platform threads.
+ * <br />
+ * Units of work submitted from within the pool are forked onto the submitting thread's own queue, so a thread waiting
+ * on such a unit of work will run it itself if no other thread has stolen it.
+ * <br />
+ * Created at: 17/10/26 9:20 am
+ * @author dandelero
+ * @param parallelism the number of threads in the pool.
+ * @param threadNamePrefix the prefix for the names of the pool's threads.
+ */
+class PlatformThreadExecutionBackend(parallelism: Int, threadNamePrefix: String) : ExecutionBackend {
+
+    /**
+     * The number of threads created by the pool so far.
+     */
+    private val threadCounter = AtomicInteger()
+
+    /**
+     * The pool that units of work are run on.
+     */
+    private val pool = ForkJoinPool(parallelism, ForkJoinPool.ForkJoinWorkerThreadFactory { forkJoinPool ->
+        ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool).apply {
+            name = "$threadNamePrefix${threadCounter.incrementAndGet()}"
+        }
+    }, null, false)
+
+    override val boundsParallelism: Boolean = true
+
+    override fun <T> submit(task: () -> T): Future<T> {
+        val forkJoinTask = ForkJoinTask.adapt(Callable { task() })
+        val currentThread = Thread.currentThread()
+        return if (currentThread is ForkJoinWorkerThread && currentThread.pool === pool) {
+            forkJoinTask.fork()
+        } else {
+            pool.submit(forkJoinTask)
+        }
+    }
+
+    override fun close() {
+        pool.shutdown()
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.concurrent
+
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.ThreadFactory
+import org.slf4j.LoggerFactory
+
+/**
+ * An [ExecutionBackend] that runs each unit of work on its own virtual thread.
+ * <br />
+ * Virtual threads are only available from JDK 21, so they are looked up reflectively; use [createIfSupported] to
+ * construct an instance.
+ * <br />
+ * Created at: 17/10/26 9:31 am
+ * @author dandelero
+ * @param executor the thread-per-task executor that units of work are run on.
+ */
+class VirtualThreadExecutionBackend private constructor(private val executor: ExecutorService) : ExecutionBackend {
+
+    override val boundsParallelism: Boolean = false
+
+    override fun <T> submit(task: () -> T): Future<T> {
+        return executor.submit(Callable { task() })
+    }
+
+    override fun close() {
+        executor.shutdown()
+    }
+
+    companion object {
+
+        /**
+         * The logger instance.
+         */
+        private val logger = LoggerFactory.getLogger(VirtualThreadExecutionBackend::class.java)
+
+        /**
+         * Creates a backend if the running JVM supports virtual threads.
+         * @param threadNamePrefix the prefix for the names of the virtual threads.
+         * @return the backend, or null if virtual threads are not supported.
+         */
+        fun createIfSupported(threadNamePrefix: String): VirtualThreadExecutionBackend? {
+            return try {
+                val builder = Thread::class.java.getMethod("ofVirtual").invoke(null)
+                val builderType = Class.forName("java.lang.Thread\$Builder")
+                builderType.getMethod("name", String::class.java, Long::class.javaPrimitiveType)
+                        .invoke(builder, threadNamePrefix, 1L)
+                val threadFactory = builderType.getMethod("factory").invoke(builder) as ThreadFactory
+                val executor = Executors::class.java.getMethod("newThreadPerTaskExecutor", ThreadFactory::class.java)
+                        .invoke(null, threadFactory) as ExecutorService
+                VirtualThreadExecutionBackend(executor)
+            } catch (e: ReflectiveOperationException) {
+                logger.debug("Virtual threads are not supported by this JVM: $e")
+                null
+            } catch (e: UnsupportedOperationException) {
+                logger.debug("Virtual threads are not enabled in this JVM: $e")
+                null
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta
+
+import java.io.Reader
+import java.io.StringReader
+import java.nio.channels.ReadableByteChannel
+import org.dandelero.dbmigrations.api.delta.DeltaScript
+import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.api.delta.DeltaScriptService
+import org.dandelero.dbmigrations.api.module.Module
+import org.dandelero.dbmigrations.api.version.Version
+
+/**
+ * A [DeltaScriptService] that wraps another so that the contents of each script are read from its source at most
+ * once while they remain in the cache; e.g. the bidirectional scripts of a version, which are written to both its
+ * upgrade and rollback scripts.
+ * <br />
+ * The cache holds script contents up to a budget of bytes, evicting the least recently used contents to make room;
+ * scripts larger than the budget are never cached and are always read from their source.
+ * <br />
+ * Cached contents are addressed by their contents as well as by their script, so scripts with identical contents
+ * (e.g. the same script repeated across modules or versions) share one copy, which counts against the budget once.
+ * <br />
+ * Created at: 17/10/26 11:20 pm
+ *
+ * @param deltaScriptService the service that locates the scripts.
+ * @param byteBudget the total size, in bytes, of the script contents that may be cached.
+ * @author dandelero
+ */
+class CachingDeltaScriptService<M : Module, V : Version>(
+    private val deltaScriptService: DeltaScriptService<M, V>,
+    private val byteBudget: Long
+) : DeltaScriptService<M, V> {
+
+    /**
+     * The cached contents, in least recently used order, keyed by the script they were read from.
+     */
+    private val entries = LinkedHashMap<ScriptKey, SharedContents>(16, 0.75f, true)
+
+    /**
+     * The single copy of each distinct cached contents, keyed by the contents themselves. Each key is the very string
+     * that its entry holds, so the keys take no memory beyond the contents counted against the budget; identical
+     * contents are found by their hash, and confirmed by comparing them in full.
+     */
+    private val sharedContents = HashMap<String, SharedContents>()
+
+    /**
+     * The total size of the distinct cached contents.
+     */
+    private var cachedSize = 0L
+
+    /**
+     * The number of reads of contents that were served from the cache.
+     */
+    var hitCount = 0L
+        @Synchronized get
+        private set
+
+    /**
+     * The number of reads of contents that went to the source of the script.
+     */
+    var missCount = 0L
+        @Synchronized get
+        private set
+
+    /**
+     * The number of reads whose contents were identical to contents already cached for another script, and so were
+     * replaced by the cached copy.
+     */
+    var sharedCount = 0L
+        @Synchronized get
+        private set
+
+    /**
+     * Gets the change scripts for the given category in the version, whose contents are read through the cache.
+     * @param category the category of scripts sought.
+     * @param module the module to search within.
+     * @param version the version whose scripts are sought.
+     * @return the list of scripts found.
+     */
+    override fun getScripts(category: DeltaScriptCategory, module: M, version: V): List<DeltaScript> {
+        return deltaScriptService.getScripts(category, module, version).map {
+            CachedDeltaScript(it, ScriptKey(module.name, version.nameString, category, it.name))
+        }
+    }
+
+    /**
+     * Gets the contents of a script from the cache, reading them from the script if they are not cached. The script
+     * is read outside the lock so that reads of different scripts are not serialised.
+     * @param key the key of the script.
+     * @param deltaScript the script.
+     * @return the contents of the script.
+     */
+    private fun getContents(key: ScriptKey, deltaScript: DeltaScript): String {
+        synchronized(this) {
+            val cachedEntry = entries[key]
+            if (cachedEntry != null) {
+                hitCount++
+                return cachedEntry.contents
+            }
+            missCount++
+        }
+
+        val contents = deltaScript.contents
+        val size = deltaScript.size
+        if (size > byteBudget) {
+            return contents
+        }
+        synchronized(this) {
+            // Another thread may have read the same script in the meantime.
+            entries[key]?.let { return it.contents }
+            val shared = sharedContents[contents]
+            val entry = if (shared == null) {
+                SharedContents(contents, size).also {
+                    sharedContents[it.contents] = it
+                    cachedSize += size
+                }
+            } else {
+                sharedCount++
+                shared
+            }
+            entry.references++
+            entries[key] = entry
+            evictToBudget()
+            return entry.contents
+        }
+    }
+
+    /**
+     * @param key the key of a script.
+     * @return true if the contents of the script are cached.
+     */
+    @Synchronized
+    private fun isCached(key: ScriptKey): Boolean = entries.containsKey(key)
+
+    /**
+     * Evicts the least recently used contents until the cached contents fit within the budget.
+     */
+    private fun evictToBudget() {
+        val iterator = entries.entries.iterator()
+        while (cachedSize > byteBudget && iterator.hasNext()) {
+            val entry = iterator.next().value
+            iterator.remove()
+            if (--entry.references == 0) {
+                sharedContents.remove(entry.contents)
+                cachedSize -= entry.size
+            }
+        }
+    }
+
+    /**
+     * A single copy of cached contents, shared by every script whose contents are identical.
+     * @param contents the contents.
+     * @param size the size of the contents.
+     */
+    private class SharedContents(val contents: String, val size: Long) {
+
+        /**
+         * The number of cached scripts that share the contents.
+         */
+        var references = 0
+    }
+
+    /**
+     * Identifies a script across separate listings of its version.
+     */
+    internal data class ScriptKey(
+        val moduleName: String,
+        val versionName: String,
+        val category: DeltaScriptCategory,
+        val scriptName: String
+    )
+
+    /**
+     * A [DeltaScript] whose contents are read through the cache.
+     * @param source the script that the contents are read from.
+     * @param key the key of the script.
+     */
+    inner class CachedDeltaScript internal constructor(
+        private val source: DeltaScript,
+        private val key: ScriptKey
+    ) : DeltaScript {
+
+        /**
+         * @return the name of this script.
+         */
+        override fun getName(): String = source.name
+
+        /**
+         * @return the sequence number of this script.
+         */
+        override fun getSequenceNumber(): Int = source.sequenceNumber
+
+        /**
+         * @return the size of this script.
+         */
+        override fun getSize(): Long = source.size
+
+        /**
+         * @return the contents of this script, from the cache where they are held.
+         */
+        override fun getContents(): String = getContents(key, source)
+
+        /**
+         * Whether the contents of this script are read into memory whole, through the cache: they are small enough to
+         * be cached, and are either cached already or belong to a bidirectional script, which is written to both the
+         * upgrade and rollback scripts of its version. Other scripts are left to be streamed from their source.
+         * @return true if the contents are held in memory.
+         */
+        override fun isHeldInMemory(): Boolean {
+            return source.size <= byteBudget && (key.category == DeltaScriptCategory.BIDIRECTIONAL || isCached(key))
+        }
+
+        /**
+         * @return a channel over the bytes of this script from its source, or null if the contents are held in
+         * memory, so that they are written from the cache instead.
+         */
+        override fun openChannel(): ReadableByteChannel? = if (isHeldInMemory()) null else source.openChannel()
+
+        /**
+         * @return a reader over the contents of this script; scripts that are not held in memory are streamed from
+         * their source.
+         */
+        override fun openReader(): Reader {
+            return if (isHeldInMemory()) StringReader(contents) else source.openReader()
+        }
+    }
+}
@@ -13,7 +13,10 @@
 package org.dandelero.dbmigrations.engine.delta
 
 import java.io.File
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
 import java.util.regex.Pattern
+import org.dandelero.dbmigrations.engine.util.fileNameString
 import org.slf4j.LoggerFactory
 
 /**
@@ -23,9 +26,11 @@ import org.slf4j.LoggerFactory
  * e.g. 0003-create-table.sql
  * <br />
  * Created at: 5/11/19 10:06 pm
+ * @param memoryMappingThreshold the size, in bytes, above which the constructed scripts are read through memory
+ * mappings rather than onto the heap when they are streamed.
  * @author dandelero
  */
-class DefaultDeltaScriptFileBuilder : DeltaScriptFileBuilder {
+class DefaultDeltaScriptFileBuilder(private val memoryMappingThreshold: Long = Long.MAX_VALUE) : DeltaScriptFileBuilder {
 
     /**
      * The logger instance.
@@ -42,17 +47,43 @@ class DefaultDeltaScriptFileBuilder : DeltaScriptFileBuilder {
      * @param file the file to be adapted into a change script.
      * @return the change script instance; null if the file cannot be adapted.
      */
-    override fun build(file: File): DeltaScriptFile? {
+    override fun build(file: File): DeltaScriptFile? = buildScriptFile(file.toPath(), null)
+
+    /**
+     * Constructs a [DeltaScriptFile] instance of the given file, whose attributes have already been read.
+     * @param file the file to be adapted into a change script.
+     * @param attributes the attributes of the file.
+     * @return the change script instance; null if the file cannot be adapted.
+     */
+    override fun build(file: File, attributes: BasicFileAttributes): DeltaScriptFile? =
+            buildScriptFile(file.toPath(), attributes)
+
+    /**
+     * Constructs a [DeltaScriptFile] instance of the file at the given path, whose attributes have already been read.
+     * @param path the path of the file to be adapted into a change script.
+     * @param attributes the attributes of the file.
+     * @return the change script instance; null if the file cannot be adapted.
+     */
+    override fun build(path: Path, attributes: BasicFileAttributes): DeltaScriptFile? = buildScriptFile(path, attributes)
+
+    /**
+     * Constructs a [DeltaScriptFile] instance of the file at the given path.
+     * @param path the path of the file to be adapted into a change script.
+     * @param attributes the attributes of the file, if they have been read.
+     * @return the change script instance; null if the file cannot be adapted.
+     */
+    private fun buildScriptFile(path: Path, attributes: BasicFileAttributes?): DeltaScriptFile? {
         // Now create matcher object.
-        val matcher = pattern.matcher(file.name)
+        val fileName = path.fileNameString()
+        val matcher = pattern.matcher(fileName)
 
         return if (matcher.find()) {
             val sequenceNumber = matcher.group(1).toIntOrNull()
             if (sequenceNumber == null || sequenceNumber <= 0) {
-                logger.warn("Invalid file name format: ${file.name}")
+                logger.warn("Invalid file name format: $fileName")
                 null
             } else {
-                DeltaScriptFile(file, sequenceNumber)
+                DeltaScriptFile(path, sequenceNumber, memoryMappingThreshold, attributes)
             }
         } else {
             null
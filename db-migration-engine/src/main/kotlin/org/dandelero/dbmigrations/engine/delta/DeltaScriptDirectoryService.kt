@@ -12,14 +12,16 @@
  */
 package org.dandelero.dbmigrations.engine.delta
 
-import java.io.File
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.delta.DeltaScript
 import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
 import org.dandelero.dbmigrations.api.delta.DeltaScriptService
 import org.dandelero.dbmigrations.engine.module.DirectoryModule
-import org.dandelero.dbmigrations.engine.util.listChildFiles
+import org.dandelero.dbmigrations.engine.util.displayString
+import org.dandelero.dbmigrations.engine.util.fileNameString
+import org.dandelero.dbmigrations.engine.util.listChildFilesWithAttributes
+import org.dandelero.dbmigrations.engine.util.readAttributesOrNull
 import org.dandelero.dbmigrations.engine.version.VersionedDirectory
 import org.slf4j.LoggerFactory
 
@@ -63,54 +65,58 @@ class DeltaScriptDirectoryService(
         val dirName = categoryToDirNameMap[category] ?: throw ApplicationException(
                 ErrorCode.RESOURCE_ERROR.withDetails("Unsupported category: '$category'"))
 
-        val dir = File(version.directory, dirName)
-        if (!dir.exists()) {
+        val dir = version.path.resolve(dirName)
+        // The directory and its scripts are each inspected once, with their attributes passed along from there.
+        val dirAttributes = dir.readAttributesOrNull()
+        if (dirAttributes == null) {
             // No "upgrade" and/or "rollback" directory - that's ok because there may be no changes!
             logger.debug("No directory found for category=$category in version=${version.nameString}")
             return emptyList()
         }
-        if (!dir.isDirectory) {
+        if (!dirAttributes.isDirectory) {
             throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails(
-                    "Invalid version directory provided: expected a directory at ${dir.absolutePath}"))
+                    "Invalid version directory provided: expected a directory at ${dir.displayString()}"))
         }
 
-        val deltaScriptFiles: Array<File> = dir.listChildFiles(serviceSettings.deltaScriptExtension)
+        val deltaScriptFiles = dir.listChildFilesWithAttributes(serviceSettings.deltaScriptExtension)
         val deltaScriptFilesCount = deltaScriptFiles.size
         if (deltaScriptFilesCount == 0) {
             if (category != DeltaScriptCategory.BIDIRECTIONAL && serviceSettings.rollbackScriptsMustExist) {
                 throw ApplicationException(ErrorCode.NO_SCRIPTS_FOUND.withDetails(
-                        "No '${serviceSettings.deltaScriptExtension}' scripts found in ${dir.absolutePath}"))
+                        "No '${serviceSettings.deltaScriptExtension}' scripts found in ${dir.displayString()}"))
             } else {
                 return emptyList()
             }
         }
 
-        val orderedDeltaScripts = deltaScriptFiles.mapNotNull { file ->
-            builder.build(file)
-        }.sorted().toSet()
-
-        if (orderedDeltaScripts.size != deltaScriptFilesCount) {
-            throw ApplicationException(ErrorCode.INVALID_SCRIPT_SEQUENCE.withDetails(
-                    "Invalid script sequencing detected for version: '${version.directory}'"))
+        // The sequence numbers must run from 1 to the number of scripts, so each script is dropped into the slot of its
+        // sequence number in a single pass, which leaves the scripts in order and finds every script out of place.
+        val slots = arrayOfNulls<DeltaScript>(deltaScriptFilesCount)
+        val problems = mutableListOf<String>()
+        deltaScriptFiles.forEach { (path, attributes) ->
+            val deltaScript = builder.build(path, attributes)
+            val sequenceNumber = deltaScript?.sequenceNumber ?: 0
+            when {
+                deltaScript == null ->
+                    problems.add("'${path.fileNameString()}' has no sequence number")
+                sequenceNumber > deltaScriptFilesCount ->
+                    problems.add("'${deltaScript.name}' has sequence number $sequenceNumber, beyond the " +
+                            "$deltaScriptFilesCount scripts in the directory")
+                slots[sequenceNumber - 1] != null ->
+                    problems.add("'${deltaScript.name}' repeats sequence number $sequenceNumber of " +
+                            "'${slots[sequenceNumber - 1]?.name}'")
+                else ->
+                    slots[sequenceNumber - 1] = deltaScript
+            }
         }
 
-        // Now check that we have sequence numbers from 1 to n, with no repeats.
-        val firstSequenceNumber = orderedDeltaScripts.first().sequenceNumber
-        val lastSequenceNumber = orderedDeltaScripts.last().sequenceNumber
-
-        // The first and last file sequence numbers must match the count
-        if (firstSequenceNumber != 1) {
+        if (problems.isNotEmpty()) {
+            // Only a script out of place can leave a slot empty, so gaps are only looked for once one has been found.
+            val missingSequenceNumbers = slots.indices.filter { slots[it] == null }.map { it + 1 }
+            problems.add("sequence numbers ${missingSequenceNumbers.joinToString(", ")} are missing")
             throw ApplicationException(ErrorCode.INVALID_SCRIPT_SEQUENCE.withDetails(
-                    "Sequence number of the first file expected to be 1 but got $firstSequenceNumber"))
-        } else if (lastSequenceNumber != deltaScriptFilesCount) {
-            throw ApplicationException(ErrorCode.INVALID_SCRIPT_SEQUENCE.withDetails(
-                    "Sequence number of the last file expected to be $deltaScriptFilesCount but got $lastSequenceNumber"))
-        }
-
-        val numUniqueSequenceNumbers = orderedDeltaScripts.map { it.sequenceNumber }.toSet().count()
-        if (numUniqueSequenceNumbers != deltaScriptFilesCount) {
-            throw ApplicationException(ErrorCode.INVALID_SCRIPT_SEQUENCE.withDetails("Sequence numbers must be unique"))
+                    "Invalid script sequencing detected in ${dir.displayString()}: ${problems.joinToString("; ")}"))
         }
-        return orderedDeltaScripts.toList()
+        return slots.requireNoNulls().asList()
     }
 }
\ No newline at end of file
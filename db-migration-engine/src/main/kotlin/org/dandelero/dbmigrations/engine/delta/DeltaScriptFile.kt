@@ -13,24 +13,56 @@
 package org.dandelero.dbmigrations.engine.delta
 
 import java.io.File
+import java.io.InputStreamReader
+import java.io.Reader
+import java.nio.channels.ReadableByteChannel
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.delta.DeltaScript
+import org.dandelero.dbmigrations.engine.util.displayString
+import org.dandelero.dbmigrations.engine.util.fileNameString
 
 /**
- * A [DeltaScript] that is sourced from a file.
+ * A [DeltaScript] that is sourced from a file, on any file system (e.g. within a zip archive).
  * <br />
  * Created at: 29/10/19 6:45 pm
  *
- * @param file the file that this script is sourced from.
+ * @param path the file that this script is sourced from.
  * @param seqNumber the sequence number for the file.
+ * @param memoryMappingThreshold the size, in bytes, above which the file is read through memory mappings rather than
+ * onto the heap when it is streamed; only files on the default file system can be memory mapped.
+ * @param attributes the attributes of the file, if they have already been read, so that the file system need not be
+ * queried for them again.
  * @author dandelero
  */
-class DeltaScriptFile(private val file: File, private val seqNumber: Int) : DeltaScript {
+class DeltaScriptFile(
+    private val path: Path,
+    private val seqNumber: Int,
+    private val memoryMappingThreshold: Long = Long.MAX_VALUE,
+    private val attributes: BasicFileAttributes? = null
+) : DeltaScript {
+
+    /**
+     * Creates a script that is sourced from a file on the default file system.
+     * @param file the file that this script is sourced from.
+     * @param seqNumber the sequence number for the file.
+     * @param memoryMappingThreshold the size, in bytes, above which the file is read through memory mappings.
+     * @param attributes the attributes of the file, if they have already been read.
+     */
+    constructor(
+        file: File,
+        seqNumber: Int,
+        memoryMappingThreshold: Long = Long.MAX_VALUE,
+        attributes: BasicFileAttributes? = null
+    ) : this(file.toPath(), seqNumber, memoryMappingThreshold, attributes)
 
     init {
-        if (!file.exists() || !file.isFile) {
-            throw ApplicationException(ErrorCode.INVALID_SCRIPTS_DETECTED.withDetails("Delta script not found at: ${file.absolutePath}"))
+        if (attributes?.isRegularFile?.not() ?: !Files.isRegularFile(path)) {
+            throw ApplicationException(ErrorCode.INVALID_SCRIPTS_DETECTED.withDetails("Delta script not found at: ${path.displayString()}"))
         }
     }
 
@@ -38,7 +70,7 @@ class DeltaScriptFile(private val file: File, private val seqNumber: Int) : Delt
      * @return the name of this script.
      */
     override fun getName(): String {
-        return file.name
+        return path.fileNameString()
     }
 
     /**
@@ -49,5 +81,29 @@ class DeltaScriptFile(private val file: File, private val seqNumber: Int) : Delt
     /**
      * @return the contents of this script.
      */
-    override fun getContents(): String = this.file.readText()
+    override fun getContents(): String = String(Files.readAllBytes(this.path), Charsets.UTF_8)
+
+    /**
+     * @return a reader that streams the contents of this script from the file, through memory mappings of the file
+     * if it is larger than the memory mapping threshold.
+     */
+    override fun openReader(): Reader {
+        return if (size > memoryMappingThreshold && path.fileSystem == FileSystems.getDefault()) {
+            MappedFileReader(this.path.toFile())
+        } else {
+            InputStreamReader(Files.newInputStream(this.path), Charsets.UTF_8).buffered()
+        }
+    }
+
+    /**
+     * Opens a channel over the bytes of the file, which the caller is to close, so that they can be copied to an
+     * output without being decoded; it is a [java.nio.channels.FileChannel] for files on the default file system.
+     * @return a read-only channel over the file.
+     */
+    override fun openChannel(): ReadableByteChannel = Files.newByteChannel(this.path)
+
+    /**
+     * @return the size of this script, in bytes, taken from the file's attributes.
+     */
+    override fun getSize(): Long = attributes?.size() ?: Files.size(this.path)
 }
\ No newline at end of file
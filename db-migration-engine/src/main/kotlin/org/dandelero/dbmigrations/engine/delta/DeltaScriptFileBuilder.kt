@@ -13,6 +13,11 @@
 package org.dandelero.dbmigrations.engine.delta
 
 import java.io.File
+import java.nio.file.FileSystems
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
 
 /**
  * Provides a way for [DeltaScriptFile] instances to be constructed from files.
@@ -28,4 +33,32 @@ interface DeltaScriptFileBuilder {
      * @return the change script instance; null if the file cannot be adapted.
      */
     fun build(file: File): DeltaScriptFile?
+
+    /**
+     * Constructs a [DeltaScriptFile] instance of the given file, whose attributes have already been read.
+     * @param file the file to be adapted into a change script.
+     * @param attributes the attributes of the file.
+     * @return the change script instance; null if the file cannot be adapted.
+     */
+    fun build(file: File, attributes: BasicFileAttributes): DeltaScriptFile? = build(file)
+
+    /**
+     * Constructs a [DeltaScriptFile] instance of the file at the given path, which may be on any file system (e.g.
+     * within a zip archive), and whose attributes have already been read.
+     * <br />
+     * By default, only paths on the default file system are built, as files; implementations that are to read zip or
+     * git input must override this.
+     * @param path the path of the file to be adapted into a change script.
+     * @param attributes the attributes of the file.
+     * @return the change script instance; null if the file cannot be adapted.
+     * @throws ApplicationException if the path is not on the default file system.
+     */
+    fun build(path: Path, attributes: BasicFileAttributes): DeltaScriptFile? {
+        if (path.fileSystem != FileSystems.getDefault()) {
+            throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails("${javaClass.name} cannot build delta " +
+                    "scripts outside the default file system: $path (${path.toUri()}); override " +
+                    "DeltaScriptFileBuilder.build(Path, BasicFileAttributes) to read such input"))
+        }
+        return build(path.toFile(), attributes)
+    }
 }
\ No newline at end of file
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta
+
+import org.dandelero.dbmigrations.api.delta.DeltaScript
+
+/**
+ * A [DeltaScript] whose contents are held in memory, so that they can be read any number of times without going
+ * back to the source of the script.
+ * <br />
+ * Created at: 17/10/26 11:02 am
+ *
+ * @param scriptName the name of the script.
+ * @param seqNumber the sequence number of the script.
+ * @param scriptContents the contents of the script.
+ * @param scriptSize the size of the contents of the script, in bytes, which is found from the contents if it is not
+ * known.
+ * @author dandelero
+ */
+class InMemoryDeltaScript(
+    private val scriptName: String,
+    private val seqNumber: Int,
+    private val scriptContents: String,
+    private val scriptSize: Long = scriptContents.toByteArray().size.toLong()
+) : DeltaScript {
+
+    /**
+     * @return the name of this script.
+     */
+    override fun getName(): String = scriptName
+
+    /**
+     * @return the sequence number of this script.
+     */
+    override fun getSequenceNumber(): Int = seqNumber
+
+    /**
+     * @return the contents of this script.
+     */
+    override fun getContents(): String = scriptContents
+
+    /**
+     * @return the size of the contents of this script, in bytes.
+     */
+    override fun getSize(): Long = scriptSize
+
+    /**
+     * @return true, as the contents of this script are held in memory.
+     */
+    override fun isHeldInMemory(): Boolean = true
+
+    companion object {
+
+        /**
+         * Reads the given script into memory, keeping the size of the script from its source.
+         * @param deltaScript the script to be read.
+         * @return the in-memory copy of the script.
+         */
+        fun of(deltaScript: DeltaScript): InMemoryDeltaScript {
+            return deltaScript as? InMemoryDeltaScript
+                    ?: InMemoryDeltaScript(deltaScript.name, deltaScript.sequenceNumber, deltaScript.contents,
+                            deltaScript.size)
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta
+
+import java.io.File
+import java.io.Reader
+import java.nio.CharBuffer
+import java.nio.MappedByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.charset.CodingErrorAction
+import java.nio.file.StandardOpenOption
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+
+/**
+ * A [Reader] that decodes a UTF-8 file through read-only memory mappings of the file, a window at a time, so that
+ * files of any size can be read without their contents being copied onto the heap.
+ * <br />
+ * A window that ends part way through a character is followed by a window that starts at that character.
+ * <br />
+ * Created at: 17/10/26 10:25 pm
+ *
+ * @param file the file to be read.
+ * @param windowSize the number of bytes of the file that are mapped at a time.
+ * @author dandelero
+ */
+class MappedFileReader(file: File, private val windowSize: Long = DEFAULT_WINDOW_SIZE) : Reader() {
+
+    init {
+        if (windowSize < 4) {
+            throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails(
+                    "The mapped window must be able to hold any character: $windowSize"))
+        }
+    }
+
+    /**
+     * The channel that the windows are mapped from.
+     */
+    private val channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+
+    /**
+     * The size of the file.
+     */
+    private val size: Long
+
+    /**
+     * The decoder of the mapped bytes; malformed input is replaced, as it is when a file is read as text.
+     */
+    private val decoder = Charsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+
+    /**
+     * The position in the file of the current window.
+     */
+    private var windowStart = 0L
+
+    /**
+     * The current window.
+     */
+    private var window: MappedByteBuffer
+
+    /**
+     * Whether every byte of the file has been decoded.
+     */
+    private var finished = false
+
+    init {
+        // The channel is closed if the reader cannot be created, as the caller has nothing to close it with.
+        try {
+            size = channel.size()
+            window = mapWindow(0L)
+        } catch (e: Exception) {
+            channel.close()
+            throw e
+        }
+    }
+
+    /**
+     * Reads characters into a portion of an array.
+     * @param buffer the destination buffer.
+     * @param offset the offset at which to start storing characters.
+     * @param length the maximum number of characters to read.
+     * @return the number of characters read, or -1 if the end of the file has been reached.
+     */
+    override fun read(buffer: CharArray, offset: Int, length: Int): Int {
+        if (length == 0) {
+            return 0
+        }
+
+        val target = CharBuffer.wrap(buffer, offset, length)
+        while (target.hasRemaining() && !finished) {
+            val endOfInput = windowStart + window.limit() >= size
+            if (decoder.decode(window, target, endOfInput).isOverflow) {
+                break
+            }
+            // The window has been decoded, apart from any character that it ends part way through.
+            if (endOfInput) {
+                if (decoder.flush(target).isOverflow) {
+                    break
+                }
+                finished = true
+            } else {
+                window = mapWindow(windowStart + window.position())
+            }
+        }
+
+        val count = target.position() - offset
+        return if (count == 0 && finished) -1 else count
+    }
+
+    /**
+     * Closes the channel; the mapped windows are released once they are no longer referenced.
+     */
+    override fun close() {
+        channel.close()
+    }
+
+    /**
+     * Maps the window of the file that starts at the given position.
+     * @param position the position in the file.
+     * @return the mapped window.
+     */
+    private fun mapWindow(position: Long): MappedByteBuffer {
+        windowStart = position
+        return channel.map(FileChannel.MapMode.READ_ONLY, position, minOf(windowSize, size - position))
+    }
+
+    companion object {
+
+        /**
+         * The default number of bytes that are mapped at a time.
+         */
+        const val DEFAULT_WINDOW_SIZE: Long = 8L * 1024 * 1024
+    }
+}
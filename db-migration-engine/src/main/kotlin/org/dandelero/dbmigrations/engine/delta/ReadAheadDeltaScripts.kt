@@ -0,0 +1,151 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta
+
+import java.util.ArrayDeque
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import org.dandelero.dbmigrations.api.delta.DeltaScript
+import org.dandelero.dbmigrations.engine.concurrent.ExecutionBackend
+
+/**
+ * Iterates over delta scripts while the contents of the scripts after the current one are read on an
+ * [ExecutionBackend], so that reading a script overlaps with rendering the scripts before it.
+ * <br />
+ * Scripts are read ahead in the way that they will be written, so that none is read twice. A script held in memory
+ * (e.g. through the script cache) is read ahead through its own contents, and is returned as it is. A script that
+ * offers a channel over its bytes (e.g. a delta script file) is not read ahead, as it is written by transferring or
+ * streaming those bytes. Any other script is read into an [InMemoryDeltaScript].
+ * <br />
+ * At most [depth] scripts are held ahead of the current one, and the contents read ahead never exceed the byte
+ * budget; scripts larger than the budget are not read ahead, and are returned as they are to be streamed from their
+ * source. [close] the iterator to cancel the reads that are still outstanding.
+ * <br />
+ * Created at: 18/10/26 8:35 am
+ *
+ * @param scripts the scripts to iterate over.
+ * @param executionBackendInitializer creates the backend that the scripts are read on; it is not created unless a script is read ahead.
+ * @param depth the maximum number of scripts to read ahead; 0 reads none ahead.
+ * @param byteBudget the maximum total size, in bytes, of the contents read ahead.
+ * @author dandelero
+ */
+class ReadAheadDeltaScripts(
+    private val scripts: List<DeltaScript>,
+    executionBackendInitializer: Lazy<ExecutionBackend>,
+    private val depth: Int,
+    private val byteBudget: Long
+) : Iterator<DeltaScript>, AutoCloseable {
+
+    /**
+     * The backend that the scripts are read on.
+     */
+    private val executionBackend: ExecutionBackend by executionBackendInitializer
+
+    /**
+     * The scripts after the current one that have been queued, in order.
+     */
+    private val pending = ArrayDeque<PendingScript>()
+
+    /**
+     * The index of the next script to be queued.
+     */
+    private var nextIndex = 0
+
+    /**
+     * The total size of the scripts that are being, or have been, read ahead.
+     */
+    private var pendingSize = 0L
+
+    /**
+     * @return true if there are scripts left to iterate over.
+     */
+    override fun hasNext(): Boolean = pending.isNotEmpty() || nextIndex < scripts.size
+
+    /**
+     * Gets the next script and reads further ahead; a script that was read ahead is returned once its contents have
+     * been read, and one that was not (e.g. the first) is returned as it is.
+     * @return the next script.
+     */
+    override fun next(): DeltaScript {
+        val nextScript = pending.pollFirst() ?: if (nextIndex < scripts.size) {
+            PendingScript(scripts[nextIndex++], 0, null)
+        } else {
+            throw NoSuchElementException()
+        }
+        if (nextScript.read != null) {
+            pendingSize -= nextScript.size
+        }
+        // Start the following reads before waiting on this one.
+        readAhead()
+
+        return try {
+            nextScript.read?.get() ?: nextScript.script
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    /**
+     * Cancels the reads that are still outstanding.
+     */
+    override fun close() {
+        pending.forEach { it.read?.cancel(true) }
+        pending.clear()
+    }
+
+    /**
+     * Queues scripts until [depth] scripts are queued, or the next script does not fit in the remaining budget.
+     */
+    private fun readAhead() {
+        while (nextIndex < scripts.size && pending.size < depth) {
+            val script = scripts[nextIndex]
+            val size = script.size
+            val read = if (size <= byteBudget) findRead(script) else null
+            if (read != null && pendingSize + size > byteBudget) {
+                // Wait for the scripts ahead of it to be consumed.
+                break
+            }
+
+            pending.addLast(if (read != null) {
+                pendingSize += size
+                PendingScript(script, size, executionBackend.submit(read))
+            } else {
+                PendingScript(script, size, null)
+            })
+            nextIndex++
+        }
+    }
+
+    /**
+     * Finds how a script is to be read ahead.
+     * @param script the script.
+     * @return the read, which returns the script to be used in place of the given one, or null if it is not to be
+     * read ahead.
+     */
+    private fun findRead(script: DeltaScript): (() -> DeltaScript)? {
+        return when {
+            script.isHeldInMemory -> { { script.also { it.contents } } }
+            script.openChannel()?.also { it.close() } != null -> null
+            else -> { { InMemoryDeltaScript.of(script) } }
+        }
+    }
+
+    /**
+     * A queued script.
+     * @param script the script.
+     * @param size the size of the script.
+     * @param read the read of the script's contents, or null if it is not read ahead.
+     */
+    private data class PendingScript(val script: DeltaScript, val size: Long, val read: Future<out DeltaScript>?)
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta.template
+
+import java.io.File
+import java.nio.file.attribute.FileTime
+import java.util.concurrent.ConcurrentHashMap
+import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.api.delta.DeltaScriptTemplateLocator
+import org.dandelero.dbmigrations.engine.util.readAttributesOrNull
+
+/**
+ * A [DeltaScriptTemplateLocator] that wraps another so that each template is located once, rather than once for every
+ * migration script that it is applied to.
+ * <br />
+ * Templates are cached by database engine and script category. Where the wrapped locator loads templates from files
+ * ([DeltaScriptTemplateFileLocator]), a cached template is checked against the modification time and size of its
+ * file, and is located again once either has changed (or the file has appeared or gone); other templates (e.g. those
+ * on the classpath) are cached for the lifetime of this locator.
+ * <br />
+ * Created at: 18/10/26 12:05 pm
+ *
+ * @param deltaScriptTemplateLocator the locator that templates are located with.
+ * @author dandelero
+ */
+class CachingDeltaScriptTemplateLocator(
+    private val deltaScriptTemplateLocator: DeltaScriptTemplateLocator
+) : DeltaScriptTemplateLocator {
+
+    /**
+     * The cached templates, keyed by their database engine and script category.
+     */
+    private val templates = ConcurrentHashMap<TemplateKey, CachedTemplate>()
+
+    /**
+     * Whether the templates are loaded from files, so that changes to the files (including files appearing or going)
+     * are picked up.
+     */
+    val isFileBacked: Boolean
+        get() = deltaScriptTemplateLocator is DeltaScriptTemplateFileLocator
+
+    /**
+     * Gets the template that is to be applied for the given parameters, from the cache where it is current.
+     *
+     * @param databaseEngine the database engine that script composition is to occur for.
+     * @param deltaScriptCategory the category of scripts being processed.
+     * @return the template to be applied for this database engine and script category; null if none was found.
+     */
+    override fun findDeltaScriptTemplate(databaseEngine: String, deltaScriptCategory: DeltaScriptCategory): String? {
+        val templateFile = (deltaScriptTemplateLocator as? DeltaScriptTemplateFileLocator)
+                ?.findDeltaScriptTemplateFile(databaseEngine, deltaScriptCategory)
+        return findTemplate(TemplateKey(databaseEngine, deltaScriptCategory), templateFile) {
+            deltaScriptTemplateLocator.findDeltaScriptTemplate(databaseEngine, deltaScriptCategory)
+        }
+    }
+
+    /**
+     * Gets the template that is to be applied for composing the overall script, from the cache where it is current.
+     *
+     * @return the template to be applied for this database engine; null if none was found.
+     */
+    override fun findMigrationScriptFileTemplate(): String? {
+        val templateFile = (deltaScriptTemplateLocator as? DeltaScriptTemplateFileLocator)
+                ?.findMigrationScriptFileTemplateFile()
+        return findTemplate(TemplateKey(null, null), templateFile) {
+            deltaScriptTemplateLocator.findMigrationScriptFileTemplate()
+        }
+    }
+
+    /**
+     * Gets a template from the cache, locating it if it is not cached or its file has changed since it was cached.
+     * @param key the key of the template.
+     * @param templateFile the file of the template, or null if it is not loaded from a file.
+     * @param locate locates the template.
+     * @return the template; null if none was found.
+     */
+    private fun findTemplate(key: TemplateKey, templateFile: File?, locate: () -> String?): String? {
+        val stamp = templateFile?.let { file ->
+            file.readAttributesOrNull()?.let { TemplateStamp(it.lastModifiedTime(), it.size()) }
+        }
+        val cachedTemplate = templates[key]
+        if (cachedTemplate != null && cachedTemplate.stamp == stamp) {
+            return cachedTemplate.template
+        }
+        // The file is read after its attributes, so a change in between is picked up by the next lookup.
+        return locate().also { templates[key] = CachedTemplate(it, stamp) }
+    }
+
+    /**
+     * Identifies a template; the migration script file template has neither a database engine nor a category.
+     */
+    private data class TemplateKey(val databaseEngine: String?, val deltaScriptCategory: DeltaScriptCategory?)
+
+    /**
+     * The modification time and size of the file of a template when it was cached.
+     */
+    private data class TemplateStamp(val lastModifiedTime: FileTime, val size: Long)
+
+    /**
+     * A cached template.
+     * @param template the template; null if none was found.
+     * @param stamp the stamp of its file when it was located; null if it has no file or the file did not exist.
+     */
+    private class CachedTemplate(val template: String?, val stamp: TemplateStamp?)
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta.template
+
+import java.io.OutputStream
+import org.dandelero.dbmigrations.engine.util.substitutePlaceholders
+
+/**
+ * A template that has been parsed once into a list of segments, literal text and placeholder references, so that it
+ * can be rendered any number of times straight into an output stream, without rescanning the template or building the
+ * rendered text in memory.
+ * <br />
+ * Rendering matches [substitutePlaceholders]: a placeholder (e.g. <code>${name}</code>) is replaced by its value in
+ * the context, or by its default (e.g. <code>${name:-default}</code>) if it has no value, and is otherwise left as is;
+ * an escaped placeholder (e.g. <code>$${name}</code>) is written without the escape. Values that hold placeholders
+ * themselves, and templates whose placeholders are nested, are substituted as a whole.
+ * <br />
+ * The indentation of each placeholder, i.e. the whitespace that starts the only line that it appears on, is found when
+ * the template is compiled, so that a multi-line value can be re-indented to match as it is rendered.
+ * <br />
+ * The value of the contents placeholder, if one is named when rendering, is re-indented before it is substituted like
+ * any other value, or is written verbatim, re-indented, if so asked: placeholders within it are then left as they are,
+ * however the template is rendered.
+ * <br />
+ * Created at: 18/10/26 10:40 am
+ *
+ * @param segments the segments of the template.
+ * @param placeholderNames the names of the placeholders in the template, or null if they are only known once the
+ * template has been substituted (i.e. placeholders are nested).
+ * @param indentations the indentation of each placeholder that has one, keyed by the placeholder name.
+ * @author dandelero
+ */
+class CompiledTemplate private constructor(
+    private val segments: List<Segment>,
+    val placeholderNames: List<String>?,
+    private val indentations: Map<String, String>
+) {
+
+    /**
+     * Gets the indentation of a placeholder: the whitespace that starts the line it appears on.
+     * @param placeholderName the name of the placeholder.
+     * @return the indentation; empty if the placeholder is not indented or appears on more than one line.
+     */
+    fun indentationOf(placeholderName: String): String = indentations[placeholderName] ?: ""
+
+    /**
+     * Renders the template into the output stream.
+     * @param outputStream the stream to render into.
+     * @param context the placeholder values.
+     * @param parentContext placeholder values that apply where the context has none.
+     * @param contentsPlaceholder the name of the placeholder whose value has every line after the first indented like
+     * the placeholder, if any.
+     * @param verbatimContents whether the value of the contents placeholder is written verbatim, rather than having
+     * the placeholders within it substituted.
+     */
+    fun renderTo(
+        outputStream: OutputStream,
+        context: Map<String, Any>,
+        parentContext: Map<String, Any> = emptyMap(),
+        contentsPlaceholder: String? = null,
+        verbatimContents: Boolean = false
+    ) {
+        for (segment in segments) {
+            when (segment) {
+                is Segment.Literal -> outputStream.write(segment.bytes)
+                is Segment.Placeholder -> {
+                    val value = (context[segment.name] ?: parentContext[segment.name])?.toString()
+                    val isContents = segment.name == contentsPlaceholder
+                    val indentation = if (isContents) segment.indentationBytes else null
+                    when {
+                        value == null -> outputStream.write(segment.defaultBytes ?: segment.placeholderBytes)
+                        value.contains(PREFIX) && !(isContents && verbatimContents) -> {
+                            val indentedValue = indentation?.let { reindent(value, indentationOf(segment.name)) }
+                            outputStream.write((indentedValue ?: value).substitutePlaceholders(parentContext + context)
+                                    .toByteArray())
+                        }
+                        indentation != null -> writeIndented(outputStream, value.toByteArray(), indentation)
+                        else -> outputStream.write(value.toByteArray())
+                    }
+                }
+                is Segment.Substituted -> {
+                    val contents = contentsPlaceholder?.let { context[it] ?: parentContext[it] }?.toString()
+                    if (contents == null) {
+                        outputStream.write(segment.template.substitutePlaceholders(parentContext + context).toByteArray())
+                    } else if (!verbatimContents) {
+                        val indentedContents = reindent(contents, indentationOf(contentsPlaceholder))
+                        outputStream.write(segment.template.substitutePlaceholders(
+                                parentContext + context + (contentsPlaceholder to indentedContents)).toByteArray())
+                    } else {
+                        // The contents stand in as a marker while the template is substituted, so that placeholders
+                        // within them are left as they are.
+                        val substituted = segment.template.substitutePlaceholders(
+                                parentContext + context + (contentsPlaceholder to CONTENTS_MARKER))
+                        outputStream.write(substituted.replace(CONTENTS_MARKER,
+                                reindent(contents, indentationOf(contentsPlaceholder))).toByteArray())
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes an encoded value, following every newline with the indentation. A newline byte never occurs within the
+     * encoding of another character, so the lines are found in the encoded value in a single pass.
+     * @param outputStream the stream to write to.
+     * @param value the encoded value.
+     * @param indentation the encoded indentation.
+     */
+    private fun writeIndented(outputStream: OutputStream, value: ByteArray, indentation: ByteArray) {
+        var lineStart = 0
+        for (i in value.indices) {
+            if (value[i] == NEWLINE) {
+                outputStream.write(value, lineStart, i + 1 - lineStart)
+                outputStream.write(indentation)
+                lineStart = i + 1
+            }
+        }
+        outputStream.write(value, lineStart, value.size - lineStart)
+    }
+
+    /**
+     * Follows every newline in a value with the indentation, for values that are substituted rather than written.
+     * @param value the value.
+     * @param indentation the indentation.
+     * @return the indented value.
+     */
+    private fun reindent(value: String, indentation: String): String {
+        if (indentation.isEmpty()) {
+            return value
+        }
+        val indented = StringBuilder(value.length + indentation.length * 16)
+        var lineStart = 0
+        var newline = value.indexOf('\n')
+        while (newline >= 0) {
+            indented.append(value, lineStart, newline + 1).append(indentation)
+            lineStart = newline + 1
+            newline = value.indexOf('\n', lineStart)
+        }
+        return indented.append(value, lineStart, value.length).toString()
+    }
+
+    /**
+     * A part of a compiled template.
+     */
+    private sealed class Segment {
+
+        /**
+         * Literal text, encoded once.
+         * @param bytes the encoded text.
+         */
+        class Literal(val bytes: ByteArray) : Segment()
+
+        /**
+         * A reference to a placeholder value.
+         * @param name the name of the placeholder.
+         * @param defaultBytes the encoded default value, or null if it has none.
+         * @param placeholderBytes the encoded placeholder, which is written if it has neither a value nor a default.
+         * @param indentationBytes the encoded indentation of the placeholder, or null if it is not indented.
+         */
+        class Placeholder(
+            val name: String,
+            val defaultBytes: ByteArray?,
+            val placeholderBytes: ByteArray,
+            val indentationBytes: ByteArray?
+        ) : Segment()
+
+        /**
+         * A template that can only be substituted as a whole.
+         * @param template the template.
+         */
+        class Substituted(val template: String) : Segment()
+    }
+
+    companion object {
+
+        /**
+         * The start of a placeholder.
+         */
+        private const val PREFIX = "\${"
+
+        /**
+         * The end of a placeholder.
+         */
+        private const val SUFFIX = '}'
+
+        /**
+         * The character that, before the start of a placeholder, escapes it.
+         */
+        private const val ESCAPE = '$'
+
+        /**
+         * The separator between the name of a placeholder and its default.
+         */
+        private const val DEFAULT_SEPARATOR = ":-"
+
+        /**
+         * Marks where the contents placeholder was, in a template that is substituted as a whole.
+         */
+        private const val CONTENTS_MARKER = "\u0000contents\u0000"
+
+        /**
+         * The encoded newline.
+         */
+        private const val NEWLINE = '\n'.toByte()
+
+        /**
+         * Matches a placeholder that has no other placeholder within it, capturing its name.
+         */
+        private val placeholderPattern = Regex("\\$\\{([^$\\{}]*)}")
+
+        /**
+         * Parses a template into its segments.
+         * @param template the template.
+         * @return the compiled template.
+         */
+        fun compile(template: String): CompiledTemplate {
+            val indentations = findIndentations(template)
+            val segments = mutableListOf<Segment>()
+            val placeholderNames = mutableListOf<String>()
+            val literal = StringBuilder()
+            var position = 0
+            while (position < template.length) {
+                val start = template.indexOf(PREFIX, position)
+                if (start < 0) {
+                    break
+                }
+                if (start > position && template[start - 1] == ESCAPE) {
+                    // The escape character is dropped and the placeholder is written as it is.
+                    literal.append(template, position, start - 1).append(PREFIX)
+                    position = start + PREFIX.length
+                    continue
+                }
+                val end = template.indexOf(SUFFIX, start + PREFIX.length)
+                if (end < 0) {
+                    break
+                }
+                if (template.indexOf(PREFIX, start + PREFIX.length) in 0 until end) {
+                    // A nested placeholder names another placeholder, so it can only be resolved on substitution.
+                    return CompiledTemplate(listOf(Segment.Substituted(template)), null, indentations)
+                }
+
+                literal.append(template, position, start)
+                if (literal.isNotEmpty()) {
+                    segments.add(Segment.Literal(literal.toString().toByteArray()))
+                    literal.setLength(0)
+                }
+                val reference = template.substring(start + PREFIX.length, end)
+                val name = reference.substringBefore(DEFAULT_SEPARATOR)
+                val defaultValue = if (reference.contains(DEFAULT_SEPARATOR)) {
+                    reference.substringAfter(DEFAULT_SEPARATOR)
+                } else {
+                    null
+                }
+                segments.add(Segment.Placeholder(name, defaultValue?.toByteArray(),
+                        template.substring(start, end + 1).toByteArray(), indentations[name]?.toByteArray()))
+                placeholderNames.add(name)
+                position = end + 1
+            }
+            literal.append(template, position, template.length)
+            if (literal.isNotEmpty()) {
+                segments.add(Segment.Literal(literal.toString().toByteArray()))
+            }
+            return CompiledTemplate(segments, placeholderNames.distinct(), indentations)
+        }
+
+        /**
+         * Finds the indentation of each placeholder in a template that appears, in its plain form (e.g.
+         * <code>${name}</code>), on exactly one line that starts with whitespace.
+         * @param template the template.
+         * @return the indentation of each indented placeholder, keyed by the placeholder name.
+         */
+        private fun findIndentations(template: String): Map<String, String> {
+            val lineIndentations = mutableMapOf<String, MutableList<String>>()
+            template.split('\n').forEach { line ->
+                placeholderPattern.findAll(line).map { it.groupValues[1] }.distinct().forEach { name ->
+                    lineIndentations.getOrPut(name) { mutableListOf() }.add(line.takeWhile { it.isWhitespace() })
+                }
+            }
+            return lineIndentations.filterValues { it.size == 1 && it.first().isNotEmpty() }.mapValues { it.value.first() }
+        }
+    }
+}
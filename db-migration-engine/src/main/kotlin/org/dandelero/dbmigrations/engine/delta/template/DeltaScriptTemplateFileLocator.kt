@@ -0,0 +1,43 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta.template
+
+import java.io.File
+import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.api.delta.DeltaScriptTemplateLocator
+
+/**
+ * A [DeltaScriptTemplateLocator] that loads each template from a file, and can tell which file that is without
+ * loading it, so that a cached template can be checked against its file.
+ * <br />
+ * Created at: 18/10/26 11:50 am
+ * @author dandelero
+ */
+interface DeltaScriptTemplateFileLocator : DeltaScriptTemplateLocator {
+
+    /**
+     * Gets the file that the template for the given parameters is loaded from.
+     *
+     * @param databaseEngine the database engine that script composition is to occur for.
+     * @param deltaScriptCategory the category of scripts being processed.
+     * @return the file of the template, which may not exist.
+     */
+    fun findDeltaScriptTemplateFile(databaseEngine: String, deltaScriptCategory: DeltaScriptCategory): File
+
+    /**
+     * Gets the file that the template for composing the overall script is loaded from.
+     *
+     * @return the file of the template, which may not exist.
+     */
+    fun findMigrationScriptFileTemplateFile(): File
+}
@@ -16,7 +16,6 @@ import java.io.File
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
-import org.dandelero.dbmigrations.api.delta.DeltaScriptTemplateLocator
 import org.dandelero.dbmigrations.engine.util.readFully
 
 /**
@@ -25,7 +24,7 @@ import org.dandelero.dbmigrations.engine.util.readFully
  * Created at: 28/10/19 8:25 pm
  * @author dandelero
  */
-class DirectoryDeltaScriptTemplateLocator(private val directory: File) : DeltaScriptTemplateLocator {
+class DirectoryDeltaScriptTemplateLocator(private val directory: File) : DeltaScriptTemplateFileLocator {
 
     init {
         if (!directory.exists() || !directory.isDirectory) {
@@ -50,9 +49,7 @@ class DirectoryDeltaScriptTemplateLocator(private val directory: File) : DeltaSc
      * @return the template to be applied for this database engine and script category; null if none was found.
      */
     override fun findDeltaScriptTemplate(databaseEngine: String, deltaScriptCategory: DeltaScriptCategory): String? {
-        val fileName = scriptCategoryTemplateNames[deltaScriptCategory] ?: throw ApplicationException(
-                        ErrorCode.INVALID_SCRIPTS_DETECTED.withDetails("Unsupported script category: $deltaScriptCategory"))
-        return File(directory, databaseEngine + File.separator + fileName).readFully()
+        return findDeltaScriptTemplateFile(databaseEngine, deltaScriptCategory).readFully()
     }
 
     /**
@@ -62,6 +59,26 @@ class DirectoryDeltaScriptTemplateLocator(private val directory: File) : DeltaSc
      * @return the template to be applied for this database engine; null if none was found.
      */
     override fun findMigrationScriptFileTemplate(): String? {
-        return File(directory, "file_template.txt").readFully()
+        return findMigrationScriptFileTemplateFile().readFully()
     }
+
+    /**
+     * Gets the file that the template for the given parameters is loaded from.
+     *
+     * @param databaseEngine the database engine that script composition is to occur for.
+     * @param deltaScriptCategory the category of scripts being processed.
+     * @return the file of the template, which may not exist.
+     */
+    override fun findDeltaScriptTemplateFile(databaseEngine: String, deltaScriptCategory: DeltaScriptCategory): File {
+        val fileName = scriptCategoryTemplateNames[deltaScriptCategory] ?: throw ApplicationException(
+                        ErrorCode.INVALID_SCRIPTS_DETECTED.withDetails("Unsupported script category: $deltaScriptCategory"))
+        return File(directory, databaseEngine + File.separator + fileName)
+    }
+
+    /**
+     * Gets the file that the template for composing the overall script is loaded from.
+     *
+     * @return the file of the template, which may not exist.
+     */
+    override fun findMigrationScriptFileTemplateFile(): File = File(directory, "file_template.txt")
 }
\ No newline at end of file
@@ -12,12 +12,19 @@
  */
 package org.dandelero.dbmigrations.engine.delta.template
 
+import java.util.concurrent.ConcurrentHashMap
 import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
 import org.dandelero.dbmigrations.api.delta.DeltaScriptTemplateLocator
 
 /**
  * A [DeltaScriptTemplateLocator] implementation that returns the first template returned from the locators provided.
  * <br />
+ * The locators are asked in order, stopping at the first to return a template. A locator that has no template for a
+ * database engine and script category is remembered as such and not asked again, so a template that is added to it
+ * afterwards is not picked up for the lifetime of this locator. The exception is a locator of template files
+ * ([DeltaScriptTemplateFileLocator], or a [CachingDeltaScriptTemplateLocator] of one), which is asked every time so
+ * that a template file that appears later is picked up; checking for the file is cheap.
+ * <br />
  * Created at: 28/10/19 8:56 pm
  * @author dandelero
  *
@@ -27,6 +34,21 @@ class PeckingOrderDeltaScriptTemplateLocator(
     private vararg val orderedDeltaScriptTemplateLocators: DeltaScriptTemplateLocator
 ) : DeltaScriptTemplateLocator {
 
+    /**
+     * The templates that each locator has been found not to have.
+     */
+    private val misses = ConcurrentHashMap.newKeySet<TemplateMiss>()
+
+    /**
+     * Whether the misses of each locator are remembered, by the index of the locator; those of locators of template
+     * files are not.
+     */
+    private val remembersMisses = orderedDeltaScriptTemplateLocators.map { locator ->
+        val fileBacked = locator is DeltaScriptTemplateFileLocator ||
+                (locator as? CachingDeltaScriptTemplateLocator)?.isFileBacked == true
+        !fileBacked
+    }
+
     /**
      * Gets the template that is to be applied for the given parameters.
      *
@@ -35,9 +57,9 @@ class PeckingOrderDeltaScriptTemplateLocator(
      * @return the template to be applied for this database engine and script category; null if none was found.
      */
     override fun findDeltaScriptTemplate(databaseEngine: String, deltaScriptCategory: DeltaScriptCategory): String? {
-        return orderedDeltaScriptTemplateLocators.mapNotNull {
+        return findFirstTemplate(databaseEngine, deltaScriptCategory) {
             it.findDeltaScriptTemplate(databaseEngine, deltaScriptCategory)
-        }.firstOrNull()
+        }
     }
 
     /**
@@ -47,6 +69,45 @@ class PeckingOrderDeltaScriptTemplateLocator(
      * @return the template to be applied for this database engine; null if none was found.
      */
     override fun findMigrationScriptFileTemplate(): String? {
-        return orderedDeltaScriptTemplateLocators.mapNotNull { it.findMigrationScriptFileTemplate() }.firstOrNull()
+        return findFirstTemplate(null, null) { it.findMigrationScriptFileTemplate() }
     }
+
+    /**
+     * Finds the template from the first locator that has it, skipping the locators remembered not to have it.
+     * @param databaseEngine the database engine of the template; null for the migration script file template.
+     * @param deltaScriptCategory the category of the template; null for the migration script file template.
+     * @param findTemplate finds the template with a locator.
+     * @return the first template found; null if none was found.
+     */
+    private fun findFirstTemplate(
+        databaseEngine: String?,
+        deltaScriptCategory: DeltaScriptCategory?,
+        findTemplate: (DeltaScriptTemplateLocator) -> String?
+    ): String? {
+        orderedDeltaScriptTemplateLocators.forEachIndexed { index, locator ->
+            val miss = TemplateMiss(index, databaseEngine, deltaScriptCategory)
+            if (miss !in misses) {
+                val template = findTemplate(locator)
+                if (template != null) {
+                    return template
+                }
+                if (remembersMisses[index]) {
+                    misses.add(miss)
+                }
+            }
+        }
+        return null
+    }
+
+    /**
+     * Identifies a template that a locator does not have.
+     * @param locatorIndex the index of the locator.
+     * @param databaseEngine the database engine of the template; null for the migration script file template.
+     * @param deltaScriptCategory the category of the template; null for the migration script file template.
+     */
+    private data class TemplateMiss(
+        val locatorIndex: Int,
+        val databaseEngine: String?,
+        val deltaScriptCategory: DeltaScriptCategory?
+    )
 }
\ No newline at end of file
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta.template
+
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import org.dandelero.dbmigrations.engine.util.substitutePlaceholders
+
+/**
+ * An output stream that substitutes the placeholders (e.g. <code>${name}</code>) in the text written to it, just as
+ * [substitutePlaceholders] substitutes the text as a whole, so that the contents of a delta script can be substituted
+ * while they are streamed.
+ * <br />
+ * Text is passed through to the target until the start of a placeholder is written; from there on it is held until
+ * [finish], where it is substituted as a whole. The text before the first placeholder has nothing to substitute, so
+ * contents without placeholders are streamed in full, and only the rest of contents with a placeholder is held in
+ * memory.
+ * <br />
+ * The text is written UTF-8 encoded: the characters that start a placeholder never occur within the encoding of another
+ * character, so they are found in the bytes as they are written.
+ * <br />
+ * Created at: 18/10/26 11:05 am
+ *
+ * @param target the stream that the substituted text is written to; it is not closed.
+ * @param context the placeholder values.
+ * @author dandelero
+ */
+class PlaceholderSubstitutingOutputStream(
+    private val target: OutputStream,
+    private val context: Map<String, Any>
+) : OutputStream() {
+
+    /**
+     * The number of escape characters written last, which are held back as they may precede the start of a
+     * placeholder.
+     */
+    private var heldEscapes = 0
+
+    /**
+     * The text from the first placeholder on, or null if no placeholder has been written yet.
+     */
+    private var heldText: ByteArrayOutputStream? = null
+
+    override fun write(b: Int) {
+        write(byteArrayOf(b.toByte()), 0, 1)
+    }
+
+    override fun write(b: ByteArray, off: Int, len: Int) {
+        heldText?.let {
+            it.write(b, off, len)
+            return
+        }
+        // The bytes from here on have not been passed through yet.
+        var passed = off
+        for (i in off until off + len) {
+            if (b[i] == ESCAPE) {
+                target.write(b, passed, i - passed)
+                passed = i + 1
+                heldEscapes++
+            } else if (heldEscapes > 0) {
+                if (b[i] == START) {
+                    // The escapes before the placeholder are held with it, so that they are substituted alike.
+                    heldText = ByteArrayOutputStream().apply {
+                        write(escapes(heldEscapes))
+                        write(b, i, off + len - i)
+                    }
+                    heldEscapes = 0
+                    return
+                }
+                target.write(escapes(heldEscapes))
+                heldEscapes = 0
+                passed = i
+            }
+        }
+        target.write(b, passed, off + len - passed)
+    }
+
+    override fun flush() {
+        target.flush()
+    }
+
+    /**
+     * Writes out what has been held back, substituted. Anything written afterwards is substituted apart from what was
+     * written before.
+     */
+    fun finish() {
+        heldText?.let { target.write(it.toString(Charsets.UTF_8.name()).substitutePlaceholders(context).toByteArray()) }
+        target.write(escapes(heldEscapes))
+        heldText = null
+        heldEscapes = 0
+    }
+
+    companion object {
+
+        /**
+         * The encoded character that starts a placeholder, and escapes one before it.
+         */
+        private const val ESCAPE = '$'.toByte()
+
+        /**
+         * The encoded character that follows the escape character at the start of a placeholder.
+         */
+        private const val START = '{'.toByte()
+
+        /**
+         * Gets a run of escape characters.
+         * @param count the number of escape characters.
+         * @return the encoded escape characters.
+         */
+        private fun escapes(count: Int): ByteArray = ByteArray(count) { ESCAPE }
+    }
+}
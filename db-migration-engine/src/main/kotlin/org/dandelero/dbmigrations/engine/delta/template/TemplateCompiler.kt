@@ -0,0 +1,39 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta.template
+
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Compiles templates, keeping each compiled template so that a template is parsed once however many migration scripts
+ * it is rendered into.
+ * <br />
+ * Created at: 18/10/26 10:55 am
+ * @author dandelero
+ */
+class TemplateCompiler {
+
+    /**
+     * The compiled templates, keyed by their template.
+     */
+    private val compiledTemplates = ConcurrentHashMap<String, CompiledTemplate>()
+
+    /**
+     * Compiles a template, or returns its compiled template if it has been compiled already.
+     * @param template the template.
+     * @return the compiled template.
+     */
+    fun compile(template: String): CompiledTemplate = compiledTemplates.computeIfAbsent(template) {
+        CompiledTemplate.compile(it)
+    }
+}
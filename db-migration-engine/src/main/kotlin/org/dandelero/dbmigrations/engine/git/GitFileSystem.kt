@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+import java.net.URI
+import java.nio.file.ClosedFileSystemException
+import java.nio.file.FileStore
+import java.nio.file.FileSystem
+import java.nio.file.FileSystems
+import java.nio.file.NoSuchFileException
+import java.nio.file.Path
+import java.nio.file.PathMatcher
+import java.nio.file.WatchService
+import java.nio.file.attribute.UserPrincipalLookupService
+
+/**
+ * A read-only [FileSystem] over a directory of the tree of a commit in a [GitRepository]; the root of the file system
+ * is that directory. Directories are the trees, and files the blobs, of the commit, which are read from the object
+ * database of the repository as they are needed.
+ * <br />
+ * Created at: 18/10/26 11:55 am
+ *
+ * @param provider the provider of the file system.
+ * @param repository the repository.
+ * @param revision the revision (e.g. a tag) whose tree is read.
+ * @param rootNames the names, within the tree of the commit, of the directory that is the root of the file system.
+ * @param rootTreeId the id of the tree of that directory.
+ * @author dandelero
+ */
+class GitFileSystem internal constructor(
+    private val provider: GitFileSystemProvider,
+    private val repository: GitRepository,
+    private val revision: String,
+    private val rootNames: List<String>,
+    private val rootTreeId: String
+) : FileSystem() {
+
+    /**
+     * Whether the file system is open.
+     */
+    @Volatile
+    private var open = true
+
+    override fun provider(): GitFileSystemProvider = provider
+
+    override fun close() {
+        open = false
+    }
+
+    override fun isOpen(): Boolean = open
+
+    override fun isReadOnly(): Boolean = true
+
+    override fun getSeparator(): String = "/"
+
+    override fun getRootDirectories(): Iterable<Path> = listOf(GitPath(this, emptyList(), true))
+
+    override fun getFileStores(): Iterable<FileStore> = emptyList()
+
+    override fun supportedFileAttributeViews(): Set<String> = setOf("basic")
+
+    override fun getPath(first: String, vararg more: String): Path {
+        val path = (listOf(first) + more).filter { it.isNotEmpty() }.joinToString("/")
+        return GitPath(this, path.split('/').filter { it.isNotEmpty() }, path.startsWith("/"))
+    }
+
+    override fun getPathMatcher(syntaxAndPattern: String): PathMatcher {
+        // The default matchers match the string form of a path, whose separator is also '/'.
+        return FileSystems.getDefault().getPathMatcher(syntaxAndPattern)
+    }
+
+    override fun getUserPrincipalLookupService(): UserPrincipalLookupService =
+            throw UnsupportedOperationException("A git file system has no users")
+
+    override fun newWatchService(): WatchService = throw UnsupportedOperationException("A git file system cannot be watched")
+
+    /**
+     * Finds the tree entry at a path.
+     * @param path the path.
+     * @return the entry; null if there is nothing at the path.
+     */
+    internal fun findEntry(path: GitPath): GitTreeEntry? {
+        if (!open) {
+            throw ClosedFileSystemException()
+        }
+        var entry = GitTreeEntry("", DIRECTORY_MODE, rootTreeId)
+        (path.toAbsolutePath().normalize() as GitPath).names.forEach { name ->
+            if (!entry.isDirectory) {
+                return null
+            }
+            entry = repository.readTree(entry.objectId).firstOrNull { it.name == name } ?: return null
+        }
+        return entry
+    }
+
+    /**
+     * Finds the tree entry at a path, which must exist.
+     * @param path the path.
+     * @return the entry.
+     * @throws NoSuchFileException if there is nothing at the path.
+     */
+    internal fun checkExists(path: GitPath): GitTreeEntry = findEntry(path) ?: throw NoSuchFileException(path.toString())
+
+    /**
+     * Lists the entries of a directory.
+     * @param directory the entry of the directory.
+     * @return the entries of the directory.
+     */
+    internal fun listEntries(directory: GitTreeEntry): List<GitTreeEntry> = repository.readTree(directory.objectId)
+
+    /**
+     * Reads the contents of a file.
+     * @param file the entry of the file.
+     * @return the contents of the file.
+     */
+    internal fun readContents(file: GitTreeEntry): ByteArray = repository.readObject(file.objectId).data
+
+    /**
+     * Reads the size of a file without reading its contents.
+     * @param file the entry of the file.
+     * @return the size of the file.
+     */
+    internal fun readSize(file: GitTreeEntry): Long = repository.readObjectSize(file.objectId)
+
+    /**
+     * Gets the URI of a path, which names the repository and revision that the path is read from, e.g.
+     * 'git:file:/repository/.git/!1.0.0:/db/accounting'.
+     * @param path the absolute path.
+     * @return the URI.
+     */
+    internal fun toUri(path: GitPath): URI {
+        val pathWithinTree = (rootNames + path.names).joinToString("/", prefix = "/")
+        return URI(provider.scheme, "${repository.gitDirectory.toURI()}!$revision:$pathWithinTree", null)
+    }
+
+    companion object {
+
+        /**
+         * The mode of a directory.
+         */
+        private const val DIRECTORY_MODE = 0x4000
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+import java.io.IOException
+import java.net.URI
+import java.nio.ByteBuffer
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.NonWritableChannelException
+import java.nio.channels.SeekableByteChannel
+import java.nio.file.AccessDeniedException
+import java.nio.file.AccessMode
+import java.nio.file.CopyOption
+import java.nio.file.DirectoryStream
+import java.nio.file.FileStore
+import java.nio.file.FileSystem
+import java.nio.file.FileSystemNotFoundException
+import java.nio.file.LinkOption
+import java.nio.file.NotDirectoryException
+import java.nio.file.OpenOption
+import java.nio.file.Path
+import java.nio.file.ProviderMismatchException
+import java.nio.file.ReadOnlyFileSystemException
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.BasicFileAttributeView
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.attribute.FileAttribute
+import java.nio.file.attribute.FileAttributeView
+import java.nio.file.attribute.FileTime
+import java.nio.file.spi.FileSystemProvider
+
+/**
+ * The provider of [GitFileSystem] instances, which are opened through [GitFileSystems] rather than by URI.
+ * <br />
+ * Created at: 18/10/26 12:20 pm
+ * @author dandelero
+ */
+class GitFileSystemProvider internal constructor() : FileSystemProvider() {
+
+    override fun getScheme(): String = "git"
+
+    override fun newFileSystem(uri: URI, env: Map<String, *>): FileSystem =
+            throw UnsupportedOperationException("Git file systems are opened through GitFileSystems")
+
+    override fun getFileSystem(uri: URI): FileSystem = throw FileSystemNotFoundException(uri.toString())
+
+    override fun getPath(uri: URI): Path = throw FileSystemNotFoundException(uri.toString())
+
+    override fun newByteChannel(path: Path, options: Set<OpenOption>, vararg attrs: FileAttribute<*>): SeekableByteChannel {
+        if (options.any { it != StandardOpenOption.READ && it !is LinkOption }) {
+            throw ReadOnlyFileSystemException()
+        }
+        val gitPath = checkPath(path)
+        val entry = gitPath.fileSystem.checkExists(gitPath)
+        if (entry.isDirectory) {
+            throw IOException("Is a directory: $path")
+        }
+        return ByteArrayChannel(gitPath.fileSystem.readContents(entry))
+    }
+
+    override fun newDirectoryStream(dir: Path, filter: DirectoryStream.Filter<in Path>): DirectoryStream<Path> {
+        val gitPath = checkPath(dir)
+        val entry = gitPath.fileSystem.checkExists(gitPath)
+        if (!entry.isDirectory) {
+            throw NotDirectoryException(dir.toString())
+        }
+        val children = gitPath.fileSystem.listEntries(entry).map { dir.resolve(it.name) }.filter { filter.accept(it) }
+        return object : DirectoryStream<Path> {
+            override fun iterator(): MutableIterator<Path> = children.toMutableList().iterator()
+
+            override fun close() = Unit
+        }
+    }
+
+    override fun createDirectory(dir: Path, vararg attrs: FileAttribute<*>) = throw ReadOnlyFileSystemException()
+
+    override fun delete(path: Path) = throw ReadOnlyFileSystemException()
+
+    override fun copy(source: Path, target: Path, vararg options: CopyOption) = throw ReadOnlyFileSystemException()
+
+    override fun move(source: Path, target: Path, vararg options: CopyOption) = throw ReadOnlyFileSystemException()
+
+    override fun isSameFile(path: Path, path2: Path): Boolean =
+            path.toAbsolutePath().normalize() == path2.toAbsolutePath().normalize()
+
+    override fun isHidden(path: Path): Boolean = false
+
+    override fun getFileStore(path: Path): FileStore = throw UnsupportedOperationException("A git file system has no file stores")
+
+    override fun checkAccess(path: Path, vararg modes: AccessMode) {
+        val gitPath = checkPath(path)
+        gitPath.fileSystem.checkExists(gitPath)
+        if (AccessMode.WRITE in modes) {
+            throw AccessDeniedException(path.toString())
+        }
+    }
+
+    override fun <V : FileAttributeView> getFileAttributeView(path: Path, type: Class<V>, vararg options: LinkOption): V? {
+        if (type != BasicFileAttributeView::class.java) {
+            return null
+        }
+        val view = object : BasicFileAttributeView {
+            override fun name(): String = "basic"
+
+            override fun readAttributes(): BasicFileAttributes = readGitAttributes(path)
+
+            override fun setTimes(lastModifiedTime: FileTime?, lastAccessTime: FileTime?, createTime: FileTime?) =
+                    throw ReadOnlyFileSystemException()
+        }
+        @Suppress("UNCHECKED_CAST")
+        return view as V
+    }
+
+    override fun <A : BasicFileAttributes> readAttributes(path: Path, type: Class<A>, vararg options: LinkOption): A {
+        if (!type.isAssignableFrom(GitFileAttributes::class.java)) {
+            throw UnsupportedOperationException("Only basic attributes are supported: $type")
+        }
+        return type.cast(readGitAttributes(path))
+    }
+
+    override fun readAttributes(path: Path, attributes: String, vararg options: LinkOption): Map<String, Any?> {
+        val view = if (attributes.contains(':')) attributes.substringBefore(':') else "basic"
+        if (view != "basic") {
+            throw UnsupportedOperationException("Only basic attributes are supported: $attributes")
+        }
+        val gitAttributes = readGitAttributes(path)
+        val values = mapOf(
+                "size" to gitAttributes.size(),
+                "lastModifiedTime" to gitAttributes.lastModifiedTime(),
+                "lastAccessTime" to gitAttributes.lastAccessTime(),
+                "creationTime" to gitAttributes.creationTime(),
+                "isRegularFile" to gitAttributes.isRegularFile,
+                "isDirectory" to gitAttributes.isDirectory,
+                "isSymbolicLink" to gitAttributes.isSymbolicLink,
+                "isOther" to gitAttributes.isOther,
+                "fileKey" to gitAttributes.fileKey())
+        val names = attributes.substringAfter(':').split(',').map { it.trim() }
+        return if ("*" in names) values else values.filterKeys { it in names }
+    }
+
+    override fun setAttribute(path: Path, attribute: String, value: Any?, vararg options: LinkOption) =
+            throw ReadOnlyFileSystemException()
+
+    /**
+     * Reads the attributes of the file or directory at a path.
+     * @param path the path.
+     * @return the attributes.
+     */
+    private fun readGitAttributes(path: Path): GitFileAttributes {
+        val gitPath = checkPath(path)
+        val entry = gitPath.fileSystem.checkExists(gitPath)
+        return GitFileAttributes(entry) { gitPath.fileSystem.readSize(entry) }
+    }
+
+    /**
+     * Checks that a path is a path of a git file system.
+     * @param path the path.
+     * @return the path as a [GitPath].
+     */
+    private fun checkPath(path: Path): GitPath = path as? GitPath ?: throw ProviderMismatchException("Not a git path: $path")
+
+    /**
+     * The attributes of a file or directory in a git file system; the size of a file is only read if it is asked for.
+     * @param entry the tree entry of the file or directory.
+     * @param sizeReader reads the size of the file.
+     */
+    private class GitFileAttributes(private val entry: GitTreeEntry, sizeReader: () -> Long) : BasicFileAttributes {
+
+        /**
+         * The size of the file; 0 for a directory.
+         */
+        private val size by lazy { if (entry.isDirectory) 0L else sizeReader() }
+
+        override fun lastModifiedTime(): FileTime = EPOCH
+
+        override fun lastAccessTime(): FileTime = EPOCH
+
+        override fun creationTime(): FileTime = EPOCH
+
+        override fun isRegularFile(): Boolean = entry.isRegularFile
+
+        override fun isDirectory(): Boolean = entry.isDirectory
+
+        override fun isSymbolicLink(): Boolean = false
+
+        override fun isOther(): Boolean = !entry.isRegularFile && !entry.isDirectory
+
+        override fun size(): Long = size
+
+        override fun fileKey(): Any = entry.objectId
+
+        companion object {
+
+            /**
+             * The time given to every file, since a tree does not record times.
+             */
+            private val EPOCH = FileTime.fromMillis(0)
+        }
+    }
+
+    /**
+     * A read-only channel over the contents of a file.
+     * @param contents the contents of the file.
+     */
+    private class ByteArrayChannel(private val contents: ByteArray) : SeekableByteChannel {
+
+        /**
+         * The position of the next byte to be read.
+         */
+        private var position = 0L
+
+        /**
+         * Whether the channel is open.
+         */
+        private var open = true
+
+        override fun read(dst: ByteBuffer): Int {
+            checkOpen()
+            if (position >= contents.size) {
+                return -1
+            }
+            val length = minOf(dst.remaining().toLong(), contents.size - position).toInt()
+            dst.put(contents, position.toInt(), length)
+            position += length
+            return length
+        }
+
+        override fun write(src: ByteBuffer): Int = throw NonWritableChannelException()
+
+        override fun position(): Long {
+            checkOpen()
+            return position
+        }
+
+        override fun position(newPosition: Long): SeekableByteChannel {
+            checkOpen()
+            if (newPosition < 0) {
+                throw IllegalArgumentException("Negative position: $newPosition")
+            }
+            position = newPosition
+            return this
+        }
+
+        override fun size(): Long {
+            checkOpen()
+            return contents.size.toLong()
+        }
+
+        override fun truncate(size: Long): SeekableByteChannel = throw NonWritableChannelException()
+
+        override fun isOpen(): Boolean = open
+
+        override fun close() {
+            open = false
+        }
+
+        /**
+         * Checks that the channel is open.
+         */
+        private fun checkOpen() {
+            if (!open) {
+                throw ClosedChannelException()
+            }
+        }
+    }
+}
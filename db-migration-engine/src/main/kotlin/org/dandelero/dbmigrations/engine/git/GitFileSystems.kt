@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+import java.io.File
+import java.io.IOException
+import java.nio.file.FileSystem
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+
+/**
+ * Opens a directory of a commit in a local git repository as a read-only file system, so that the modules, versions
+ * and delta scripts of any revision are read by the directory services straight from the object database of the
+ * repository, without the revision being checked out.
+ * <br />
+ * Created at: 18/10/26 12:40 pm
+ * @author dandelero
+ */
+object GitFileSystems {
+
+    /**
+     * The provider of the git file systems.
+     */
+    private val provider = GitFileSystemProvider()
+
+    /**
+     * Opens a directory of a revision of a repository as a file system, which the caller is to close; the root
+     * directory of the file system is that directory.
+     * @param path the path of the directory within the working tree (or the git directory) of the repository; it need
+     * not exist in the working tree, which need not exist at all.
+     * @param revision the revision (e.g. a tag, branch or commit id) to be read.
+     * @return the file system of the directory.
+     * @throws ApplicationException if the path is not within a repository, the revision cannot be resolved, or the
+     * directory does not exist in the revision.
+     */
+    fun open(path: File, revision: String): FileSystem {
+        val (gitDirectory, names) = GitRepository.locate(path)
+                ?: throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails(
+                        "Not within a git repository: ${path.absolutePath}"))
+
+        return try {
+            val repository = GitRepository(gitDirectory)
+            var treeId = repository.resolveTree(revision)
+            names.forEach { name ->
+                treeId = repository.readTree(treeId).firstOrNull { it.name == name && it.isDirectory }?.objectId
+                        ?: throw ApplicationException(ErrorCode.MISSING_RESOURCE.withDetails(
+                                "No '${names.joinToString("/")}' directory in revision '$revision' of ${gitDirectory.absolutePath}"))
+            }
+            GitFileSystem(provider, repository, revision, names, treeId)
+        } catch (e: IOException) {
+            throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails(
+                    "Failed to read revision '$revision' of ${gitDirectory.absolutePath}: ${e.message}"), e)
+        }
+    }
+}
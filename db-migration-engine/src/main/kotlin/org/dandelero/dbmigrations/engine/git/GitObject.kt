@@ -0,0 +1,96 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+/**
+ * The types of the objects in a git object database, with the codes they are given in pack files.
+ * <br />
+ * Created at: 18/10/26 10:05 am
+ *
+ * @param typeName the name of the type in the header of a loose object.
+ * @param packCode the code of the type in the header of a packed object.
+ * @author dandelero
+ */
+enum class GitObjectType(val typeName: String, val packCode: Int) {
+    COMMIT("commit", 1),
+    TREE("tree", 2),
+    BLOB("blob", 3),
+    TAG("tag", 4);
+
+    companion object {
+
+        /**
+         * @param typeName the name of the type.
+         * @return the type with the given name; null if there is none.
+         */
+        fun ofName(typeName: String): GitObjectType? = values().firstOrNull { it.typeName == typeName }
+
+        /**
+         * @param packCode the code of the type in a pack file.
+         * @return the type with the given code; null if there is none (e.g. the code of a delta).
+         */
+        fun ofPackCode(packCode: Int): GitObjectType? = values().firstOrNull { it.packCode == packCode }
+    }
+}
+
+/**
+ * An object read from a git object database.
+ * <br />
+ * Created at: 18/10/26 10:05 am
+ *
+ * @param type the type of the object.
+ * @param data the contents of the object.
+ * @author dandelero
+ */
+class GitObject(val type: GitObjectType, val data: ByteArray)
+
+/**
+ * An entry of a git tree object.
+ * <br />
+ * Created at: 18/10/26 10:05 am
+ *
+ * @param name the name of the entry.
+ * @param mode the file mode of the entry.
+ * @param objectId the id of the object (a tree for a directory, otherwise a blob) of the entry.
+ * @author dandelero
+ */
+data class GitTreeEntry(val name: String, val mode: Int, val objectId: String) {
+
+    /**
+     * Whether the entry is a directory (i.e. a tree).
+     */
+    val isDirectory: Boolean get() = mode and FILE_TYPE_MASK == DIRECTORY_TYPE
+
+    /**
+     * Whether the entry is a regular file, as opposed to a symbolic link or a submodule.
+     */
+    val isRegularFile: Boolean get() = mode and FILE_TYPE_MASK == REGULAR_FILE_TYPE
+
+    companion object {
+
+        /**
+         * The bits of a mode that give the type of file.
+         */
+        private const val FILE_TYPE_MASK = 0xF000
+
+        /**
+         * The file type of a directory.
+         */
+        private const val DIRECTORY_TYPE = 0x4000
+
+        /**
+         * The file type of a regular file.
+         */
+        private const val REGULAR_FILE_TYPE = 0x8000
+    }
+}
@@ -0,0 +1,500 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+import java.io.File
+import java.io.IOException
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.StandardOpenOption
+import java.util.zip.DataFormatException
+import java.util.zip.Inflater
+
+/**
+ * A git pack file and its index, through which the objects in the pack are looked up and read. Both files are memory
+ * mapped, so pack files of up to 2 GB are supported.
+ * <br />
+ * Objects stored as deltas, against a base object in the same pack (by offset) or anywhere in the object database (by
+ * id), are read by applying the delta to the base object. The base objects in the pack are kept in a small cache,
+ * keyed by their position, so that a base shared by several deltas, or at the root of a chain of deltas, is inflated
+ * once rather than for every delta read.
+ * <br />
+ * Created at: 18/10/26 10:20 am
+ *
+ * @param packFile the pack file.
+ * @param indexFile the index of the pack file.
+ * @param deltaBaseCacheSize the total size, in bytes, of the base objects that may be cached; 0 disables the cache.
+ * @author dandelero
+ */
+class GitPackFile(
+    private val packFile: File,
+    indexFile: File,
+    private val deltaBaseCacheSize: Long = DEFAULT_DELTA_BASE_CACHE_SIZE
+) {
+
+    /**
+     * The mapped index file.
+     */
+    private val index = map(indexFile)
+
+    /**
+     * The mapped pack file.
+     */
+    private val pack = map(packFile)
+
+    /**
+     * Whether the index is a version 2 index, as opposed to a (legacy) version 1 index.
+     */
+    private val versionTwoIndex = index.capacity() >= 8 && index.getInt(0) == INDEX_V2_SIGNATURE
+
+    /**
+     * The position of the fan-out table of the index.
+     */
+    private val fanOutPosition = if (versionTwoIndex) 8 else 0
+
+    /**
+     * The number of objects in the pack.
+     */
+    private val objectCount = index.getInt(fanOutPosition + 255 * 4)
+
+    /**
+     * The cached base objects, in least recently used order, keyed by their position in the pack.
+     */
+    private val deltaBases = LinkedHashMap<Long, GitObject>(16, 0.75f, true)
+
+    /**
+     * The total size of the cached base objects.
+     */
+    private var deltaBasesSize = 0L
+
+    /**
+     * The number of base objects that were served from the cache.
+     */
+    var deltaBaseHitCount = 0L
+        @Synchronized get
+        private set
+
+    init {
+        if (versionTwoIndex && index.getInt(4) != 2) {
+            throw IOException("Unsupported pack index version ${index.getInt(4)}: ${indexFile.absolutePath}")
+        }
+        if (pack.capacity() < 12 || pack.getInt(0) != PACK_SIGNATURE) {
+            throw IOException("Not a pack file: ${packFile.absolutePath}")
+        }
+    }
+
+    /**
+     * Finds the position of an object in the pack.
+     * @param objectId the id of the object.
+     * @return the position of the object in the pack; null if the object is not in the pack.
+     */
+    fun findOffset(objectId: ByteArray): Long? {
+        val firstByte = objectId[0].toInt() and 0xff
+        var low = if (firstByte == 0) 0 else index.getInt(fanOutPosition + (firstByte - 1) * 4)
+        var high = index.getInt(fanOutPosition + firstByte * 4)
+        while (low < high) {
+            val middle = (low + high) ushr 1
+            val comparison = compareObjectId(middle, objectId)
+            when {
+                comparison < 0 -> low = middle + 1
+                comparison > 0 -> high = middle
+                else -> return offsetAt(middle)
+            }
+        }
+        return null
+    }
+
+    /**
+     * Reads the object at a position in the pack.
+     * @param offset the position of the object.
+     * @param baseObjectReader reads a base object, by its id, that is outside of this pack.
+     * @return the object.
+     * @throws IOException if the object cannot be read.
+     */
+    fun readObject(offset: Long, baseObjectReader: (String) -> GitObject): GitObject {
+        val header = readHeader(offset)
+        return when (header.typeCode) {
+            OFS_DELTA, REF_DELTA -> {
+                val base = if (header.typeCode == OFS_DELTA) {
+                    readBaseObject(header.baseOffset, baseObjectReader)
+                } else {
+                    // A base identified by its id is usually in the same pack, where it is cached like any other.
+                    findOffset(header.baseObjectId!!.hexToBytes())?.let { readBaseObject(it, baseObjectReader) }
+                            ?: baseObjectReader(header.baseObjectId)
+                }
+                GitObject(base.type, applyDelta(base.data, inflate(header.dataPosition, header.size)))
+            }
+            else -> {
+                val type = GitObjectType.ofPackCode(header.typeCode)
+                        ?: throw IOException("Unknown object type ${header.typeCode} at $offset in ${packFile.absolutePath}")
+                GitObject(type, inflate(header.dataPosition, header.size))
+            }
+        }
+    }
+
+    /**
+     * Reads a base object of a delta through the cache. The object is read outside the lock, so that reads of
+     * different objects are not serialised.
+     * @param offset the position of the base object.
+     * @param baseObjectReader reads a base object, by its id, that is outside of this pack.
+     * @return the base object.
+     */
+    private fun readBaseObject(offset: Long, baseObjectReader: (String) -> GitObject): GitObject {
+        synchronized(this) {
+            deltaBases[offset]?.let {
+                deltaBaseHitCount++
+                return it
+            }
+        }
+        val base = readObject(offset, baseObjectReader)
+        if (base.data.size <= deltaBaseCacheSize) {
+            synchronized(this) {
+                if (deltaBases.put(offset, base) == null) {
+                    deltaBasesSize += base.data.size
+                }
+                val iterator = deltaBases.values.iterator()
+                while (deltaBasesSize > deltaBaseCacheSize && iterator.hasNext()) {
+                    deltaBasesSize -= iterator.next().data.size
+                    iterator.remove()
+                }
+            }
+        }
+        return base
+    }
+
+    /**
+     * Reads the size of the object at a position in the pack without reading the object; for a delta only the start
+     * of the delta, which holds the size of the object it produces, is read.
+     * @param offset the position of the object.
+     * @return the size of the object.
+     * @throws IOException if the object cannot be read.
+     */
+    fun readObjectSize(offset: Long): Long {
+        val header = readHeader(offset)
+        if (header.typeCode != OFS_DELTA && header.typeCode != REF_DELTA) {
+            return header.size
+        }
+        val deltaStart = inflate(header.dataPosition, minOf(header.size, MAX_DELTA_HEADER_SIZE))
+        return DeltaReader(deltaStart).run {
+            readVarInt()
+            readVarInt()
+        }
+    }
+
+    /**
+     * Reads the header of the object at a position in the pack.
+     * @param offset the position of the object.
+     * @return the header.
+     */
+    private fun readHeader(offset: Long): ObjectHeader {
+        if (offset < 12 || offset >= pack.capacity()) {
+            throw IOException("Invalid object position $offset in ${packFile.absolutePath}")
+        }
+        var position = offset.toInt()
+        var byte = pack.get(position++).toInt() and 0xff
+        val typeCode = (byte shr 4) and 0x07
+        var size = (byte and 0x0f).toLong()
+        var shift = 4
+        while (byte and 0x80 != 0) {
+            byte = pack.get(position++).toInt() and 0xff
+            size = size or ((byte and 0x7f).toLong() shl shift)
+            shift += 7
+        }
+
+        return when (typeCode) {
+            OFS_DELTA -> {
+                byte = pack.get(position++).toInt() and 0xff
+                var distance = (byte and 0x7f).toLong()
+                while (byte and 0x80 != 0) {
+                    byte = pack.get(position++).toInt() and 0xff
+                    distance = ((distance + 1) shl 7) or (byte and 0x7f).toLong()
+                }
+                ObjectHeader(typeCode, size, position, baseOffset = offset - distance)
+            }
+            REF_DELTA -> {
+                val baseObjectId = ByteArray(OBJECT_ID_SIZE)
+                val buffer = pack.duplicate()
+                buffer.position(position)
+                buffer.get(baseObjectId)
+                ObjectHeader(typeCode, size, position + OBJECT_ID_SIZE, baseObjectId = baseObjectId.toHexString())
+            }
+            else -> ObjectHeader(typeCode, size, position)
+        }
+    }
+
+    /**
+     * Inflates the compressed data that starts at a position in the pack.
+     * @param position the position of the compressed data.
+     * @param size the number of bytes to be inflated.
+     * @return the inflated bytes.
+     */
+    private fun inflate(position: Int, size: Long): ByteArray {
+        if (size > Int.MAX_VALUE) {
+            throw IOException("Object of $size bytes is too large to be read from ${packFile.absolutePath}")
+        }
+        val output = ByteArray(size.toInt())
+        val input = pack.duplicate()
+        input.position(position)
+        val chunk = ByteArray(INFLATE_CHUNK_SIZE)
+        val inflater = Inflater()
+        try {
+            var written = 0
+            while (written < output.size) {
+                if (inflater.needsInput()) {
+                    val length = minOf(chunk.size, input.remaining())
+                    if (length == 0) {
+                        throw IOException("Truncated object data in ${packFile.absolutePath}")
+                    }
+                    input.get(chunk, 0, length)
+                    inflater.setInput(chunk, 0, length)
+                }
+                val inflated = inflater.inflate(output, written, output.size - written)
+                if (inflated == 0 && (inflater.finished() || inflater.needsDictionary())) {
+                    throw IOException("Corrupt object data in ${packFile.absolutePath}")
+                }
+                written += inflated
+            }
+        } catch (e: DataFormatException) {
+            throw IOException("Corrupt object data in ${packFile.absolutePath}", e)
+        } finally {
+            inflater.end()
+        }
+        return output
+    }
+
+    /**
+     * Applies a delta to its base object.
+     * @param base the contents of the base object.
+     * @param delta the delta.
+     * @return the contents of the object that the delta produces.
+     */
+    private fun applyDelta(base: ByteArray, delta: ByteArray): ByteArray {
+        val reader = DeltaReader(delta)
+        try {
+            if (reader.readVarInt() != base.size.toLong()) {
+                throw IOException("Delta does not apply to its base object in ${packFile.absolutePath}")
+            }
+            val output = ByteArray(reader.readVarInt().toInt())
+            var written = 0
+            while (reader.hasRemaining()) {
+                val instruction = reader.readByte()
+                if (instruction and 0x80 != 0) {
+                    // Copy a range of the base object.
+                    var copyOffset = 0L
+                    var copySize = 0
+                    for (i in 0 until 4) {
+                        if (instruction and (1 shl i) != 0) {
+                            copyOffset = copyOffset or (reader.readByte().toLong() shl (8 * i))
+                        }
+                    }
+                    for (i in 0 until 3) {
+                        if (instruction and (0x10 shl i) != 0) {
+                            copySize = copySize or (reader.readByte() shl (8 * i))
+                        }
+                    }
+                    if (copySize == 0) {
+                        copySize = 0x10000
+                    }
+                    System.arraycopy(base, copyOffset.toInt(), output, written, copySize)
+                    written += copySize
+                } else if (instruction != 0) {
+                    // Insert the bytes that follow the instruction.
+                    reader.readBytes(output, written, instruction)
+                    written += instruction
+                } else {
+                    throw IOException("Invalid delta instruction in ${packFile.absolutePath}")
+                }
+            }
+            if (written != output.size) {
+                throw IOException("Delta produced ${written} of ${output.size} bytes in ${packFile.absolutePath}")
+            }
+            return output
+        } catch (e: IndexOutOfBoundsException) {
+            throw IOException("Corrupt delta in ${packFile.absolutePath}", e)
+        }
+    }
+
+    /**
+     * Compares the id of an object in the index with the given id.
+     * @param entry the number of the object in the index.
+     * @param objectId the id to compare it with.
+     * @return the (unsigned) comparison of the ids.
+     */
+    private fun compareObjectId(entry: Int, objectId: ByteArray): Int {
+        val position = if (versionTwoIndex) {
+            fanOutPosition + 256 * 4 + entry * OBJECT_ID_SIZE
+        } else {
+            fanOutPosition + 256 * 4 + entry * (4 + OBJECT_ID_SIZE) + 4
+        }
+        for (i in 0 until OBJECT_ID_SIZE) {
+            val comparison = (index.get(position + i).toInt() and 0xff) - (objectId[i].toInt() and 0xff)
+            if (comparison != 0) {
+                return comparison
+            }
+        }
+        return 0
+    }
+
+    /**
+     * Gets the position in the pack of an object in the index.
+     * @param entry the number of the object in the index.
+     * @return the position of the object in the pack.
+     */
+    private fun offsetAt(entry: Int): Long {
+        if (!versionTwoIndex) {
+            return index.getInt(fanOutPosition + 256 * 4 + entry * (4 + OBJECT_ID_SIZE)).toLong() and 0xffffffffL
+        }
+        val offsetsPosition = fanOutPosition + 256 * 4 + objectCount * (OBJECT_ID_SIZE + 4)
+        val offset = index.getInt(offsetsPosition + entry * 4)
+        if (offset and LARGE_OFFSET_FLAG == 0) {
+            return offset.toLong()
+        }
+        val largeOffsetsPosition = offsetsPosition + objectCount * 4
+        return index.getLong(largeOffsetsPosition + (offset and LARGE_OFFSET_FLAG.inv()) * 8)
+    }
+
+    /**
+     * The header of an object in the pack.
+     * @param typeCode the type code of the object.
+     * @param size the size of the object; the size of the delta for a delta.
+     * @param dataPosition the position of the compressed data of the object.
+     * @param baseOffset the position of the base object of an offset delta.
+     * @param baseObjectId the id of the base object of a reference delta.
+     */
+    private class ObjectHeader(
+        val typeCode: Int,
+        val size: Long,
+        val dataPosition: Int,
+        val baseOffset: Long = -1,
+        val baseObjectId: String? = null
+    )
+
+    /**
+     * Reads the instructions of a delta.
+     * @param delta the delta.
+     */
+    private class DeltaReader(private val delta: ByteArray) {
+
+        /**
+         * The position of the next byte to be read.
+         */
+        private var position = 0
+
+        /**
+         * @return whether there are bytes left to be read.
+         */
+        fun hasRemaining(): Boolean = position < delta.size
+
+        /**
+         * @return the next byte, as an unsigned value.
+         */
+        fun readByte(): Int = delta[position++].toInt() and 0xff
+
+        /**
+         * Reads bytes into an array.
+         * @param target the array to be read into.
+         * @param offset the position in the array to read into.
+         * @param length the number of bytes to be read.
+         */
+        fun readBytes(target: ByteArray, offset: Int, length: Int) {
+            System.arraycopy(delta, position, target, offset, length)
+            position += length
+        }
+
+        /**
+         * @return the next variable-length integer, which holds 7 bits per byte, least significant first.
+         */
+        fun readVarInt(): Long {
+            var value = 0L
+            var shift = 0
+            do {
+                val byte = readByte()
+                value = value or ((byte and 0x7f).toLong() shl shift)
+                shift += 7
+            } while (byte and 0x80 != 0)
+            return value
+        }
+    }
+
+    companion object {
+
+        /**
+         * The signature at the start of a pack file: "PACK".
+         */
+        private const val PACK_SIGNATURE = 0x5041434b
+
+        /**
+         * The signature at the start of a version 2 pack index.
+         */
+        private const val INDEX_V2_SIGNATURE = -0x8bb09d
+
+        /**
+         * The flag of an offset in a version 2 index that refers to the table of large offsets.
+         */
+        private const val LARGE_OFFSET_FLAG = 0x80000000.toInt()
+
+        /**
+         * The type code of a delta against a base object at an earlier position in the pack.
+         */
+        private const val OFS_DELTA = 6
+
+        /**
+         * The type code of a delta against a base object identified by its id.
+         */
+        private const val REF_DELTA = 7
+
+        /**
+         * The most bytes that the start of a delta, which holds the sizes of the base and resulting objects, takes.
+         */
+        private const val MAX_DELTA_HEADER_SIZE = 32L
+
+        /**
+         * The default total size, in bytes, of the cached base objects of deltas.
+         */
+        const val DEFAULT_DELTA_BASE_CACHE_SIZE = 8L * 1024 * 1024
+
+        /**
+         * The number of compressed bytes given to the inflater at a time.
+         */
+        private const val INFLATE_CHUNK_SIZE = 8 * 1024
+
+        /**
+         * Maps a file into memory.
+         * @param file the file.
+         * @return the mapped file.
+         */
+        private fun map(file: File): ByteBuffer {
+            return FileChannel.open(file.toPath(), StandardOpenOption.READ).use { channel ->
+                if (channel.size() > Int.MAX_VALUE) {
+                    throw IOException("Pack files larger than 2 GB are not supported: ${file.absolutePath}")
+                }
+                channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+            }
+        }
+    }
+}
+
+/**
+ * The number of bytes in an object id.
+ */
+internal const val OBJECT_ID_SIZE = 20
+
+/**
+ * @return the hexadecimal form of these bytes.
+ */
+internal fun ByteArray.toHexString(): String = joinToString("") { "%02x".format(it.toInt() and 0xff) }
+
+/**
+ * @return the bytes of this hexadecimal string.
+ */
+internal fun String.hexToBytes(): ByteArray = ByteArray(length / 2) { i -> substring(2 * i, 2 * i + 2).toInt(16).toByte() }
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+import java.io.File
+import java.net.URI
+import java.nio.file.LinkOption
+import java.nio.file.Path
+import java.nio.file.ProviderMismatchException
+import java.nio.file.WatchEvent
+import java.nio.file.WatchKey
+import java.nio.file.WatchService
+
+/**
+ * A [Path] within a [GitFileSystem]; names are separated by '/'.
+ * <br />
+ * Created at: 18/10/26 11:30 am
+ *
+ * @param fileSystem the file system of the path.
+ * @param names the names of the path.
+ * @param absolute whether the path is absolute, i.e. starts at the root of the file system.
+ * @author dandelero
+ */
+class GitPath internal constructor(
+    private val fileSystem: GitFileSystem,
+    internal val names: List<String>,
+    private val absolute: Boolean
+) : Path {
+
+    override fun getFileSystem(): GitFileSystem = fileSystem
+
+    override fun isAbsolute(): Boolean = absolute
+
+    override fun getRoot(): Path? = if (absolute) GitPath(fileSystem, emptyList(), true) else null
+
+    override fun getFileName(): Path? = names.lastOrNull()?.let { GitPath(fileSystem, listOf(it), false) }
+
+    override fun getParent(): Path? {
+        return when {
+            names.size > 1 || (absolute && names.size == 1) -> GitPath(fileSystem, names.dropLast(1), absolute)
+            else -> null
+        }
+    }
+
+    override fun getNameCount(): Int = names.size
+
+    override fun getName(index: Int): Path {
+        if (index < 0 || index >= names.size) {
+            throw IllegalArgumentException("Invalid name index $index for $this")
+        }
+        return GitPath(fileSystem, listOf(names[index]), false)
+    }
+
+    override fun subpath(beginIndex: Int, endIndex: Int): Path {
+        if (beginIndex < 0 || beginIndex >= endIndex || endIndex > names.size) {
+            throw IllegalArgumentException("Invalid subpath [$beginIndex, $endIndex) of $this")
+        }
+        return GitPath(fileSystem, names.subList(beginIndex, endIndex).toList(), false)
+    }
+
+    override fun startsWith(other: Path): Boolean {
+        val otherPath = other as? GitPath ?: return false
+        return otherPath.fileSystem == fileSystem && otherPath.absolute == absolute &&
+                otherPath.names.size <= names.size && names.subList(0, otherPath.names.size) == otherPath.names
+    }
+
+    override fun startsWith(other: String): Boolean = startsWith(fileSystem.getPath(other))
+
+    override fun endsWith(other: Path): Boolean {
+        val otherPath = other as? GitPath ?: return false
+        if (otherPath.absolute) {
+            return this == otherPath
+        }
+        return otherPath.fileSystem == fileSystem && otherPath.names.size <= names.size &&
+                names.subList(names.size - otherPath.names.size, names.size) == otherPath.names
+    }
+
+    override fun endsWith(other: String): Boolean = endsWith(fileSystem.getPath(other))
+
+    override fun normalize(): Path {
+        val normalized = mutableListOf<String>()
+        names.forEach { name ->
+            when {
+                name == "." -> Unit
+                name == ".." && normalized.isNotEmpty() && normalized.last() != ".." -> normalized.removeAt(normalized.size - 1)
+                name == ".." && absolute -> Unit
+                else -> normalized.add(name)
+            }
+        }
+        return GitPath(fileSystem, normalized, absolute)
+    }
+
+    override fun resolve(other: Path): Path {
+        val otherPath = checkPath(other)
+        return when {
+            otherPath.absolute -> otherPath
+            otherPath.names.isEmpty() -> this
+            else -> GitPath(fileSystem, names + otherPath.names, absolute)
+        }
+    }
+
+    override fun resolve(other: String): Path = resolve(fileSystem.getPath(other))
+
+    override fun resolveSibling(other: Path): Path = parent?.resolve(other) ?: other
+
+    override fun resolveSibling(other: String): Path = resolveSibling(fileSystem.getPath(other))
+
+    override fun relativize(other: Path): Path {
+        val otherPath = checkPath(other)
+        if (otherPath.absolute != absolute) {
+            throw IllegalArgumentException("Cannot relativize $other against $this")
+        }
+        var common = 0
+        while (common < names.size && common < otherPath.names.size && names[common] == otherPath.names[common]) {
+            common++
+        }
+        return GitPath(fileSystem, List(names.size - common) { ".." } + otherPath.names.drop(common), false)
+    }
+
+    override fun toUri(): URI = fileSystem.toUri(toAbsolutePath() as GitPath)
+
+    override fun toAbsolutePath(): Path = if (absolute) this else GitPath(fileSystem, names, true)
+
+    override fun toRealPath(vararg options: LinkOption): Path {
+        val realPath = toAbsolutePath().normalize() as GitPath
+        fileSystem.checkExists(realPath)
+        return realPath
+    }
+
+    override fun toFile(): File = throw UnsupportedOperationException("A path within a git repository is not a file: $this")
+
+    override fun register(watcher: WatchService, events: Array<out WatchEvent.Kind<*>>, vararg modifiers: WatchEvent.Modifier): WatchKey =
+            throw UnsupportedOperationException("A git file system cannot be watched")
+
+    override fun register(watcher: WatchService, vararg events: WatchEvent.Kind<*>): WatchKey =
+            throw UnsupportedOperationException("A git file system cannot be watched")
+
+    override fun iterator(): MutableIterator<Path> =
+            names.map<String, Path> { GitPath(fileSystem, listOf(it), false) }.toMutableList().iterator()
+
+    override fun compareTo(other: Path): Int = toString().compareTo(checkPath(other).toString())
+
+    override fun equals(other: Any?): Boolean {
+        return other is GitPath && other.fileSystem == fileSystem && other.absolute == absolute && other.names == names
+    }
+
+    override fun hashCode(): Int = 31 * names.hashCode() + absolute.hashCode()
+
+    override fun toString(): String = (if (absolute) "/" else "") + names.joinToString("/")
+
+    /**
+     * Checks that a path is of the same file system as this one.
+     * @param other the path.
+     * @return the path as a [GitPath].
+     */
+    private fun checkPath(other: Path): GitPath {
+        if (other !is GitPath || other.fileSystem != fileSystem) {
+            throw ProviderMismatchException("Not a path of the same git file system: $other")
+        }
+        return other
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+import java.io.File
+import java.io.IOException
+import java.io.InputStream
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.InflaterInputStream
+
+/**
+ * A local git repository, whose commits, trees and blobs are read straight from its object database - loose objects
+ * and pack files alike - so that the contents of any commit can be read without it being checked out.
+ * <br />
+ * Revisions are resolved through the loose and packed references of the repository; a revision is a full object id, a
+ * reference (e.g. 'HEAD' or 'refs/tags/1.0.0'), or the short name of a tag, branch or remote branch. Annotated tags
+ * are peeled to the commit that they tag.
+ * <br />
+ * Created at: 18/10/26 10:45 am
+ *
+ * @param gitDirectory the git directory (e.g. the '.git' directory of a working tree, or a bare repository).
+ * @author dandelero
+ */
+class GitRepository(val gitDirectory: File) {
+
+    /**
+     * The directory holding the objects and references that are shared by all the worktrees of the repository.
+     */
+    private val commonDirectory = File(gitDirectory, "commondir").takeIf { it.isFile }
+            ?.let { File(gitDirectory, it.readText().trim()).canonicalFile } ?: gitDirectory
+
+    /**
+     * The directory of the object database.
+     */
+    private val objectsDirectory = File(commonDirectory, "objects")
+
+    /**
+     * The pack files of the object database.
+     */
+    private val packFiles: List<GitPackFile> by lazy {
+        File(objectsDirectory, "pack").listFiles { file -> file.name.endsWith(".idx") }.orEmpty()
+                .map { indexFile -> Pair(File(indexFile.parentFile, "${indexFile.nameWithoutExtension}.pack"), indexFile) }
+                .filter { (packFile, _) -> packFile.isFile }
+                .map { (packFile, indexFile) -> GitPackFile(packFile, indexFile) }
+    }
+
+    /**
+     * The trees that have been read, by their ids.
+     */
+    private val trees = ConcurrentHashMap<String, List<GitTreeEntry>>()
+
+    init {
+        if (!objectsDirectory.isDirectory) {
+            throw IOException("Not a git directory: ${gitDirectory.absolutePath}")
+        }
+    }
+
+    /**
+     * Resolves a revision to the tree of the commit that it refers to.
+     * @param revision the revision.
+     * @return the id of the tree.
+     * @throws IOException if the revision cannot be resolved.
+     */
+    fun resolveTree(revision: String): String {
+        var objectId = resolveObjectId(revision) ?: throw IOException("Unknown revision '$revision' in ${gitDirectory.absolutePath}")
+        repeat(MAX_PEELED_TAGS) {
+            val gitObject = readObject(objectId)
+            when (gitObject.type) {
+                GitObjectType.TREE -> return objectId
+                GitObjectType.COMMIT -> return headerValue(gitObject, "tree")
+                GitObjectType.TAG -> objectId = headerValue(gitObject, "object")
+                GitObjectType.BLOB -> throw IOException("Revision '$revision' refers to a blob, not a commit")
+            }
+        }
+        throw IOException("Too many nested tags for revision '$revision'")
+    }
+
+    /**
+     * Reads the entries of a tree; trees are cached once read.
+     * @param treeId the id of the tree.
+     * @return the entries of the tree.
+     * @throws IOException if the object is not a tree or cannot be read.
+     */
+    fun readTree(treeId: String): List<GitTreeEntry> {
+        trees[treeId]?.let { return it }
+
+        val gitObject = readObject(treeId)
+        if (gitObject.type != GitObjectType.TREE) {
+            throw IOException("Object $treeId is a ${gitObject.type.typeName}, not a tree")
+        }
+        val data = gitObject.data
+        val entries = mutableListOf<GitTreeEntry>()
+        var position = 0
+        while (position < data.size) {
+            val space = indexOf(data, ' '.toByte(), position)
+            val terminator = indexOf(data, 0, space + 1)
+            if (space < 0 || terminator < 0 || terminator + OBJECT_ID_SIZE >= data.size) {
+                throw IOException("Corrupt tree $treeId")
+            }
+            val mode = String(data, position, space - position, Charsets.US_ASCII).toInt(8)
+            val name = String(data, space + 1, terminator - space - 1, Charsets.UTF_8)
+            val objectId = data.copyOfRange(terminator + 1, terminator + 1 + OBJECT_ID_SIZE).toHexString()
+            entries.add(GitTreeEntry(name, mode, objectId))
+            position = terminator + 1 + OBJECT_ID_SIZE
+        }
+        trees[treeId] = entries
+        return entries
+    }
+
+    /**
+     * Reads an object from the object database.
+     * @param objectId the id of the object.
+     * @return the object.
+     * @throws IOException if the object does not exist or cannot be read.
+     */
+    fun readObject(objectId: String): GitObject {
+        val looseObject = looseObjectFile(objectId)
+        if (looseObject.isFile) {
+            return openLooseObject(looseObject).use { input ->
+                val (type, _) = readLooseObjectHeader(input, objectId)
+                GitObject(type, input.readBytes())
+            }
+        }
+
+        val objectIdBytes = objectId.hexToBytes()
+        packFiles.forEach { packFile ->
+            packFile.findOffset(objectIdBytes)?.let { offset -> return packFile.readObject(offset, this::readObject) }
+        }
+        throw IOException("Object $objectId not found in ${objectsDirectory.absolutePath}")
+    }
+
+    /**
+     * Reads the size of an object without reading the whole object.
+     * @param objectId the id of the object.
+     * @return the size of the object.
+     * @throws IOException if the object does not exist or cannot be read.
+     */
+    fun readObjectSize(objectId: String): Long {
+        val looseObject = looseObjectFile(objectId)
+        if (looseObject.isFile) {
+            return openLooseObject(looseObject).use { input -> readLooseObjectHeader(input, objectId).second }
+        }
+
+        val objectIdBytes = objectId.hexToBytes()
+        packFiles.forEach { packFile ->
+            packFile.findOffset(objectIdBytes)?.let { offset -> return packFile.readObjectSize(offset) }
+        }
+        throw IOException("Object $objectId not found in ${objectsDirectory.absolutePath}")
+    }
+
+    /**
+     * Resolves a revision to the id of the object that it refers to.
+     * @param revision the revision.
+     * @return the object id; null if the revision does not refer to an object.
+     */
+    private fun resolveObjectId(revision: String): String? {
+        if (OBJECT_ID_PATTERN.matches(revision)) {
+            return revision.toLowerCase()
+        }
+        return listOf(revision, "refs/$revision", "refs/tags/$revision", "refs/heads/$revision",
+                "refs/remotes/$revision", "refs/remotes/$revision/HEAD")
+                .asSequence()
+                .mapNotNull { readReference(it, 0) }
+                .firstOrNull()
+    }
+
+    /**
+     * Reads a reference, following symbolic references.
+     * @param name the full name of the reference.
+     * @param depth the number of symbolic references that have been followed to reach this one.
+     * @return the object id that the reference refers to; null if there is no such reference.
+     */
+    private fun readReference(name: String, depth: Int): String? {
+        if (depth > MAX_SYMBOLIC_REFERENCES) {
+            throw IOException("Too many symbolic references from '$name'")
+        }
+        val looseReference = listOf(File(gitDirectory, name), File(commonDirectory, name)).firstOrNull { it.isFile }
+        if (looseReference != null) {
+            val value = looseReference.readText().trim()
+            return if (value.startsWith(SYMBOLIC_REFERENCE_PREFIX)) {
+                readReference(value.removePrefix(SYMBOLIC_REFERENCE_PREFIX).trim(), depth + 1)
+            } else {
+                value.takeIf { OBJECT_ID_PATTERN.matches(it) }
+            }
+        }
+        return File(commonDirectory, "packed-refs").takeIf { it.isFile }?.useLines { lines ->
+            lines.filterNot { it.startsWith("#") || it.startsWith("^") }
+                    .map { it.split(' ', limit = 2) }
+                    .firstOrNull { it.size == 2 && it[1].trim() == name }
+                    ?.get(0)
+        }
+    }
+
+    /**
+     * Reads the value of a header of a commit or tag, e.g. the tree of a commit.
+     * @param gitObject the commit or tag.
+     * @param name the name of the header.
+     * @return the value of the header.
+     */
+    private fun headerValue(gitObject: GitObject, name: String): String {
+        return String(gitObject.data, Charsets.UTF_8).lineSequence()
+                .takeWhile { it.isNotEmpty() }
+                .firstOrNull { it.startsWith("$name ") }
+                ?.substringAfter(' ')?.trim()
+                ?: throw IOException("No '$name' in ${gitObject.type.typeName} object")
+    }
+
+    /**
+     * Finds a byte in an array.
+     * @param data the array.
+     * @param byte the byte to be found.
+     * @param fromIndex the position to start looking from.
+     * @return the position of the byte; -1 if it is not found.
+     */
+    private fun indexOf(data: ByteArray, byte: Byte, fromIndex: Int): Int =
+            (maxOf(fromIndex, 0) until data.size).firstOrNull { data[it] == byte } ?: -1
+
+    /**
+     * @param objectId the id of an object.
+     * @return the file that the object is stored in if it is a loose object.
+     */
+    private fun looseObjectFile(objectId: String): File =
+            File(objectsDirectory, "${objectId.substring(0, 2)}/${objectId.substring(2)}")
+
+    /**
+     * Opens a loose object, which is compressed.
+     * @param file the file of the object.
+     * @return the decompressed stream of the object.
+     */
+    private fun openLooseObject(file: File): InputStream = InflaterInputStream(file.inputStream().buffered())
+
+    /**
+     * Reads the header (e.g. 'blob 42') of a loose object.
+     * @param input the decompressed stream of the object.
+     * @param objectId the id of the object.
+     * @return the type and size of the object.
+     */
+    private fun readLooseObjectHeader(input: InputStream, objectId: String): Pair<GitObjectType, Long> {
+        val header = StringBuilder()
+        while (true) {
+            val byte = input.read()
+            if (byte < 0 || header.length > MAX_LOOSE_OBJECT_HEADER_SIZE) {
+                throw IOException("Corrupt loose object $objectId")
+            } else if (byte == 0) {
+                break
+            }
+            header.append(byte.toChar())
+        }
+        val type = GitObjectType.ofName(header.toString().substringBefore(' '))
+        val size = header.toString().substringAfter(' ').toLongOrNull()
+        if (type == null || size == null) {
+            throw IOException("Corrupt loose object $objectId: '$header'")
+        }
+        return Pair(type, size)
+    }
+
+    companion object {
+
+        /**
+         * The pattern of a full object id.
+         */
+        private val OBJECT_ID_PATTERN = Regex("[0-9a-fA-F]{40}")
+
+        /**
+         * The prefix of a symbolic reference.
+         */
+        private const val SYMBOLIC_REFERENCE_PREFIX = "ref:"
+
+        /**
+         * The prefix of the '.git' file that points a linked working tree at its git directory.
+         */
+        private const val GIT_DIRECTORY_FILE_PREFIX = "gitdir:"
+
+        /**
+         * The most symbolic references followed when a reference is read.
+         */
+        private const val MAX_SYMBOLIC_REFERENCES = 5
+
+        /**
+         * The most tags peeled when a revision is resolved.
+         */
+        private const val MAX_PEELED_TAGS = 10
+
+        /**
+         * The longest header of a loose object.
+         */
+        private const val MAX_LOOSE_OBJECT_HEADER_SIZE = 32
+
+        /**
+         * Finds the git directory of the repository that contains a path, which is the path itself, or any of its
+         * parents, that is a working tree or a git directory. The path need not exist in the working tree.
+         * @param path the path.
+         * @return the git directory and the names of the path within the repository, e.g. ['db', 'migrations'];
+         * null if the path is not within a repository.
+         */
+        fun locate(path: File): Pair<File, List<String>>? {
+            val namesWithinRepository = mutableListOf<String>()
+            var directory: File? = path.absoluteFile.normalize()
+            while (directory != null) {
+                gitDirectoryOf(directory)?.let { return Pair(it, namesWithinRepository.reversed()) }
+                namesWithinRepository.add(directory.name)
+                directory = directory.parentFile
+            }
+            return null
+        }
+
+        /**
+         * Gets the git directory of a directory.
+         * @param directory the directory.
+         * @return the '.git' directory of a working tree, or the directory itself if it is a git directory; null if
+         * the directory is neither.
+         */
+        private fun gitDirectoryOf(directory: File): File? {
+            val dotGit = File(directory, ".git")
+            return when {
+                dotGit.isDirectory -> dotGit
+                dotGit.isFile -> dotGit.readText().trim().takeIf { it.startsWith(GIT_DIRECTORY_FILE_PREFIX) }
+                        ?.let { File(it.removePrefix(GIT_DIRECTORY_FILE_PREFIX).trim()) }
+                        ?.let { if (it.isAbsolute) it else File(directory, it.path).canonicalFile }
+                File(directory, "HEAD").isFile && File(directory, "objects").isDirectory -> directory
+                else -> null
+            }
+        }
+    }
+}
@@ -12,13 +12,15 @@
  */
 package org.dandelero.dbmigrations.engine.migration
 
+import org.dandelero.dbmigrations.api.migration.MigrationScriptWriter
+
 /**
  * The name of the default module that has no name but only versions.
  */
 const val DEFAULT_MODULE_NAME: String = "default"
 
 const val KEY_SCRIPT_FILE_NAME: String = "scriptName"
-const val KEY_SCRIPT_CONTENTS: String = "scriptContents"
+const val KEY_SCRIPT_CONTENTS: String = MigrationScriptWriter.KEY_SCRIPT_CONTENTS
 const val KEY_SCRIPT_AUTHOR: String = "scriptAuthor"
 const val KEY_SCRIPT_SEQ_NUMBER: String = "scriptSequenceNumber"
 const val KEY_CHANGE_LOG_TABLE: String = "changeLogTableName"
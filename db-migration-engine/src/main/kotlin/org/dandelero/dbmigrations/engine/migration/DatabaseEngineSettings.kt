@@ -0,0 +1,28 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.migration
+
+/**
+ * Contains the migration script settings that are specific to a database engine.
+ * <br />
+ * Created at: 17/10/26 11:10 am
+ * @param dbChangeLogTableName the changelog table name to be written to.
+ * @param dbStatementDelimiter the value to be written after an SQL statement is written.
+ * @param dbStatementSeparator the separator string between individual database statements.
+ * @author dandelero
+ */
+data class DatabaseEngineSettings(
+    val dbChangeLogTableName: String = "change_log",
+    val dbStatementDelimiter: String = "",
+    val dbStatementSeparator: String = ""
+)
@@ -14,6 +14,13 @@ package org.dandelero.dbmigrations.engine.migration
 
 import java.time.LocalDateTime
 import java.time.format.DateTimeFormatter
+import java.util.Collections
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.delta.DeltaScript
@@ -25,48 +32,162 @@ import org.dandelero.dbmigrations.api.module.Module
 import org.dandelero.dbmigrations.api.module.ModuleService
 import org.dandelero.dbmigrations.api.version.Version
 import org.dandelero.dbmigrations.api.version.VersionService
+import org.dandelero.dbmigrations.engine.concurrent.CancellationSignal
+import org.dandelero.dbmigrations.engine.concurrent.ExecutionBackend
+import org.dandelero.dbmigrations.engine.concurrent.ExecutionBackendFactory
+import org.dandelero.dbmigrations.engine.delta.CachingDeltaScriptService
+import org.dandelero.dbmigrations.engine.delta.InMemoryDeltaScript
+import org.dandelero.dbmigrations.engine.delta.ReadAheadDeltaScripts
+import org.dandelero.dbmigrations.engine.pipeline.Pipeline
+import org.dandelero.dbmigrations.engine.pipeline.PipelineSettings
+import org.dandelero.dbmigrations.engine.pipeline.PipelineStage
+import org.dandelero.dbmigrations.engine.plan.CompositionPlan
+import org.dandelero.dbmigrations.engine.plan.ModulePlan
+import org.dandelero.dbmigrations.engine.plan.PlannedScript
+import org.dandelero.dbmigrations.engine.plan.VersionPlan
+import org.dandelero.dbmigrations.engine.version.VersionRange
 import org.slf4j.LoggerFactory
 
 /**
  * Composes migration scripts that are used to advance or rollback a database version.
  * <br />
+ * Concurrent composition runs on an [ExecutionBackend] that is created on first use; [close] the composer to
+ * release its threads.
+ * <br />
  * Created at: 28/10/19 9:19 pm
  * @author dandelero
  *
  * @param moduleService used to interact with modules.
  * @param versionService used to interact with versions within a module.
- * @param deltaScriptService used to locate delta scripts.
+ * @param deltaScriptService used to locate delta scripts; their contents are read through a cache unless the
+ * settings disable it.
  * @param migrationScriptWriterFactory used to create [MigrationScriptWriter] instances.
  * @param migrationScriptSettings the settings for controlling the script composition.
  */
 class MigrationScriptComposer<M : Module, V : Version>(
     private val moduleService: ModuleService<M>,
     private val versionService: VersionService<M, V>,
-    private val deltaScriptService: DeltaScriptService<M, V>,
+    deltaScriptService: DeltaScriptService<M, V>,
     private val migrationScriptWriterFactory: MigrationScriptWriterFactory,
     private val migrationScriptSettings: MigrationScriptSettings
-) {
+) : AutoCloseable {
 
     /**
      * The logger instance.
      */
     private val logger = LoggerFactory.getLogger(MigrationScriptComposer::class.java)
 
+    /**
+     * Used to locate delta scripts, whose contents are read through a cache if one is configured.
+     */
+    private val deltaScriptService: DeltaScriptService<M, V> = if (migrationScriptSettings.scriptCacheSize > 0) {
+        CachingDeltaScriptService(deltaScriptService, migrationScriptSettings.scriptCacheSize)
+    } else {
+        deltaScriptService
+    }
+
     /**
      * The OS user that is currently running this script.
      */
     private val systemUser: String = System.getProperty("user.name")
 
+    /**
+     * The (lazily created) backend that concurrent units of work are run on.
+     */
+    private val executionBackendInitializer = lazy {
+        ExecutionBackendFactory.create(migrationScriptSettings.executionBackend, migrationScriptSettings.parallelism,
+                "migration-composer-")
+    }
+
+    /**
+     * The backend that concurrent units of work are run on.
+     */
+    private val executionBackend: ExecutionBackend by executionBackendInitializer
+
+    /**
+     * The (lazily created) backend that delta scripts are read ahead on; one thread for each script composed at a time,
+     * unless threads are virtual.<br />
+     * This is kept apart from [executionBackend], as the workers there wait on the reads made here.
+     */
+    private val readAheadBackendInitializer = lazy {
+        ExecutionBackendFactory.create(migrationScriptSettings.executionBackend, migrationScriptSettings.parallelism,
+                "delta-script-read-ahead-")
+    }
+
     /**
      * Composes the migration script for the latest version in each module.
      * @param databaseEngine the database engine to create the migration script for.
      */
     fun composeMigrationScriptForLatestVersion(databaseEngine: String) {
-        logger.info("Starting migration script composition for $databaseEngine")
-        moduleService.listAllModules().forEach { composeMigrationScriptForLatestVersionInModule(databaseEngine, it) }
+        composeMigrationScriptForLatestVersion(listOf(databaseEngine))
+    }
+
+    /**
+     * Composes the migration script for the latest version in each module, for each of the given database engines.
+     * @param databaseEngines the database engines to create the migration script for.
+     */
+    fun composeMigrationScriptForLatestVersion(databaseEngines: List<String>) {
+        logger.info("Starting migration script composition for $databaseEngines")
+        composeMigrationScriptForLatestVersionInModules(databaseEngines, moduleService.listAllModules())
         logger.info("Migration script composition completed")
     }
 
+    /**
+     * Composes the migration script for the latest version in each of the given modules.
+     * @param databaseEngine the database engine to create the migration script for.
+     * @param modules the modules to be processed.
+     */
+    fun composeMigrationScriptForLatestVersionInModules(databaseEngine: String, modules: List<M>) {
+        composeMigrationScriptForLatestVersionInModules(listOf(databaseEngine), modules)
+    }
+
+    /**
+     * Composes the migration script for the latest version in each of the given modules, for each of the given
+     * database engines.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param modules the modules to be processed.
+     */
+    fun composeMigrationScriptForLatestVersionInModules(databaseEngines: List<String>, modules: List<M>) {
+        val pipelineSettings = migrationScriptSettings.pipelineSettings
+        if (pipelineSettings != null) {
+            composeInPipeline(databaseEngines, modules, pipelineSettings) { listOfNotNull(versionService.latestVersion(it)) }
+        } else {
+            composeForEachModule(modules) { module, cancellation ->
+                composeLatestVersionInModule(databaseEngines, module, cancellation)
+            }
+        }
+    }
+
+    /**
+     * Composes the migration script for the named version in each of the given modules.
+     * @param databaseEngine the database engine to create the migration script for.
+     * @param modules the modules to be processed.
+     * @param versionString the name of the version to be processed in every module.
+     * @throws ApplicationException if the version does not exist in a module.
+     */
+    fun composeMigrationScriptForVersionInModules(databaseEngine: String, modules: List<M>, versionString: String) {
+        composeMigrationScriptForVersionInModules(listOf(databaseEngine), modules, versionString)
+    }
+
+    /**
+     * Composes the migration script for the named version in each of the given modules, for each of the given
+     * database engines.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param modules the modules to be processed.
+     * @param versionString the name of the version to be processed in every module.
+     * @throws ApplicationException if the version does not exist in a module.
+     */
+    fun composeMigrationScriptForVersionInModules(databaseEngines: List<String>, modules: List<M>, versionString: String) {
+        val pipelineSettings = migrationScriptSettings.pipelineSettings
+        if (pipelineSettings != null) {
+            composeInPipeline(databaseEngines, modules, pipelineSettings) { listOf(findRequiredVersion(it, versionString)) }
+        } else {
+            composeForEachModule(modules) { module, cancellation ->
+                composeModuleVersion(databaseEngines, module, findRequiredVersion(module, versionString), cancellation)
+            }
+        }
+    }
+
     /**
      * As the name suggests this function composes the migration script for the latest
      * version in the specified module.
@@ -80,12 +201,7 @@ class MigrationScriptComposer<M : Module, V : Version>(
             return
         }
 
-        val latestVersion: V? = versionService.latestVersion(module)
-        if (latestVersion == null) {
-            logger.debug("No version found for module: ${module.name}")
-        } else {
-            composeMigrationScriptForModuleVersion(databaseEngine, module, latestVersion)
-        }
+        composeMigrationScriptForLatestVersionInModule(databaseEngine, module)
     }
 
     /**
@@ -95,51 +211,914 @@ class MigrationScriptComposer<M : Module, V : Version>(
      * @param module the module to be processed.
      */
     fun composeMigrationScriptForLatestVersionInModule(databaseEngine: String, module: M) {
+        composeMigrationScriptForLatestVersionInModule(listOf(databaseEngine), module)
+    }
+
+    /**
+     * Composes the migration script for the latest version in the specified module, for each of the given database
+     * engines.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param module the module to be processed.
+     */
+    fun composeMigrationScriptForLatestVersionInModule(databaseEngines: List<String>, module: M) {
+        composeLatestVersionInModule(databaseEngines, module, CancellationSignal())
+    }
+
+    /**
+     * Composes the migration script for the given module and version, and writes the output to the script writer.
+     * @param databaseEngine the database engine to create the migration script for.
+     * @param module the module to be processed.
+     * @param version the version to be processed.
+     */
+    fun composeMigrationScriptForModuleVersion(databaseEngine: String, module: M, version: V) {
+        composeMigrationScriptForModuleVersion(listOf(databaseEngine), module, version)
+    }
+
+    /**
+     * Composes the migration script for the given module and version for each of the given database engines, and
+     * writes the output to the script writers.
+     * <br />
+     * The scripts of the version are loaded once; only the rendering is repeated for each database engine.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param module the module to be processed.
+     * @param version the version to be processed.
+     */
+    fun composeMigrationScriptForModuleVersion(databaseEngines: List<String>, module: M, version: V) {
+        composeModuleVersion(databaseEngines, module, version, CancellationSignal())
+    }
+
+    /**
+     * Composes a single migration script covering every version in the given range of the module, for each of the
+     * given database engines, and writes the output to the script writers.
+     * <br />
+     * The upgrade script applies the versions in ascending order and the rollback script reverts them in descending
+     * order; each delta script is recorded against its own version. Only the listings of the scripts are held for
+     * the whole range: the contents of the scripts are read and written version by version.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param module the module to be processed.
+     * @param fromVersion the version the range starts after (i.e. exclusive), or null to start at the first version.
+     * @param toVersion the last version in the range (i.e. inclusive).
+     * @throws ApplicationException if the range is empty or invalid.
+     */
+    fun composeMigrationScriptForVersionRange(databaseEngines: List<String>, module: M, fromVersion: V?, toVersion: V) {
+        composeVersionRange(databaseEngines, module, fromVersion, toVersion, CancellationSignal())
+    }
+
+    /**
+     * Composes a single migration script covering a range of versions of the module, stopping if the composition is
+     * cancelled; the output of the range is discarded if its composition fails.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param module the module to be processed.
+     * @param fromVersion the version the range starts after (i.e. exclusive), or null to start at the first version.
+     * @param toVersion the last version in the range (i.e. inclusive).
+     * @param cancellation the signal to stop the composition.
+     * @throws ApplicationException if the range is empty or invalid.
+     */
+    private fun composeVersionRange(
+        databaseEngines: List<String>,
+        module: M,
+        fromVersion: V?,
+        toVersion: V,
+        cancellation: CancellationSignal
+    ) {
+        val versions = selectVersionRange(module, fromVersion, toVersion)
+        val versionRange = VersionRange(versions)
+        logger.info("Processing ${module.name}:${versionRange.nameString} ...")
+
+        logger.debug("Loading the script listings for the ${versions.size} versions in the range ...")
+        val rangeScripts = versions.map { version ->
+            val (upgradeScripts, rollbackScripts, allBidirectionalScripts) = loadScripts(module, version)
+            if (rollbackScripts.isNotEmpty() && upgradeScripts.size != rollbackScripts.size) {
+                throw ApplicationException(ErrorCode.VERSION_DIRECTORY_ERROR.withDetails(
+                        "The number of rollback scripts must equal the upgrade script count in version: ${version.nameString}"))
+            }
+            Triple(version, Pair(upgradeScripts, rollbackScripts), getBidirectionalScripts(allBidirectionalScripts))
+        }
+
+        val scriptWriters = mutableListOf<MigrationScriptWriter>()
+        try {
+            composeVersionRangeScript(databaseEngines, module, versionRange, DeltaScriptCategory.UPGRADE,
+                    rangeScripts.map { (version, scripts, bidirectionalScripts) ->
+                        Triple(version, scripts.first, bidirectionalScripts.first)
+                    }, migrationScriptSettings.upgradeScriptOrder, scriptWriters, cancellation)
+
+            composeVersionRangeScript(databaseEngines, module, versionRange, DeltaScriptCategory.ROLLBACK,
+                    rangeScripts.filter { it.second.second.isNotEmpty() }.reversed().map { (version, scripts, bidirectionalScripts) ->
+                        Triple(version, scripts.second, bidirectionalScripts.second)
+                    }, migrationScriptSettings.rollbackScriptOrder, scriptWriters, cancellation)
+        } catch (e: Exception) {
+            abortScriptWriters(scriptWriters, e)
+            throw e
+        }
+    }
+
+    /**
+     * Selects the versions of the module in the given range.
+     * @param module the module.
+     * @param fromVersion the version the range starts after (i.e. exclusive), or null to start at the first version.
+     * @param toVersion the last version in the range (i.e. inclusive).
+     * @return the versions in the range, in ascending order.
+     * @throws ApplicationException if the range is empty or invalid.
+     */
+    private fun selectVersionRange(module: M, fromVersion: V?, toVersion: V): List<V> {
+        if (fromVersion != null && fromVersion >= toVersion) {
+            throw ApplicationException(ErrorCode.INVALID_VERSION.withDetails(
+                    "Version (${fromVersion.nameString}) must precede version (${toVersion.nameString}) in module: ${module.name}"))
+        }
+
+        val versions = versionService.listVersions(module).filter { version ->
+            (fromVersion == null || version > fromVersion) && version <= toVersion
+        }
+        if (versions.isEmpty()) {
+            throw ApplicationException(ErrorCode.INVALID_VERSION.withDetails(
+                    "No versions up to (${toVersion.nameString}) in module: ${module.name}"))
+        }
+        return versions
+    }
+
+    /**
+     * Composes a single migration script covering every version in the given range of the module.
+     * @param databaseEngine the database engine to create the migration script for.
+     * @param module the module to be processed.
+     * @param fromVersion the version the range starts after (i.e. exclusive), or null to start at the first version.
+     * @param toVersion the last version in the range (i.e. inclusive).
+     * @throws ApplicationException if the range is empty or invalid.
+     */
+    fun composeMigrationScriptForVersionRange(databaseEngine: String, module: M, fromVersion: V?, toVersion: V) {
+        composeMigrationScriptForVersionRange(listOf(databaseEngine), module, fromVersion, toVersion)
+    }
+
+    /**
+     * Composes a single migration script covering a range of versions in each of the given modules, for each of the
+     * given database engines.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param modules the modules to be processed.
+     * @param fromVersionString the name of the version the range starts after (i.e. exclusive), or null to start at
+     * the first version.
+     * @param toVersionString the name of the last version in the range (i.e. inclusive), or null to end at the latest
+     * version.
+     * @throws ApplicationException if a named version does not exist in a module.
+     */
+    fun composeMigrationScriptForVersionRangeInModules(
+        databaseEngines: List<String>,
+        modules: List<M>,
+        fromVersionString: String?,
+        toVersionString: String?
+    ) {
+        composeForEachModule(modules) { module, cancellation ->
+            val fromVersion = fromVersionString?.let { findRequiredVersion(module, it) }
+            val toVersion = toVersionString?.let { findRequiredVersion(module, it) } ?: versionService.latestVersion(module)
+            if (toVersion == null) {
+                logger.debug("No version found for module: ${module.name}")
+            } else {
+                composeVersionRange(databaseEngines, module, fromVersion, toVersion, cancellation)
+            }
+        }
+    }
+
+    /**
+     * Composes the migration scripts of every version of every module, e.g. to regenerate the full history after a
+     * template has changed.
+     * @param databaseEngines the database engines to create the migration scripts for.
+     * @throws ApplicationException if the composition of one or more versions failed.
+     */
+    fun composeMigrationScriptsForAllVersions(databaseEngines: List<String>) {
+        composeMigrationScriptsForAllVersionsInModules(databaseEngines, moduleService.listAllModules())
+    }
+
+    /**
+     * Composes the migration scripts of every version of the given modules.
+     * <br />
+     * When more than one module may be composed at a time, each module lists its versions on the execution backend
+     * and submits a unit of work per version. On the platform thread backend these are forked onto the work-stealing
+     * pool, whose size bounds the versions composed at once; idle threads steal these units of work from busy ones, so
+     * a module with many versions does not leave the other threads idle once the smaller modules are done. On virtual
+     * threads every version has a thread of its own, and a semaphore bounds the versions composed at once. A failure
+     * in one version does not stop the others; all failures are reported together once every version has been
+     * processed.
+     * <br />
+     * If [MigrationScriptSettings.pipelineSettings] are given the versions are composed on a staged pipeline instead.
+     * @param databaseEngines the database engines to create the migration scripts for.
+     * @param modules the modules to be processed.
+     * @throws ApplicationException if the composition of one or more versions failed.
+     */
+    fun composeMigrationScriptsForAllVersionsInModules(databaseEngines: List<String>, modules: List<M>) {
+        val pipelineSettings = migrationScriptSettings.pipelineSettings
+        if (pipelineSettings != null) {
+            composeInPipeline(databaseEngines, modules, pipelineSettings) { versionService.listVersions(it) }
+            return
+        }
+
+        val parallelism = migrationScriptSettings.parallelism
+        val cancellation = CancellationSignal()
+        if (parallelism <= 1) {
+            modules.forEach { module ->
+                versionService.listVersions(module).forEach { version ->
+                    composeModuleVersion(databaseEngines, module, version, cancellation)
+                }
+            }
+            return
+        }
+
+        logger.debug("Composing every version of ${modules.size} modules, $parallelism at a time ...")
+        // A version blocked on a permit in the pool could be run by a thread waiting on a sibling unit of work while
+        // holding a permit itself, so permits are only used where the backend does not bound the parallelism.
+        val permits = if (executionBackend.boundsParallelism) null else Semaphore(parallelism)
+        val versionFutures = ConcurrentLinkedQueue<Pair<String, Future<Unit>>>()
+        val moduleFutures: List<Pair<String, Future<Unit>>> = modules.map { module ->
+            Pair(module.name, executionBackend.submit {
+                runComposition(cancellation) {
+                    versionService.listVersions(module).forEach { version ->
+                        cancellation.throwIfCancelled()
+                        versionFutures.add(Pair("${module.name}:${version.nameString}", executionBackend.submit {
+                            permits?.acquire()
+                            try {
+                                runComposition(cancellation) {
+                                    composeModuleVersion(databaseEngines, module, version, cancellation)
+                                }
+                            } finally {
+                                permits?.release()
+                            }
+                        }))
+                    }
+                }
+            })
+        }
+
+        // Every version has been submitted once the modules have been listed.
+        val listingFailures = awaitCompositions(moduleFutures, cancellation)
+        val versionFailures = awaitCompositions(versionFutures.toList(), cancellation)
+        throwCompositionFailures(listingFailures + versionFailures,
+                "${versionFutures.size + listingFailures.size} version(s)", cancellation)
+    }
+
+    /**
+     * Plans the composition of the migration script for the latest version in each of the given modules.
+     * @param databaseEngines the database engines the migration scripts would be created for.
+     * @param modules the modules to be processed.
+     * @return the plan.
+     */
+    fun planForLatestVersionInModules(databaseEngines: List<String>, modules: List<M>): CompositionPlan {
+        return plan(databaseEngines, modules) { listOfNotNull(versionService.latestVersion(it)) }
+    }
+
+    /**
+     * Plans the composition of the migration script for the named version in each of the given modules.
+     * @param databaseEngines the database engines the migration scripts would be created for.
+     * @param modules the modules to be processed.
+     * @param versionString the name of the version to be processed.
+     * @return the plan.
+     */
+    fun planForVersionInModules(databaseEngines: List<String>, modules: List<M>, versionString: String): CompositionPlan {
+        return plan(databaseEngines, modules) { listOf(findRequiredVersion(it, versionString)) }
+    }
+
+    /**
+     * Plans the composition of a single migration script covering a range of versions in each of the given modules.
+     * @param databaseEngines the database engines the migration scripts would be created for.
+     * @param modules the modules to be processed.
+     * @param fromVersionString the name of the version the range starts after (i.e. exclusive), or null to start at
+     * the first version.
+     * @param toVersionString the name of the last version in the range (i.e. inclusive), or null to end at the latest
+     * version.
+     * @return the plan.
+     */
+    fun planForVersionRangeInModules(
+        databaseEngines: List<String>,
+        modules: List<M>,
+        fromVersionString: String?,
+        toVersionString: String?
+    ): CompositionPlan {
+        return plan(databaseEngines, modules) { module ->
+            val fromVersion = fromVersionString?.let { findRequiredVersion(module, it) }
+            val toVersion = toVersionString?.let { findRequiredVersion(module, it) } ?: versionService.latestVersion(module)
+            if (toVersion == null) emptyList() else selectVersionRange(module, fromVersion, toVersion)
+        }
+    }
+
+    /**
+     * Plans the composition of the migration scripts of every version of the given modules.
+     * @param databaseEngines the database engines the migration scripts would be created for.
+     * @param modules the modules to be processed.
+     * @return the plan.
+     */
+    fun planForAllVersionsInModules(databaseEngines: List<String>, modules: List<M>): CompositionPlan {
+        return plan(databaseEngines, modules) { versionService.listVersions(it) }
+    }
+
+    /**
+     * Composes the migration script for the latest version in the specified module, stopping if the composition is
+     * cancelled.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param module the module to be processed.
+     * @param cancellation the signal to stop the composition.
+     */
+    private fun composeLatestVersionInModule(databaseEngines: List<String>, module: M, cancellation: CancellationSignal) {
         val latestVersion: V? = versionService.latestVersion(module)
         if (latestVersion == null) {
             logger.debug("No version found for module: ${module.name}")
         } else {
-            composeMigrationScriptForModuleVersion(databaseEngine, module, latestVersion)
+            composeModuleVersion(databaseEngines, module, latestVersion, cancellation)
         }
     }
 
     /**
-     * Composes the migration script for the given module and version, and writes the output to the script writer.
-     * @param databaseEngine the database engine to create the migration script for.
+     * Composes the migration script for the given module and version for each of the given database engines,
+     * stopping if the composition is cancelled.
+     * <br />
+     * The scripts of the version are loaded once; only the rendering is repeated for each database engine. The
+     * migration scripts of a version stand or fall together: if any of them fails, the output of all of them is
+     * discarded and the renderings still in progress are cancelled.
+     * @param databaseEngines the database engines to create the migration script for.
      * @param module the module to be processed.
      * @param version the version to be processed.
+     * @param cancellation the signal to stop the composition.
      */
-    fun composeMigrationScriptForModuleVersion(databaseEngine: String, module: M, version: V) {
+    private fun composeModuleVersion(databaseEngines: List<String>, module: M, version: V, cancellation: CancellationSignal) {
+        cancellation.throwIfCancelled()
         logger.info("Processing ${module.name}:${version.nameString} ...")
 
         logger.debug("Loading all the scripts for the version ...")
-        val upgradeScripts: List<DeltaScript> = deltaScriptService.getScripts(DeltaScriptCategory.UPGRADE, module,
-                version)
-        val rollbackScripts: List<DeltaScript> = deltaScriptService.getScripts(DeltaScriptCategory.ROLLBACK, module,
-                version)
+        val (upgradeScripts, rollbackScripts, allBidirectionalScripts) = with(loadScripts(module, version)) {
+            // Read the contents of each script only once if they are to be rendered more than once.
+            if (databaseEngines.size > 1) {
+                Triple(holdInMemory(first), holdInMemory(second), holdInMemory(third))
+            } else {
+                this
+            }
+        }
         if (rollbackScripts.isNotEmpty() && upgradeScripts.size != rollbackScripts.size) {
             throw ApplicationException(ErrorCode.VERSION_DIRECTORY_ERROR.withDetails(
                     "The number of rollback scripts must equal the upgrade script count"))
         }
 
         val (bidirectionalUpgradeScripts, bidirectionalRollbackScripts) =
-                getBidirectionalScripts(module, version)
+                getBidirectionalScripts(allBidirectionalScripts)
+
+        val versionCancellation = CancellationSignal(cancellation)
+        val scriptWriters: MutableList<MigrationScriptWriter> = Collections.synchronizedList(mutableListOf())
+        val renderings: List<() -> Unit> = databaseEngines.flatMap { databaseEngine ->
+            val engineSettings = migrationScriptSettings.forDatabaseEngine(databaseEngine)
+
+            val upgradeRendering = {
+                logger.debug("Composing the $databaseEngine upgrade script using ${upgradeScripts.size} upgrade " +
+                        "delta scripts and ${bidirectionalUpgradeScripts.size} bidirectional scripts ...")
+                with(migrationScriptWriterFactory.createUpgradeScriptWriter(databaseEngine, module, version)) {
+                    scriptWriters.add(this)
+                    generateOverallScript(this, DeltaScriptCategory.UPGRADE, module, version, upgradeScripts,
+                            bidirectionalUpgradeScripts, engineSettings.upgradeScriptOrder, engineSettings,
+                            versionCancellation)
+                }
+            }
+
+            val rollbackRendering = {
+                logger.debug("Composing the $databaseEngine rollback script using ${rollbackScripts.size} upgrade " +
+                        "delta scripts and ${bidirectionalRollbackScripts.size} bidirectional scripts ...")
+                with(migrationScriptWriterFactory.createRollbackScriptWriter(databaseEngine, module, version)) {
+                    scriptWriters.add(this)
+                    generateOverallScript(this, DeltaScriptCategory.ROLLBACK, module, version, rollbackScripts,
+                            bidirectionalRollbackScripts, engineSettings.rollbackScriptOrder, engineSettings,
+                            versionCancellation)
+                }
+            }
+
+            if (rollbackScripts.isEmpty()) listOf(upgradeRendering) else listOf(upgradeRendering, rollbackRendering)
+        }
+
+        try {
+            if (migrationScriptSettings.concurrentCategoryRendering) {
+                renderConcurrently(renderings, versionCancellation)
+            } else {
+                renderings.forEach { it() }
+            }
+        } catch (e: Exception) {
+            // Discard the output of the whole version, including any of its scripts that were completed.
+            abortScriptWriters(scriptWriters, e)
+            throw e
+        }
+    }
+
+    /**
+     * Releases the threads held by the execution backends, if they were created.
+     */
+    override fun close() {
+        if (executionBackendInitializer.isInitialized()) {
+            executionBackend.close()
+        }
+        if (readAheadBackendInitializer.isInitialized()) {
+            readAheadBackendInitializer.value.close()
+        }
+    }
+
+    /**
+     * Loads the upgrade, rollback and bidirectional scripts of the given version; the three categories are loaded
+     * concurrently if categories are to be processed concurrently.
+     * @param module the module being processed.
+     * @param version the version whose scripts are to be loaded.
+     * @return the upgrade, rollback and bidirectional scripts respectively.
+     */
+    private fun loadScripts(module: M, version: V): Triple<List<DeltaScript>, List<DeltaScript>, List<DeltaScript>> {
+        val categories = listOf(DeltaScriptCategory.UPGRADE, DeltaScriptCategory.ROLLBACK,
+                DeltaScriptCategory.BIDIRECTIONAL)
+        val scripts: List<List<DeltaScript>> = if (migrationScriptSettings.concurrentCategoryRendering) {
+            categories.map { category ->
+                executionBackend.submit { deltaScriptService.getScripts(category, module, version) }
+            }.map { awaitResult(it) }
+        } else {
+            categories.map { category -> deltaScriptService.getScripts(category, module, version) }
+        }
+        return Triple(scripts[0], scripts[1], scripts[2])
+    }
+
+    /**
+     * Runs the first rendering on the calling thread while the remaining renderings run on the execution backend,
+     * returning once all of them have completed. The first failure cancels the renderings still in progress.
+     * @param renderings the renderings to be run.
+     * @param cancellation the signal observed by the renderings.
+     * @throws Exception the first failure amongst the renderings; any other failures are suppressed by it.
+     */
+    private fun renderConcurrently(renderings: List<() -> Unit>, cancellation: CancellationSignal) {
+        val background = renderings.drop(1).map { rendering ->
+            executionBackend.submit {
+                try {
+                    rendering()
+                } catch (e: Exception) {
+                    cancellation.cancel(e)
+                    throw e
+                }
+            }
+        }
+
+        var failure: Throwable? = null
+        try {
+            renderings.first()()
+        } catch (e: Exception) {
+            cancellation.cancel(e)
+            failure = e
+        }
+
+        // Let every background rendering settle so that no output is being written once a failure is reported.
+        background.forEach { future ->
+            try {
+                future.get()
+            } catch (e: ExecutionException) {
+                val cause = e.cause ?: e
+                if (cause !is CancellationException) {
+                    failure?.addSuppressed(cause) ?: run { failure = cause }
+                }
+            }
+        }
+        failure?.let { throw it }
+    }
+
+    /**
+     * Waits for the result of a unit of work run on the execution backend.
+     * @param future the future result of the unit of work.
+     * @return the result.
+     * @throws Exception the failure of the unit of work.
+     */
+    private fun <T> awaitResult(future: Future<T>): T {
+        try {
+            return future.get()
+        } catch (e: ExecutionException) {
+            throw e.cause ?: e
+        }
+    }
+
+    /**
+     * Applies the given composition function to every module, with up to [MigrationScriptSettings.parallelism]
+     * modules in flight on the execution backend.
+     * <br />
+     * When modules are composed concurrently, a failure in one module either cancels the modules still to be composed
+     * ([FailurePolicy.FAIL_FAST]) or does not stop the others ([FailurePolicy.KEEP_GOING]); either way all failures are
+     * reported together once every module in flight has settled.
+     * @param modules the modules to be processed.
+     * @param composeModule the function that composes the migration script(s) for a single module.
+     * @throws ApplicationException if the composition of one or more modules failed.
+     */
+    private fun composeForEachModule(modules: List<M>, composeModule: (M, CancellationSignal) -> Unit) {
+        val cancellation = CancellationSignal()
+        val parallelism = minOf(migrationScriptSettings.parallelism, modules.size)
+        if (parallelism <= 1) {
+            modules.forEach { composeModule(it, cancellation) }
+            return
+        }
+
+        logger.debug("Composing ${modules.size} modules, $parallelism at a time ...")
+        val permits = Semaphore(parallelism)
+        val futures = mutableListOf<Pair<String, Future<Unit>>>()
+        try {
+            for (module in modules) {
+                permits.acquire()
+                if (cancellation.isCancelled) {
+                    break
+                }
+                futures.add(Pair(module.name, executionBackend.submit {
+                    try {
+                        runComposition(cancellation) { composeModule(module, cancellation) }
+                    } finally {
+                        permits.release()
+                    }
+                }))
+            }
+        } catch (e: InterruptedException) {
+            // Leave the interruption to be reported once the modules in flight have settled.
+            cancellation.cancel(e)
+            Thread.currentThread().interrupt()
+        }
+
+        throwCompositionFailures(awaitCompositions(futures, cancellation), "${modules.size} module(s)", cancellation)
+    }
+
+    /**
+     * Runs a unit of composition work unless the composition has been cancelled. Under the
+     * [FailurePolicy.FAIL_FAST] policy a failure of the work cancels the rest of the composition.
+     * @param cancellation the signal of the composition.
+     * @param work the unit of work.
+     * @return the result of the work.
+     * @throws CancellationException if the composition has been cancelled.
+     */
+    private fun <T> runComposition(cancellation: CancellationSignal, work: () -> T): T {
+        cancellation.throwIfCancelled()
+        try {
+            return work()
+        } catch (e: Exception) {
+            if (migrationScriptSettings.failurePolicy == FailurePolicy.FAIL_FAST && e !is CancellationException) {
+                cancellation.cancel(e)
+            }
+            throw e
+        }
+    }
+
+    /**
+     * Waits for every concurrent composition to settle, so that no output is being written once this returns.
+     * Should the calling thread be interrupted while waiting, the compositions are cancelled, and waited for, before
+     * the interruption is reported.
+     * @param compositions the label and future of each composition.
+     * @param cancellation the signal observed by the compositions.
+     * @return the label and failure of each composition that failed; cancelled compositions are not failures.
+     * @throws ApplicationException if the calling thread was interrupted.
+     */
+    private fun awaitCompositions(
+        compositions: List<Pair<String, Future<*>>>,
+        cancellation: CancellationSignal
+    ): List<Pair<String, Throwable>> {
+        val failures = mutableListOf<Pair<String, Throwable>>()
+        var interrupted = Thread.interrupted()
+        if (interrupted) {
+            cancellation.cancel(InterruptedException())
+        }
+
+        compositions.forEach { (label, future) ->
+            var settled = false
+            while (!settled) {
+                try {
+                    future.get()
+                    settled = true
+                } catch (e: InterruptedException) {
+                    interrupted = true
+                    cancellation.cancel(e)
+                } catch (e: ExecutionException) {
+                    settled = true
+                    val cause = e.cause ?: e
+                    if (cause !is CancellationException) {
+                        logger.error("Failed to compose: $label", cause)
+                        failures.add(Pair(label, cause))
+                    }
+                }
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt()
+            throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails("Composition interrupted"))
+        }
+        return failures
+    }
+
+    /**
+     * Discards the output of the given script writers, e.g. because their composition failed.
+     * @param scriptWriters the script writers.
+     * @param failure the failure that any failures to discard the output are suppressed by.
+     */
+    private fun abortScriptWriters(scriptWriters: List<MigrationScriptWriter>, failure: Throwable) {
+        scriptWriters.forEach { scriptWriter ->
+            try {
+                scriptWriter.abort()
+            } catch (e: Exception) {
+                failure.addSuppressed(e)
+            }
+        }
+    }
+
+    /**
+     * Reports the failures of a set of concurrent compositions, if any, as a single exception.
+     * @param failures the label and failure of each failed composition.
+     * @param total a description of the total number of compositions, e.g. '3 module(s)'.
+     * @param cancellation the signal of the compositions, which is cancelled if the remaining compositions were
+     * abandoned.
+     * @throws ApplicationException if there are any failures, with each failure suppressed by it.
+     */
+    private fun throwCompositionFailures(
+        failures: List<Pair<String, Throwable>>,
+        total: String,
+        cancellation: CancellationSignal
+    ) {
+        if (failures.isNotEmpty()) {
+            val details = failures.joinToString(separator = "; ") { (label, cause) ->
+                "$label: ${describeFailure(cause)}"
+            }
+            val outcome = if (cancellation.isCancelled) "failed and the rest were cancelled" else "failed"
+            throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails(
+                    "${failures.size} of $total $outcome - $details")).apply {
+                failures.forEach { addSuppressed(it.second) }
+            }
+        }
+    }
+
+    /**
+     * Describes the given module composition failure.
+     * @param failure the failure.
+     * @return a short description of the failure.
+     */
+    private fun describeFailure(failure: Throwable): String {
+        return if (failure is ApplicationException) {
+            listOfNotNull(failure.message, failure.details).joinToString(separator = " ")
+        } else {
+            failure.toString()
+        }
+    }
+
+    /**
+     * Plans the composition of the selected versions of each module from the listings of their delta scripts, without
+     * reading the contents of any script or rendering any template. The checks that would fail the composition - the
+     * existence of the versions and the sequencing and count of the scripts - are recorded as problems in the plan
+     * rather than thrown, so that every problem is reported at once.
+     * @param databaseEngines the database engines the migration scripts would be created for.
+     * @param modules the modules to be processed.
+     * @param selectVersions selects the versions of a module that would be composed.
+     * @return the plan.
+     */
+    private fun plan(databaseEngines: List<String>, modules: List<M>, selectVersions: (M) -> List<V>): CompositionPlan {
+        logger.info("Planning the migration script composition of ${modules.size} modules for $databaseEngines")
+        return CompositionPlan(databaseEngines, modules.map { module ->
+            try {
+                ModulePlan(module.name, selectVersions(module).map { planVersion(module, it) })
+            } catch (e: ApplicationException) {
+                ModulePlan(module.name, emptyList(), listOf(describeFailure(e)))
+            }
+        })
+    }
+
+    /**
+     * Plans the composition of a module version from the listings of its delta scripts.
+     * @param module the module.
+     * @param version the version.
+     * @return the plan of the version.
+     */
+    private fun planVersion(module: M, version: V): VersionPlan {
+        val problems = mutableListOf<String>()
+        val (upgradeScripts, rollbackScripts, bidirectionalScripts) = listOf(DeltaScriptCategory.UPGRADE,
+                DeltaScriptCategory.ROLLBACK, DeltaScriptCategory.BIDIRECTIONAL).map { category ->
+            try {
+                deltaScriptService.getScripts(category, module, version).map {
+                    PlannedScript(it.name, it.sequenceNumber, it.size)
+                }
+            } catch (e: ApplicationException) {
+                problems.add("${category.name.toLowerCase()} scripts: ${describeFailure(e)}")
+                emptyList<PlannedScript>()
+            }
+        }
+        // The counts are only comparable if every category could be listed.
+        if (problems.isEmpty() && rollbackScripts.isNotEmpty() && upgradeScripts.size != rollbackScripts.size) {
+            problems.add("The number of rollback scripts (${rollbackScripts.size}) must equal the upgrade script " +
+                    "count (${upgradeScripts.size})")
+        }
+        return VersionPlan(version.nameString, upgradeScripts, rollbackScripts, bidirectionalScripts, problems)
+    }
+
+    /**
+     * Composes the migration scripts of the selected versions of each module on a staged pipeline:
+     * <ol>
+     * <li>scan - selects the versions of a module and lists their delta scripts</li>
+     * <li>load - reads the contents of the delta scripts</li>
+     * <li>render - substitutes the delta scripts into the templates for each database engine</li>
+     * <li>write - finishes the script writers, writing their output out</li>
+     * </ol>
+     * A failure in one version either cancels the versions still to be composed ([FailurePolicy.FAIL_FAST]) or does
+     * not stop the others ([FailurePolicy.KEEP_GOING]); either way all failures are reported together once the
+     * pipeline has drained, and the output of each failed or cancelled version is discarded.
+     * @param databaseEngines the database engines to create the migration scripts for.
+     * @param modules the modules to be processed.
+     * @param pipelineSettings the settings of the pipeline.
+     * @param selectVersions selects the versions of a module that are to be composed.
+     * @throws ApplicationException if the composition of one or more versions failed.
+     */
+    private fun composeInPipeline(
+        databaseEngines: List<String>,
+        modules: List<M>,
+        pipelineSettings: PipelineSettings,
+        selectVersions: (M) -> List<V>
+    ) {
+        val queueCapacity = pipelineSettings.queueCapacity
+        val versionCount = AtomicInteger()
+        val cancellation = CancellationSignal()
+
+        val scanStage = PipelineStage<M, VersionScripts<M, V>>("scan", pipelineSettings.scanWorkers, queueCapacity,
+                { it.name }) { module, emit ->
+            selectVersions(module).forEach { version ->
+                cancellation.throwIfCancelled()
+                versionCount.incrementAndGet()
+                val scripts = VersionScripts(module, version,
+                        deltaScriptService.getScripts(DeltaScriptCategory.UPGRADE, module, version),
+                        deltaScriptService.getScripts(DeltaScriptCategory.ROLLBACK, module, version),
+                        deltaScriptService.getScripts(DeltaScriptCategory.BIDIRECTIONAL, module, version))
+                if (scripts.rollbackScripts.isNotEmpty() && scripts.upgradeScripts.size != scripts.rollbackScripts.size) {
+                    throw ApplicationException(ErrorCode.VERSION_DIRECTORY_ERROR.withDetails(
+                            "The number of rollback scripts must equal the upgrade script count in version: ${version.nameString}"))
+                }
+                emit(scripts)
+            }
+        }
+
+        val loadStage = PipelineStage<VersionScripts<M, V>, VersionScripts<M, V>>("load", pipelineSettings.loadWorkers,
+                queueCapacity, { it.label }) { scripts, emit ->
+            cancellation.throwIfCancelled()
+            emit(VersionScripts(scripts.module, scripts.version,
+                    holdInMemory(scripts.upgradeScripts),
+                    holdInMemory(scripts.rollbackScripts),
+                    holdInMemory(scripts.bidirectionalScripts)))
+        }
+
+        val renderStage = PipelineStage<VersionScripts<M, V>, Pair<String, List<MigrationScriptWriter>>>("render",
+                pipelineSettings.renderWorkers, queueCapacity, { it.label }) { scripts, emit ->
+            emit(Pair(scripts.label, renderVersionScripts(databaseEngines, scripts, cancellation)))
+        }
+
+        // Rendered versions that are cancelled before being written are discarded rather than left half written.
+        val writeStage = PipelineStage<Pair<String, List<MigrationScriptWriter>>, Unit>("write",
+                pipelineSettings.writeWorkers, queueCapacity, { it.first },
+                { (_, scriptWriters) -> scriptWriters.forEach { it.abort() } }) { (label, scriptWriters), _ ->
+            logger.debug("Writing the migration scripts of $label")
+            try {
+                scriptWriters.forEach { it.finish() }
+            } catch (e: Exception) {
+                abortScriptWriters(scriptWriters, e)
+                throw e
+            }
+        }
+
+        scanStage.linkTo(loadStage).linkTo(renderStage).linkTo(writeStage)
+        val pipeline = Pipeline("migration-pipeline", scanStage, cancellation,
+                migrationScriptSettings.failurePolicy == FailurePolicy.FAIL_FAST)
+
+        logger.debug("Composing ${modules.size} modules on a pipeline ...")
+        val failures = try {
+            pipeline.run(modules)
+        } catch (e: InterruptedException) {
+            Thread.currentThread().interrupt()
+            throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails("Composition interrupted"))
+        } finally {
+            pipeline.statistics().forEach { logger.info("Pipeline stage $it") }
+        }
+
+        // A module whose versions could not be scanned counts as one failed version.
+        val moduleNames = modules.map { it.name }.toSet()
+        throwCompositionFailures(failures, "${versionCount.get() + failures.count { it.first in moduleNames }} version(s)",
+                cancellation)
+    }
+
+    /**
+     * Renders the upgrade and rollback scripts of a version for each of the database engines.
+     * @param databaseEngines the database engines to render the migration scripts for.
+     * @param scripts the scripts of the version.
+     * @param cancellation the signal to stop the rendering.
+     * @return the writers that the scripts were rendered to, which are yet to be finished.
+     * @throws Exception if the rendering fails, after the output of every writer created for the version has been
+     * discarded.
+     */
+    private fun renderVersionScripts(
+        databaseEngines: List<String>,
+        scripts: VersionScripts<M, V>,
+        cancellation: CancellationSignal
+    ): List<MigrationScriptWriter> {
+        val (module, version) = Pair(scripts.module, scripts.version)
+        val (bidirectionalUpgradeScripts, bidirectionalRollbackScripts) =
+                getBidirectionalScripts(scripts.bidirectionalScripts)
+
+        val scriptWriters = mutableListOf<MigrationScriptWriter>()
+        val renderedWriters = mutableListOf<MigrationScriptWriter>()
+        try {
+            databaseEngines.forEach { databaseEngine ->
+                val engineSettings = migrationScriptSettings.forDatabaseEngine(databaseEngine)
+                with(migrationScriptWriterFactory.createUpgradeScriptWriter(databaseEngine, module, version)) {
+                    scriptWriters.add(this)
+                    if (renderOverallScript(this, DeltaScriptCategory.UPGRADE, module, version, scripts.upgradeScripts,
+                                    bidirectionalUpgradeScripts, engineSettings.upgradeScriptOrder, engineSettings,
+                                    cancellation)) {
+                        renderedWriters.add(this)
+                    }
+                }
+                if (scripts.rollbackScripts.isNotEmpty()) {
+                    with(migrationScriptWriterFactory.createRollbackScriptWriter(databaseEngine, module, version)) {
+                        scriptWriters.add(this)
+                        if (renderOverallScript(this, DeltaScriptCategory.ROLLBACK, module, version,
+                                        scripts.rollbackScripts, bidirectionalRollbackScripts,
+                                        engineSettings.rollbackScriptOrder, engineSettings, cancellation)) {
+                            renderedWriters.add(this)
+                        }
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            abortScriptWriters(scriptWriters, e)
+            throw e
+        }
+        return renderedWriters
+    }
+
+    /**
+     * Finds the named version in the module.
+     * @param module the module.
+     * @param versionString the name of the version.
+     * @return the version.
+     * @throws ApplicationException if the version does not exist in the module.
+     */
+    private fun findRequiredVersion(module: M, versionString: String): V {
+        return versionService.getVersion(module, versionString) ?: throw ApplicationException(
+                ErrorCode.INVALID_VERSION.withDetails("No such version: ($versionString) in module: ${module.name}"))
+    }
 
-        logger.debug("Composing the upgrade script using ${upgradeScripts.size} upgrade delta scripts " +
-                "and ${bidirectionalUpgradeScripts.size} bidirectional scripts ...")
-        with(migrationScriptWriterFactory.createUpgradeScriptWriter(databaseEngine, module, version)) {
-            generateOverallScript(this, DeltaScriptCategory.UPGRADE, module, version, upgradeScripts,
-                    bidirectionalUpgradeScripts, migrationScriptSettings.upgradeScriptOrder)
+    /**
+     * Generates the script of one category for a range of versions and writes the output to a writer for each
+     * database engine, reading the scripts of one version at a time.
+     * @param databaseEngines the database engines to create the migration script for.
+     * @param module the module being processed.
+     * @param versionRange the range of versions being processed.
+     * @param scriptCategory the category of scripts being processed.
+     * @param versionScripts the delta and bidirectional scripts of each version, in the order they are to be written.
+     * @param scriptOrder the order to apply the scripts of each version in.
+     * @param scriptWriters the list that each script writer is added to once it has been created, so that its output
+     * can be discarded should the composition fail.
+     * @param cancellation the signal to stop the composition.
+     */
+    private fun composeVersionRangeScript(
+        databaseEngines: List<String>,
+        module: M,
+        versionRange: VersionRange<V>,
+        scriptCategory: DeltaScriptCategory,
+        versionScripts: List<Triple<V, List<DeltaScript>, List<DeltaScript>>>,
+        scriptOrder: BidirectionalFilesOrder,
+        scriptWriters: MutableList<MigrationScriptWriter>,
+        cancellation: CancellationSignal
+    ) {
+        val scriptCount = versionScripts.sumBy { it.second.size }
+        if (scriptCount == 0) {
+            logger.info("No scripts to be applied for category=$scriptCategory in module=${module.name}")
+            return
         }
+        val bidirectionalScriptCount = versionScripts.sumBy { it.third.size }
 
-        if (rollbackScripts.isNotEmpty()) {
-            logger.debug("Composing the rollback script using ${rollbackScripts.size} upgrade delta scripts " +
-                    "and ${bidirectionalRollbackScripts.size} bidirectional scripts ...")
-            with(migrationScriptWriterFactory.createRollbackScriptWriter(databaseEngine, module, version)) {
-                generateOverallScript(this, DeltaScriptCategory.ROLLBACK, module, version, rollbackScripts,
-                        bidirectionalRollbackScripts, migrationScriptSettings.rollbackScriptOrder)
+        val categoryScriptWriters = databaseEngines.map { databaseEngine ->
+            val scriptWriter = if (scriptCategory == DeltaScriptCategory.UPGRADE) {
+                migrationScriptWriterFactory.createUpgradeScriptWriter(databaseEngine, module, versionRange)
+            } else {
+                migrationScriptWriterFactory.createRollbackScriptWriter(databaseEngine, module, versionRange)
             }
+            scriptWriters.add(scriptWriter)
+            scriptWriter.setup(createWriterContext(scriptCategory, module, versionRange,
+                    scriptCount + bidirectionalScriptCount, migrationScriptSettings.forDatabaseEngine(databaseEngine)))
+            scriptWriter
         }
+
+        var scriptIndex = 0
+        var bidirectionalScriptIndex = 0
+        versionScripts.forEach { (version, versionRegularScripts, versionBidirectionalScripts) ->
+            // Read the contents of each script only once if they are to be written more than once.
+            val (scripts, bidirectionalScripts) = if (categoryScriptWriters.size > 1) {
+                Pair(holdInMemory(versionRegularScripts), holdInMemory(versionBidirectionalScripts))
+            } else {
+                Pair(versionRegularScripts, versionBidirectionalScripts)
+            }
+
+            // Each script is recorded against its own version rather than the range.
+            val versionContext = RenderContext.Builder().put(KEY_RELEASE_LABEL, version.nameString).build()
+            categoryScriptWriters.forEach { scriptWriter ->
+                if (scriptOrder == BidirectionalFilesOrder.FIRST) {
+                    writeBidirectionalScripts(scriptWriter, bidirectionalScripts, cancellation, bidirectionalScriptIndex,
+                            bidirectionalScriptCount, versionContext)
+                    writeRegularScripts(scriptWriter, scripts, cancellation, scriptIndex, scriptCount, versionContext)
+                } else {
+                    writeRegularScripts(scriptWriter, scripts, cancellation, scriptIndex, scriptCount, versionContext)
+                    writeBidirectionalScripts(scriptWriter, bidirectionalScripts, cancellation, bidirectionalScriptIndex,
+                            bidirectionalScriptCount, versionContext)
+                }
+            }
+            scriptIndex += scripts.size
+            bidirectionalScriptIndex += bidirectionalScripts.size
+        }
+
+        categoryScriptWriters.forEach { it.finish() }
     }
 
     /**
@@ -152,6 +1131,8 @@ class MigrationScriptComposer<M : Module, V : Version>(
      * @param scripts the delta scripts.
      * @param bidirectionalScripts the bidirectional scripts.
      * @param scriptOrder the order to apply the scripts in.
+     * @param engineSettings the settings for the database engine the script is being generated for.
+     * @param cancellation the signal to stop the generation.
      */
     private fun generateOverallScript(
         scriptWriter: MigrationScriptWriter,
@@ -160,60 +1141,148 @@ class MigrationScriptComposer<M : Module, V : Version>(
         version: V,
         scripts: List<DeltaScript>,
         bidirectionalScripts: List<DeltaScript>,
-        scriptOrder: BidirectionalFilesOrder
+        scriptOrder: BidirectionalFilesOrder,
+        engineSettings: MigrationScriptSettings,
+        cancellation: CancellationSignal
     ) {
+        if (renderOverallScript(scriptWriter, scriptCategory, module, version, scripts, bidirectionalScripts, scriptOrder,
+                        engineSettings, cancellation)) {
+            scriptWriter.finish()
+        }
+    }
+
+    /**
+     * Renders the script from the given list of delta and bidirectional scripts in the specified order to the
+     * writer, without finishing the writer.
+     * @param scriptWriter the writer to use for writing script output.
+     * @param scriptCategory the category of scripts being processed.
+     * @param module the module being processed.
+     * @param version the version that is being processed.
+     * @param scripts the regular scripts to be processed.
+     * @param bidirectionalScripts the bidirectional scripts to be processed.
+     * @param scriptOrder the order to apply the scripts in.
+     * @param engineSettings the settings for the database engine the script is being generated for.
+     * @param cancellation the signal to stop the rendering.
+     * @return true if the script was rendered, or false if there were no scripts to render.
+     */
+    private fun renderOverallScript(
+        scriptWriter: MigrationScriptWriter,
+        scriptCategory: DeltaScriptCategory,
+        module: M,
+        version: V,
+        scripts: List<DeltaScript>,
+        bidirectionalScripts: List<DeltaScript>,
+        scriptOrder: BidirectionalFilesOrder,
+        engineSettings: MigrationScriptSettings,
+        cancellation: CancellationSignal
+    ): Boolean {
         if (scripts.isEmpty()) {
             logger.info("No scripts to be applied for category=$scriptCategory in module=${module.name}")
-            return
+            return false
         }
 
-        // The overall file writer context containing general values about
-        // the set of files that are to be processed.
-        val writerContext: Map<String, Any> = mapOf(
-                KEY_RELEASE_LABEL to version.nameString,
-                KEY_CREATION_TIMESTAMP to LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME),
-                KEY_SCRIPT_AUTHOR to systemUser,
-                KEY_MODULE_NAME to module.name,
-                KEY_FILE_TYPE to scriptCategory.name.toLowerCase(),
-                KEY_SCRIPT_COUNT to "${scripts.size + bidirectionalScripts.size}",
-                KEY_CHANGE_LOG_TABLE to migrationScriptSettings.dbChangeLogTableName,
-                KEY_STMT_SEPARATOR to migrationScriptSettings.dbStatementSeparator,
-                KEY_STMT_DELIMITER to migrationScriptSettings.dbStatementDelimiter
-        )
-
-        scriptWriter.setup(writerContext)
+        scriptWriter.setup(createWriterContext(scriptCategory, module, version, scripts.size + bidirectionalScripts.size,
+                engineSettings))
 
         if (scriptOrder == BidirectionalFilesOrder.FIRST) {
-            writeBidirectionalScripts(scriptWriter, bidirectionalScripts)
-            writeRegularScripts(scriptWriter, scripts)
+            writeBidirectionalScripts(scriptWriter, bidirectionalScripts, cancellation)
+            writeRegularScripts(scriptWriter, scripts, cancellation)
         } else {
-            writeRegularScripts(scriptWriter, scripts)
-            writeBidirectionalScripts(scriptWriter, bidirectionalScripts)
+            writeRegularScripts(scriptWriter, scripts, cancellation)
+            writeBidirectionalScripts(scriptWriter, bidirectionalScripts, cancellation)
         }
-        scriptWriter.finish()
+        return true
+    }
+
+    /**
+     * Creates the overall file writer context containing general values about the set of files that are to be
+     * processed.
+     * @param scriptCategory the category of scripts being processed.
+     * @param module the module being processed.
+     * @param version the version (or version range) that is being processed.
+     * @param scriptCount the total number of scripts to be written.
+     * @param engineSettings the settings for the database engine the script is being generated for.
+     * @return the writer context.
+     */
+    private fun createWriterContext(
+        scriptCategory: DeltaScriptCategory,
+        module: M,
+        version: Version,
+        scriptCount: Int,
+        engineSettings: MigrationScriptSettings
+    ): Map<String, Any> {
+        return RenderContext.Builder()
+                .put(KEY_RELEASE_LABEL, version.nameString)
+                .put(KEY_CREATION_TIMESTAMP, LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME))
+                .put(KEY_SCRIPT_AUTHOR, systemUser)
+                .put(KEY_MODULE_NAME, module.name)
+                .put(KEY_FILE_TYPE, scriptCategory.name.toLowerCase())
+                .put(KEY_SCRIPT_COUNT, "$scriptCount")
+                .put(KEY_CHANGE_LOG_TABLE, engineSettings.dbChangeLogTableName)
+                .put(KEY_STMT_SEPARATOR, engineSettings.dbStatementSeparator)
+                .put(KEY_STMT_DELIMITER, engineSettings.dbStatementDelimiter)
+                .build()
+    }
+
+    /**
+     * Reads the contents of the given scripts into memory so that they can be rendered more than once without going
+     * back to their source; scripts larger than the configured limit are left to be streamed on every render.
+     * @param scripts the scripts to be held in memory.
+     * @return the scripts, held in memory where they are within the limit.
+     */
+    private fun holdInMemory(scripts: List<DeltaScript>): List<DeltaScript> {
+        return scripts.map {
+            if (it.size <= migrationScriptSettings.maxInMemoryScriptSize) InMemoryDeltaScript.of(it) else it
+        }
+    }
+
+    /**
+     * Iterates over the given scripts while the scripts after the current one are read ahead in the background,
+     * within the configured depth and size.
+     * @param scripts the scripts to be iterated over.
+     * @return the iterator, which is to be closed once the scripts have been processed.
+     */
+    private fun readAhead(scripts: List<DeltaScript>): ReadAheadDeltaScripts {
+        return ReadAheadDeltaScripts(scripts, readAheadBackendInitializer, migrationScriptSettings.readAheadDepth,
+                migrationScriptSettings.readAheadSize)
     }
 
     /**
      * Helper function to write the regular scripts out to a sink.
      * @param scriptWriter the writer to use for writing script output.
      * @param scripts the scripts to be written.
+     * @param cancellation the signal to stop writing; it is checked before each script.
+     * @param firstIndex the number of regular scripts already written to the sink.
+     * @param scriptCount the total number of regular scripts to be written to the sink.
+     * @param versionContext values that apply to every script being written, e.g. the release label of the scripts'
+     * version.
      */
-    private fun writeRegularScripts(scriptWriter: MigrationScriptWriter, scripts: List<DeltaScript>) {
+    private fun writeRegularScripts(
+        scriptWriter: MigrationScriptWriter,
+        scripts: List<DeltaScript>,
+        cancellation: CancellationSignal,
+        firstIndex: Int = 0,
+        scriptCount: Int = scripts.size,
+        versionContext: Map<String, Any> = emptyMap()
+    ) {
         scriptWriter.beginRegularScriptProcessing()
 
-        scripts.forEachIndexed { index, script ->
-            val scriptContents = script.contents
-            val scriptFileName = script.name
-            val scriptSequenceNumber = script.sequenceNumber
-            val scriptContext = mapOf<String, Any>(
-                    KEY_SCRIPT_FILE_NAME to scriptFileName,
-                    KEY_SCRIPT_CONTENTS to scriptContents,
-                    KEY_INDEX to index + 1,
-                    KEY_SCRIPT_COUNT to scripts.size,
-                    KEY_SCRIPT_SEQ_NUMBER to "$scriptSequenceNumber"
-            )
+        readAhead(scripts).use { readScripts ->
+            readScripts.withIndex().forEach { (index, script) ->
+                cancellation.throwIfCancelled()
+                val scriptFileName = script.name
+                val scriptSequenceNumber = script.sequenceNumber
+                // The script values are layered over the version values rather than merged with them.
+                val scriptContext = RenderContext.Builder(versionContext)
+                        .put(KEY_SCRIPT_FILE_NAME, scriptFileName)
+                        .put(KEY_INDEX, firstIndex + index + 1)
+                        .put(KEY_SCRIPT_COUNT, scriptCount)
+                        .put(KEY_SCRIPT_SEQ_NUMBER, "$scriptSequenceNumber")
+                        .build()
 
-            scriptWriter.writeRegularScript(scriptContext)
+                // The contents are streamed into the migration script by the writer.
+                scriptWriter.writeRegularScript(scriptContext, script)
+            }
         }
         scriptWriter.finishRegularScriptProcessing()
     }
@@ -222,25 +1291,39 @@ class MigrationScriptComposer<M : Module, V : Version>(
      * Helper function to write the bidirectional scripts out.
      * @param scriptWriter the writer to use for writing script output.
      * @param bidirectionalScripts the scripts to be written.
+     * @param cancellation the signal to stop writing; it is checked before each script.
+     * @param firstIndex the number of bidirectional scripts already written to the sink.
+     * @param scriptCount the total number of bidirectional scripts to be written to the sink.
+     * @param versionContext values that apply to every script being written, e.g. the release label of the scripts'
+     * version.
      */
-    private fun writeBidirectionalScripts(scriptWriter: MigrationScriptWriter, bidirectionalScripts: List<DeltaScript>) {
+    private fun writeBidirectionalScripts(
+        scriptWriter: MigrationScriptWriter,
+        bidirectionalScripts: List<DeltaScript>,
+        cancellation: CancellationSignal,
+        firstIndex: Int = 0,
+        scriptCount: Int = bidirectionalScripts.size,
+        versionContext: Map<String, Any> = emptyMap()
+    ) {
         if (bidirectionalScripts.isEmpty()) {
             return
         }
 
         scriptWriter.beginBidirectionalScriptProcessing()
 
-        bidirectionalScripts.forEachIndexed { index, bs ->
-            val scriptFileName = bs.name
-            val scriptContents = bs.contents
-            val scriptSequenceNumber = bs.sequenceNumber
-            val scriptContext: Map<String, Any> = mapOf(
-                    KEY_SCRIPT_FILE_NAME to scriptFileName,
-                    KEY_SCRIPT_CONTENTS to scriptContents,
-                    KEY_INDEX to index + 1,
-                    KEY_SCRIPT_COUNT to bidirectionalScripts.size,
-                    KEY_SCRIPT_SEQ_NUMBER to "$scriptSequenceNumber")
-            scriptWriter.writeBidirectionalScript(scriptContext)
+        readAhead(bidirectionalScripts).use { readScripts ->
+            readScripts.withIndex().forEach { (index, bs) ->
+                cancellation.throwIfCancelled()
+                val scriptFileName = bs.name
+                val scriptSequenceNumber = bs.sequenceNumber
+                val scriptContext = RenderContext.Builder(versionContext)
+                        .put(KEY_SCRIPT_FILE_NAME, scriptFileName)
+                        .put(KEY_INDEX, firstIndex + index + 1)
+                        .put(KEY_SCRIPT_COUNT, scriptCount)
+                        .put(KEY_SCRIPT_SEQ_NUMBER, "$scriptSequenceNumber")
+                        .build()
+                scriptWriter.writeBidirectionalScript(scriptContext, bs)
+            }
         }
 
         scriptWriter.finishBidirectionalScripts()
@@ -248,15 +1331,10 @@ class MigrationScriptComposer<M : Module, V : Version>(
 
     /**
      * Applies the script ordering settings to the list of bidirectional files.
-     * @param module the module service.
-     * @param version the version whose bidirectional scripts are to be retrieved.
+     * @param allBidirectionalScripts all the bidirectional scripts of the version being processed.
      * @return a pair containing the bidirectional scripts to be applied for both upgrade and rollback operations.
      */
-    private fun getBidirectionalScripts(module: M, version: V): Pair<List<DeltaScript>, List<DeltaScript>> {
-        // Get the bidirectional scripts to be applied, returning an empty list if the files are not to be applied.
-        val allBidirectionalScripts: List<DeltaScript> = deltaScriptService.getScripts(
-                DeltaScriptCategory.BIDIRECTIONAL, module, version)
-
+    private fun getBidirectionalScripts(allBidirectionalScripts: List<DeltaScript>): Pair<List<DeltaScript>, List<DeltaScript>> {
         /**
          * Inner function to filter the bidirectional scripts according to the settings.
          * @param scriptOrder the order of the bidirectional scripts.
@@ -279,4 +1357,26 @@ class MigrationScriptComposer<M : Module, V : Version>(
                 filterScripts(migrationScriptSettings.upgradeScriptOrder),
                 filterScripts(migrationScriptSettings.rollbackScriptOrder))
     }
+}
+
+/**
+ * The delta scripts of a module version as they pass through the composition pipeline.
+ * @param module the module.
+ * @param version the version.
+ * @param upgradeScripts the upgrade scripts of the version.
+ * @param rollbackScripts the rollback scripts of the version.
+ * @param bidirectionalScripts the bidirectional scripts of the version.
+ */
+private class VersionScripts<M : Module, V : Version>(
+    val module: M,
+    val version: V,
+    val upgradeScripts: List<DeltaScript>,
+    val rollbackScripts: List<DeltaScript>,
+    val bidirectionalScripts: List<DeltaScript>
+) {
+
+    /**
+     * The label of the module version.
+     */
+    val label: String = "${module.name}:${version.nameString}"
 }
\ No newline at end of file
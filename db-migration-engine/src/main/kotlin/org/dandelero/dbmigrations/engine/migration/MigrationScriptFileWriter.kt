@@ -13,33 +13,115 @@
 package org.dandelero.dbmigrations.engine.migration
 
 import java.io.BufferedOutputStream
+import java.io.ByteArrayOutputStream
 import java.io.File
 import java.io.FileOutputStream
 import java.io.OutputStream
+import java.io.OutputStreamWriter
+import java.io.Reader
+import java.io.StringReader
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.ReadableByteChannel
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+import org.dandelero.dbmigrations.api.delta.DeltaScript
 import org.dandelero.dbmigrations.api.migration.MigrationScriptWriter
-import org.dandelero.dbmigrations.engine.util.substitutePlaceholders
+import org.dandelero.dbmigrations.engine.delta.template.CompiledTemplate
+import org.dandelero.dbmigrations.engine.delta.template.PlaceholderSubstitutingOutputStream
+import org.dandelero.dbmigrations.engine.delta.template.TemplateCompiler
 
 /**
  * A [MigrationScriptWriter] implementation that writes output to a file.
  * <br />
+ * The contents of a delta script are streamed into the output a chunk at a time, re-indented as they go, so that the
+ * memory used to write a script does not depend on its size. Where the contents need no re-indenting and the delta
+ * script offers a channel over its bytes (e.g. a delta script file), the bytes are transferred to the output file by
+ * the file system, without passing through the heap; a script held in memory offers none, so its copy in memory is
+ * written instead.
+ * <br />
+ * Templates are compiled once, by a compiler that may be shared between writers, and rendered straight into the
+ * output.
+ * <br />
+ * Placeholders within the contents of a delta script (e.g. <code>${changeLogTableName}</code>) are substituted
+ * however the contents are written, unless the contents are to be written verbatim. Streamed contents are passed
+ * through a [PlaceholderSubstitutingOutputStream], so only the contents from their first placeholder on are held in
+ * memory; the bytes of a file are transferred up to its first placeholder, which is found by scanning a memory mapping
+ * of the file, and streamed from there on. The renderings of contents holding placeholders are not cached.
+ * <br />
+ * Delta scripts held in memory are rendered through the render cache, where one is given, so that a script rendered
+ * with the same template and placeholder values by this or another writer is rendered once. A script is only rendered
+ * into the cache once its rendering has been seen before and if it fits the cache; otherwise it is streamed or
+ * transferred like any other.
+ * <br />
  * Created at: 29/10/19 9:33 pm
  * @param outputFile the output file to write to.
  * @param fileTemplate the template for composing the overall migration script.
  * @param regularScriptTemplate the template for composing composing individual scripts.
  * @param bidirectionalScriptTemplate the template for composing bidiretional script output.
+ * @param deferredOutput whether the output is to be held in memory and only written to the file on [finish], so that
+ * rendering the script and writing it out can be done by different threads.
+ * @param renderCache the cache of rendered delta scripts shared between writers, or null if scripts are always
+ * rendered.
+ * @param templateCompiler the compiler of the templates.
+ * @param verbatimContents whether the contents of delta scripts are written verbatim, rather than having the
+ * placeholders within them substituted.
  * @author dandelero
  */
 class MigrationScriptFileWriter(
     private val outputFile: File,
     private val fileTemplate: String,
     private val regularScriptTemplate: String,
-    private val bidirectionalScriptTemplate: String
+    private val bidirectionalScriptTemplate: String,
+    private val deferredOutput: Boolean = false,
+    private val renderCache: RenderedScriptCache? = null,
+    private val templateCompiler: TemplateCompiler = TemplateCompiler(),
+    private val verbatimContents: Boolean = false
 ) : MigrationScriptWriter {
 
     /**
-     * Newline value, duh!
+     * The size of the chunks that the contents of a delta script are streamed in.
+     */
+    private val chunkSize = 8192
+
+    /**
+     * The size of the memory mapped windows that a delta script file is scanned for placeholders through.
+     */
+    private val scanWindowSize = 64L * 1024 * 1024
+
+    /**
+     * The regular script template split around the script contents, or null if the contents are not to be streamed.
+     */
+    private val regularScriptTemplateParts = splitAroundScriptContents(regularScriptTemplate)
+
+    /**
+     * The bidirectional script template split around the script contents, or null if the contents are not to be
+     * streamed.
      */
-    private val newline = "\n"
+    private val bidirectionalScriptTemplateParts = splitAroundScriptContents(bidirectionalScriptTemplate)
+
+    /**
+     * The names of the placeholders in the split regular script template, or null if its renderings are not cached.
+     */
+    private val regularScriptPlaceholderNames = regularScriptTemplateParts?.let { findPlaceholderNames(it) }
+
+    /**
+     * The names of the placeholders in the split bidirectional script template, or null if its renderings are not
+     * cached.
+     */
+    private val bidirectionalScriptPlaceholderNames = bidirectionalScriptTemplateParts?.let { findPlaceholderNames(it) }
+
+    /**
+     * The indentation of the script contents in the regular script template.
+     */
+    private val regularScriptIndentation = templateCompiler.compile(regularScriptTemplate)
+            .indentationOf(KEY_SCRIPT_CONTENTS)
+
+    /**
+     * The indentation of the script contents in the bidirectional script template.
+     */
+    private val bidirectionalScriptIndentation = templateCompiler.compile(bidirectionalScriptTemplate)
+            .indentationOf(KEY_SCRIPT_CONTENTS)
 
     /**
      * The output stream currently being used.
@@ -51,15 +133,24 @@ class MigrationScriptFileWriter(
      */
     private lateinit var writerContext: Map<String, Any>
 
+    /**
+     * The stream that writes to the output file, or null if output is deferred.
+     */
+    private var fileOutputStream: FileOutputStream? = null
+
     /**
      * Called when a new set of scripts is about to be processed.
      *
      * @param writerContext contains information about the scripts.
      */
     override fun setup(writerContext: Map<String, Any>) {
-        this.outputStream = BufferedOutputStream(FileOutputStream(outputFile))
+        this.outputStream = if (deferredOutput) {
+            ByteArrayOutputStream()
+        } else {
+            BufferedOutputStream(FileOutputStream(outputFile).also { fileOutputStream = it })
+        }
         this.writerContext = writerContext // Save the file context for use throughout.
-        outputStream.write(fileTemplate.substitutePlaceholders(writerContext).toByteArray())
+        templateCompiler.compile(fileTemplate).renderTo(outputStream, writerContext)
     }
 
     /**
@@ -67,10 +158,29 @@ class MigrationScriptFileWriter(
      */
     override fun finish() {
         // We don't want to catch exceptions - let the client deal with them.
+        val renderedOutput = outputStream
+        if (renderedOutput is ByteArrayOutputStream) {
+            FileOutputStream(outputFile).use { renderedOutput.writeTo(it) }
+        }
         outputStream.flush()
         outputStream.close()
     }
 
+    /**
+     * Called when the migration script is not to be completed; closes the output and deletes the output file, along
+     * with its directory if nothing else has been written to it.
+     */
+    override fun abort() {
+        if (this::outputStream.isInitialized) {
+            outputStream.close()
+        }
+        if (outputFile.exists() && !outputFile.delete()) {
+            throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails(
+                    "Failed to delete partial output: ${outputFile.absolutePath}"))
+        }
+        outputFile.parentFile?.takeIf { it.list()?.isEmpty() == true }?.delete()
+    }
+
     /**
      * Called when script processing is about to commence.
      */
@@ -101,15 +211,19 @@ class MigrationScriptFileWriter(
      * @param scriptContext the script context.
      */
     override fun writeRegularScript(scriptContext: Map<String, Any>) {
-        val placeholderValue = scriptContext.getOrDefault(KEY_SCRIPT_CONTENTS, "") as String
-        // Apply whitespace prefixes across the script contents to ensure indentation is correct.
-        val adjustedScriptContents = applyWhitespacePrefixForLinesOfPlaceholderValue(template = regularScriptTemplate,
-                placeholderName = KEY_SCRIPT_CONTENTS,
-                placeholderValue = placeholderValue)
-        outputStream.write(regularScriptTemplate.substitutePlaceholders(writerContext + scriptContext +
-                mapOf(KEY_SCRIPT_CONTENTS to adjustedScriptContents)
-        ).toByteArray())
-        outputStream.flush()
+        writeScript(regularScriptTemplate, scriptContext)
+    }
+
+    /**
+     * Called when a regular script is to be written from the given delta script, whose contents are streamed into the
+     * output.
+     *
+     * @param scriptContext the script context.
+     * @param deltaScript the delta script to be written.
+     */
+    override fun writeRegularScript(scriptContext: Map<String, Any>, deltaScript: DeltaScript) {
+        streamScript(regularScriptTemplate, regularScriptTemplateParts, regularScriptPlaceholderNames,
+                regularScriptIndentation, scriptContext, deltaScript)
     }
 
     /**
@@ -118,57 +232,256 @@ class MigrationScriptFileWriter(
      * @param scriptContext the script context.
      */
     override fun writeBidirectionalScript(scriptContext: Map<String, Any>) {
-        val placeholderValue = scriptContext.getOrDefault(KEY_SCRIPT_CONTENTS, "") as String
-        // Apply whitespace prefixes across the script contents to ensure indentation is correct.
-        val adjustedScriptContents = applyWhitespacePrefixForLinesOfPlaceholderValue(template = bidirectionalScriptTemplate,
-                placeholderName = KEY_SCRIPT_CONTENTS,
-                placeholderValue = placeholderValue)
-
-        outputStream.write(bidirectionalScriptTemplate.substitutePlaceholders(writerContext + scriptContext +
-                mapOf(KEY_SCRIPT_CONTENTS to adjustedScriptContents)).toByteArray())
+        writeScript(bidirectionalScriptTemplate, scriptContext)
+    }
+
+    /**
+     * Called when a bidirectional script is to be written from the given delta script, whose contents are streamed
+     * into the output.
+     *
+     * @param scriptContext the script context.
+     * @param deltaScript the delta script to be written.
+     */
+    override fun writeBidirectionalScript(scriptContext: Map<String, Any>, deltaScript: DeltaScript) {
+        streamScript(bidirectionalScriptTemplate, bidirectionalScriptTemplateParts, bidirectionalScriptPlaceholderNames,
+                bidirectionalScriptIndentation, scriptContext, deltaScript)
+    }
+
+    /**
+     * Writes a script whose contents are held in the script context.
+     * @param template the template of the script.
+     * @param scriptContext the script context.
+     */
+    private fun writeScript(template: String, scriptContext: Map<String, Any>) {
+        val context = if (scriptContext.containsKey(KEY_SCRIPT_CONTENTS)) {
+            scriptContext
+        } else {
+            RenderContext.Builder(scriptContext).put(KEY_SCRIPT_CONTENTS, "").build()
+        }
+        // The lines of the script contents are indented as they are rendered, to match the indentation in the template.
+        templateCompiler.compile(template).renderTo(outputStream, context, writerContext, KEY_SCRIPT_CONTENTS,
+                verbatimContents)
         outputStream.flush()
     }
 
     /**
-     * Prefixes the placeholder value with the whitespace chars that prefix the placeholder name in the template, to ensure that all lines in the substituted
-     * placeholder value have the same indentation as specified in the template.
-     * <br /> This is used to ensure we get the same whitespace prefix across all lines that form the placeholder value.
-     * @param template the template.
-     * @param placeholderName the name of the placeholder value to check the whitespace prefix/indentation of.
-     * @param placeholderValue the placeholder value that is to be eventually substituted instead of the placeholder name in the template.
-     * @return the adjusted placeholder value with the relevant whitespace prefix.
-     */
-    private fun applyWhitespacePrefixForLinesOfPlaceholderValue(template: String, placeholderName: String, placeholderValue: String): String {
-        val prefix = findWhitepsacePrefixInTemplate(template, "$\\{$placeholderName\\}".replace("\\", ""))
-        return placeholderValue.split(newline).mapIndexed { i, s ->
-            if (i == 0) {
-                // Don't apply at index = 0 because it will obtain the indentation from the template when substitution occurs.
-                s
-            } else {
-                "$prefix$s"
+     * Writes a script, streaming the contents of the delta script in between the rendered parts of the template
+     * that come before and after the contents.
+     * @param template the template of the script.
+     * @param templateParts the template split around the script contents, or null if the contents are not to be
+     * streamed.
+     * @param placeholderNames the names of the placeholders in the template parts, or null if renderings of the
+     * template are not cached.
+     * @param indentation the indentation of the script contents in the template.
+     * @param scriptContext the script context, without the script contents.
+     * @param deltaScript the delta script to be written.
+     */
+    private fun streamScript(
+        template: String,
+        templateParts: Pair<CompiledTemplate, CompiledTemplate>?,
+        placeholderNames: List<String>?,
+        indentation: String,
+        scriptContext: Map<String, Any>,
+        deltaScript: DeltaScript
+    ) {
+        if (templateParts == null) {
+            // The contents appear other than exactly once in the template, so they can only be substituted whole.
+            writeScript(template, RenderContext.Builder(scriptContext).put(KEY_SCRIPT_CONTENTS, deltaScript.contents)
+                    .build())
+            return
+        }
+
+        val (leadingTemplate, trailingTemplate) = templateParts
+        val renderKey = findRenderKey(template, placeholderNames, scriptContext, deltaScript)
+        val rendering = renderKey?.let { key ->
+            renderCache?.getOrRender(key) {
+                with(ByteArrayOutputStream()) {
+                    leadingTemplate.renderTo(this, scriptContext, writerContext)
+                    copyIndented(StringReader(key.contents), indentation, this)
+                    trailingTemplate.renderTo(this, scriptContext, writerContext)
+                    toByteArray()
+                }
             }
-        }.joinToString(newline)
+        }
+        if (rendering != null) {
+            outputStream.write(rendering)
+            outputStream.flush()
+            return
+        }
+
+        leadingTemplate.renderTo(outputStream, scriptContext, writerContext)
+        val substitutingStream = if (verbatimContents) {
+            null
+        } else {
+            PlaceholderSubstitutingOutputStream(outputStream, writerContext + scriptContext)
+        }
+        // Scripts held in memory have no channel, so that their source is not read again.
+        val channel = if (indentation.isEmpty()) deltaScript.openChannel() else null
+        if (channel != null) {
+            channel.use { transferBytes(it, substitutingStream) }
+        } else {
+            deltaScript.openReader().use { copyIndented(it, indentation, substitutingStream ?: outputStream) }
+        }
+        substitutingStream?.finish()
+        trailingTemplate.renderTo(outputStream, scriptContext, writerContext)
+        outputStream.flush()
     }
 
     /**
-     * Find the whitespace string that prefixes the given placeholder value in the template.
-     * @param template the template as a string.
-     * @param placeholder the placeholder to be searched for.
-     * @return the whitespace prefix that comes before the given placeholder in the template.
+     * Copies the script contents from the reader to the output a chunk at a time, following every newline with the
+     * indentation so that each line after the first has the same indentation as the placeholder in the template.
+     * @param reader the reader of the script contents.
+     * @param indentation the indentation of the placeholder in the template.
+     * @param target the stream that the contents are copied to.
      */
-    private fun findWhitepsacePrefixInTemplate(template: String, placeholder: String): String {
-        val linesWithPlaceholder = template.split(newline).filter { it.contains(placeholder) }
+    private fun copyIndented(reader: Reader, indentation: String, target: OutputStream = outputStream) {
+        // The writer is not closed as that would close the output stream; it is flushed instead.
+        val writer = OutputStreamWriter(target, Charsets.UTF_8)
+        val buffer = CharArray(chunkSize)
+        var count = reader.read(buffer)
+        while (count >= 0) {
+            var lineStart = 0
+            if (indentation.isNotEmpty()) {
+                for (i in 0 until count) {
+                    if (buffer[i] == '\n') {
+                        writer.write(buffer, lineStart, i + 1 - lineStart)
+                        writer.write(indentation)
+                        lineStart = i + 1
+                    }
+                }
+            }
+            writer.write(buffer, lineStart, count - lineStart)
+            count = reader.read(buffer)
+        }
+        writer.flush()
+    }
 
-        if (linesWithPlaceholder.size != 1) {
-            return ""
+    /**
+     * Copies the bytes of a delta script to the output. The buffered output is flushed first so that the bytes land
+     * after everything written so far; when copying from a file to a file the copy is left to the file system, up to
+     * the first placeholder in the file if placeholders are substituted.
+     * @param channel the channel over the bytes of the delta script.
+     * @param substitutingStream the stream that substitutes the placeholders within the bytes before they are
+     * written to the output, or null if the bytes are copied unchanged.
+     */
+    private fun transferBytes(channel: ReadableByteChannel, substitutingStream: PlaceholderSubstitutingOutputStream?) {
+        if (channel !is FileChannel) {
+            // e.g. an entry of a zip archive, whose bytes are decompressed as they are read.
+            Channels.newInputStream(channel).copyTo(substitutingStream ?: outputStream, chunkSize)
+            return
         }
-        val lineWithPlaceholder = linesWithPlaceholder.first()
-        val prefixingWhitespaceCount = lineWithPlaceholder.takeWhile { it.isWhitespace() }.count()
 
-        return if (prefixingWhitespaceCount == 0) {
-            ""
-        } else {
-            lineWithPlaceholder.substring(0, prefixingWhitespaceCount)
+        val size = channel.size()
+        val transferSize = if (substitutingStream == null) size else findPlaceholderStart(channel, size)
+        outputStream.flush()
+        // The target is not closed as that would close the output stream.
+        val target = fileOutputStream?.channel ?: Channels.newChannel(outputStream)
+        var position = 0L
+        while (position < transferSize) {
+            val transferred = channel.transferTo(position, transferSize - position, target)
+            if (transferred <= 0) {
+                // The file has been truncated since its size was read.
+                return
+            }
+            position += transferred
+        }
+        if (substitutingStream != null && transferSize < size) {
+            Channels.newInputStream(channel.position(transferSize)).copyTo(substitutingStream, chunkSize)
+        }
+    }
+
+    /**
+     * Finds where the first placeholder in a delta script file starts, along with the escape characters before it, by
+     * scanning memory mappings of the file a window at a time.
+     * @param channel the channel over the file.
+     * @param size the size of the file.
+     * @return the position of the first placeholder, or the size of the file if it holds none.
+     */
+    private fun findPlaceholderStart(channel: FileChannel, size: Long): Long {
+        val escape = '$'.toByte()
+        val start = '{'.toByte()
+        // The position of the run of escape characters seen last, or -1 if the last byte was not one.
+        var escapesStart = -1L
+        var windowStart = 0L
+        while (windowStart < size) {
+            val window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, minOf(scanWindowSize, size - windowStart))
+            for (i in 0 until window.limit()) {
+                val byte = window.get(i)
+                if (byte == start && escapesStart >= 0) {
+                    return escapesStart
+                }
+                escapesStart = when {
+                    byte != escape -> -1L
+                    escapesStart < 0 -> windowStart + i
+                    else -> escapesStart
+                }
+            }
+            windowStart += window.limit()
+        }
+        return size
+    }
+
+    /**
+     * Finds the key that the rendering of a delta script is cached by.
+     * @param template the template of the script.
+     * @param placeholderNames the names of the placeholders in the template parts, or null if renderings of the
+     * template are not cached.
+     * @param scriptContext the script context, without the script contents.
+     * @param deltaScript the delta script to be written.
+     * @return the key of the rendering, or null if the rendering is not to be cached: the script is not held in memory
+     * or its rendering could not fit in the cache, so it is better streamed or transferred to the output, or the
+     * rendering depends on placeholder values other than those named in the template.
+     */
+    private fun findRenderKey(
+        template: String,
+        placeholderNames: List<String>?,
+        scriptContext: Map<String, Any>,
+        deltaScript: DeltaScript
+    ): RenderedScriptCache.RenderKey? {
+        if (renderCache == null || placeholderNames == null || !deltaScript.isHeldInMemory ||
+                !renderCache.canHold(deltaScript.size)) {
+            return null
+        }
+        val placeholderValues = placeholderNames.map { scriptContext[it] ?: writerContext[it] }
+        // Placeholders within a value are substituted in turn, so the rendering depends on more than the values named.
+        if (placeholderValues.any { it?.toString()?.contains("\${") == true }) {
+            return null
+        }
+        // So are placeholders within the contents, unless they are written verbatim.
+        val contents = deltaScript.contents
+        if (!verbatimContents && contents.contains("\${")) {
+            return null
+        }
+        return RenderedScriptCache.RenderKey(template, placeholderValues, contents)
+    }
+
+    /**
+     * Finds the names of the placeholders in the parts of a template around the script contents, which are all the
+     * values that their rendering depends upon.
+     * @param templateParts the compiled parts of the template before and after the script contents.
+     * @return the names of the placeholders, or null if a placeholder is nested within another, so that its name is
+     * only known once the other has been substituted.
+     */
+    private fun findPlaceholderNames(templateParts: Pair<CompiledTemplate, CompiledTemplate>): List<String>? {
+        val leadingNames = templateParts.first.placeholderNames ?: return null
+        val trailingNames = templateParts.second.placeholderNames ?: return null
+        return (leadingNames + trailingNames).distinct()
+    }
+
+    /**
+     * Splits the template around the script contents placeholder, so that the parts before and after it can be
+     * rendered separately from the contents.
+     * @param template the template.
+     * @return the compiled parts of the template before and after the placeholder, or null if the placeholder does not
+     * appear exactly once.
+     */
+    private fun splitAroundScriptContents(template: String): Pair<CompiledTemplate, CompiledTemplate>? {
+        val placeholder = "\${$KEY_SCRIPT_CONTENTS}"
+        val index = template.indexOf(placeholder)
+        if (index < 0 || template.indexOf(placeholder, index + placeholder.length) >= 0) {
+            return null
         }
+        return Pair(templateCompiler.compile(template.substring(0, index)),
+                templateCompiler.compile(template.substring(index + placeholder.length)))
     }
 }
\ No newline at end of file
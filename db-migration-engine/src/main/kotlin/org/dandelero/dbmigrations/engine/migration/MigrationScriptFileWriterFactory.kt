@@ -21,6 +21,7 @@ import org.dandelero.dbmigrations.api.migration.MigrationScriptWriter
 import org.dandelero.dbmigrations.api.migration.MigrationScriptWriterFactory
 import org.dandelero.dbmigrations.api.module.Module
 import org.dandelero.dbmigrations.api.version.Version
+import org.dandelero.dbmigrations.engine.delta.template.TemplateCompiler
 import org.dandelero.dbmigrations.engine.util.mkdir2
 
 /**
@@ -29,13 +30,29 @@ import org.dandelero.dbmigrations.engine.util.mkdir2
  * Created at: 29/10/19 10:32 pm
  * @param baseOutputDirectory the base output directory to write scripts beneath.
  * @param deltaScriptTemplateLocator the template locator.
+ * @param databaseEngineSubdirectories whether scripts are to be written beneath a subdirectory named after the
+ * database engine, so that the output for several engines can share the base output directory.
+ * @param deferredOutput whether the created writers hold their output in memory until they are finished.
+ * @param renderCache the cache of rendered delta scripts shared by the created writers, or null if scripts are always
+ * rendered.
+ * @param verbatimContents whether the created writers write the contents of delta scripts verbatim, rather than having
+ * the placeholders within them substituted.
  * @author dandelero
  */
 class MigrationScriptFileWriterFactory(
     private val baseOutputDirectory: File,
-    private val deltaScriptTemplateLocator: DeltaScriptTemplateLocator
+    private val deltaScriptTemplateLocator: DeltaScriptTemplateLocator,
+    private val databaseEngineSubdirectories: Boolean = false,
+    private val deferredOutput: Boolean = false,
+    private val renderCache: RenderedScriptCache? = null,
+    private val verbatimContents: Boolean = false
 ) : MigrationScriptWriterFactory {
 
+    /**
+     * The compiler shared by the created writers, so that each template is compiled once.
+     */
+    private val templateCompiler = TemplateCompiler()
+
     init {
         if (baseOutputDirectory.exists()) {
             if (!baseOutputDirectory.isDirectory) {
@@ -89,11 +106,17 @@ class MigrationScriptFileWriterFactory(
         version: Version,
         scriptCategory: DeltaScriptCategory
     ): MigrationScriptFileWriter {
+        val engineOutputDirectory = if (databaseEngineSubdirectories) {
+            File(baseOutputDirectory, databaseEngine)
+        } else {
+            baseOutputDirectory
+        }
+
         // Don't create an output directory for the default module
         val outputDirectory = if (module.isDefault) {
-            baseOutputDirectory
+            engineOutputDirectory
         } else {
-            File(baseOutputDirectory, module.name)
+            File(engineOutputDirectory, module.name)
         }
 
         return with(File(outputDirectory, version.nameString).mkdir2()) {
@@ -102,7 +125,11 @@ class MigrationScriptFileWriterFactory(
                     outputFile = File(this, outputFileName),
                     fileTemplate = deltaScriptTemplateLocator.findMigrationScriptFileTemplate(),
                     regularScriptTemplate = deltaScriptTemplateLocator.findDeltaScriptTemplate(databaseEngine, scriptCategory),
-                    bidirectionalScriptTemplate = deltaScriptTemplateLocator.findDeltaScriptTemplate(databaseEngine, DeltaScriptCategory.BIDIRECTIONAL)
+                    bidirectionalScriptTemplate = deltaScriptTemplateLocator.findDeltaScriptTemplate(databaseEngine, DeltaScriptCategory.BIDIRECTIONAL),
+                    deferredOutput = deferredOutput,
+                    renderCache = renderCache,
+                    templateCompiler = templateCompiler,
+                    verbatimContents = verbatimContents
             )
         }
     }
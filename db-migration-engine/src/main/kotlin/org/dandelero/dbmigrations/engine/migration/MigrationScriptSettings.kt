@@ -12,6 +12,11 @@
  */
 package org.dandelero.dbmigrations.engine.migration
 
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+import org.dandelero.dbmigrations.engine.concurrent.ExecutionBackendType
+import org.dandelero.dbmigrations.engine.pipeline.PipelineSettings
+
 /**
  * Contains the settings for controlling migration script composition.
  * <br />
@@ -21,6 +26,26 @@ package org.dandelero.dbmigrations.engine.migration
  * @param dbChangeLogTableName the changelog table name to be written to.
  * @param dbStatementDelimiter the value to be written after an SQL statement is written.
  * @param dbStatementSeparator the separator string between individual database statements.
+ * @param parallelism the maximum number of modules to be composed concurrently; 1 composes modules one at a time.
+ * @param concurrentCategoryRendering whether the script categories of a version are to be loaded, and the upgrade and
+ * rollback scripts rendered, concurrently.
+ * @param executionBackend the kind of threads that concurrent units of work are run on.
+ * @param databaseEngineSettings the settings of individual database engines, which take precedence over the
+ * database settings above when composing for that engine.
+ * @param pipelineSettings the settings of the staged pipeline that several versions or modules are composed on, or
+ * null if they are to be composed without one.
+ * @param failurePolicy how concurrent composition responds to the failure of a module or version.
+ * @param maxInMemoryScriptSize the size, in bytes, of the largest delta script that is held in memory to be rendered
+ * more than once; larger scripts are streamed from their source each time they are rendered.
+ * @param scriptCacheSize the size, in bytes, of the cache that holds the contents of delta scripts read during the
+ * composer's lifetime, so that scripts written more than once are read once; 0 disables the cache.
+ * @param readAheadDepth the number of delta scripts whose contents are read in the background ahead of the script
+ * being written; 0 disables read-ahead.
+ * @param readAheadSize the maximum total size, in bytes, of the delta scripts read ahead.
+ * @param renderCacheSize the size, in bytes, of the cache that holds rendered delta scripts, so that scripts rendered
+ * with the same template and placeholder values are rendered once; 0 disables the cache.
+ * @param verbatimScriptContents whether the contents of delta scripts are written verbatim, rather than having the
+ * placeholders within them substituted.
  * @author dandelero
  */
 data class MigrationScriptSettings(
@@ -28,8 +53,43 @@ data class MigrationScriptSettings(
     val rollbackScriptOrder: BidirectionalFilesOrder = BidirectionalFilesOrder.LAST,
     val dbChangeLogTableName: String = "change_log",
     val dbStatementDelimiter: String = "",
-    val dbStatementSeparator: String = ""
-)
+    val dbStatementSeparator: String = "",
+    val parallelism: Int = 1,
+    val concurrentCategoryRendering: Boolean = false,
+    val executionBackend: ExecutionBackendType = ExecutionBackendType.AUTO,
+    val databaseEngineSettings: Map<String, DatabaseEngineSettings> = emptyMap(),
+    val pipelineSettings: PipelineSettings? = null,
+    val failurePolicy: FailurePolicy = FailurePolicy.KEEP_GOING,
+    val maxInMemoryScriptSize: Long = 16L * 1024 * 1024,
+    val scriptCacheSize: Long = 64L * 1024 * 1024,
+    val readAheadDepth: Int = 4,
+    val readAheadSize: Long = 8L * 1024 * 1024,
+    val renderCacheSize: Long = 16L * 1024 * 1024,
+    val verbatimScriptContents: Boolean = false
+) {
+
+    init {
+        if (parallelism < 1) {
+            throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails("Parallelism must be at least 1: $parallelism"))
+        }
+        if (readAheadDepth < 0) {
+            throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails(
+                    "Read-ahead depth must not be negative: $readAheadDepth"))
+        }
+    }
+
+    /**
+     * Applies the settings of the given database engine, if there are any, over these settings.
+     * @param databaseEngine the database engine.
+     * @return the settings to be used when composing for the database engine.
+     */
+    fun forDatabaseEngine(databaseEngine: String): MigrationScriptSettings {
+        return databaseEngineSettings[databaseEngine]?.let {
+            copy(dbChangeLogTableName = it.dbChangeLogTableName, dbStatementDelimiter = it.dbStatementDelimiter,
+                    dbStatementSeparator = it.dbStatementSeparator)
+        } ?: this
+    }
+}
 
 /**
  * Specifies the desired order in which bidirectional files are to be written relative to a main set of scripts.
@@ -50,4 +110,20 @@ enum class BidirectionalFilesOrder {
      * Bidirectional scripts should not be written.
      */
     EXCLUDE
+}
+
+/**
+ * Specifies how concurrent composition responds to the failure of a module or version.
+ */
+enum class FailurePolicy {
+
+    /**
+     * The remaining work is cancelled, and its partial output discarded, as soon as one module or version fails.
+     */
+    FAIL_FAST,
+
+    /**
+     * Every module or version is composed, and all failures are reported once they have been processed.
+     */
+    KEEP_GOING
 }
\ No newline at end of file
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.migration
+
+/**
+ * A read-only context of placeholder values that is layered over a parent context, so that values for a script can be
+ * combined with the values for its version or migration script without copying either.
+ * <br />
+ * A value is looked up in this layer first and then in the parent. The well-known values (the keys in Constants.kt)
+ * are held in fixed slots rather than hashed entries, so that a context can be created for every script written
+ * without building a map for each.
+ * <br />
+ * Created at: 18/10/26 1:30 pm
+ *
+ * @param parent the context whose values apply where this layer has none.
+ * @param slots the values of the well-known keys, indexed as in [wellKnownKeys].
+ * @param otherValues the values of any other keys.
+ * @author dandelero
+ */
+class RenderContext private constructor(
+    private val parent: Map<String, Any>,
+    private val slots: Array<Any?>,
+    private val otherValues: Map<String, Any>
+) : AbstractMap<String, Any>() {
+
+    /**
+     * The entries of this context, merged with those of the parent; only built when the context is iterated.
+     */
+    override val entries: Set<Map.Entry<String, Any>>
+        get() {
+            val mergedValues = LinkedHashMap(parent)
+            slots.forEachIndexed { slot, value ->
+                if (value != null) {
+                    mergedValues[wellKnownKeys[slot]] = value
+                }
+            }
+            mergedValues.putAll(otherValues)
+            return mergedValues.entries
+        }
+
+    /**
+     * Gets the value of a key from this layer, or from the parent if this layer has none.
+     * @param key the key.
+     * @return the value; null if there is none.
+     */
+    override fun get(key: String): Any? {
+        val slot = slotOf(key)
+        val value = if (slot >= 0) slots[slot] else otherValues[key]
+        return value ?: parent[key]
+    }
+
+    /**
+     * @return whether there is a value for the key in this layer or the parent.
+     */
+    override fun containsKey(key: String): Boolean = get(key) != null
+
+    /**
+     * Builds a [RenderContext]. Each builder builds a single context, which takes over the values put into it.
+     * @param parent the context whose values apply where the built context has none.
+     */
+    class Builder(private val parent: Map<String, Any> = emptyMap()) {
+
+        /**
+         * The values of the well-known keys.
+         */
+        private val slots = arrayOfNulls<Any>(wellKnownKeys.size)
+
+        /**
+         * The values of any other keys, created once one is put.
+         */
+        private var otherValues: MutableMap<String, Any>? = null
+
+        /**
+         * Puts a value into the context.
+         * @param key the key.
+         * @param value the value.
+         * @return this builder.
+         */
+        fun put(key: String, value: Any): Builder {
+            val slot = slotOf(key)
+            if (slot >= 0) {
+                slots[slot] = value
+            } else {
+                (otherValues ?: LinkedHashMap<String, Any>().also { otherValues = it })[key] = value
+            }
+            return this
+        }
+
+        /**
+         * @return the context.
+         */
+        fun build(): RenderContext = RenderContext(parent, slots, otherValues ?: emptyMap())
+    }
+
+    companion object {
+
+        /**
+         * The well-known keys, in the order of their slots.
+         */
+        private val wellKnownKeys = arrayOf(KEY_SCRIPT_FILE_NAME, KEY_SCRIPT_CONTENTS, KEY_SCRIPT_AUTHOR,
+                KEY_SCRIPT_SEQ_NUMBER, KEY_CHANGE_LOG_TABLE, KEY_FILE_TYPE, KEY_INDEX, KEY_MODULE_NAME,
+                KEY_RELEASE_LABEL, KEY_CREATION_TIMESTAMP, KEY_SCRIPT_COUNT, KEY_STMT_SEPARATOR, KEY_STMT_DELIMITER)
+
+        /**
+         * Finds the slot of a key.
+         * @param key the key.
+         * @return the index of its slot; -1 if it is not a well-known key.
+         */
+        private fun slotOf(key: String): Int = when (key) {
+            KEY_SCRIPT_FILE_NAME -> 0
+            KEY_SCRIPT_CONTENTS -> 1
+            KEY_SCRIPT_AUTHOR -> 2
+            KEY_SCRIPT_SEQ_NUMBER -> 3
+            KEY_CHANGE_LOG_TABLE -> 4
+            KEY_FILE_TYPE -> 5
+            KEY_INDEX -> 6
+            KEY_MODULE_NAME -> 7
+            KEY_RELEASE_LABEL -> 8
+            KEY_CREATION_TIMESTAMP -> 9
+            KEY_SCRIPT_COUNT -> 10
+            KEY_STMT_SEPARATOR -> 11
+            KEY_STMT_DELIMITER -> 12
+            else -> -1
+        }
+    }
+}
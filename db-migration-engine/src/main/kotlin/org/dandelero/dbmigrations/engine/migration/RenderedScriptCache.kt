@@ -0,0 +1,146 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.migration
+
+/**
+ * A cache of rendered delta scripts, shared by the migration script writers of a run, so that a delta script rendered
+ * with the same template and the same placeholder values is rendered once; e.g. a bidirectional script, which is
+ * written to both the upgrade and rollback scripts of its version, or identical scripts that recur across versions.
+ * <br />
+ * A rendering is keyed by the template, the values of the placeholders that the template refers to and the script
+ * contents, so values that the template does not refer to (e.g. the module of a bidirectional script whose template
+ * does not name it) do not prevent reuse. The cache holds renderings up to a budget of bytes, evicting the least
+ * recently used to make room.
+ * <br />
+ * A rendering is only cached once its key has been seen before, so a script that is rendered once (the common case)
+ * is written straight to its output rather than being rendered into memory first. Only the hash of a key seen once is
+ * remembered, so that the contents it refers to are not retained.
+ * <br />
+ * Created at: 18/10/26 9:05 am
+ *
+ * @param byteBudget the total size, in bytes, of the renderings and script contents that may be cached.
+ * @author dandelero
+ */
+class RenderedScriptCache(private val byteBudget: Long) {
+
+    /**
+     * The rendered scripts, in least recently used order.
+     */
+    private val entries = LinkedHashMap<RenderKey, ByteArray>(16, 0.75f, true)
+
+    /**
+     * The hashes of the keys that have been seen but not cached, in least recently used order; a hash that collides
+     * with that of another key only causes a rendering to be cached early.
+     */
+    private val sightings = object : LinkedHashMap<Int, Unit>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, Unit>?): Boolean = size > MAX_SIGHTINGS
+    }
+
+    /**
+     * The total size of the cached renderings and the script contents they are keyed by.
+     */
+    private var cachedSize = 0L
+
+    /**
+     * The number of renderings that were served from the cache.
+     */
+    var hitCount = 0L
+        @Synchronized get
+        private set
+
+    /**
+     * The number of renderings that had to be rendered into the cache.
+     */
+    var missCount = 0L
+        @Synchronized get
+        private set
+
+    /**
+     * Determines whether the rendering of a script could be cached; the rendering is at least as large as the
+     * contents, which are retained by its key as well.
+     * @param contentsSize the size of the script contents, in bytes.
+     * @return true if the rendering could fit within the budget.
+     */
+    fun canHold(contentsSize: Long): Boolean = contentsSize <= byteBudget / 2
+
+    /**
+     * Gets the rendering for the key from the cache, rendering it if the key has been seen before but is not cached.
+     * The script is rendered outside the lock so that renderings of different scripts are not serialised.
+     * @param key the key of the rendering.
+     * @param render renders the script.
+     * @return the rendered script, or null if the key is seen for the first time, in which case the script is to be
+     * rendered straight into its output.
+     */
+    fun getOrRender(key: RenderKey, render: () -> ByteArray): ByteArray? {
+        synchronized(this) {
+            val cachedRendering = entries[key]
+            if (cachedRendering != null) {
+                hitCount++
+                return cachedRendering
+            }
+            if (sightings.put(key.hashCode(), Unit) == null) {
+                return null
+            }
+            sightings.remove(key.hashCode())
+            missCount++
+        }
+
+        val rendering = render()
+        val size = sizeOf(key, rendering)
+        if (size <= byteBudget) {
+            synchronized(this) {
+                cachedSize += size - (entries.put(key, rendering)?.let { sizeOf(key, it) } ?: 0L)
+                evictToBudget()
+            }
+        }
+        return rendering
+    }
+
+    /**
+     * @return the size that an entry counts against the budget; the contents are counted as they are retained by the
+     * key.
+     */
+    private fun sizeOf(key: RenderKey, rendering: ByteArray): Long = rendering.size.toLong() + key.contents.length
+
+    /**
+     * Evicts the least recently used renderings until the cached renderings fit within the budget.
+     */
+    private fun evictToBudget() {
+        val iterator = entries.entries.iterator()
+        while (cachedSize > byteBudget && iterator.hasNext()) {
+            val entry = iterator.next()
+            cachedSize -= sizeOf(entry.key, entry.value)
+            iterator.remove()
+        }
+    }
+
+    /**
+     * Identifies a rendering of a delta script.
+     * @param template the template the script is rendered with.
+     * @param placeholderValues the values of the placeholders the template refers to, in the order they are named.
+     * @param contents the contents of the script.
+     */
+    data class RenderKey(
+        val template: String,
+        val placeholderValues: List<Any?>,
+        val contents: String
+    )
+
+    companion object {
+
+        /**
+         * The maximum number of keys that are remembered as seen.
+         */
+        private const val MAX_SIGHTINGS = 4096
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.module
+
+import java.io.File
+import java.io.IOException
+import java.nio.file.FileSystem
+import java.nio.file.FileSystems
+import java.nio.file.ProviderNotFoundException
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+
+/**
+ * Opens zip and jar archives as read-only file systems, through the JDK zip file system provider, so that the modules,
+ * versions and delta scripts within them are read by the directory services without being extracted.
+ * <br />
+ * Created at: 17/10/26 9:12 am
+ * @author dandelero
+ */
+object ArchiveFileSystems {
+
+    /**
+     * The extensions of the files that are opened as archives.
+     */
+    private val archiveExtensions = setOf("zip", "jar")
+
+    /**
+     * @param file the file to be checked.
+     * @return true if the file is a zip or jar archive, by its extension.
+     */
+    fun isArchive(file: File): Boolean = file.isFile && file.extension.toLowerCase() in archiveExtensions
+
+    /**
+     * Opens an archive as a file system, which the caller is to close; the root directory of the file system is the
+     * root of the archive.
+     * @param file the archive.
+     * @return the file system of the archive.
+     * @throws ApplicationException if the file is not a readable archive.
+     */
+    fun open(file: File): FileSystem {
+        return try {
+            FileSystems.newFileSystem(file.toPath(), null as ClassLoader?)
+        } catch (e: IOException) {
+            throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails(
+                    "Failed to open the archive: ${file.absolutePath}"), e)
+        } catch (e: ProviderNotFoundException) {
+            throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails(
+                    "Not a zip or jar archive: ${file.absolutePath}"), e)
+        }
+    }
+}
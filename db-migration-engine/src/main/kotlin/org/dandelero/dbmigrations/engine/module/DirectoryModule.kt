@@ -13,27 +13,44 @@
 package org.dandelero.dbmigrations.engine.module
 
 import java.io.File
+import java.nio.file.Files
+import java.nio.file.Path
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.module.Module
 import org.dandelero.dbmigrations.engine.migration.DEFAULT_MODULE_NAME
+import org.dandelero.dbmigrations.engine.util.displayString
+import org.dandelero.dbmigrations.engine.util.fileNameString
 
 /**
- * A module represented by a directory structure.
+ * A module represented by a directory structure, on any file system (e.g. within a zip archive).
  * <br />
  * Created at: 29/10/19 6:55 am
- * @param moduleDirectory the directory that this module resides in.
+ * @param modulePath the directory that this module resides in.
  * @param nameValue the name of the module.
  * @author dandelero
  */
-class DirectoryModule(val moduleDirectory: File, private val nameValue: String = moduleDirectory.name) : Module {
+class DirectoryModule(val modulePath: Path, private val nameValue: String = modulePath.fileNameString()) : Module {
+
+    /**
+     * Creates a module that resides in a directory on the default file system.
+     * @param moduleDirectory the directory that this module resides in.
+     * @param nameValue the name of the module.
+     */
+    constructor(moduleDirectory: File, nameValue: String = moduleDirectory.name) : this(moduleDirectory.toPath(), nameValue)
 
     init {
-        if (!moduleDirectory.exists() || !moduleDirectory.isDirectory) {
-            throw ApplicationException(ErrorCode.INVALID_MODULE.withDetails("Invalid module directory: ${moduleDirectory.absolutePath}"))
+        if (!Files.isDirectory(modulePath)) {
+            throw ApplicationException(ErrorCode.INVALID_MODULE.withDetails("Invalid module directory: ${modulePath.displayString()}"))
         }
     }
 
+    /**
+     * The directory that this module resides in; only available for modules on the default file system.
+     */
+    val moduleDirectory: File
+        get() = modulePath.toFile()
+
     /**
      * @return true if this is the default module.
      */
@@ -48,7 +65,7 @@ class DirectoryModule(val moduleDirectory: File, private val nameValue: String =
      * @return string representation of this object.
      */
     override fun toString(): String {
-        return "DirectoryModule['${moduleDirectory.absolutePath}']"
+        return "DirectoryModule['${modulePath.displayString()}']"
     }
 
     /**
@@ -13,25 +13,34 @@
 package org.dandelero.dbmigrations.engine.module
 
 import java.io.File
+import java.nio.file.Files
+import java.nio.file.Path
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.module.ModuleService
+import org.dandelero.dbmigrations.engine.util.displayString
 import org.dandelero.dbmigrations.engine.util.listChildDirectories
 
 /**
  * A [ModuleService] implementation that works with [org.dandelero.db.api.model.Module]s contained in
- * directories.
+ * directories, on any file system (e.g. within a zip archive).
  * <br />
  * Created at: 29/10/19 7:06 am
- * @param baseDirectory the base directory that contains all modules.
+ * @param basePath the base directory that contains all modules.
  * @author dandelero
  */
-open class DirectoryModuleService(private val baseDirectory: File) : ModuleService<DirectoryModule> {
+open class DirectoryModuleService(private val basePath: Path) : ModuleService<DirectoryModule> {
+
+    /**
+     * Creates a service for the modules contained in a directory on the default file system.
+     * @param baseDirectory the base directory that contains all modules.
+     */
+    constructor(baseDirectory: File) : this(baseDirectory.toPath())
 
     init {
-        if (!baseDirectory.exists() || !baseDirectory.isDirectory) {
+        if (!Files.isDirectory(basePath)) {
             throw ApplicationException(ErrorCode.MODULE_DIRECTORY_ERROR.withDetails(
-                    "No base directory exists for locating modules: ${baseDirectory.absolutePath}"))
+                    "No base directory exists for locating modules: ${basePath.displayString()}"))
         }
     }
 
@@ -42,9 +51,9 @@ open class DirectoryModuleService(private val baseDirectory: File) : ModuleServi
      * @return the module matching the name; null if not found.
      */
     override fun findModuleByName(moduleName: String): DirectoryModule? {
-        with(File(baseDirectory, moduleName)) {
-            return if (exists()) {
-                if (isDirectory) {
+        with(basePath.resolve(moduleName)) {
+            return if (Files.exists(this)) {
+                if (Files.isDirectory(this)) {
                     DirectoryModule(this)
                 } else {
                     throw ApplicationException(ErrorCode.MODULE_DIRECTORY_ERROR.withDetails(
@@ -59,7 +68,7 @@ open class DirectoryModuleService(private val baseDirectory: File) : ModuleServi
     /**
      * @return all the modules available.
      */
-    override fun listAllModules(): List<DirectoryModule> = baseDirectory.listChildDirectories().map {
+    override fun listAllModules(): List<DirectoryModule> = basePath.listChildDirectories().map {
         DirectoryModule(it)
     }
 }
\ No newline at end of file
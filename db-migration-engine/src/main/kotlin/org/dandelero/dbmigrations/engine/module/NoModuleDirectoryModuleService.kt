@@ -13,6 +13,7 @@
 package org.dandelero.dbmigrations.engine.module
 
 import java.io.File
+import java.nio.file.Path
 import org.dandelero.dbmigrations.engine.migration.DEFAULT_MODULE_NAME
 
 /**
@@ -21,7 +22,13 @@ import org.dandelero.dbmigrations.engine.migration.DEFAULT_MODULE_NAME
  * Created at: 11/11/19 8:51 pm
  * @author dandelero
  */
-class NoModuleDirectoryModuleService(private val baseDirectory: File) : DirectoryModuleService(baseDirectory) {
+class NoModuleDirectoryModuleService(private val basePath: Path) : DirectoryModuleService(basePath) {
+
+    /**
+     * Creates a service for the default module, which resides in a directory on the default file system.
+     * @param baseDirectory the directory of the default module.
+     */
+    constructor(baseDirectory: File) : this(baseDirectory.toPath())
 
     /**
      * Finds the module with the given name.
@@ -31,7 +38,7 @@ class NoModuleDirectoryModuleService(private val baseDirectory: File) : Director
      */
     override fun findModuleByName(moduleName: String): DirectoryModule? {
         return if (moduleName.isNullOrEmpty()) {
-            DirectoryModule(moduleDirectory = baseDirectory, nameValue = DEFAULT_MODULE_NAME)
+            DirectoryModule(modulePath = basePath, nameValue = DEFAULT_MODULE_NAME)
         } else {
             null
         }
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.pipeline
+
+import java.util.concurrent.ConcurrentLinkedQueue
+import org.dandelero.dbmigrations.engine.concurrent.CancellationSignal
+import org.slf4j.LoggerFactory
+
+/**
+ * A chain of [PipelineStage]s, each with its own workers, linked by bounded queues.
+ * <br />
+ * The items fed to the pipeline are handed to the first stage on the calling thread, which therefore waits whenever
+ * the first stage's queue is full. A pipeline is run once.
+ * <br />
+ * Cancelling the pipeline's signal stops the feeding of items, and every stage discards the items still queued; the
+ * run still waits for every stage to drain so that no item is being processed once it returns.
+ * <br />
+ * Created at: 17/10/26 3:40 pm
+ * @param name the name of the pipeline, used to name its threads.
+ * @param firstStage the first stage of the chain of linked stages.
+ * @param cancellation the signal that stops the pipeline.
+ * @param failFast whether the failure of any item cancels the pipeline.
+ * @author dandelero
+ */
+class Pipeline<S : Any>(
+    private val name: String,
+    private val firstStage: PipelineStage<S, *>,
+    private val cancellation: CancellationSignal = CancellationSignal(),
+    private val failFast: Boolean = false
+) {
+
+    /**
+     * The logger instance.
+     */
+    private val logger = LoggerFactory.getLogger(Pipeline::class.java)
+
+    /**
+     * The stages of the pipeline, in order.
+     */
+    private val stages: List<PipelineStage<*, *>> =
+            generateSequence<PipelineStage<*, *>>(firstStage) { it.nextStage }.toList()
+
+    /**
+     * Runs the given items through the pipeline, returning once every stage has finished.
+     * @param items the items to be fed to the first stage.
+     * @return the description and cause of each item that failed in any of the stages.
+     * @throws InterruptedException if the calling thread was interrupted, once the cancelled pipeline has drained.
+     */
+    fun run(items: List<S>): List<Pair<String, Throwable>> {
+        logger.debug("Starting pipeline $name with stages: ${stages.joinToString { it.name }}")
+        val failures = ConcurrentLinkedQueue<Pair<String, Throwable>>()
+        val threads = stages.flatMap { it.start("$name-", failures, cancellation, failFast) }
+
+        var interruption: InterruptedException? = null
+        try {
+            for (item in items) {
+                if (cancellation.isCancelled) {
+                    logger.debug("Pipeline $name cancelled; no more items will be fed to it")
+                    break
+                }
+                firstStage.submit(item)
+            }
+        } catch (e: InterruptedException) {
+            interruption = e
+            cancellation.cancel(e)
+        }
+
+        // The stages must drain even if interrupted, as their workers would otherwise wait forever.
+        uninterruptibly { firstStage.endOfInput() }?.let { interruption = interruption ?: it }
+        threads.forEach { thread ->
+            uninterruptibly { thread.join() }?.let { interruption = interruption ?: it }
+        }
+
+        interruption?.let { throw it }
+        return failures.toList()
+    }
+
+    /**
+     * Runs a blocking action to completion, cancelling the pipeline if the calling thread is interrupted meanwhile.
+     * @param action the blocking action.
+     * @return the first interruption, if any.
+     */
+    private fun uninterruptibly(action: () -> Unit): InterruptedException? {
+        var interruption: InterruptedException? = null
+        var done = false
+        while (!done) {
+            try {
+                action()
+                done = true
+            } catch (e: InterruptedException) {
+                interruption = interruption ?: e
+                cancellation.cancel(e)
+            }
+        }
+        return interruption
+    }
+
+    /**
+     * @return a snapshot of the activity of each stage, in order; this may be called while the pipeline is running.
+     */
+    fun statistics(): List<PipelineStageStatistics> = stages.map { it.statistics() }
+}
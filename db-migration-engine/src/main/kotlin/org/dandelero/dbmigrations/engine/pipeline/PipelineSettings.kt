@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.pipeline
+
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+
+/**
+ * Contains the settings for composing migration scripts on a staged [Pipeline].
+ * <br />
+ * Created at: 17/10/26 3:05 pm
+ * @param scanWorkers the number of threads that discover versions and list their delta scripts.
+ * @param loadWorkers the number of threads that read the contents of delta scripts.
+ * @param renderWorkers the number of threads that substitute the scripts into the templates.
+ * @param writeWorkers the number of threads that write the rendered migration scripts out.
+ * @param queueCapacity the maximum number of items waiting between two stages; a full queue blocks the stage feeding
+ * it, so a slow stage holds back the stages before it instead of letting their output pile up in memory.
+ * @author dandelero
+ */
+data class PipelineSettings(
+    val scanWorkers: Int = 1,
+    val loadWorkers: Int = 2,
+    val renderWorkers: Int = 2,
+    val writeWorkers: Int = 1,
+    val queueCapacity: Int = 4
+) {
+
+    init {
+        mapOf("scan" to scanWorkers, "load" to loadWorkers, "render" to renderWorkers, "write" to writeWorkers)
+                .filterValues { it < 1 }.forEach { (stageName, workers) ->
+                    throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails(
+                            "The $stageName stage must have at least 1 worker: $workers"))
+                }
+        if (queueCapacity < 1) {
+            throw ApplicationException(ErrorCode.COMPOSITION_ERROR.withDetails(
+                    "The pipeline queue capacity must be at least 1: $queueCapacity"))
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.pipeline
+
+import java.util.concurrent.ArrayBlockingQueue
+import java.util.concurrent.BlockingQueue
+import java.util.concurrent.CancellationException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import org.dandelero.dbmigrations.engine.concurrent.CancellationSignal
+
+/**
+ * A stage of a [Pipeline]: a fixed number of worker threads that take items from the stage's bounded input queue,
+ * process them, and hand their output to the next stage.
+ * <br />
+ * Handing output to a full queue blocks the worker until the next stage has caught up. An item that fails is
+ * recorded as a failure of the pipeline and dropped; the stage carries on with the next item. An item that fails with
+ * an [Error] also cancels the pipeline. Once the pipeline is
+ * cancelled, the items still queued are discarded rather than processed, so that every stage drains promptly.
+ * <br />
+ * Created at: 17/10/26 3:15 pm
+ * @param name the name of the stage.
+ * @param workerCount the number of threads working in the stage.
+ * @param queueCapacity the maximum number of items that may wait to be processed by the stage.
+ * @param describe describes an item when reporting its failure.
+ * @param discard releases an item that is discarded because the pipeline was cancelled.
+ * @param process processes an item, passing any output to the given function.
+ * @author dandelero
+ */
+class PipelineStage<I : Any, O : Any>(
+    val name: String,
+    private val workerCount: Int,
+    private val queueCapacity: Int,
+    private val describe: (I) -> String = { it.toString() },
+    private val discard: (I) -> Unit = {},
+    private val process: (item: I, emit: (O) -> Unit) -> Unit
+) {
+
+    /**
+     * The items waiting to be processed, followed by [EndOfInput] once no more items will be submitted.
+     */
+    private val queue: BlockingQueue<Any> = ArrayBlockingQueue(queueCapacity)
+
+    /**
+     * The stage that the output of this stage is handed to, if any.
+     */
+    internal var nextStage: PipelineStage<O, *>? = null
+        private set
+
+    /**
+     * The number of workers yet to finish.
+     */
+    private val activeWorkers = AtomicInteger()
+
+    /**
+     * The number of items processed.
+     */
+    private val processedCount = AtomicLong()
+
+    /**
+     * The number of items that failed.
+     */
+    private val failedCount = AtomicLong()
+
+    /**
+     * The number of items discarded because the pipeline was cancelled.
+     */
+    private val discardedCount = AtomicLong()
+
+    /**
+     * The total time the workers have spent processing items.
+     */
+    private val busyNanos = AtomicLong()
+
+    /**
+     * The total time the workers have spent blocked on a full downstream queue.
+     */
+    private val stalledNanos = AtomicLong()
+
+    /**
+     * The greatest number of items that have been waiting in the queue.
+     */
+    private val maxQueueDepth = AtomicInteger()
+
+    /**
+     * When the workers were started.
+     */
+    @Volatile
+    private var startedAt = 0L
+
+    /**
+     * When the last worker finished, or zero if the stage is still running.
+     */
+    @Volatile
+    private var finishedAt = 0L
+
+    /**
+     * Links this stage to the stage that its output is to be handed to.
+     * @param nextStage the next stage.
+     * @return the next stage, so that stages can be linked in a chain.
+     */
+    fun <N : Any> linkTo(nextStage: PipelineStage<O, N>): PipelineStage<O, N> {
+        this.nextStage = nextStage
+        return nextStage
+    }
+
+    /**
+     * Adds an item to the stage's queue, waiting for space to become available if the queue is full.
+     * @param item the item.
+     */
+    internal fun submit(item: I) {
+        queue.put(item)
+        maxQueueDepth.accumulateAndGet(queue.size) { current, depth -> maxOf(current, depth) }
+    }
+
+    /**
+     * Signals that no more items will be submitted; the stage finishes once every submitted item has been processed.
+     */
+    internal fun endOfInput() {
+        queue.put(EndOfInput)
+    }
+
+    /**
+     * Starts the workers of the stage.
+     * @param threadNamePrefix the prefix for the names of the stage's threads.
+     * @param failures the collection that the description and cause of each failed item are added to.
+     * @param cancellation the signal of the pipeline.
+     * @param failFast whether the failure of an item cancels the pipeline.
+     * @return the started threads.
+     */
+    internal fun start(
+        threadNamePrefix: String,
+        failures: MutableCollection<Pair<String, Throwable>>,
+        cancellation: CancellationSignal,
+        failFast: Boolean
+    ): List<Thread> {
+        startedAt = System.nanoTime()
+        activeWorkers.set(workerCount)
+        return (1..workerCount).map { workerNumber ->
+            Thread({ work(failures, cancellation, failFast) }, "$threadNamePrefix$name-$workerNumber").apply {
+                isDaemon = true
+                start()
+            }
+        }
+    }
+
+    /**
+     * @return a snapshot of the activity of the stage.
+     */
+    fun statistics(): PipelineStageStatistics {
+        val elapsedNanos = (if (finishedAt == 0L) System.nanoTime() else finishedAt) - startedAt
+        val workerNanos = if (startedAt == 0L || elapsedNanos <= 0) 0.0 else elapsedNanos.toDouble() * workerCount
+        val stalled = stalledNanos.get()
+        return PipelineStageStatistics(
+                stageName = name,
+                workerCount = workerCount,
+                queueDepth = queue.count { it !== EndOfInput },
+                maxQueueDepth = maxQueueDepth.get(),
+                queueCapacity = queueCapacity,
+                processedCount = processedCount.get(),
+                failedCount = failedCount.get(),
+                discardedCount = discardedCount.get(),
+                utilization = if (workerNanos == 0.0) 0.0 else (busyNanos.get() - stalled) / workerNanos,
+                stalledFraction = if (workerNanos == 0.0) 0.0 else stalled / workerNanos
+        )
+    }
+
+    /**
+     * The loop run by each worker: processes items until the end of the input is reached.
+     * @param failures the collection that the description and cause of each failed item are added to.
+     * @param cancellation the signal of the pipeline.
+     * @param failFast whether the failure of an item cancels the pipeline.
+     */
+    @Suppress("UNCHECKED_CAST")
+    private fun work(
+        failures: MutableCollection<Pair<String, Throwable>>,
+        cancellation: CancellationSignal,
+        failFast: Boolean
+    ) {
+        val emit: (O) -> Unit = { output ->
+            nextStage?.let { stage ->
+                val stalledSince = System.nanoTime()
+                stage.submit(output)
+                stalledNanos.addAndGet(System.nanoTime() - stalledSince)
+            }
+        }
+
+        try {
+            while (true) {
+                val item = queue.take()
+                if (item === EndOfInput) {
+                    // Leave the marker in place for the other workers of this stage.
+                    queue.put(EndOfInput)
+                    break
+                }
+                if (cancellation.isCancelled) {
+                    discardItem(item as I, failures)
+                    continue
+                }
+
+                val processingSince = System.nanoTime()
+                try {
+                    process(item as I, emit)
+                    processedCount.incrementAndGet()
+                } catch (e: CancellationException) {
+                    discardedCount.incrementAndGet()
+                } catch (e: Exception) {
+                    failedCount.incrementAndGet()
+                    failures.add(Pair(describe(item as I), e))
+                    if (failFast) {
+                        cancellation.cancel(e)
+                    }
+                } catch (e: Error) {
+                    // The pipeline cannot be relied upon after an error, so it is cancelled whatever the policy; the
+                    // worker carries on discarding items so that the stages feeding it are not left blocked.
+                    failedCount.incrementAndGet()
+                    failures.add(Pair(describe(item as I), e))
+                    cancellation.cancel(e)
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - processingSince)
+                }
+            }
+        } finally {
+            // However the worker stops, the next stage is told once the last worker has, so that it does not wait.
+            if (activeWorkers.decrementAndGet() == 0) {
+                finishedAt = System.nanoTime()
+                nextStage?.endOfInput()
+            }
+        }
+    }
+
+    /**
+     * Discards an item without processing it.
+     * @param item the item.
+     * @param failures the collection that the description and cause of a failure to release the item are added to.
+     */
+    private fun discardItem(item: I, failures: MutableCollection<Pair<String, Throwable>>) {
+        discardedCount.incrementAndGet()
+        try {
+            discard(item)
+        } catch (e: Exception) {
+            failures.add(Pair(describe(item), e))
+        }
+    }
+
+    /**
+     * Marks the end of the items submitted to a stage.
+     */
+    private object EndOfInput
+}
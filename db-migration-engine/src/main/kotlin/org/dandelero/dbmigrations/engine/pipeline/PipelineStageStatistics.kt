@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.pipeline
+
+/**
+ * A snapshot of the activity of a [PipelineStage], for tuning the number of workers and the queue capacity.
+ * <br />
+ * Created at: 17/10/26 3:10 pm
+ * @param stageName the name of the stage.
+ * @param workerCount the number of threads working in the stage.
+ * @param queueDepth the number of items currently waiting to be processed by the stage.
+ * @param maxQueueDepth the greatest number of items that have been waiting to be processed by the stage.
+ * @param queueCapacity the maximum number of items that may wait to be processed by the stage.
+ * @param processedCount the number of items processed by the stage.
+ * @param failedCount the number of items that failed in the stage.
+ * @param discardedCount the number of items discarded by the stage because the pipeline was cancelled.
+ * @param utilization the fraction of the workers' time spent processing items, excluding the time blocked on a full
+ * downstream queue.
+ * @param stalledFraction the fraction of the workers' time spent blocked on a full downstream queue.
+ * @author dandelero
+ */
+data class PipelineStageStatistics(
+    val stageName: String,
+    val workerCount: Int,
+    val queueDepth: Int,
+    val maxQueueDepth: Int,
+    val queueCapacity: Int,
+    val processedCount: Long,
+    val failedCount: Long,
+    val discardedCount: Long,
+    val utilization: Double,
+    val stalledFraction: Double
+) {
+
+    override fun toString(): String {
+        return "$stageName: $workerCount worker(s), queue $queueDepth/$queueCapacity (max $maxQueueDepth), " +
+                "$processedCount processed, $failedCount failed, $discardedCount discarded, ${percent(utilization)} busy, " +
+                "${percent(stalledFraction)} stalled"
+    }
+
+    /**
+     * @param fraction a fraction.
+     * @return the fraction as a whole percentage.
+     */
+    private fun percent(fraction: Double): String = "${Math.round(fraction * 100)}%"
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.plan
+
+/**
+ * What a composition would do - the modules, versions and delta scripts it would process - worked out from the
+ * names, sizes and sequence numbers of the delta scripts without reading their contents.
+ * <br />
+ * Created at: 17/10/26 6:14 pm
+ * @param databaseEngines the database engines that migration scripts would be composed for.
+ * @param modules the modules to be processed, in order.
+ * @author dandelero
+ */
+data class CompositionPlan(val databaseEngines: List<String>, val modules: List<ModulePlan>) {
+
+    /**
+     * The number of versions to be processed.
+     */
+    val versionCount: Int
+        get() = modules.sumBy { it.versions.size }
+
+    /**
+     * The number of delta scripts to be processed.
+     */
+    val scriptCount: Int
+        get() = modules.sumBy { it.scriptCount }
+
+    /**
+     * The total size of the delta scripts to be processed, in bytes.
+     */
+    val totalSize: Long
+        get() = modules.map { it.totalSize }.sum()
+
+    /**
+     * Every problem in the plan, prefixed with the module (and version) it was found in.
+     */
+    val problems: List<String>
+        get() = modules.flatMap { module ->
+            module.problems.map { "${module.name}: $it" } + module.versions.flatMap { version ->
+                version.problems.map { "${module.name}:${version.name}: $it" }
+            }
+        }
+
+    /**
+     * Whether the composition would succeed, i.e. no problems were found.
+     */
+    val isValid: Boolean
+        get() = problems.isEmpty()
+}
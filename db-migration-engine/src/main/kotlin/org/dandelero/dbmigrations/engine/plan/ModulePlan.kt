@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.plan
+
+/**
+ * The versions of a module that a composition would process, and any problems that would stop the module from being
+ * composed, e.g. a version that does not exist.
+ * <br />
+ * Created at: 17/10/26 6:11 pm
+ * @param name the name of the module.
+ * @param versions the versions to be processed, in order.
+ * @param problems the problems found in the module, excluding those of its versions.
+ * @author dandelero
+ */
+data class ModulePlan(
+    val name: String,
+    val versions: List<VersionPlan>,
+    val problems: List<String> = emptyList()
+) {
+
+    /**
+     * The number of delta scripts across the versions.
+     */
+    val scriptCount: Int
+        get() = versions.sumBy { it.scriptCount }
+
+    /**
+     * The total size of the delta scripts across the versions, in bytes.
+     */
+    val totalSize: Long
+        get() = versions.map { it.totalSize }.sum()
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.plan
+
+import org.apache.commons.text.StringEscapeUtils
+
+/**
+ * The formats that a [CompositionPlan] can be printed in.
+ * <br />
+ * Created at: 17/10/26 6:20 pm
+ * @author dandelero
+ */
+enum class PlanFormat {
+
+    /**
+     * A human readable summary followed by the modules, versions and scripts of the plan, one per line.
+     */
+    TEXT {
+        override fun format(plan: CompositionPlan): String {
+            val lines = mutableListOf("Composition plan for ${plan.databaseEngines.joinToString()}: " +
+                    "${plan.modules.size} module(s), ${plan.versionCount} version(s), ${plan.scriptCount} script(s), " +
+                    "${plan.totalSize} bytes")
+            plan.modules.forEach { module ->
+                lines.add("${module.name.ifEmpty { "(default module)" }}: ${module.versions.size} version(s), " +
+                        "${module.scriptCount} script(s), ${module.totalSize} bytes")
+                module.problems.forEach { lines.add("  ! $it") }
+                module.versions.forEach { version ->
+                    lines.add("  ${version.name}: ${version.upgradeScripts.size} upgrade, " +
+                            "${version.rollbackScripts.size} rollback, ${version.bidirectionalScripts.size} " +
+                            "bidirectional script(s), ${version.totalSize} bytes")
+                    version.problems.forEach { lines.add("    ! $it") }
+                    listOf("upgrade" to version.upgradeScripts, "rollback" to version.rollbackScripts,
+                            "bidirectional" to version.bidirectionalScripts).forEach { (category, scripts) ->
+                        scripts.forEach { lines.add("    $category/${it.name} (#${it.sequenceNumber}, ${it.size} bytes)") }
+                    }
+                }
+            }
+            lines.add(if (plan.isValid) "No problems found" else "${plan.problems.size} problem(s) found")
+            return lines.joinToString(separator = System.lineSeparator())
+        }
+    },
+
+    /**
+     * A JSON document holding the totals, modules, versions, scripts and problems of the plan.
+     */
+    JSON {
+        override fun format(plan: CompositionPlan): String {
+            val modules = plan.modules.joinToString(separator = ",", prefix = "[", postfix = "]") { module ->
+                val versions = module.versions.joinToString(separator = ",", prefix = "[", postfix = "]") { version ->
+                    "{\"name\":${quote(version.name)},\"scriptCount\":${version.scriptCount}," +
+                            "\"totalSize\":${version.totalSize},\"upgradeScripts\":${scripts(version.upgradeScripts)}," +
+                            "\"rollbackScripts\":${scripts(version.rollbackScripts)}," +
+                            "\"bidirectionalScripts\":${scripts(version.bidirectionalScripts)}," +
+                            "\"problems\":${strings(version.problems)}}"
+                }
+                "{\"name\":${quote(module.name)},\"scriptCount\":${module.scriptCount}," +
+                        "\"totalSize\":${module.totalSize},\"versions\":$versions," +
+                        "\"problems\":${strings(module.problems)}}"
+            }
+            return "{\"databaseEngines\":${strings(plan.databaseEngines)},\"moduleCount\":${plan.modules.size}," +
+                    "\"versionCount\":${plan.versionCount},\"scriptCount\":${plan.scriptCount}," +
+                    "\"totalSize\":${plan.totalSize},\"valid\":${plan.isValid},\"modules\":$modules," +
+                    "\"problems\":${strings(plan.problems)}}"
+        }
+
+        /**
+         * @param scripts the scripts.
+         * @return the scripts as a JSON array.
+         */
+        private fun scripts(scripts: List<PlannedScript>): String {
+            return scripts.joinToString(separator = ",", prefix = "[", postfix = "]") {
+                "{\"name\":${quote(it.name)},\"sequenceNumber\":${it.sequenceNumber},\"size\":${it.size}}"
+            }
+        }
+
+        /**
+         * @param values the values.
+         * @return the values as a JSON array of strings.
+         */
+        private fun strings(values: List<String>): String {
+            return values.joinToString(separator = ",", prefix = "[", postfix = "]") { quote(it) }
+        }
+
+        /**
+         * @param value the value.
+         * @return the value as a JSON string.
+         */
+        private fun quote(value: String): String = "\"${StringEscapeUtils.escapeJson(value)}\""
+    };
+
+    /**
+     * Formats the given plan.
+     * @param plan the plan.
+     * @return the formatted plan.
+     */
+    abstract fun format(plan: CompositionPlan): String
+}
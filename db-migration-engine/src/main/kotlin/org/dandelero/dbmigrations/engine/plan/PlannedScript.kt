@@ -0,0 +1,24 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.plan
+
+/**
+ * A delta script that a composition would apply, described from its metadata alone.
+ * <br />
+ * Created at: 17/10/26 6:05 pm
+ * @param name the name of the script.
+ * @param sequenceNumber the sequence number of the script.
+ * @param size the size of the script, in bytes.
+ * @author dandelero
+ */
+data class PlannedScript(val name: String, val sequenceNumber: Int, val size: Long)
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.plan
+
+/**
+ * The delta scripts of a module version that a composition would apply, and any problems that would stop the version
+ * from being composed.
+ * <br />
+ * Created at: 17/10/26 6:08 pm
+ * @param name the name of the version.
+ * @param upgradeScripts the upgrade scripts, in sequence.
+ * @param rollbackScripts the rollback scripts, in sequence.
+ * @param bidirectionalScripts the bidirectional scripts, in sequence.
+ * @param problems the problems found in the version.
+ * @author dandelero
+ */
+data class VersionPlan(
+    val name: String,
+    val upgradeScripts: List<PlannedScript>,
+    val rollbackScripts: List<PlannedScript>,
+    val bidirectionalScripts: List<PlannedScript>,
+    val problems: List<String> = emptyList()
+) {
+
+    /**
+     * The number of delta scripts in the version.
+     */
+    val scriptCount: Int
+        get() = upgradeScripts.size + rollbackScripts.size + bidirectionalScripts.size
+
+    /**
+     * The total size of the delta scripts in the version, in bytes.
+     */
+    val totalSize: Long
+        get() = (upgradeScripts + rollbackScripts + bidirectionalScripts).map { it.size }.sum()
+}
@@ -13,8 +13,11 @@
 package org.dandelero.dbmigrations.engine.util
 
 import java.io.File
-import java.io.FileFilter
+import java.io.IOException
+import java.nio.file.FileSystems
 import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.attribute.BasicFileAttributes
 import java.util.Properties
 
 /**
@@ -40,12 +43,82 @@ fun File.readFully(): String? {
     return (String(Files.readAllBytes(toPath())))
 }
 
+/**
+ * Reads the basic attributes of this file in a single query of the file system.
+ * @return the attributes of the file; null if they could not be read, e.g. because it does not exist.
+ */
+fun File.readAttributesOrNull(): BasicFileAttributes? = toPath().readAttributesOrNull()
+
+/**
+ * Reads the basic attributes of this path in a single query of its file system.
+ * @return the attributes of the path; null if they could not be read, e.g. because it does not exist.
+ */
+fun Path.readAttributesOrNull(): BasicFileAttributes? {
+    return try {
+        Files.readAttributes(this, BasicFileAttributes::class.java)
+    } catch (e: IOException) {
+        null
+    }
+}
+
+/**
+ * Lists the immediate children of the current directory along with their attributes, so that each child is inspected
+ * once and its attributes can be passed along rather than queried again. Children whose names are rejected by the
+ * filter are not inspected at all.
+ * <br />
+ * The directory may be on any file system, e.g. within a zip archive opened as a file system.
+ * @param nameFilter selects the children, by name, that are to be listed.
+ * @return the children and their attributes; empty if this is not a directory that can be read.
+ */
+fun Path.listChildrenWithAttributes(nameFilter: (String) -> Boolean = { true }): List<Pair<Path, BasicFileAttributes>> {
+    return try {
+        Files.newDirectoryStream(this) { nameFilter(it.fileNameString()) }.use { children ->
+            children.mapNotNull { child -> child.readAttributesOrNull()?.let { Pair(child, it) } }
+        }
+    } catch (e: IOException) {
+        emptyList()
+    }
+}
+
+/**
+ * Lists the immediate child directories in the current directory.
+ * @return the child directories; empty if none exist.
+ */
+fun Path.listChildDirectories(): List<Path> {
+    return listChildrenWithAttributes().filter { it.second.isDirectory }.map { it.first }
+}
+
+/**
+ * Lists the immediate child files in the current directory, along with their attributes.
+ * @param extension the desired extension of the files.
+ * @return the child files and their attributes; empty if none exist.
+ */
+fun Path.listChildFilesWithAttributes(extension: String): List<Pair<Path, BasicFileAttributes>> {
+    return listChildrenWithAttributes { it.endsWith(extension) }.filter { it.second.isRegularFile }
+}
+
+/**
+ * Gets the name of the file or directory at this path, without the trailing separator that some file systems (e.g.
+ * zip archives) give directories.
+ * @return the name; empty for the root of a file system.
+ */
+fun Path.fileNameString(): String = fileName?.toString()?.trimEnd('/') ?: ""
+
+/**
+ * Describes this path for messages: its absolute path on the default file system, otherwise its URI, which names the
+ * archive that the path is within.
+ * @return the description of the path.
+ */
+fun Path.displayString(): String {
+    return if (fileSystem == FileSystems.getDefault()) toAbsolutePath().toString() else toUri().toString()
+}
+
 /**
  * Lists the immediate child directories in the current directory.
  * @return the child directories; empty array if none exist.
  */
 fun File.listChildDirectories(): Array<File> {
-    return this.listFiles(FileFilter { it.isDirectory }) ?: emptyArray()
+    return toPath().listChildDirectories().map { it.toFile() }.toTypedArray()
 }
 
 /**
@@ -54,7 +127,7 @@ fun File.listChildDirectories(): Array<File> {
  * @return the child files; empty array if none exist.
  */
 fun File.listChildFiles(extension: String): Array<File> {
-    return this.listFiles(FileFilter { it.isFile && it.name.endsWith(extension) }) ?: emptyArray()
+    return toPath().listChildFilesWithAttributes(extension).map { it.first.toFile() }.toTypedArray()
 }
 
 /**
@@ -39,6 +39,16 @@ fun Map<String, Any?>.getRequiredMap(key: String): Map<String, Any?> {
             ?: throw ApplicationException(ErrorCode.MISSING_RESOURCE.withDetails("Missing '$key' config"))
 }
 
+/**
+ * Extension function to get an optional map at the given key. The keys of the map are read as strings, so that it is
+ * checked without an unchecked cast.
+ * @param key the key.
+ * @return the map at the key specified or null.
+ */
+fun Map<String, Any?>.getOptionalMap(key: String): Map<String, Any?>? {
+    return (get(key) as? Map<*, *>)?.mapKeys { it.key.toString() }
+}
+
 /**
  * Gets the required value at the given key.
  * @param key the key name.
@@ -66,7 +76,7 @@ fun Map<String, Any?>.getRequiredString(key: String): String {
  * @return the string value or null.
  */
 fun Map<String, Any?>.getOptionalString(key: String): String? {
-    return getRequired(key) as? String
+    return get(key) as? String
 }
 
 /**
@@ -78,4 +88,46 @@ fun Map<String, Any?>.getOptionalString(key: String): String? {
 fun Map<String, Any?>.getRequiredBoolean(key: String): Boolean {
     return getRequired(key) as? Boolean
             ?: throw ApplicationException(ErrorCode.MISSING_RESOURCE.withDetails("Missing '$key' config"))
-}
\ No newline at end of file
+}
+
+/**
+ * Gets the optional integer at the given key.
+ * @param key the key name.
+ * @param defaultValue the value to be returned if there is no value at the key.
+ * @return the integer value or the default value.
+ * @throws ApplicationException if the value at the key is not an integer.
+ */
+fun Map<String, Any?>.getOptionalInt(key: String, defaultValue: Int): Int {
+    val value = get(key) ?: return defaultValue
+    return value as? Int
+            ?: throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails("Invalid '$key' config: $value"))
+}
+
+/**
+ * Gets the optional long at the given key.
+ * @param key the key name.
+ * @param defaultValue the value to be returned if there is no value at the key.
+ * @return the long value or the default value.
+ * @throws ApplicationException if the value at the key is not an integer.
+ */
+fun Map<String, Any?>.getOptionalLong(key: String, defaultValue: Long): Long {
+    return when (val value = get(key)) {
+        null -> defaultValue
+        is Int -> value.toLong()
+        is Long -> value
+        else -> throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails("Invalid '$key' config: $value"))
+    }
+}
+
+/**
+ * Gets the optional boolean at the given key.
+ * @param key the key name.
+ * @param defaultValue the value to be returned if there is no value at the key.
+ * @return the boolean value or the default value.
+ * @throws ApplicationException if the value at the key is not a boolean.
+ */
+fun Map<String, Any?>.getOptionalBoolean(key: String, defaultValue: Boolean): Boolean {
+    val value = get(key) ?: return defaultValue
+    return value as? Boolean
+            ?: throw ApplicationException(ErrorCode.RESOURCE_ERROR.withDetails("Invalid '$key' config: $value"))
+}
@@ -20,7 +20,7 @@ import org.apache.commons.text.StringSubstitutor
  * @return the updates string.
  */
 fun String.substitutePlaceholders(context: Map<String, Any>): String {
-    return String(StringSubstitutor(context).replace(this).toByteArray())
+    return StringSubstitutor(context).replace(this)
 }
 
 /**
@@ -12,12 +12,14 @@
  */
 package org.dandelero.dbmigrations.engine.version
 
-import java.io.File
+import java.nio.file.Path
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.version.VersionDeserializer
 import org.dandelero.dbmigrations.api.version.VersionService
 import org.dandelero.dbmigrations.engine.module.DirectoryModule
+import org.dandelero.dbmigrations.engine.util.displayString
+import org.dandelero.dbmigrations.engine.util.fileNameString
 import org.dandelero.dbmigrations.engine.util.listChildDirectories
 import org.slf4j.LoggerFactory
 
@@ -44,10 +46,10 @@ class DirectoryVersionService(
      */
     override fun getVersion(module: DirectoryModule, versionString: String): VersionedDirectory? {
         logger.debug("Finding the '$versionString' version in ${module.name} ...")
-        val potentialVersionDirectories = module.moduleDirectory.listChildDirectories()
+        val potentialVersionDirectories = module.modulePath.listChildDirectories()
 
         val dirForVersion = potentialVersionDirectories.firstOrNull { dir ->
-            dir.name == versionString
+            dir.fileNameString() == versionString
         }
 
         return dirForVersion?.let { createVersionedDirectory(it) }
@@ -61,19 +63,27 @@ class DirectoryVersionService(
      */
     override fun latestVersion(module: DirectoryModule): VersionedDirectory? {
         logger.debug("Finding the latest version in ${module.name} ...")
-        val potentialVersionDirectories = module.moduleDirectory.listChildDirectories()
+        return listVersions(module).lastOrNull()
+    }
+
+    /**
+     * Lists all the versions in the module.
+     *
+     * @param module the module whose versions are to be retrieved.
+     * @return the versions in ascending order.
+     */
+    override fun listVersions(module: DirectoryModule): List<VersionedDirectory> {
+        val potentialVersionDirectories = module.modulePath.listChildDirectories()
 
-        val allVersions = potentialVersionDirectories.mapNotNull { dir ->
-            logger.debug("Processing ${dir.absolutePath} ...")
+        return potentialVersionDirectories.mapNotNull { dir ->
+            logger.debug("Processing ${dir.displayString()} ...")
             val version = createVersionedDirectory(dir)
             if (version == null && !settings.ignoreInvalidVersions) {
                 throw ApplicationException(ErrorCode.VERSION_DIRECTORY_ERROR.withDetails(
-                        "Non-comformant version directory found at: ${dir.absolutePath}"))
+                        "Non-comformant version directory found at: ${dir.displayString()}"))
             }
             version
         }.sorted()
-
-        return allVersions.lastOrNull()
     }
 
     /**
@@ -81,10 +91,10 @@ class DirectoryVersionService(
      * @param directory the directory.
      * @return the corresponding versioned directory or null.
      */
-    private fun createVersionedDirectory(directory: File): VersionedDirectory? {
-        val version = deserializer.deserialize(directory.name)
+    private fun createVersionedDirectory(directory: Path): VersionedDirectory? {
+        val version = deserializer.deserialize(directory.fileNameString())
         if (version == null) {
-            logger.debug("Could not deserialize '${directory.name}' into a Version instance")
+            logger.debug("Could not deserialize '${directory.fileNameString()}' into a Version instance")
             return null
         }
         return VersionedDirectory(directory, version)
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.version
+
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+import org.dandelero.dbmigrations.api.version.Version
+
+/**
+ * Represents a contiguous range of versions that are composed into a single migration script.
+ * <br />
+ * The name of the range is the name of its first and last versions joined by '..', e.g. 'r1.0.1..r1.2'.
+ * <br />
+ * Created at: 17/10/26 1:15 pm
+ * @param versions the versions in the range, in ascending order.
+ * @author dandelero
+ */
+class VersionRange<V : Version>(val versions: List<V>) : Version {
+
+    init {
+        if (versions.isEmpty()) {
+            throw ApplicationException(ErrorCode.INVALID_VERSION.withDetails("A version range must contain a version"))
+        }
+    }
+
+    /**
+     * @return the name of this version range.
+     */
+    override fun getNameString(): String {
+        return if (versions.size == 1) {
+            versions.first().nameString
+        } else {
+            "${versions.first().nameString}..${versions.last().nameString}"
+        }
+    }
+
+    /**
+     * Compares the last version of this range with the other version.
+     * @param other the other instance.
+     * @return -1, 0, or 1 based on the [Comparable] contract.
+     */
+    override fun compareTo(other: Version?): Int {
+        val otherVersion = if (other is VersionRange<*>) other.versions.last() else other
+        return versions.last().compareTo(otherVersion)
+    }
+}
@@ -13,36 +13,53 @@
 package org.dandelero.dbmigrations.engine.version
 
 import java.io.File
+import java.nio.file.Files
+import java.nio.file.Path
 import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.api.version.Version
+import org.dandelero.dbmigrations.engine.util.displayString
+import org.dandelero.dbmigrations.engine.util.fileNameString
 
 /**
- * Represents a [Version] instance that is backed by a directory on the filesystem.
+ * Represents a [Version] instance that is backed by a directory on a file system (e.g. within a zip archive).
  * <br />
  * Created at: 31/10/19 8:12 am
- * @param directory the directory backing the version.
+ * @param path the directory backing the version.
  * @param version the version that this directory is for.
  * @author dandelero
  */
-class VersionedDirectory(val directory: File, val version: Version) : Version {
+class VersionedDirectory(val path: Path, val version: Version) : Version {
+
+    /**
+     * Creates a version that is backed by a directory on the default file system.
+     * @param directory the directory backing the version.
+     * @param version the version that this directory is for.
+     */
+    constructor(directory: File, version: Version) : this(directory.toPath(), version)
 
     init {
-        if (!directory.exists() || !directory.isDirectory) {
+        if (!Files.isDirectory(path)) {
             throw ApplicationException(ErrorCode.VERSION_DIRECTORY_ERROR.withDetails(
-                    "Version directory not found at '${directory.absolutePath}'"))
+                    "Version directory not found at '${path.displayString()}'"))
         }
 
-        if (directory.name != version.nameString) {
+        if (path.fileNameString() != version.nameString) {
             throw ApplicationException(ErrorCode.VERSION_DIRECTORY_ERROR.withDetails(
-                    "Directory name (${directory.name}) must match version name (${version.nameString})"))
+                    "Directory name (${path.fileNameString()}) must match version name (${version.nameString})"))
         }
     }
 
+    /**
+     * The directory backing the version; only available for versions on the default file system.
+     */
+    val directory: File
+        get() = path.toFile()
+
     /**
      * @return the name of this version.
      */
-    override fun getNameString(): String = directory.name
+    override fun getNameString(): String = path.fileNameString()
 
     /**
      * Compares this instance with the other version.
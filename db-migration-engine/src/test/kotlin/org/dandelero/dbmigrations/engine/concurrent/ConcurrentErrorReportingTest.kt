@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.concurrent
+
+import java.util.concurrent.CountDownLatch
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+/**
+ * Checks that errors raised concurrently keep their own details.
+ * <br />
+ * Created at: 17/10/26 7:20 pm
+ * @author dandelero
+ */
+class ConcurrentErrorReportingTest {
+
+    @Test
+    fun errorsRaisedConcurrentlyKeepTheirDetails() {
+        val threadCount = 8
+        val iterations = 2_000
+        val start = CountDownLatch(1)
+
+        PlatformThreadExecutionBackend(threadCount, "error-test-").use { backend ->
+            val futures = (1..threadCount).map { thread ->
+                backend.submit {
+                    start.await()
+                    (1..iterations).count { iteration ->
+                        val details = "module-$thread:version-$iteration"
+                        val exception = try {
+                            throw ApplicationException(ErrorCode.INVALID_VERSION.withDetails(details))
+                        } catch (e: ApplicationException) {
+                            e
+                        }
+                        // Give the other threads the chance to raise the same error before the details are read.
+                        Thread.yield()
+                        exception.details != details || exception.errorCode != ErrorCode.INVALID_VERSION
+                    }
+                }
+            }
+            start.countDown()
+
+            assertEquals(0, futures.map { it.get() }.sum(), "Errors were reported with the details of another thread")
+        }
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.concurrent
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around [ExecutionBackend]s.
+ * <br />
+ * Created at: 17/10/26 10:05 am
+ * @author dandelero
+ */
+class ExecutionBackendTest {
+
+    /**
+     * Whether the running JVM supports virtual threads.
+     */
+    private val virtualThreadsSupported = Thread::class.java.methods.any { it.name == "ofVirtual" }
+
+    @Test
+    fun nestedUnitsOfWorkDoNotStarveSingleThreadedPlatformBackend() {
+        PlatformThreadExecutionBackend(1, "test-").use { backend ->
+            val outer = backend.submit {
+                val inner = (1..5).map { i -> backend.submit { i * 2 } }
+                inner.map { it.get() }.sum()
+            }
+            assertEquals(30, outer.get())
+        }
+    }
+
+    @Test
+    fun platformBackendThreadsAreNamed() {
+        PlatformThreadExecutionBackend(2, "test-worker-").use { backend ->
+            assertTrue(backend.submit { Thread.currentThread().name }.get().startsWith("test-worker-"))
+        }
+    }
+
+    @Test
+    fun autoBackendMatchesJvmSupport() {
+        ExecutionBackendFactory.create(ExecutionBackendType.AUTO, 2, "test-").use { backend ->
+            if (virtualThreadsSupported) {
+                assertTrue(backend is VirtualThreadExecutionBackend)
+            } else {
+                assertTrue(backend is PlatformThreadExecutionBackend)
+            }
+            assertEquals("done", backend.submit { "done" }.get())
+        }
+    }
+
+    @Test
+    fun virtualBackendIsOnlyCreatedWhenSupported() {
+        val backend = VirtualThreadExecutionBackend.createIfSupported("test-")
+        if (virtualThreadsSupported) {
+            assertNotNull(backend)
+            backend!!.close()
+        } else {
+            assertNull(backend)
+        }
+    }
+}
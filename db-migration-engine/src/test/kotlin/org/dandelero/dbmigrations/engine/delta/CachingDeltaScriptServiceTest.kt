@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta
+
+import java.io.File
+import java.util.concurrent.atomic.AtomicInteger
+import org.dandelero.dbmigrations.api.delta.DeltaScript
+import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.api.delta.DeltaScriptService
+import org.dandelero.dbmigrations.engine.module.DirectoryModule
+import org.dandelero.dbmigrations.engine.module.DirectoryModuleService
+import org.dandelero.dbmigrations.engine.test.util.TestUtil
+import org.dandelero.dbmigrations.engine.version.VersionedDirectory
+import org.dandelero.dbmigrations.engine.version.simple.FourDigitVersion
+import org.dandelero.dbmigrations.engine.version.standard.VersionWithTag
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around [CachingDeltaScriptService].
+ * <br />
+ * Created at: 17/10/26 11:45 pm
+ * @author dandelero
+ */
+class CachingDeltaScriptServiceTest {
+
+    /**
+     * The number of times the contents of a script have been read from its source.
+     */
+    private val reads = AtomicInteger()
+
+    /**
+     * A service that lists three 100-byte scripts in every category, as new instances on every call.
+     */
+    private val sourceService = object : DeltaScriptService<DirectoryModule, VersionedDirectory> {
+        override fun getScripts(category: DeltaScriptCategory, module: DirectoryModule, version: VersionedDirectory):
+                List<DeltaScript> {
+            return (1..3).map { sequenceNumber ->
+                object : DeltaScript {
+                    override fun getName(): String = "000$sequenceNumber-${category.name.toLowerCase()}.sql"
+
+                    override fun getSequenceNumber(): Int = sequenceNumber
+
+                    override fun getSize(): Long = 100
+
+                    override fun getContents(): String {
+                        reads.incrementAndGet()
+                        return "$category $sequenceNumber".padEnd(100)
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The module that scripts are listed for.
+     */
+    private val module = DirectoryModuleService(TestUtil.getRequiredDirectoryOnClasspath(
+            "input/with-modules/scheme/standard/test-1")).findModuleByName("accounting")!!
+
+    /**
+     * The version that scripts are listed for.
+     */
+    private val version = with(FourDigitVersion(".", 1, 0, 1)) {
+        VersionWithTag(prefix = "r", prefixSeparator = "", version = this)
+    }.let { VersionedDirectory(File(module.moduleDirectory, it.nameString), it) }
+
+    @Test
+    fun scriptsAreReadOnceAcrossListings() {
+        val service = CachingDeltaScriptService(sourceService, 1000)
+        repeat(2) {
+            // e.g. the bidirectional scripts being written to both the upgrade and rollback scripts.
+            service.getScripts(DeltaScriptCategory.BIDIRECTIONAL, module, version).forEach { it.contents }
+            service.getScripts(DeltaScriptCategory.BIDIRECTIONAL, module, version).forEach { it.openReader().readText() }
+        }
+
+        assertEquals(3, reads.get())
+        assertEquals(3L, service.missCount)
+        assertEquals(9L, service.hitCount)
+    }
+
+    @Test
+    fun leastRecentlyUsedContentsAreEvictedToStayWithinBudget() {
+        val service = CachingDeltaScriptService(sourceService, 250)
+        val (first, second, third) = service.getScripts(DeltaScriptCategory.UPGRADE, module, version)
+        first.contents
+        second.contents
+        first.contents
+        // Caching the third script evicts the second, which was used less recently than the first.
+        third.contents
+        first.contents
+        second.contents
+
+        assertEquals(4, reads.get())
+        assertEquals(listOf(4L, 2L), listOf(service.missCount, service.hitCount))
+    }
+
+    @Test
+    fun identicalContentsAreSharedAndCountedOnceAgainstTheBudget() {
+        val otherVersion = with(FourDigitVersion(".", 1, 0, 0)) {
+            VersionWithTag(prefix = "r", prefixSeparator = "", version = this)
+        }.let { VersionedDirectory(File(module.moduleDirectory, it.nameString), it) }
+        val service = CachingDeltaScriptService(sourceService, 300)
+        // The scripts of both versions have the same contents.
+        val contents = service.getScripts(DeltaScriptCategory.UPGRADE, module, version).map { it.contents }
+        val otherContents = service.getScripts(DeltaScriptCategory.UPGRADE, module, otherVersion).map { it.contents }
+        contents.zip(otherContents).forEach { (first, second) -> assertSame(first, second) }
+        assertEquals(3L, service.sharedCount)
+
+        // Six scripts share three copies, which fit within the budget, so nothing has been evicted.
+        listOf(version, otherVersion).forEach { listedVersion ->
+            service.getScripts(DeltaScriptCategory.UPGRADE, module, listedVersion).forEach { it.contents }
+        }
+        assertEquals(6, reads.get())
+        assertEquals(listOf(6L, 6L), listOf(service.missCount, service.hitCount))
+    }
+
+    @Test
+    fun scriptsLargerThanTheBudgetAreNotCached() {
+        val service = CachingDeltaScriptService(sourceService, 99)
+        repeat(2) {
+            service.getScripts(DeltaScriptCategory.ROLLBACK, module, version).forEach { it.contents }
+        }
+
+        assertEquals(6, reads.get())
+    }
+}
@@ -12,10 +12,20 @@
  */
 package org.dandelero.dbmigrations.engine.delta
 
+import java.io.File
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.attribute.BasicFileAttributes
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
 import org.dandelero.dbmigrations.engine.test.util.TestUtil
+import org.dandelero.dbmigrations.engine.util.readAttributesOrNull
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertNotNull
 import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertThrows
 import org.junit.jupiter.api.Test
 
 /**
@@ -58,4 +68,41 @@ class DefaultDeltaScriptFileBuilderTest {
         val file = TestUtil.createTempFile("a43-create-ping_ping-table-199", "sql")
         assertNull(builder.build(file), "Invalid file name should not be parsed")
     }
-}
\ No newline at end of file
+
+    @Test
+    fun testBuildFromAttributesDoesNotQueryTheFileAgain() {
+        val file = TestUtil.createTempFile("0042-insert-reference-data", "sql")
+        file.writeText("INSERT INTO reference_data VALUES (1);")
+        val attributes = file.readAttributesOrNull()!!
+
+        // The file no longer exists, but the attributes that were read when it was listed are relied on.
+        file.delete()
+        val deltaScript = builder.build(file, attributes)
+        assertNotNull(deltaScript, "Delta script not found")
+        assertEquals(42, deltaScript!!.sequenceNumber, "Incorrect sequence number")
+        assertEquals(attributes.size(), deltaScript.size, "Incorrect size")
+    }
+
+    @Test
+    fun buildersOfFilesOnlyFailClearlyOutsideTheDefaultFileSystem() {
+        val fileBuilder = object : DeltaScriptFileBuilder {
+            override fun build(file: File): DeltaScriptFile? = builder.build(file)
+        }
+        val file = TestUtil.createTempFile("0007-create-table", "sql")
+        file.writeText("CREATE TABLE t (id INT);")
+        assertEquals(7, fileBuilder.build(file.toPath(), file.readAttributesOrNull()!!)?.sequenceNumber)
+
+        val archive = TestUtil.createTempFile("scripts", "zip")
+        ZipOutputStream(archive.outputStream()).use {
+            it.putNextEntry(ZipEntry(file.name))
+            it.write(file.readBytes())
+        }
+        FileSystems.newFileSystem(archive.toPath(), null as ClassLoader?).use { zip ->
+            val path = zip.getPath(file.name)
+            val attributes = Files.readAttributes(path, BasicFileAttributes::class.java)
+            val e = assertThrows(ApplicationException::class.java) { fileBuilder.build(path, attributes) }
+            assertEquals(ErrorCode.RESOURCE_ERROR, e.errorCode)
+            assertEquals(7, builder.build(path, attributes)?.sequenceNumber)
+        }
+    }
+}
@@ -13,6 +13,7 @@
 package org.dandelero.dbmigrations.engine.delta
 
 import java.io.File
+import org.dandelero.dbmigrations.api.application.ApplicationException
 import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
 import org.dandelero.dbmigrations.api.module.ModuleService
 import org.dandelero.dbmigrations.engine.module.DirectoryModule
@@ -23,6 +24,8 @@ import org.dandelero.dbmigrations.engine.version.simple.FourDigitVersion
 import org.dandelero.dbmigrations.engine.version.standard.VersionWithTag
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Test
 
 /**
@@ -85,4 +88,33 @@ class DeltaScriptServiceTest {
         val rollbackScripts = deltaScriptService.getScripts(DeltaScriptCategory.ROLLBACK, customerModule, version)
         assertEquals(3, rollbackScripts.size, "Incorrect number of rollback scripts returned")
     }
+
+    @Test
+    fun everyScriptOutOfSequenceIsReported() {
+        val moduleDirectory = TestUtil.createTempDirectory()
+        val v1_0 = with(FourDigitVersion(".", 1, 0)) {
+            VersionWithTag(prefix = "r", prefixSeparator = "", version = this)
+        }
+        val versionDirectory = File(moduleDirectory, v1_0.nameString)
+        val upgradeDirectory = File(versionDirectory, settings.upgradeDirectoryName)
+        upgradeDirectory.mkdirs()
+        listOf("0001-create.sql", "0001-alter.sql", "0003-insert.sql", "0009-update.sql", "drop.sql").forEach {
+            File(upgradeDirectory, it).writeText("SELECT 1;")
+        }
+        try {
+            val module = DirectoryModule(moduleDirectory)
+            val version = VersionedDirectory(versionDirectory, v1_0)
+            val exception = assertThrows(ApplicationException::class.java) {
+                deltaScriptService.getScripts(DeltaScriptCategory.UPGRADE, module, version)
+            }
+
+            val details = exception.details
+            assertTrue(details.contains("'drop.sql' has no sequence number"), details)
+            assertTrue(details.contains("'0009-update.sql' has sequence number 9"), details)
+            assertTrue(details.contains("repeats sequence number 1"), details)
+            assertTrue(details.contains("sequence numbers 2, 4, 5 are missing"), details)
+        } finally {
+            moduleDirectory.deleteRecursively()
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta
+
+import java.io.File
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around the [MappedFileReader].
+ * <br />
+ * Created at: 17/10/26 10:50 pm
+ * @author dandelero
+ */
+class MappedFileReaderTest {
+
+    @Test
+    fun charactersSpanningWindowsAreDecoded() {
+        // Characters of one to four bytes, so that windows of every size end part way through some of them.
+        val contents = (1..500).joinToString("\n") { "SELECT 'é€😀' AS value_$it;" }
+        withFile(contents.toByteArray()) { file ->
+            (4L..13L).forEach { windowSize ->
+                assertEquals(contents, MappedFileReader(file, windowSize).use { it.readText() })
+            }
+        }
+    }
+
+    @Test
+    fun contentsAreReadIntoSmallBuffers() {
+        val contents = (1..100).joinToString("\n") { "INSERT INTO t VALUES ($it, '€');" }
+        withFile(contents.toByteArray()) { file ->
+            val buffer = CharArray(3)
+            val read = StringBuilder()
+            MappedFileReader(file, 16).use { reader ->
+                var count = reader.read(buffer)
+                while (count >= 0) {
+                    read.append(buffer, 0, count)
+                    count = reader.read(buffer)
+                }
+            }
+            assertEquals(contents, read.toString())
+        }
+    }
+
+    @Test
+    fun malformedAndEmptyFilesAreReadLikeText() {
+        withFile(byteArrayOf(0x41, 0xC3.toByte(), 0x28, 0xE2.toByte())) { file ->
+            assertEquals(file.readText(), MappedFileReader(file, 4).use { it.readText() })
+        }
+        withFile(ByteArray(0)) { file ->
+            assertEquals("", MappedFileReader(file).use { it.readText() })
+        }
+    }
+
+    /**
+     * Runs the given block against a temporary file with the given contents.
+     * @param bytes the contents of the file.
+     * @param block the block to be run.
+     */
+    private fun withFile(bytes: ByteArray, block: (File) -> Unit) {
+        val file = File.createTempFile("delta", ".sql")
+        try {
+            file.writeBytes(bytes)
+            block(file)
+        } finally {
+            file.delete()
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta
+
+import java.io.File
+import java.util.Collections
+import java.util.concurrent.TimeUnit
+import org.dandelero.dbmigrations.api.delta.DeltaScript
+import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.api.delta.DeltaScriptService
+import org.dandelero.dbmigrations.engine.concurrent.ExecutionBackend
+import org.dandelero.dbmigrations.engine.concurrent.PlatformThreadExecutionBackend
+import org.dandelero.dbmigrations.engine.module.DirectoryModule
+import org.dandelero.dbmigrations.engine.module.DirectoryModuleService
+import org.dandelero.dbmigrations.engine.test.util.TestUtil
+import org.dandelero.dbmigrations.engine.version.VersionedDirectory
+import org.dandelero.dbmigrations.engine.version.simple.FourDigitVersion
+import org.dandelero.dbmigrations.engine.version.standard.VersionWithTag
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertSame
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around [ReadAheadDeltaScripts].
+ * <br />
+ * Created at: 18/10/26 9:10 am
+ * @author dandelero
+ */
+class ReadAheadDeltaScriptsTest {
+
+    /**
+     * The backend that scripts are read ahead on.
+     */
+    private val executionBackend = lazy<ExecutionBackend> { PlatformThreadExecutionBackend(2, "read-ahead-test-") }
+
+    /**
+     * The names of the scripts whose contents have been read; scripts read ahead concurrently may be read in any order.
+     */
+    private val reads = Collections.synchronizedList(mutableListOf<String>())
+
+    /**
+     * The module that cached scripts are listed for.
+     */
+    private val module = DirectoryModuleService(TestUtil.getRequiredDirectoryOnClasspath(
+            "input/with-modules/scheme/standard/test-1")).findModuleByName("accounting")!!
+
+    /**
+     * The version that cached scripts are listed for.
+     */
+    private val version = with(FourDigitVersion(".", 1, 0, 1)) {
+        VersionWithTag(prefix = "r", prefixSeparator = "", version = this)
+    }.let { VersionedDirectory(File(module.moduleDirectory, it.nameString), it) }
+
+    @AfterEach
+    fun closeBackend() {
+        if (executionBackend.isInitialized()) {
+            executionBackend.value.close()
+        }
+    }
+
+    @Test
+    fun scriptsAreReadAheadOfTheCurrentScript() {
+        val scripts = (1..6).map { script(it, 10) }
+        val readScripts = ReadAheadDeltaScripts(scripts, executionBackend, 2, 1000)
+
+        val first = readScripts.next()
+        // The next two scripts are read while the first is being processed.
+        waitForReads(2)
+        assertEquals(setOf("0002.sql", "0003.sql"), reads.toSet())
+        assertEquals("contents of 0001.sql", first.contents)
+
+        val remaining = readScripts.asSequence().toList()
+        assertEquals(scripts.drop(1).map { it.name }, remaining.map { it.name })
+        assertTrue(remaining.all { it is InMemoryDeltaScript })
+        // The copies keep the size of their source rather than encoding their contents again.
+        assertEquals(scripts.drop(1).map { it.size }, remaining.map { it.size })
+        assertEquals(scripts.map { "contents of ${it.name}" }, (listOf(first) + remaining).map { it.contents })
+    }
+
+    @Test
+    fun readAheadStaysWithinTheByteBudget() {
+        val scripts = listOf(script(1, 10), script(2, 60), script(3, 60), script(4, 200), script(5, 10))
+        val readScripts = ReadAheadDeltaScripts(scripts, executionBackend, 4, 100)
+
+        readScripts.next()
+        // The third script does not fit in the budget alongside the second.
+        waitForReads(1)
+        Thread.sleep(50)
+        assertEquals(listOf("0002.sql"), reads.toList())
+
+        readScripts.next()
+        // The fourth script is larger than the budget, so is left to be read as it is processed.
+        waitForReads(3)
+        assertEquals(setOf("0002.sql", "0003.sql", "0005.sql"), reads.toSet())
+        assertEquals(listOf(true, false, true), readScripts.asSequence().toList().map { it is InMemoryDeltaScript })
+    }
+
+    @Test
+    fun readAheadCanBeDisabled() {
+        val scripts = (1..3).map { script(it, 10) }
+        val readScripts = ReadAheadDeltaScripts(scripts, executionBackend, 0, 1000)
+
+        assertEquals(scripts, readScripts.asSequence().toList())
+        assertTrue(reads.isEmpty())
+        assertFalse(executionBackend.isInitialized())
+    }
+
+    @Test
+    fun scriptFilesAndCachedScriptsAreNotCopiedIntoMemory() {
+        val scriptFile = File.createTempFile("delta", ".sql")
+        try {
+            scriptFile.writeText("contents of ${scriptFile.name}")
+            val cachingService = CachingDeltaScriptService(object : DeltaScriptService<DirectoryModule, VersionedDirectory> {
+                override fun getScripts(category: DeltaScriptCategory, module: DirectoryModule, version: VersionedDirectory):
+                        List<DeltaScript> = listOf(script(1, 10), script(2, 10))
+            }, 1000)
+            val (cachedScript, bidirectionalScript) = cachingService.getScripts(DeltaScriptCategory.UPGRADE, module, version)
+                    .take(1) + cachingService.getScripts(DeltaScriptCategory.BIDIRECTIONAL, module, version).drop(1)
+            cachedScript.contents
+            val fileScript = DeltaScriptFile(scriptFile, 3)
+            val scripts = listOf(script(4, 10), cachedScript, bidirectionalScript, fileScript)
+
+            // The file is left to be transferred, and the cached scripts are read through the cache.
+            val readScripts = ReadAheadDeltaScripts(scripts, executionBackend, 3, 1000).asSequence().toList()
+            scripts.zip(readScripts).forEach { (script, readScript) -> assertSame(script, readScript) }
+            assertEquals(listOf("0001.sql", "0002.sql"), reads.toList())
+            assertEquals(listOf(2L, 1L), listOf(cachingService.missCount, cachingService.hitCount))
+            bidirectionalScript.contents
+            assertEquals(listOf(2L, 2L), listOf(cachingService.missCount, cachingService.hitCount))
+        } finally {
+            scriptFile.delete()
+        }
+    }
+
+    @Test
+    fun failedReadsAreRethrownWhenTheScriptIsReached() {
+        val failing = object : DeltaScript by script(2, 10) {
+            override fun getSize(): Long = 10
+
+            override fun getContents(): String = throw IllegalStateException("Unreadable script")
+        }
+        val readScripts = ReadAheadDeltaScripts(listOf(script(1, 10), failing), executionBackend, 1, 1000)
+
+        readScripts.next()
+        val e = assertThrows(IllegalStateException::class.java) { readScripts.next() }
+        assertTrue(e.message!!.contains("Unreadable script"))
+    }
+
+    /**
+     * Creates a script that records when its contents are read.
+     * @param sequenceNumber the sequence number of the script.
+     * @param size the size of the script.
+     * @return the script.
+     */
+    private fun script(sequenceNumber: Int, size: Long): DeltaScript {
+        return object : DeltaScript {
+            override fun getName(): String = "000$sequenceNumber.sql"
+
+            override fun getSequenceNumber(): Int = sequenceNumber
+
+            override fun getSize(): Long = size
+
+            override fun getContents(): String {
+                reads.add(name)
+                return "contents of $name"
+            }
+        }
+    }
+
+    /**
+     * Waits for the given number of scripts to have been read.
+     * @param count the number of reads.
+     */
+    private fun waitForReads(count: Int) {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10)
+        while (reads.size < count && System.nanoTime() < deadline) {
+            Thread.sleep(5)
+        }
+        assertEquals(count, reads.size, "Scripts read")
+    }
+}
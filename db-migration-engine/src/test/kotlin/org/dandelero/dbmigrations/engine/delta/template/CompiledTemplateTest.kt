@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta.template
+
+import java.io.ByteArrayOutputStream
+import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.engine.util.substitutePlaceholders
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around [CompiledTemplate].
+ * <br />
+ * Created at: 18/10/26 11:20 am
+ * @author dandelero
+ */
+class CompiledTemplateTest {
+
+    /**
+     * The placeholder values.
+     */
+    private val context = mapOf<String, Any>("moduleName" to "accounting", "scriptCount" to 3,
+            "nested" to "module \${moduleName}", "nameOfModule" to "moduleName")
+
+    @Test
+    fun compiledTemplatesRenderLikeSubstitutedTemplates() {
+        listOf(
+                "",
+                "no placeholders",
+                "\${moduleName}",
+                "-- \${moduleName} has \${scriptCount} scripts\n",
+                "\${unknown} and \${unknown:-a default} and \${moduleName:-unused}",
+                "escaped: $\${moduleName}, $$\${moduleName}, \$\$ and \$ alone",
+                "a value holding a placeholder: \${nested}",
+                "a nested placeholder: \${\${nameOfModule}}",
+                "unterminated \${moduleName",
+                "\${}"
+        ).forEach { template ->
+            assertEquals(template.substitutePlaceholders(context), render(template), template)
+        }
+    }
+
+    @Test
+    fun bundledTemplatesRenderLikeSubstitutedTemplates() {
+        val templateLocator = ClasspathDeltaScriptTemplateLocator()
+        val deltaScriptTemplates = DeltaScriptCategory.values().mapNotNull {
+            templateLocator.findDeltaScriptTemplate("mssql", it)
+        }
+        val templates = listOfNotNull(templateLocator.findMigrationScriptFileTemplate()) + deltaScriptTemplates
+        val scriptContext = context + mapOf("scriptContents" to "SELECT 1;", "scriptName" to "0001-select.sql",
+                "changeLogTableName" to "change_log", "statementDelimiter" to "GO")
+        templates.forEach { template ->
+            assertEquals(template.substitutePlaceholders(scriptContext), render(template, scriptContext))
+        }
+    }
+
+    @Test
+    fun placeholderNamesAreListedUnlessNested() {
+        assertEquals(listOf("moduleName", "scriptCount"),
+                CompiledTemplate.compile("\${moduleName} \${scriptCount:-0} \${moduleName} $\${escaped}")
+                        .placeholderNames)
+        assertNull(CompiledTemplate.compile("\${\${nameOfModule}}").placeholderNames)
+    }
+
+    @Test
+    fun indentationIsFoundForPlaceholdersOnOneIndentedLine() {
+        val compiledTemplate = CompiledTemplate.compile(
+                "BEGIN\n    \${body}\n\t\${moduleName}\n  \${twice} \${twice}\n  \${split}\n\${split}\n\${flat}\n")
+        assertEquals("    ", compiledTemplate.indentationOf("body"))
+        assertEquals("\t", compiledTemplate.indentationOf("moduleName"))
+        assertEquals("  ", compiledTemplate.indentationOf("twice"))
+        assertEquals("", compiledTemplate.indentationOf("split"))
+        assertEquals("", compiledTemplate.indentationOf("flat"))
+        assertEquals("", compiledTemplate.indentationOf("unknown"))
+    }
+
+    @Test
+    fun contentsPlaceholderValuesAreReindentedAsTheyAreRendered() {
+        val template = "BEGIN\n    \${body}\nEND -- \${moduleName}\n"
+        val bodyContext = context + mapOf("body" to "SELECT 1;\nSELECT 'é';\n\nSELECT 3;")
+        val expected = "BEGIN\n    SELECT 1;\n    SELECT 'é';\n    \n    SELECT 3;\nEND -- accounting\n"
+        assertEquals(expected, render(template, bodyContext, "body"))
+    }
+
+    @Test
+    fun contentsPlaceholderValuesAreSubstitutedUnlessWrittenVerbatim() {
+        val nestedContext = context + mapOf("body" to "SELECT 1;\n-- \${moduleName} $\${escaped}")
+        val template = "BEGIN\n    \${body}\nEND -- \${moduleName}\n"
+        // A value holding a placeholder is indented before it is substituted.
+        assertEquals("BEGIN\n    SELECT 1;\n    -- accounting \${escaped}\nEND -- accounting\n",
+                render(template, nestedContext, "body"))
+        assertEquals("BEGIN\n    SELECT 1;\n    -- \${moduleName} $\${escaped}\nEND -- accounting\n",
+                render(template, nestedContext, "body", true))
+
+        // So is a value in a template that is substituted as a whole.
+        val substitutedTemplate = "\${\${nameOfModule}}\n  \${body}"
+        assertEquals("\${\${nameOfModule}}\n  SELECT 1;\n  -- accounting \${escaped}",
+                render(substitutedTemplate, nestedContext, "body"))
+        assertEquals("\${\${nameOfModule}}\n  SELECT 1;\n  -- \${moduleName} $\${escaped}",
+                render(substitutedTemplate, nestedContext, "body", true))
+
+        // Other values holding placeholders are substituted either way.
+        assertEquals("module accounting: SELECT 1;\n-- \${moduleName} $\${escaped}",
+                render("\${nested}: \${body}", nestedContext, "body", true))
+    }
+
+    /**
+     * Renders a compiled template.
+     * @param template the template.
+     * @param templateContext the placeholder values.
+     * @param contentsPlaceholder the name of the placeholder whose value is re-indented, if any.
+     * @param verbatimContents whether the value of the contents placeholder is written verbatim.
+     * @return the rendered template.
+     */
+    private fun render(
+        template: String,
+        templateContext: Map<String, Any> = context,
+        contentsPlaceholder: String? = null,
+        verbatimContents: Boolean = false
+    ): String {
+        return with(ByteArrayOutputStream()) {
+            CompiledTemplate.compile(template).renderTo(this, templateContext, contentsPlaceholder = contentsPlaceholder,
+                    verbatimContents = verbatimContents)
+            toString(Charsets.UTF_8.name())
+        }
+    }
+}
@@ -14,10 +14,12 @@ package org.dandelero.dbmigrations.engine.delta.template
 
 import java.io.File
 import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.api.delta.DeltaScriptTemplateLocator
 import org.dandelero.dbmigrations.engine.test.util.TestUtil
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertNotNull
 import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertSame
 import org.junit.jupiter.api.Test
 
 /**
@@ -90,4 +92,109 @@ class DeltaScriptTemplateLocatorTest {
         assertNull(templateLocator.findDeltaScriptTemplate(engine, DeltaScriptCategory.BIDIRECTIONAL),
                 "No bidirectional delta script template expected")
     }
+
+    @Test
+    fun classpathTemplatesAreLocatedOnce() {
+        val templateLocator = CachingDeltaScriptTemplateLocator(cpTemplateLocator)
+        assertSame(templateLocator.findMigrationScriptFileTemplate(), templateLocator.findMigrationScriptFileTemplate())
+        assertSame(templateLocator.findDeltaScriptTemplate("mssql", DeltaScriptCategory.UPGRADE),
+                templateLocator.findDeltaScriptTemplate("mssql", DeltaScriptCategory.UPGRADE))
+    }
+
+    @Test
+    fun directoryTemplatesAreLocatedAgainOnceTheirFileChanges() {
+        val engine = "piebase"
+        val dir = TestUtil.createTempDirectory()
+        val upgradeTemplate = File(File(dir, engine).also { it.mkdirs() }, "upgrade_template.txt")
+        val templateLocator = CachingDeltaScriptTemplateLocator(DirectoryDeltaScriptTemplateLocator(dir))
+        val findUpgradeTemplate = { templateLocator.findDeltaScriptTemplate(engine, DeltaScriptCategory.UPGRADE) }
+        try {
+            assertNull(findUpgradeTemplate())
+
+            val lastModified = System.currentTimeMillis() - 60_000
+            upgradeTemplate.writeText("__upgrade_1__")
+            upgradeTemplate.setLastModified(lastModified)
+            assertEquals("__upgrade_1__", findUpgradeTemplate())
+
+            // Neither the modification time nor the size has changed, so the cached template is still used.
+            upgradeTemplate.writeText("__upgrade_2__")
+            upgradeTemplate.setLastModified(lastModified)
+            assertEquals("__upgrade_1__", findUpgradeTemplate())
+
+            upgradeTemplate.writeText("__upgrade_three__")
+            assertEquals("__upgrade_three__", findUpgradeTemplate())
+
+            upgradeTemplate.delete()
+            assertNull(findUpgradeTemplate())
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+
+    @Test
+    fun peckingOrderStopsAtTheFirstTemplateAndRemembersMisses() {
+        val lookups = mutableListOf<String>()
+        val overrideLocator = countingLocator("override", lookups) { category ->
+            if (category == DeltaScriptCategory.UPGRADE) "__override_upgrade__" else null
+        }
+        val fallbackLocator = countingLocator("fallback", lookups) { "__fallback_${it?.name}__" }
+        val templateLocator = PeckingOrderDeltaScriptTemplateLocator(overrideLocator, fallbackLocator)
+
+        repeat(2) {
+            assertEquals("__override_upgrade__", templateLocator.findDeltaScriptTemplate("mssql",
+                    DeltaScriptCategory.UPGRADE))
+            assertEquals("__fallback_ROLLBACK__", templateLocator.findDeltaScriptTemplate("mssql",
+                    DeltaScriptCategory.ROLLBACK))
+            assertEquals("__fallback_null__", templateLocator.findMigrationScriptFileTemplate())
+        }
+
+        // The fallback is never asked for the upgrade template, and the override is asked once for the others.
+        assertEquals(listOf("override UPGRADE", "override ROLLBACK", "fallback ROLLBACK", "override null",
+                "fallback null", "override UPGRADE", "fallback ROLLBACK", "fallback null"), lookups)
+    }
+
+    @Test
+    fun peckingOrderPicksUpTemplateFilesThatAppearAfterAMiss() {
+        val engine = "mssql"
+        val dir = TestUtil.createTempDirectory()
+        val templateLocator = PeckingOrderDeltaScriptTemplateLocator(
+                CachingDeltaScriptTemplateLocator(DirectoryDeltaScriptTemplateLocator(dir)),
+                CachingDeltaScriptTemplateLocator(cpTemplateLocator))
+        val findRollbackTemplate = { templateLocator.findDeltaScriptTemplate(engine, DeltaScriptCategory.ROLLBACK) }
+        try {
+            assertEquals(cpTemplateLocator.findDeltaScriptTemplate(engine, DeltaScriptCategory.ROLLBACK),
+                    findRollbackTemplate())
+
+            File(File(dir, engine).also { it.mkdirs() }, "rollback_template.txt").writeText("__rollback__")
+            assertEquals("__rollback__", findRollbackTemplate())
+        } finally {
+            dir.deleteRecursively()
+        }
+    }
+
+    /**
+     * Creates a template locator that records the templates it is asked for.
+     * @param name the name of the locator in the record.
+     * @param lookups the record of the templates asked for.
+     * @param findTemplate finds the template of a category; the migration script file template has no category.
+     * @return the template locator.
+     */
+    private fun countingLocator(
+        name: String,
+        lookups: MutableList<String>,
+        findTemplate: (DeltaScriptCategory?) -> String?
+    ): DeltaScriptTemplateLocator {
+        return object : DeltaScriptTemplateLocator {
+            override fun findDeltaScriptTemplate(databaseEngine: String, deltaScriptCategory: DeltaScriptCategory):
+                    String? {
+                lookups.add("$name $deltaScriptCategory")
+                return findTemplate(deltaScriptCategory)
+            }
+
+            override fun findMigrationScriptFileTemplate(): String? {
+                lookups.add("$name null")
+                return findTemplate(null)
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.delta.template
+
+import java.io.ByteArrayOutputStream
+import org.dandelero.dbmigrations.engine.util.substitutePlaceholders
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around [PlaceholderSubstitutingOutputStream].
+ * <br />
+ * Created at: 18/10/26 11:30 am
+ * @author dandelero
+ */
+class PlaceholderSubstitutingOutputStreamTest {
+
+    /**
+     * The placeholder values.
+     */
+    private val context = mapOf<String, Any>("moduleName" to "accounting", "nested" to "module \${moduleName}")
+
+    @Test
+    fun textIsSubstitutedLikeTheWholeTextHoweverItIsWritten() {
+        listOf(
+                "",
+                "no placeholders, but \$ and \$\$ alone and { braces }\n",
+                "SELECT 'é';\n-- \${moduleName}",
+                "-- \${unknown} and \${unknown:-a default} and \${nested}\n",
+                "escaped: $\${moduleName}, $$\${moduleName}, $$$\${moduleName} and a trailing \$",
+                "unterminated \${moduleName"
+        ).forEach { text ->
+            val expected = text.substitutePlaceholders(context)
+            listOf(1, 2, 3, 7, 1024).forEach { chunkSize ->
+                val written = ByteArrayOutputStream()
+                PlaceholderSubstitutingOutputStream(written, context).apply {
+                    text.toByteArray().asList().chunked(chunkSize).forEach { write(it.toByteArray()) }
+                    finish()
+                }
+                assertEquals(expected, written.toString(Charsets.UTF_8.name()), "$text in chunks of $chunkSize")
+            }
+        }
+    }
+
+    @Test
+    fun textBeforeTheFirstPlaceholderIsPassedThrough() {
+        val written = ByteArrayOutputStream()
+        val stream = PlaceholderSubstitutingOutputStream(written, context)
+        stream.write("SELECT 1; \$".toByteArray())
+        assertEquals("SELECT 1; ", written.toString(Charsets.UTF_8.name()))
+        stream.write("{moduleName} and more".toByteArray())
+        assertEquals("SELECT 1; ", written.toString(Charsets.UTF_8.name()))
+        stream.finish()
+        assertEquals("SELECT 1; accounting and more", written.toString(Charsets.UTF_8.name()))
+    }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.git
+
+import java.io.File
+import java.io.IOException
+import java.nio.file.FileSystem
+import java.nio.file.Files
+import java.nio.file.Path
+import java.util.concurrent.TimeUnit
+import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.engine.module.DirectoryModuleService
+import org.dandelero.dbmigrations.engine.test.util.TestUtil
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertNotEquals
+import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Assumptions.assumeTrue
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around [GitFileSystems], which read the input of two tagged revisions of a repository built with
+ * the git command.
+ * <br />
+ * Created at: 18/10/26 1:15 pm
+ * @author dandelero
+ */
+class GitFileSystemTest {
+
+    /**
+     * The input directory that is committed to the repository.
+     */
+    private val inputDir = TestUtil.getRequiredFileOnClasspath("input/with-modules/scheme/standard/test-1")
+
+    /**
+     * The working tree of the repository.
+     */
+    private val repositoryDir = TestUtil.createTempDirectory()
+
+    /**
+     * The script that is changed by the second revision.
+     */
+    private val changedScript = "customer/r1.0/upgrade/0001-create-table_1.sql"
+
+    @BeforeEach
+    fun createRepository() {
+        assumeTrue(runCatching { git(repositoryDir, "--version") }.isSuccess, "git is not installed")
+
+        git(repositoryDir, "init", "-q")
+        git(repositoryDir, "config", "user.email", "tests@example.com")
+        git(repositoryDir, "config", "user.name", "tests")
+        inputDir.copyRecursively(File(repositoryDir, "db"))
+        git(repositoryDir, "add", "-A")
+        git(repositoryDir, "commit", "-q", "-m", "First release")
+        git(repositoryDir, "tag", "-a", "release-1", "-m", "First release")
+
+        File(repositoryDir, "db/$changedScript").appendText("\n-- A change in the second release\n")
+        git(repositoryDir, "commit", "-q", "-a", "-m", "Second release")
+        git(repositoryDir, "tag", "release-2")
+    }
+
+    @Test
+    fun looseObjectsAreReadAtEachRevision() {
+        assertRevisionsAreRead(File(repositoryDir, "db"))
+    }
+
+    @Test
+    fun packedObjectsAreReadAtEachRevision() {
+        // Similar scripts are stored as deltas of each other once packed.
+        git(repositoryDir, "gc", "-q", "--aggressive")
+        assertEquals(0, File(repositoryDir, ".git/objects").listFiles { file -> file.name.length == 2 }!!.size,
+                "Expected every object to be packed")
+
+        assertRevisionsAreRead(File(repositoryDir, "db"))
+    }
+
+    @Test
+    fun deltaBasesAreInflatedOncePerPack() {
+        git(repositoryDir, "gc", "-q", "--aggressive")
+        val indexFile = File(repositoryDir, ".git/objects/pack").listFiles { file -> file.name.endsWith(".idx") }!!
+                .single()
+        val packFile = File(indexFile.parentFile, "${indexFile.nameWithoutExtension}.pack")
+        val objectIds = git(repositoryDir, "rev-list", "--objects", "--all").lines().filter { it.isNotBlank() }
+                .map { it.substringBefore(' ') }
+        val readAll = { pack: GitPackFile ->
+            objectIds.map { objectId ->
+                val objectIdBytes = ByteArray(objectId.length / 2) {
+                    objectId.substring(2 * it, 2 * it + 2).toInt(16).toByte()
+                }
+                pack.readObject(pack.findOffset(objectIdBytes)!!) { throw IOException("Not in the pack: $it") }
+                        .data.toList()
+            }
+        }
+
+        // Several scripts are stored as deltas of the same base, which is inflated for the first of them only.
+        val cachingPack = GitPackFile(packFile, indexFile)
+        val uncachedPack = GitPackFile(packFile, indexFile, 0)
+        assertEquals(readAll(uncachedPack), readAll(cachingPack))
+        assertTrue(cachingPack.deltaBaseHitCount > 0)
+        assertEquals(0L, uncachedPack.deltaBaseHitCount)
+    }
+
+    @Test
+    fun bareRepositoryIsRead() {
+        val bareRepositoryDir = File(TestUtil.createTempDirectory(), "repository.git")
+        git(repositoryDir, "clone", "-q", "--bare", repositoryDir.absolutePath, bareRepositoryDir.absolutePath)
+
+        assertRevisionsAreRead(File(bareRepositoryDir, "db"))
+    }
+
+    @Test
+    fun modulesAreListedFromRevision() {
+        GitFileSystems.open(File(repositoryDir, "db"), "release-1").use { fileSystem ->
+            val modules = DirectoryModuleService(fileSystem.getPath("/")).listAllModules()
+            assertEquals(inputDir.listFiles()!!.filter { it.isDirectory }.map { it.name }.sorted(),
+                    modules.map { it.name }.sorted())
+        }
+    }
+
+    @Test
+    fun unknownRevisionIsRejected() {
+        assertThrows(ApplicationException::class.java) {
+            GitFileSystems.open(File(repositoryDir, "db"), "release-3")
+        }
+        assertThrows(ApplicationException::class.java) {
+            GitFileSystems.open(File(repositoryDir, "no-such-directory"), "release-1")
+        }
+    }
+
+    /**
+     * Asserts that the first revision holds the input directory as it was committed, and that the second revision
+     * holds the changed script.
+     * @param dir the input directory within the repository.
+     */
+    private fun assertRevisionsAreRead(dir: File) {
+        val expectedFiles = inputDir.walkTopDown().filter { it.isFile }
+                .associate { it.relativeTo(inputDir).invariantSeparatorsPath to it.readText() }
+
+        val firstRevisionFiles = GitFileSystems.open(dir, "release-1").use { readFiles(it) }
+        assertEquals(expectedFiles, firstRevisionFiles)
+
+        val secondRevisionFiles = GitFileSystems.open(dir, "release-2").use { readFiles(it) }
+        assertEquals(expectedFiles.keys, secondRevisionFiles.keys)
+        assertNotEquals(expectedFiles[changedScript], secondRevisionFiles[changedScript])
+        assertEquals(expectedFiles - changedScript, secondRevisionFiles - changedScript)
+    }
+
+    /**
+     * Reads every file of a file system, checking that its size is reported correctly.
+     * @param fileSystem the file system.
+     * @return the contents of each file, by its path.
+     */
+    private fun readFiles(fileSystem: FileSystem): Map<String, String> {
+        val root = fileSystem.getPath("/")
+        return Files.walk(root).use { paths ->
+            paths.filter { Files.isRegularFile(it) }.toArray().map { it as Path }.associate { path ->
+                val contents = Files.readAllBytes(path)
+                assertEquals(contents.size.toLong(), Files.size(path), "Size of $path")
+                root.relativize(path).toString() to String(contents, Charsets.UTF_8)
+            }
+        }
+    }
+
+    /**
+     * Runs a git command.
+     * @param dir the directory to run the command in.
+     * @param args the arguments of the command.
+     * @return the output of the command.
+     */
+    private fun git(dir: File, vararg args: String): String {
+        val process = ProcessBuilder(listOf("git") + args).directory(dir).redirectErrorStream(true).start()
+        val output = process.inputStream.bufferedReader().readText()
+        if (!process.waitFor(1, TimeUnit.MINUTES) || process.exitValue() != 0) {
+            throw IllegalStateException("git ${args.joinToString(" ")} failed: $output")
+        }
+        return output
+    }
+}
@@ -36,6 +36,7 @@ import org.dandelero.dbmigrations.engine.version.VersionServiceSettings
 import org.dandelero.dbmigrations.engine.version.VersionedDirectory
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.Assertions.assertNotNull
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.Assertions.fail
 import org.slf4j.LoggerFactory
 
@@ -225,6 +226,66 @@ class MigrationScriptComposerHelper(
                 databaseEngine)
     }
 
+    /**
+     * Composes the latest version of every module in a single pass, writing each module's migration scripts to its
+     * own output directory, and asserts the output of each module against the expected output.
+     * <br />
+     * When there is more than one database engine, each engine's output is written to its own subdirectory; the
+     * output of the first engine is asserted against the expected output and the output of the others must exist.
+     * @param directoryWithTestData the directory containing the test data.
+     * @param testIdentifier the name of the directory that contains the modules to be processed.
+     * @param testCaseLabel the label for the test case.
+     * @param expectedLatestVersions a mapping from each module name to the name of its expected latest version.
+     * @param databaseEngines the database engines to generate the migration scripts for.
+     */
+    fun runTestForLatestVersionInAllModules(
+        directoryWithTestData: File,
+        testIdentifier: String,
+        testCaseLabel: String,
+        expectedLatestVersions: Map<String, String>,
+        databaseEngines: List<String>
+    ) {
+        val moduleService: ModuleService<DirectoryModule> = DirectoryModuleService(File(directoryWithTestData, testIdentifier))
+        val outputDirectory = TestUtil.createTempDirectory()
+        val engineSubdirectories = databaseEngines.size > 1
+
+        MigrationScriptComposer(moduleService = moduleService,
+                versionService = versionService,
+                deltaScriptService = deltaScriptService,
+                migrationScriptWriterFactory = MigrationScriptFileWriterFactory(outputDirectory, deltaScriptTemplateLocator,
+                        engineSubdirectories),
+                migrationScriptSettings = migrationScriptOrderSettings).use { composer ->
+            composer.composeMigrationScriptForLatestVersion(databaseEngines)
+        }
+
+        // The output of the other engines must at least exist.
+        databaseEngines.drop(1).forEach { databaseEngine ->
+            expectedLatestVersions.forEach { (moduleName, versionString) ->
+                val upgradeFile = File(File(File(File(outputDirectory, databaseEngine), moduleName), versionString), "upgrade.sql")
+                assertTrue(upgradeFile.isFile, "No $databaseEngine upgrade script for module '$moduleName'")
+            }
+        }
+
+        val engineOutputDirectory = if (engineSubdirectories) File(outputDirectory, databaseEngines.first()) else outputDirectory
+        val testId = directoryWithTestData.name + sep + testIdentifier + sep + testCaseLabel
+        val dynamicLineIndicator: (String) -> Boolean = { line: String -> line.isContainedIn("Created on", "Created by") }
+        expectedLatestVersions.forEach { (moduleName, versionString) ->
+            val expectedOutput = readExceptedOutput(testId, moduleName, versionString, listOf(upgradeFileName, rollbackFileName))
+            val versionOutputDirectory = File(File(engineOutputDirectory, moduleName), versionString)
+
+            listOf(upgradeFileName to "upgrade.sql", rollbackFileName to "rollback.sql").forEach { (expectedFileName, actualFileName) ->
+                val expected = expectedOutput[expectedFileName] ?: fail<String>("No file: $expectedFileName")
+                val actual = File(versionOutputDirectory, actualFileName).readFully()
+                        ?: fail<String>("$actualFileName not generated for module '$moduleName'")
+                val comparisonResult = TestUtil.compareLineByLine(expected.split(System.lineSeparator()),
+                        actual.split(System.lineSeparator()), dynamicLineIndicator)
+                if (comparisonResult != null) {
+                    fail<String>(comparisonResult)
+                }
+            }
+        }
+    }
+
     /**
      * Generates the migration script for the test identified by the given parameters and asserts
      * the generated output against the expected output.
@@ -12,13 +12,33 @@
  */
 package org.dandelero.dbmigrations.engine.migration
 
+import java.io.File
+import java.time.Duration
 import org.dandelero.dbmigrations.api.application.ApplicationException
+import org.dandelero.dbmigrations.api.application.ErrorCode
+import org.dandelero.dbmigrations.api.migration.MigrationScriptWriter
+import org.dandelero.dbmigrations.api.migration.MigrationScriptWriterFactory
+import org.dandelero.dbmigrations.api.module.Module
+import org.dandelero.dbmigrations.api.version.Version
+import org.dandelero.dbmigrations.engine.concurrent.ExecutionBackendType
+import org.dandelero.dbmigrations.engine.delta.DefaultDeltaScriptFileBuilder
+import org.dandelero.dbmigrations.engine.delta.DeltaScriptDirectoryService
 import org.dandelero.dbmigrations.engine.delta.DeltaScriptDirectoryServiceSettings
+import org.dandelero.dbmigrations.engine.delta.template.ClasspathDeltaScriptTemplateLocator
+import org.dandelero.dbmigrations.engine.module.DirectoryModuleService
+import org.dandelero.dbmigrations.engine.module.NoModuleDirectoryModuleService
+import org.dandelero.dbmigrations.engine.pipeline.PipelineSettings
 import org.dandelero.dbmigrations.engine.test.util.TestUtil
+import org.dandelero.dbmigrations.engine.version.DirectoryVersionService
 import org.dandelero.dbmigrations.engine.version.VersionServiceSettings
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
 import org.junit.jupiter.api.Assertions.assertThrows
+import org.junit.jupiter.api.Assertions.assertTimeoutPreemptively
+import org.junit.jupiter.api.Assertions.assertTrue
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.function.Executable
 
 /**
  * A set of end-to-end migration script composition tests.
@@ -63,6 +83,22 @@ class MigrationScriptComposerTest {
                 versionString = "r1.0.0", databaseEngine = "mssql")
     }
 
+    /**
+     * Default module with upgrade, rollback and bidirectional scripts, rendering both categories concurrently.
+     */
+    @Test
+    fun defaultModuleTestWithConcurrentCategoryRendering() {
+        val deltaScriptDirectoryServiceSettings = DeltaScriptDirectoryServiceSettings()
+        val versionServiceSettings = VersionServiceSettings()
+        val migrationScriptOrderSettings = MigrationScriptSettings(dbStatementDelimiter = "GO",
+                dbChangeLogTableName = "change_log", concurrentCategoryRendering = true)
+        val helper = MigrationScriptComposerHelper(deltaScriptDirectoryServiceSettings, versionServiceSettings,
+                migrationScriptOrderSettings, versionDeserialzer1)
+        val directoryWithTestData = TestUtil.getRequiredDirectoryOnClasspath("input/no-modules/scheme/standard")
+        helper.runDefaultModuleTest(directoryWithTestData = directoryWithTestData, testCaseLabel = "standard-case",
+                versionString = "r1.0.0", databaseEngine = "mssql")
+    }
+
     /**
      * Default module with upgrade, rollback and bidirectional scripts.
      */
@@ -269,6 +305,298 @@ class MigrationScriptComposerTest {
                 expectedLatestVersionString = "r0.2", databaseEngine = "mssql")
     }
 
+    /**
+     * The latest version of every module composed concurrently.
+     */
+    @Test
+    fun moduleTestForLatestVersionsInParallel() {
+        val deltaScriptDirectoryServiceSettings = DeltaScriptDirectoryServiceSettings()
+        val versionServiceSettings = VersionServiceSettings()
+        val migrationScriptOrderSettings = MigrationScriptSettings(upgradeScriptOrder = BidirectionalFilesOrder.FIRST,
+                rollbackScriptOrder = BidirectionalFilesOrder.EXCLUDE,
+                dbStatementDelimiter = "GO", dbChangeLogTableName = "dandelero_change_log", parallelism = 3)
+        val helper = MigrationScriptComposerHelper(deltaScriptDirectoryServiceSettings, versionServiceSettings,
+                migrationScriptOrderSettings, versionDeserialzer1)
+
+        val directoryWithTestData = TestUtil.getRequiredDirectoryOnClasspath("input/with-modules/scheme/standard")
+
+        helper.runTestForLatestVersionInAllModules(directoryWithTestData = directoryWithTestData,
+                testIdentifier = "test-1", testCaseLabel = "standard",
+                expectedLatestVersions = mapOf("accounting" to "r1.0.1", "customer" to "r1.1", "packages" to "r0.2"),
+                databaseEngines = listOf("mssql"))
+    }
+
+    /**
+     * The latest version of every module composed for several database engines in a single pass.
+     */
+    @Test
+    fun moduleTestForLatestVersionsForMultipleDatabaseEngines() {
+        val deltaScriptDirectoryServiceSettings = DeltaScriptDirectoryServiceSettings()
+        val versionServiceSettings = VersionServiceSettings()
+        val migrationScriptOrderSettings = MigrationScriptSettings(upgradeScriptOrder = BidirectionalFilesOrder.FIRST,
+                rollbackScriptOrder = BidirectionalFilesOrder.EXCLUDE,
+                databaseEngineSettings = mapOf(
+                        "mssql" to DatabaseEngineSettings(dbChangeLogTableName = "dandelero_change_log", dbStatementDelimiter = "GO"),
+                        "mysql" to DatabaseEngineSettings(dbChangeLogTableName = "dandelero_change_log", dbStatementSeparator = ";")))
+        val helper = MigrationScriptComposerHelper(deltaScriptDirectoryServiceSettings, versionServiceSettings,
+                migrationScriptOrderSettings, versionDeserialzer1)
+
+        val directoryWithTestData = TestUtil.getRequiredDirectoryOnClasspath("input/with-modules/scheme/standard")
+
+        helper.runTestForLatestVersionInAllModules(directoryWithTestData = directoryWithTestData,
+                testIdentifier = "test-1", testCaseLabel = "standard",
+                expectedLatestVersions = mapOf("accounting" to "r1.0.1", "customer" to "r1.1", "packages" to "r0.2"),
+                databaseEngines = listOf("mssql", "mysql"))
+    }
+
+    /**
+     * Modules composed concurrently have their failures reported together.
+     */
+    @Test
+    fun moduleFailuresInParallelAreAggregated() {
+        // Neither scheme directory is a valid module for the "r" prefixed versions: both modules must fail.
+        val moduleBaseDir = TestUtil.getRequiredDirectoryOnClasspath("input/no-modules/scheme")
+        val composer = MigrationScriptComposer(moduleService = DirectoryModuleService(moduleBaseDir),
+                versionService = DirectoryVersionService(VersionServiceSettings(), versionDeserialzer1),
+                deltaScriptService = DeltaScriptDirectoryService(DefaultDeltaScriptFileBuilder(),
+                        DeltaScriptDirectoryServiceSettings()),
+                migrationScriptWriterFactory = MigrationScriptFileWriterFactory(TestUtil.createTempDirectory(),
+                        ClasspathDeltaScriptTemplateLocator()),
+                migrationScriptSettings = MigrationScriptSettings(parallelism = 2))
+
+        val exception = assertThrows(ApplicationException::class.java) {
+            composer.composeMigrationScriptForLatestVersion("mssql")
+        }
+        assertEquals(ErrorCode.COMPOSITION_ERROR.code, exception.code)
+        assertEquals(2, exception.suppressed.size)
+    }
+
+    /**
+     * The output of a version that fails is discarded, while the other modules are still composed.
+     */
+    @Test
+    fun failedVersionOutputIsDiscarded() {
+        val outputDirectory = composeWithFailingModule(MigrationScriptSettings(parallelism = 3,
+                failurePolicy = FailurePolicy.KEEP_GOING))
+
+        // The upgrade script of the failed version was complete, but a version stands or falls as a whole.
+        assertFalse(File(outputDirectory, "customer${File.separator}r1.1").exists())
+        listOf("accounting${File.separator}r1.0.1", "packages${File.separator}r0.2").forEach { versionPath ->
+            assertTrue(File(outputDirectory, "$versionPath${File.separator}upgrade.sql").length() > 0)
+            assertTrue(File(outputDirectory, "$versionPath${File.separator}rollback.sql").length() > 0)
+        }
+    }
+
+    /**
+     * A failure under the fail-fast policy is reported, and the output of the failed version is discarded.
+     */
+    @Test
+    fun failedVersionOutputIsDiscardedWhenFailingFast() {
+        val outputDirectory = composeWithFailingModule(MigrationScriptSettings(parallelism = 2,
+                failurePolicy = FailurePolicy.FAIL_FAST))
+
+        assertFalse(File(outputDirectory, "customer${File.separator}r1.1").exists())
+    }
+
+    /**
+     * Composes the latest version of every module in the standard test data, failing part way through the rollback
+     * script of the 'customer' module.
+     * @param migrationScriptSettings the settings to compose with.
+     * @return the output directory.
+     */
+    private fun composeWithFailingModule(migrationScriptSettings: MigrationScriptSettings): File {
+        val moduleBaseDir = TestUtil.getRequiredDirectoryOnClasspath("input/with-modules/scheme/standard/test-1")
+        val outputDirectory = TestUtil.createTempDirectory()
+        val fileWriterFactory = MigrationScriptFileWriterFactory(outputDirectory, ClasspathDeltaScriptTemplateLocator())
+        val failingWriterFactory = object : MigrationScriptWriterFactory {
+            override fun createUpgradeScriptWriter(databaseEngine: String, module: Module, version: Version) =
+                    fileWriterFactory.createUpgradeScriptWriter(databaseEngine, module, version)
+
+            override fun createRollbackScriptWriter(databaseEngine: String, module: Module, version: Version):
+                    MigrationScriptWriter {
+                val scriptWriter = fileWriterFactory.createRollbackScriptWriter(databaseEngine, module, version)
+                if (module.name != "customer") {
+                    return scriptWriter
+                }
+                return object : MigrationScriptWriter by scriptWriter {
+                    private var scriptCount = 0
+
+                    override fun writeRegularScript(scriptContext: Map<String, Any>) {
+                        if (++scriptCount == 2) {
+                            throw IllegalStateException("Failed to write rollback script")
+                        }
+                        scriptWriter.writeRegularScript(scriptContext)
+                    }
+
+                    override fun abort() = scriptWriter.abort()
+                }
+            }
+        }
+        val composer = MigrationScriptComposer(moduleService = DirectoryModuleService(moduleBaseDir),
+                versionService = DirectoryVersionService(VersionServiceSettings(), versionDeserialzer1),
+                deltaScriptService = DeltaScriptDirectoryService(DefaultDeltaScriptFileBuilder(),
+                        DeltaScriptDirectoryServiceSettings()),
+                migrationScriptWriterFactory = failingWriterFactory,
+                migrationScriptSettings = migrationScriptSettings)
+
+        val exception = assertThrows(ApplicationException::class.java) {
+            composer.use { it.composeMigrationScriptForLatestVersion("mssql") }
+        }
+        assertEquals(ErrorCode.COMPOSITION_ERROR.code, exception.code)
+        assertEquals(1, exception.suppressed.size)
+        assertTrue(exception.suppressed.single().message!!.contains("Failed to write rollback script"))
+        return outputDirectory
+    }
+
+    /**
+     * Every version of every module composed on the work-stealing pool.
+     */
+    @Test
+    fun moduleTestForAllVersionsInParallel() {
+        assertAllVersionsComposed(MigrationScriptSettings(parallelism = 3), deferredOutput = false)
+    }
+
+    /**
+     * Every version of every module composed with the script categories of each version rendered concurrently, on a
+     * single thread and on the work-stealing pool.
+     */
+    @Test
+    fun moduleTestForAllVersionsWithConcurrentCategoryRendering() {
+        listOf(1, 2).forEach { parallelism ->
+            assertTimeoutPreemptively(Duration.ofMinutes(1), Executable {
+                assertAllVersionsComposed(MigrationScriptSettings(parallelism = parallelism,
+                        concurrentCategoryRendering = true, executionBackend = ExecutionBackendType.PLATFORM),
+                        deferredOutput = false)
+            }, "Composition with parallelism $parallelism did not complete")
+        }
+    }
+
+    /**
+     * Every version of every module composed on a staged pipeline.
+     */
+    @Test
+    fun moduleTestForAllVersionsOnPipeline() {
+        assertAllVersionsComposed(MigrationScriptSettings(pipelineSettings = PipelineSettings(queueCapacity = 1)),
+                deferredOutput = true)
+    }
+
+    /**
+     * Composes every version of every module in the standard test data and checks that each version has an upgrade
+     * script.
+     * @param migrationScriptSettings the settings to compose with.
+     * @param deferredOutput whether the script writers hold their output until they are finished.
+     */
+    private fun assertAllVersionsComposed(migrationScriptSettings: MigrationScriptSettings, deferredOutput: Boolean) {
+        val moduleBaseDir = TestUtil.getRequiredDirectoryOnClasspath("input/with-modules/scheme/standard/test-1")
+        val outputDirectory = TestUtil.createTempDirectory()
+        val composer = MigrationScriptComposer(moduleService = DirectoryModuleService(moduleBaseDir),
+                versionService = DirectoryVersionService(VersionServiceSettings(), versionDeserialzer1),
+                deltaScriptService = DeltaScriptDirectoryService(DefaultDeltaScriptFileBuilder(),
+                        DeltaScriptDirectoryServiceSettings()),
+                migrationScriptWriterFactory = MigrationScriptFileWriterFactory(outputDirectory,
+                        ClasspathDeltaScriptTemplateLocator(), deferredOutput = deferredOutput),
+                migrationScriptSettings = migrationScriptSettings)
+
+        composer.use { it.composeMigrationScriptsForAllVersions(listOf("mssql")) }
+
+        val expectedVersions = mapOf("accounting" to listOf("r1.0.0", "r1.0.1"), "customer" to listOf("r1.0", "r1.1"),
+                "packages" to listOf("r0.1", "r0.2"))
+        expectedVersions.forEach { (moduleName, versionNames) ->
+            versionNames.forEach { versionName ->
+                val upgradeScript = File(outputDirectory, "$moduleName${File.separator}$versionName${File.separator}upgrade.sql")
+                assertTrue(upgradeScript.length() > 0, "No upgrade script for $moduleName:$versionName")
+            }
+        }
+    }
+
+    /**
+     * The plan of every version of every module is worked out from the script listings, without writing any output.
+     */
+    @Test
+    fun planForAllVersions() {
+        val moduleBaseDir = TestUtil.getRequiredDirectoryOnClasspath("input/with-modules/scheme/standard/test-1")
+        val outputDirectory = TestUtil.createTempDirectory()
+        val composer = MigrationScriptComposer(moduleService = DirectoryModuleService(moduleBaseDir),
+                versionService = DirectoryVersionService(VersionServiceSettings(), versionDeserialzer1),
+                deltaScriptService = DeltaScriptDirectoryService(DefaultDeltaScriptFileBuilder(),
+                        DeltaScriptDirectoryServiceSettings()),
+                migrationScriptWriterFactory = MigrationScriptFileWriterFactory(outputDirectory,
+                        ClasspathDeltaScriptTemplateLocator()),
+                migrationScriptSettings = MigrationScriptSettings())
+
+        val plan = composer.planForAllVersionsInModules(listOf("mssql"), DirectoryModuleService(moduleBaseDir).listAllModules())
+
+        assertTrue(plan.isValid, "Unexpected problems: ${plan.problems}")
+        assertEquals(setOf("accounting", "customer", "packages"), plan.modules.map { it.name }.toSet())
+        assertEquals(6, plan.versionCount)
+        assertEquals(42, plan.scriptCount)
+        val scriptFiles = moduleBaseDir.walk().filter { it.isFile && it.extension == "sql" }.toList()
+        assertEquals(scriptFiles.map { it.length() }.sum(), plan.totalSize)
+        assertEquals(listOf(1, 2, 3), plan.modules.first().versions.first().upgradeScripts.map { it.sequenceNumber })
+        assertTrue(outputDirectory.listFiles().isNullOrEmpty())
+    }
+
+    /**
+     * The plan reports the problem of every invalid version, rather than stopping at the first.
+     */
+    @Test
+    fun planReportsEveryProblem() {
+        val directoryWithTestData = TestUtil.getRequiredDirectoryOnClasspath("input/invalid-tests/no-modules")
+        val moduleService = NoModuleDirectoryModuleService(directoryWithTestData)
+        val composer = MigrationScriptComposer(moduleService = moduleService,
+                versionService = DirectoryVersionService(VersionServiceSettings(), versionDeserialzer1),
+                deltaScriptService = DeltaScriptDirectoryService(DefaultDeltaScriptFileBuilder(),
+                        DeltaScriptDirectoryServiceSettings()),
+                migrationScriptWriterFactory = MigrationScriptFileWriterFactory(TestUtil.createTempDirectory(),
+                        ClasspathDeltaScriptTemplateLocator()),
+                migrationScriptSettings = MigrationScriptSettings())
+
+        val plan = composer.planForAllVersionsInModules(listOf("mssql"), moduleService.listAllModules())
+
+        assertFalse(plan.isValid)
+        assertEquals(2, plan.problems.size)
+        assertTrue(plan.problems.any { it.contains("r1.0.1-alpha-3: upgrade scripts") })
+        assertTrue(plan.problems.any { it.contains("r1.0.2: rollback scripts") })
+    }
+
+    /**
+     * A range of versions in the default module is composed into a single pair of scripts.
+     */
+    @Test
+    fun defaultModuleVersionRangeTest() {
+        val directoryWithTestData = TestUtil.getRequiredDirectoryOnClasspath("input/no-modules/scheme/standard")
+        val outputDirectory = TestUtil.createTempDirectory()
+        val versionService = DirectoryVersionService(VersionServiceSettings(), versionDeserialzer1)
+        val moduleService = NoModuleDirectoryModuleService(directoryWithTestData)
+        val module = moduleService.findModuleByName("")!!
+        val composer = MigrationScriptComposer(moduleService = moduleService,
+                versionService = versionService,
+                deltaScriptService = DeltaScriptDirectoryService(DefaultDeltaScriptFileBuilder(),
+                        DeltaScriptDirectoryServiceSettings()),
+                migrationScriptWriterFactory = MigrationScriptFileWriterFactory(outputDirectory,
+                        ClasspathDeltaScriptTemplateLocator()),
+                migrationScriptSettings = MigrationScriptSettings())
+
+        // r1.0.1 has upgrade and rollback scripts, r2.0-alpha-1 has upgrade and bidirectional scripts only.
+        composer.composeMigrationScriptForVersionRange("mysql", module, versionService.getVersion(module, "r1.0.0"),
+                versionService.getVersion(module, "r2.0-alpha-1")!!)
+
+        val rangeDirectory = File(outputDirectory, "r1.0.1..r2.0-alpha-1")
+        val upgradeScript = File(rangeDirectory, "upgrade.sql").readText()
+        val rollbackScript = File(rangeDirectory, "rollback.sql").readText()
+
+        assertFalse(upgradeScript.contains("'r1.0.0'"))
+        assertTrue(upgradeScript.indexOf("'r1.0.1'") in 0 until upgradeScript.indexOf("'r2.0-alpha-1'"))
+        assertTrue(upgradeScript.contains("UPGRADE SCRIPT 6/6"))
+        assertTrue(rollbackScript.contains("'r1.0.1'"))
+        assertFalse(rollbackScript.contains("'r2.0-alpha-1'"))
+
+        assertThrows(ApplicationException::class.java) {
+            composer.composeMigrationScriptForVersionRange("mysql", module,
+                    versionService.getVersion(module, "r2.0-alpha-1"), versionService.getVersion(module, "r1.0.1")!!)
+        }
+    }
+
     /**
      * Default module with upgrade, rollback and bidirectional scripts.
      */
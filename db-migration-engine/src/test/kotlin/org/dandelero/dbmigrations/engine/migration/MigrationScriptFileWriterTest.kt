@@ -0,0 +1,346 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.migration
+
+import java.io.File
+import java.io.Reader
+import java.io.StringReader
+import java.nio.channels.ReadableByteChannel
+import org.dandelero.dbmigrations.api.delta.DeltaScript
+import org.dandelero.dbmigrations.api.delta.DeltaScriptCategory
+import org.dandelero.dbmigrations.api.delta.DeltaScriptService
+import org.dandelero.dbmigrations.engine.delta.CachingDeltaScriptService
+import org.dandelero.dbmigrations.engine.delta.DeltaScriptFile
+import org.dandelero.dbmigrations.engine.delta.InMemoryDeltaScript
+import org.dandelero.dbmigrations.engine.delta.template.ClasspathDeltaScriptTemplateLocator
+import org.dandelero.dbmigrations.engine.module.DirectoryModule
+import org.dandelero.dbmigrations.engine.module.DirectoryModuleService
+import org.dandelero.dbmigrations.engine.test.util.TestUtil
+import org.dandelero.dbmigrations.engine.version.VersionedDirectory
+import org.dandelero.dbmigrations.engine.version.simple.FourDigitVersion
+import org.dandelero.dbmigrations.engine.version.standard.VersionWithTag
+import org.junit.jupiter.api.Assertions.assertArrayEquals
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around the [MigrationScriptFileWriter].
+ * <br />
+ * Created at: 17/10/26 9:40 pm
+ * @author dandelero
+ */
+class MigrationScriptFileWriterTest {
+
+    /**
+     * A template with the script contents indented.
+     */
+    private val indentedTemplate = "-- \${scriptName}\nBEGIN\n    \${scriptContents}\nEND;\n"
+
+    /**
+     * Script contents that span several chunks of the writer, with lines of every length.
+     */
+    private val longScriptContents = (1..2000).joinToString("\n") { "SELECT ${"x".repeat(it % 97)};" }
+
+    /**
+     * The module that delta scripts are listed for.
+     */
+    private val module = DirectoryModuleService(TestUtil.getRequiredDirectoryOnClasspath(
+            "input/with-modules/scheme/standard/test-1")).findModuleByName("accounting")!!
+
+    /**
+     * The version that delta scripts are listed for.
+     */
+    private val version = with(FourDigitVersion(".", 1, 0, 1)) {
+        VersionWithTag(prefix = "r", prefixSeparator = "", version = this)
+    }.let { VersionedDirectory(File(module.moduleDirectory, it.nameString), it) }
+
+    @Test
+    fun streamedContentsAreIndentedLikeInMemoryContents() {
+        assertEquals(writeInMemory(indentedTemplate, longScriptContents),
+                writeStreamed(indentedTemplate, longScriptContents))
+    }
+
+    @Test
+    fun streamedContentsWithoutIndentationAreCopiedUnchanged() {
+        val template = "\${scriptContents}\n-- end of \${scriptName}\n"
+        assertEquals("$longScriptContents\n-- end of script.sql\n", writeStreamed(template, longScriptContents))
+    }
+
+    @Test
+    fun contentsAppearingMoreThanOnceAreSubstitutedWhole() {
+        val template = "\${scriptContents}\n\${scriptContents}\n"
+        val contents = "SELECT 1;\nSELECT 2;"
+        assertEquals("$contents\n$contents\n", writeStreamed(template, contents))
+    }
+
+    @Test
+    fun placeholdersWithinTheContentsAreSubstitutedUnlessWrittenVerbatim() {
+        val contents = "INSERT INTO \${changeLogTableName} VALUES ('\${scriptName}');\nSELECT '$\${escaped}';"
+        val substitutedContents = "INSERT INTO change_log VALUES ('script.sql');\nSELECT '\${escaped}';"
+        val singleTemplate = "-- \${scriptName}\n    \${scriptContents}\n-- \${changeLogTableName}\n"
+        val repeatedTemplate = "\${scriptContents}\n-- \${changeLogTableName}\n\${scriptContents}\n"
+        val scriptContext = mapOf(KEY_SCRIPT_FILE_NAME to "script.sql", KEY_CHANGE_LOG_TABLE to "change_log")
+
+        listOf(false, true).forEach { verbatimContents ->
+            val writtenContents = if (verbatimContents) contents else substitutedContents
+            val expected = "-- script.sql\n    ${writtenContents.replace("\n", "\n    ")}\n-- change_log\n"
+            val repeatedExpected = "$writtenContents\n-- change_log\n$writtenContents\n"
+            val renderCache = RenderedScriptCache(1024 * 1024)
+
+            val templates = listOf(singleTemplate to expected, repeatedTemplate to repeatedExpected)
+            templates.forEach { (template, expectedOutput) ->
+                // Streamed, rendered through the render cache (seen once, cached, then served) and held in context.
+                assertEquals(expectedOutput, writeStreamed(template, contents, scriptContext, verbatimContents))
+                repeat(3) {
+                    assertEquals(expectedOutput, String(write(template, renderCache = renderCache,
+                            verbatimContents = verbatimContents) {
+                        it.writeRegularScript(scriptContext, InMemoryDeltaScript("script.sql", 1, contents))
+                    }))
+                }
+                assertEquals(expectedOutput, String(write(template, verbatimContents = verbatimContents) {
+                    it.writeRegularScript(scriptContext + (KEY_SCRIPT_CONTENTS to contents))
+                }))
+            }
+            // The rendering of contents that are substituted depends on more than the template's values.
+            assertEquals(if (verbatimContents) 1L else 0L, renderCache.hitCount)
+        }
+    }
+
+    @Test
+    fun scriptFilesAreTransferredUpToTheirFirstPlaceholder() {
+        val template = "-- \${scriptName}\n\${scriptContents}\n-- end\n"
+        val scriptFile = File.createTempFile("delta", ".sql")
+        try {
+            // Bytes before the first placeholder that are not valid UTF-8 are still copied unchanged.
+            val leadingBytes = longScriptContents.toByteArray() + byteArrayOf(0xC3.toByte(), 0x28, 0x0A)
+            scriptFile.writeBytes(leadingBytes + "-- $$\${changeLogTableName} \$ \${changeLogTableName}".toByteArray())
+            val expected = "-- ${scriptFile.name}\n".toByteArray() + leadingBytes +
+                    "-- $\${changeLogTableName} \$ change_log\n-- end\n".toByteArray()
+
+            listOf(false, true).forEach { deferredOutput ->
+                val written = write(template, deferredOutput) {
+                    it.writeRegularScript(mapOf(KEY_SCRIPT_FILE_NAME to scriptFile.name,
+                            KEY_CHANGE_LOG_TABLE to "change_log"), DeltaScriptFile(scriptFile, 1))
+                }
+                assertArrayEquals(expected, written)
+            }
+        } finally {
+            scriptFile.delete()
+        }
+    }
+
+    @Test
+    fun unindentedScriptFilesAreCopiedByteForByte() {
+        val template = "-- \${scriptName}\n\${scriptContents}\n-- end\n"
+        val scriptFile = File.createTempFile("delta", ".sql")
+        try {
+            // Include bytes that are not valid UTF-8, which would be altered if the contents were decoded.
+            val scriptBytes = longScriptContents.toByteArray() + byteArrayOf(0xC3.toByte(), 0x28, 0x0A)
+            scriptFile.writeBytes(scriptBytes)
+            val expected = "-- ${scriptFile.name}\n".toByteArray() + scriptBytes + "\n-- end\n".toByteArray()
+
+            // A script that wraps the file is copied the same way, as it offers the channel of the file.
+            val wrappedScript = DeltaScriptFile(scriptFile, 1).let { file ->
+                object : DeltaScript by file {
+                    override fun openChannel(): ReadableByteChannel = file.openChannel()
+                }
+            }
+            listOf(false, true).forEach { deferredOutput ->
+                listOf(DeltaScriptFile(scriptFile, 1), wrappedScript).forEach { deltaScript ->
+                    val written = write(template, deferredOutput) {
+                        it.writeRegularScript(mapOf(KEY_SCRIPT_FILE_NAME to scriptFile.name), deltaScript)
+                    }
+                    assertArrayEquals(expected, written)
+                }
+            }
+        } finally {
+            scriptFile.delete()
+        }
+    }
+
+    @Test
+    fun memoryMappedScriptFilesAreIndentedLikeInMemoryContents() {
+        val scriptFile = File.createTempFile("delta", ".sql")
+        try {
+            scriptFile.writeText(longScriptContents)
+            val written = write(indentedTemplate) {
+                it.writeRegularScript(mapOf(KEY_SCRIPT_FILE_NAME to "script.sql"), DeltaScriptFile(scriptFile, 1, 0))
+            }
+            assertEquals(writeInMemory(indentedTemplate, longScriptContents), String(written))
+        } finally {
+            scriptFile.delete()
+        }
+    }
+
+    @Test
+    fun repeatedRenderingsAreServedFromTheRenderCache() {
+        val renderCache = RenderedScriptCache(1024 * 1024)
+        val deltaScript = InMemoryDeltaScript("script.sql", 1, longScriptContents)
+        val render = { scriptContext: Map<String, Any> ->
+            String(write(indentedTemplate, renderCache = renderCache) {
+                it.writeRegularScript(scriptContext, deltaScript)
+            })
+        }
+        val expected = writeInMemory(indentedTemplate, longScriptContents)
+
+        // A rendering seen for the first time is written straight to the output.
+        assertEquals(expected, render(mapOf(KEY_SCRIPT_FILE_NAME to "script.sql", "moduleName" to "accounting")))
+        assertEquals(listOf(0L, 0L), listOf(renderCache.missCount, renderCache.hitCount))
+
+        // The template does not refer to the module, so it does not prevent the rendering from being reused.
+        assertEquals(expected, render(mapOf(KEY_SCRIPT_FILE_NAME to "script.sql", "moduleName" to "customer")))
+        assertEquals(expected, render(mapOf(KEY_SCRIPT_FILE_NAME to "script.sql", "moduleName" to "billing")))
+        assertEquals(listOf(1L, 1L), listOf(renderCache.missCount, renderCache.hitCount))
+
+        assertEquals(expected.replace("-- script.sql", "-- other.sql"),
+                render(mapOf(KEY_SCRIPT_FILE_NAME to "other.sql")))
+        assertEquals(listOf(1L, 1L), listOf(renderCache.missCount, renderCache.hitCount))
+    }
+
+    @Test
+    fun largeUnindentedScriptFilesAreTransferredWithTheDefaultCaches() {
+        val template = "-- \${scriptName}\n\${scriptContents}\n-- end\n"
+        val scriptFile = File.createTempFile("delta", ".sql")
+        try {
+            // Larger than a rendering that the default render cache could hold, but small enough to be cached.
+            val lines = (12L * 1024 * 1024 / longScriptContents.length + 1).toInt()
+            val scriptBytes = (1..lines).joinToString("\n") { longScriptContents }.toByteArray() +
+                    byteArrayOf(0xC3.toByte(), 0x28, 0x0A)
+            scriptFile.writeBytes(scriptBytes)
+            val settings = MigrationScriptSettings()
+            val scriptService = CachingDeltaScriptService(object : DeltaScriptService<DirectoryModule, VersionedDirectory> {
+                override fun getScripts(category: DeltaScriptCategory, module: DirectoryModule, version: VersionedDirectory):
+                        List<DeltaScript> = listOf(DeltaScriptFile(scriptFile, 1))
+            }, settings.scriptCacheSize)
+            val renderCache = RenderedScriptCache(settings.renderCacheSize)
+            val (deltaScript) = scriptService.getScripts(DeltaScriptCategory.UPGRADE, module, version)
+
+            // The script is written twice, e.g. for two database engines, without its contents being decoded.
+            repeat(2) {
+                val written = write(template, renderCache = renderCache) {
+                    it.writeRegularScript(mapOf(KEY_SCRIPT_FILE_NAME to scriptFile.name), deltaScript)
+                }
+                assertArrayEquals("-- ${scriptFile.name}\n".toByteArray() + scriptBytes + "\n-- end\n".toByteArray(),
+                        written)
+            }
+            assertEquals(listOf(0L, 0L), listOf(scriptService.missCount, scriptService.hitCount))
+            assertEquals(listOf(0L, 0L), listOf(renderCache.missCount, renderCache.hitCount))
+        } finally {
+            scriptFile.delete()
+        }
+    }
+
+    @Test
+    fun cachedBidirectionalScriptsAreReadFromTheirSourceOnce() {
+        val template = ClasspathDeltaScriptTemplateLocator().findDeltaScriptTemplate("mssql",
+                DeltaScriptCategory.BIDIRECTIONAL)!!
+        val scriptFile = File.createTempFile("delta", ".sql")
+        val outputFiles = listOf(File.createTempFile("upgrade", ".sql"), File.createTempFile("rollback", ".sql"))
+        try {
+            scriptFile.writeText(longScriptContents)
+            val scriptService = CachingDeltaScriptService(object : DeltaScriptService<DirectoryModule, VersionedDirectory> {
+                override fun getScripts(category: DeltaScriptCategory, module: DirectoryModule, version: VersionedDirectory):
+                        List<DeltaScript> = listOf(DeltaScriptFile(scriptFile, 1))
+            }, MigrationScriptSettings().scriptCacheSize)
+            val (deltaScript) = scriptService.getScripts(DeltaScriptCategory.BIDIRECTIONAL, module, version)
+
+            // The script is written to both the upgrade and the rollback script, without a render cache.
+            outputFiles.forEach { outputFile ->
+                with(MigrationScriptFileWriter(outputFile, "", "", template)) {
+                    setup(emptyMap())
+                    writeBidirectionalScript(mapOf(KEY_SCRIPT_FILE_NAME to scriptFile.name), deltaScript)
+                    finish()
+                }
+            }
+            assertEquals(listOf(1L, 1L), listOf(scriptService.missCount, scriptService.hitCount))
+            outputFiles.forEach { assertTrue(it.readText().contains("\n$longScriptContents\n")) }
+        } finally {
+            scriptFile.delete()
+            outputFiles.forEach { it.delete() }
+        }
+    }
+
+    /**
+     * Writes a regular script with its contents held in the script context.
+     * @param template the regular script template.
+     * @param contents the script contents.
+     * @return the written migration script.
+     */
+    private fun writeInMemory(template: String, contents: String): String {
+        return String(write(template) {
+            it.writeRegularScript(mapOf(KEY_SCRIPT_FILE_NAME to "script.sql", KEY_SCRIPT_CONTENTS to contents))
+        })
+    }
+
+    /**
+     * Writes a regular script whose contents can only be read as a stream.
+     * @param template the regular script template.
+     * @param contents the script contents.
+     * @param scriptContext the script context.
+     * @param verbatimContents whether the writer writes the contents verbatim.
+     * @return the written migration script.
+     */
+    private fun writeStreamed(
+        template: String,
+        contents: String,
+        scriptContext: Map<String, Any> = mapOf(KEY_SCRIPT_FILE_NAME to "script.sql"),
+        verbatimContents: Boolean = false
+    ): String {
+        val deltaScript = object : DeltaScript {
+            override fun getName(): String = "script.sql"
+
+            override fun getSequenceNumber(): Int = 1
+
+            override fun getContents(): String = if (template.split("\${scriptContents}").size == 2) {
+                throw AssertionError("The contents were expected to be streamed")
+            } else {
+                contents
+            }
+
+            override fun openReader(): Reader = StringReader(contents)
+        }
+        return String(write(template, verbatimContents = verbatimContents) {
+            it.writeRegularScript(scriptContext, deltaScript)
+        })
+    }
+
+    /**
+     * Writes a migration script to a temporary file.
+     * @param template the regular script template.
+     * @param deferredOutput whether the writer holds its output in memory until it is finished.
+     * @param renderCache the cache of rendered delta scripts, if any.
+     * @param verbatimContents whether the writer writes the contents of delta scripts verbatim.
+     * @param writeScripts writes the scripts of the migration script.
+     * @return the bytes of the written migration script.
+     */
+    private fun write(
+        template: String,
+        deferredOutput: Boolean = false,
+        renderCache: RenderedScriptCache? = null,
+        verbatimContents: Boolean = false,
+        writeScripts: (MigrationScriptFileWriter) -> Unit
+    ): ByteArray {
+        val outputFile = File.createTempFile("migration", ".sql")
+        try {
+            val writer = MigrationScriptFileWriter(outputFile, "", template, "", deferredOutput, renderCache,
+                    verbatimContents = verbatimContents)
+            writer.setup(emptyMap())
+            writeScripts(writer)
+            writer.finish()
+            return outputFile.readBytes()
+        } finally {
+            outputFile.delete()
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.migration
+
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertNull
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+/**
+ * A suite of tests around [RenderContext].
+ * <br />
+ * Created at: 18/10/26 1:55 pm
+ * @author dandelero
+ */
+class RenderContextTest {
+
+    /**
+     * The values of a migration script, which scripts are layered over.
+     */
+    private val fileContext = RenderContext.Builder()
+            .put(KEY_MODULE_NAME, "accounting")
+            .put(KEY_SCRIPT_COUNT, "5")
+            .put("custom", "file")
+            .build()
+
+    @Test
+    fun valuesAreLookedUpInTheLayerBeforeTheParent() {
+        val scriptContext = RenderContext.Builder(fileContext)
+                .put(KEY_SCRIPT_FILE_NAME, "0001-create.sql")
+                .put(KEY_SCRIPT_COUNT, 3)
+                .put("custom", "script")
+                .build()
+
+        assertEquals("0001-create.sql", scriptContext[KEY_SCRIPT_FILE_NAME])
+        assertEquals(3, scriptContext[KEY_SCRIPT_COUNT])
+        assertEquals("script", scriptContext["custom"])
+        assertEquals("accounting", scriptContext[KEY_MODULE_NAME])
+        assertTrue(scriptContext.containsKey(KEY_MODULE_NAME))
+        assertFalse(scriptContext.containsKey(KEY_SCRIPT_CONTENTS))
+        assertNull(scriptContext["unknown"])
+        assertEquals("5", fileContext[KEY_SCRIPT_COUNT])
+    }
+
+    @Test
+    fun layeredContextsEqualTheirMergedValues() {
+        val scriptContext = RenderContext.Builder(fileContext)
+                .put(KEY_INDEX, 1)
+                .put("custom", "script")
+                .build()
+        val mergedContext = mapOf(KEY_MODULE_NAME to "accounting", KEY_SCRIPT_COUNT to "5", "custom" to "script",
+                KEY_INDEX to 1)
+
+        assertEquals(mergedContext, scriptContext)
+        assertEquals(mergedContext, HashMap(scriptContext))
+        assertEquals(4, scriptContext.size)
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2019 Dandelero (dandelero@gmail.com).
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.dandelero.dbmigrations.engine.pipeline
+
+import java.time.Duration
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import org.dandelero.dbmigrations.engine.concurrent.CancellationSignal
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertTimeoutPreemptively
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.function.ThrowingSupplier
+
+/**
+ * A suite of tests around the [Pipeline].
+ * <br />
+ * Created at: 17/10/26 4:20 pm
+ * @author dandelero
+ */
+class PipelineTest {
+
+    @Test
+    fun itemsPassThroughEveryStage() {
+        val results = Collections.synchronizedList(mutableListOf<Int>())
+        val first = PipelineStage<Int, Int>("double", 2, 2) { item, emit -> emit(item * 2) }
+        first.linkTo(PipelineStage<Int, Int>("expand", 3, 2) { item, emit -> emit(item); emit(item + 1) })
+                .linkTo(PipelineStage<Int, Unit>("collect", 1, 2) { item, _ -> results.add(item) })
+
+        val pipeline = Pipeline("test", first)
+        val failures = pipeline.run((1..50).toList())
+
+        assertTrue(failures.isEmpty())
+        assertEquals((1..50).flatMap { listOf(it * 2, it * 2 + 1) }.sorted(), results.sorted())
+        assertEquals(listOf(50L, 50L, 100L), pipeline.statistics().map { it.processedCount })
+    }
+
+    @Test
+    fun slowStageHoldsBackEarlierStages() {
+        val release = CountDownLatch(1)
+        val first = PipelineStage<Int, Int>("produce", 1, 2) { item, emit -> emit(item) }
+        first.linkTo(PipelineStage<Int, Unit>("consume", 1, 2) { _, _ -> release.await() })
+
+        val pipeline = Pipeline("test", first)
+        val runner = Thread { pipeline.run((1..20).toList()) }.apply { start() }
+
+        // Wait for the pipeline to fill up: the consumer holds one item and both queues are full.
+        while (pipeline.statistics().map { it.queueDepth } != listOf(2, 2)) {
+            Thread.sleep(10)
+        }
+        Thread.sleep(50)
+        assertEquals(0L, pipeline.statistics().last().processedCount)
+        assertTrue(pipeline.statistics().all { it.maxQueueDepth <= it.queueCapacity })
+
+        release.countDown()
+        runner.join()
+        assertEquals(20L, pipeline.statistics().last().processedCount)
+        assertTrue(pipeline.statistics().first().stalledFraction > 0.0)
+    }
+
+    @Test
+    fun failedItemsAreReportedWithoutStoppingThePipeline() {
+        val results = Collections.synchronizedList(mutableListOf<Int>())
+        val first = PipelineStage<Int, Int>("check", 2, 2, { "item $it" }) { item, emit ->
+            if (item % 5 == 0) {
+                throw IllegalStateException("Bad item: $item")
+            }
+            emit(item)
+        }
+        first.linkTo(PipelineStage<Int, Unit>("collect", 1, 2) { item, _ -> results.add(item) })
+
+        val pipeline = Pipeline("test", first)
+        val failures = pipeline.run((1..20).toList())
+
+        assertEquals(listOf("item 10", "item 15", "item 20", "item 5"), failures.map { it.first }.sorted())
+        assertEquals(16, results.size)
+        assertEquals(4L, pipeline.statistics().first().failedCount)
+    }
+
+    @Test
+    fun failureCancelsThePipelineWhenFailingFast() {
+        val discarded = Collections.synchronizedList(mutableListOf<Int>())
+        val first = PipelineStage<Int, Int>("check", 1, 1, { "item $it" }, { discarded.add(it) }) { item, emit ->
+            if (item == 1) {
+                throw IllegalStateException("Bad item: $item")
+            }
+            emit(item)
+        }
+        first.linkTo(PipelineStage<Int, Unit>("collect", 1, 1) { _, _ -> })
+
+        val cancellation = CancellationSignal()
+        val pipeline = Pipeline("test", first, cancellation, failFast = true)
+        val failures = pipeline.run((1..20).toList())
+
+        assertEquals(listOf("item 1"), failures.map { it.first })
+        assertTrue(cancellation.isCancelled)
+        // No item after the failure is processed; those already queued are discarded and the rest are never fed.
+        assertEquals(listOf(0L, 0L), pipeline.statistics().map { it.processedCount })
+        assertEquals(discarded.size.toLong(), pipeline.statistics().first().discardedCount)
+        assertTrue(discarded.size < 19)
+    }
+
+    @Test
+    fun errorsAreReportedAndCancelThePipeline() {
+        val first = PipelineStage<Int, Int>("check", 1, 1, { "item $it" }) { item, emit ->
+            if (item == 3) {
+                throw StackOverflowError("Bad item: $item")
+            }
+            emit(item)
+        }
+        first.linkTo(PipelineStage<Int, Unit>("collect", 1, 1) { _, _ -> })
+
+        val cancellation = CancellationSignal()
+        val pipeline = Pipeline("test", first, cancellation)
+        // The stages still finish, as the failed worker carries on and hands on the end of the input.
+        val failures = assertTimeoutPreemptively(Duration.ofSeconds(30), ThrowingSupplier {
+            pipeline.run((1..20).toList())
+        })
+
+        assertEquals(listOf("item 3"), failures.map { it.first })
+        assertTrue(failures.single().second is StackOverflowError)
+        assertTrue(cancellation.isCancelled)
+        assertEquals(2L, pipeline.statistics().first().processedCount)
+    }
+}